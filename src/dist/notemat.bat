@@ -0,0 +1,8 @@
+@echo off
+rem Starts Notemat with the class-data-sharing archive produced by `gradlew cdsArchive`.
+rem Without the archive (or with a JDK that cannot use it) the JVM silently starts normally.
+set DIR=%~dp0
+set JAVA=java
+if defined JAVA_HOME set JAVA=%JAVA_HOME%\bin\java
+
+"%JAVA%" -XX:SharedArchiveFile="%DIR%notemat.jsa" -Xshare:auto -Xlog:cds=off -Xlog:cds+dynamic=off %NOTEMAT_OPTS% -jar "%DIR%notemat.jar" %*
@@ -1,17 +1,22 @@
 package com.notemat.Components;
 
-import com.google.genai.types.GenerateContentResponse;
-import com.notemat.Utils.Gemini;
-import javafx.application.Platform;
+import com.notemat.Diagnostics.AIRequestEvent;
+import com.notemat.Utils.AIProvider;
+import com.notemat.Utils.AIRequestScheduler;
+import com.notemat.Utils.ChunkedQuery;
+import com.notemat.Utils.EditTransaction;
+import com.notemat.Utils.HedgedProvider;
+import com.notemat.Utils.ResponseCache;
 import javafx.scene.control.MenuItem;
 import javafx.scene.control.SeparatorMenuItem;
 import org.apache.http.HttpException;
 import org.fxmisc.richtext.InlineCssTextArea;
 
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Set;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 
 
 /**
@@ -22,7 +27,6 @@ public class ContextMenu {
     private final InlineCssTextArea textArea;
     private final javafx.scene.control.ContextMenu contextMenu;
     private final EditorWindow editor;
-    private final Gemini gemini = new Gemini();
 
     /**
      * Constructor to initialize the context menu.
@@ -42,116 +46,178 @@ public class ContextMenu {
         MenuItem copy = new MenuItem("Copy");
         MenuItem paste = new MenuItem("Paste");
         MenuItem ask = new MenuItem("Ask Gemini");
+        MenuItem regenerate = new MenuItem("Ask Gemini Again (Skip Cache)");
+        MenuItem cancelRequests = new MenuItem("Cancel Gemini Requests");
 
         // Actions
         cut.setOnAction(e -> textArea.cut());
         copy.setOnAction(e -> textArea.copy());
         paste.setOnAction(e -> editor.pasteTextOrImage());
-        ask.setOnAction(e -> querySelectedTextToAI());
+        ask.setOnAction(e -> querySelectedTextToAI(false));
+        regenerate.setOnAction(e -> querySelectedTextToAI(true));
+        cancelRequests.setOnAction(e -> editor.getAIRequestScheduler().cancelAll());
+        contextMenu.setOnShowing(e -> cancelRequests.setDisable(editor.getAIRequestScheduler().getPendingCount() == 0));
 
         if (Preferences.getEnableGemini()) {
-            contextMenu.getItems().addAll(cut, copy, paste, new SeparatorMenuItem(), ask);
+            contextMenu.getItems().addAll(cut, copy, paste, new SeparatorMenuItem(), ask, regenerate, cancelRequests);
         } else {
             contextMenu.getItems().addAll(cut, copy, paste);
         }
         textArea.setContextMenu(contextMenu);
     }
 
-    private void querySelectedTextToAI() {
-        // Get selection area, style and text.
-        int selectionStart = textArea.getSelection().getStart();
-        int selectionEnd = textArea.getSelection().getEnd();
+    private void querySelectedTextToAI(boolean regenerate) {
+        queryAI(textArea.getSelection().getStart(), textArea.getSelection().getEnd(), regenerate);
+    }
+
+    /**
+     * Asks the AI provider about a range of text and writes the answer below it.
+     * Answers to identical questions are served from the response cache unless
+     * {@code regenerate} is set, in which case a fresh answer replaces the
+     * cached one.
+     *
+     * @param selectionStart the start of the question in the document.
+     * @param selectionEnd   the end of the question in the document.
+     * @param regenerate     true to bypass the cache.
+     * @return a future completing with the length of the written answer once it
+     * has been inserted.
+     */
+    public CompletableFuture<Integer> queryAI(int selectionStart, int selectionEnd, boolean regenerate) {
+        // Get selection style and text.
         String currentStyle = textArea.getStyleAtPosition(selectionStart);
         String toAsk = textArea.getText(selectionStart, selectionEnd);
 
-        if (!toAsk.isEmpty()) {
-            // Change the color to light purple.
-            String updatedStyle = editor.getStylebar().updateCssProperty(currentStyle, "-fx-fill", "#b380b3").replace("-fx-font-weight: bold", "-fx-font-style: normal");
-            String updatedStyleBold = updatedStyle.replace("-fx-font-style: normal", "-fx-font-weight: bold");
-
-            System.out.println(updatedStyle);
-
-            // Insert "Generating..." and record its start/end positions.
-            String generating = "Generating...";
-            String generatingText = "\n" + generating;
-            textArea.insertText(selectionEnd, generatingText);
-            int generatingEnd = selectionEnd + generatingText.length();
-            textArea.setStyle(selectionEnd, generatingEnd, updatedStyle);
-            textArea.insertText(generatingEnd, " ");
-            textArea.setStyle(generatingEnd, generatingEnd + 1, currentStyle);
-
-            // Query Gemini.
-            try {
-                CompletableFuture<GenerateContentResponse> resp = gemini.getResponse(Preferences.getGeminiModel(), toAsk);
-
-                resp.thenAccept(response -> {
-                    Platform.runLater(() -> {
-                        // Get the raw response text (including the newline).
-                        String rawResponse = "\n" + response.text();
-                        StringBuilder processedResponse = new StringBuilder();
-
-                        // List to keep track of bold regions. Each element is a 2-element int array: [startIndex, endIndex] relative to the final inserted text.
-                        List<int[]> boldRanges = new ArrayList<>();
-
-                        // Process rawResponse to remove the "**" markers.
-                        for (int i = 0; i < rawResponse.length(); ) {
-                            // Check if the current position starts with "**"
-                            if (rawResponse.startsWith("**", i)) {
-                                int boldStart = i + 2;
-                                int boldEnd = rawResponse.indexOf("**", boldStart);
-
-                                // If no matching closing "**" is found, just append the rest.
-                                if (boldEnd == -1) {
-                                    processedResponse.append(rawResponse.substring(i));
-                                    break;
-                                }
-                                // Record where the bold text will start within the processed text.
-                                int startBoldInProcessed = processedResponse.length();
-                                // Append the text between the markers.
-                                String boldText = rawResponse.substring(boldStart, boldEnd);
-                                processedResponse.append(boldText);
-                                // Record the end index.
-                                int endBoldInProcessed = processedResponse.length();
-                                // Save the bold region (we will need to adjust the absolute offset
-                                // later when the text is inserted into the textArea).
-                                boldRanges.add(new int[]{startBoldInProcessed + selectionEnd, endBoldInProcessed + selectionEnd});
-                                // Move past the markers.
-                                i = boldEnd + 2;
-                            } else {
-                                // Append the normal character.
-                                processedResponse.append(rawResponse.charAt(i));
-                                i++;
-                            }
-                        }
-
-                        // Remove the "Generating..." text if it is still present.
-                        textArea.deleteText(selectionEnd, generatingEnd);
-
-                        // Insert the processed text into the textArea.
-                        String finalResponse = processedResponse.toString();
-                        textArea.insertText(selectionEnd, finalResponse);
-
-                        // First, apply the default updatedStyle to the entire inserted text.
-                        textArea.setStyle(selectionEnd, selectionEnd + finalResponse.length(), updatedStyle);
-
-                        // Then, for each bold segment that we detected, update its style.
-                        for (int[] range : boldRanges) {
-                            textArea.setStyle(range[0], range[1], updatedStyleBold);
-                        }
-                    });
-                });
-
-            } catch (HttpException | IOException e) {
-                // Remove the "Generating..." text if it's still there.
-                textArea.deleteText(selectionEnd, generatingEnd);
-                String result = "Error generating a response.";
-                String errorText = "\n" + result;
-                textArea.insertText(selectionEnd, errorText);
-                textArea.setStyle(selectionEnd, selectionEnd + errorText.length(), updatedStyle);
-                textArea.insertText(selectionEnd + errorText.length(), " ");
-                textArea.setStyle(selectionEnd + errorText.length(), selectionEnd + errorText.length() + 1, currentStyle);
+        if (toAsk.isEmpty()) {
+            return CompletableFuture.completedFuture(0);
+        }
+
+        // Change the color to light purple.
+        String updatedStyle = editor.getStylebar().updateCssProperty(currentStyle, "-fx-fill", "#b380b3").replace("-fx-font-weight: bold", "-fx-font-style: normal");
+        String updatedStyleBold = updatedStyle.replace("-fx-font-style: normal", "-fx-font-weight: bold");
+
+        System.out.println(updatedStyle);
+
+        // Insert "Generating..." followed by a space in the original style, in one update.
+        String generating = "Generating...";
+        String generatingText = "\n" + generating;
+        new EditTransaction(textArea)
+                .replace(selectionEnd, selectionEnd, EditTransaction.document(textArea, generatingText, updatedStyle)
+                        .concat(EditTransaction.document(textArea, " ", currentStyle)))
+                .commit();
+
+        // Write the answer over the placeholder as it arrives.
+        ResponseWriter writer = new ResponseWriter(textArea, selectionEnd, generatingText, updatedStyle, updatedStyleBold);
+        writer.start();
+
+        // Query the AI provider.
+        AIProvider provider = AIProvider.current();
+        String model = Preferences.getGeminiModel();
+        boolean streaming = Preferences.getGeminiStreaming();
+        AIRequestEvent event = new AIRequestEvent();
+        event.begin();
+        event.model = model;
+        event.selectionLength = toAsk.length();
+        event.streamed = streaming;
+        long requestStart = System.nanoTime();
+        AtomicLong firstChunk = new AtomicLong();
+        StringBuilder fullResponse = new StringBuilder();
+
+        writer.finished().whenComplete((written, error) -> {
+            if (error != null) {
+                event.error = error.getMessage();
+            } else {
+                event.responseLength = written;
+                event.succeeded = true;
+            }
+            if (firstChunk.get() != 0) {
+                event.timeToFirstChunk = firstChunk.get() - requestStart;
+            }
+            event.commit();
+        });
+
+        ResponseCache cache = ResponseCache.getShared();
+        String cacheModel = provider.getName() + "/" + model;
+        CompletableFuture<String> cached = regenerate ? CompletableFuture.completedFuture(null) : cache.lookup(cacheModel, toAsk);
+        cached.thenCompose(hit -> {
+            if (hit != null) {
+                event.cached = true;
+                firstChunk.compareAndSet(0, System.nanoTime());
+                writer.append(hit);
+                return CompletableFuture.completedFuture(null);
+            }
+
+            // Chunks arrive one after another on a single thread.
+            Consumer<String> onChunk = chunk -> {
+                firstChunk.compareAndSet(0, System.nanoTime());
+                fullResponse.append(chunk);
+                writer.append(chunk);
+            };
+
+            // Selections too large for one prompt are condensed in parallel parts first.
+            AIRequestScheduler scheduler = editor.getAIRequestScheduler();
+            CompletableFuture<Void> answer;
+            if (ChunkedQuery.needsChunking(toAsk)) {
+                event.chunked = true;
+                answer = new ChunkedQuery(provider, scheduler, model, streaming).run(toAsk, writer::setProgress, onChunk);
+            } else {
+                answer = scheduler.submit(() -> requestResponse(provider, model, toAsk, streaming, onChunk));
+            }
+            return answer.thenRun(() -> {
+                // A hedged answer may come from the fallback model and is cached as that model's answer.
+                String answeringModel = answeringModel(provider, model);
+                if (answeringModel != null) {
+                    cache.store(provider.getName() + "/" + answeringModel, toAsk, fullResponse.toString());
+                }
+            });
+        }).whenComplete((result, error) -> {
+            if (error != null) {
+                writer.fail(error);
+            } else {
+                writer.complete();
             }
+        });
+        return writer.finished();
+    }
+
+    /**
+     * Finds the model an answer came from.
+     *
+     * @param provider the provider the question was asked through.
+     * @param model    the requested model.
+     * @return the model, or null if parts of the answer came from different models.
+     */
+    private static String answeringModel(AIProvider provider, String model) {
+        if (!(provider instanceof HedgedProvider hedged)) {
+            return model;
+        }
+        Set<String> models = hedged.getAnsweringModels();
+        return models.size() == 1 ? models.iterator().next() : null;
+    }
+
+    /**
+     * Sends a question to the AI provider, streamed or in one piece.
+     *
+     * @param provider  the backend to ask.
+     * @param model     the display name of the model.
+     * @param toAsk     the question.
+     * @param streaming true to receive the answer in chunks as it is generated.
+     * @param onChunk   receives the answer, in one or more chunks.
+     * @return a future completing once the whole answer has been received;
+     * cancelling it cancels the request.
+     */
+    private CompletableFuture<Void> requestResponse(AIProvider provider, String model, String toAsk, boolean streaming, Consumer<String> onChunk) {
+        if (streaming) {
+            return provider.stream(model, toAsk, onChunk);
         }
+        CompletableFuture<String> request = provider.generate(model, toAsk);
+        CompletableFuture<Void> result = request.thenAccept(onChunk);
+        // The scheduler cancels the returned future, which would not reach the request on its own.
+        result.whenComplete((ignored, error) -> {
+            if (result.isCancelled()) {
+                request.cancel(true);
+            }
+        });
+        return result;
     }
 
 
@@ -0,0 +1,275 @@
+package com.notemat.Components;
+
+import com.notemat.Utils.DocumentDiff;
+import com.notemat.Utils.WindowGeometry;
+import javafx.application.Platform;
+import javafx.collections.FXCollections;
+import javafx.geometry.Insets;
+import javafx.geometry.Pos;
+import javafx.scene.Scene;
+import javafx.scene.control.Button;
+import javafx.scene.control.Label;
+import javafx.scene.control.ListCell;
+import javafx.scene.control.ListView;
+import javafx.scene.layout.HBox;
+import javafx.scene.layout.Priority;
+import javafx.scene.layout.VBox;
+import javafx.scene.text.Text;
+import javafx.scene.text.TextFlow;
+import javafx.stage.Stage;
+import javafx.stage.StageStyle;
+import javafx.stage.Window;
+import org.fxmisc.richtext.model.StyleSpans;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+
+/**
+ * A window showing two notes, or two versions of one note, side by side with
+ * their differences marked, see {@link DocumentDiff}. The rows are shown in a
+ * ListView, which only builds cells for the rows in view, and the characters
+ * of a changed paragraph are compared when its row is first shown. The
+ * segments of the most recently shown rows are kept, so scrolling back and
+ * forth or selecting rows does not compare them again.
+ */
+public class DiffWindow extends Stage {
+    private static final String REMOVED_STYLE = "-fx-fill: #FF8C8C; -fx-strikethrough: true;";
+    private static final String ADDED_STYLE = "-fx-fill: #8CE68C; -fx-underline: true;";
+    private static final String RESTYLED_STYLE = "-fx-fill: #E6C86E;";
+    private static final int CACHED_ROWS = 1000;
+
+    private final ListView<DocumentDiff.Row> rowList = new ListView<>();
+    private final Label statusLabel = new Label();
+    private final Button previousButton = new Button("Previous");
+    private final Button nextButton = new Button("Next");
+    private DocumentDiff diff = null;
+    private final Map<DocumentDiff.Row, List<List<DocumentDiff.Segment>>> segmentCache = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<DocumentDiff.Row, List<List<DocumentDiff.Segment>>> eldest) {
+            return size() > CACHED_ROWS;
+        }
+    };
+    private int currentHunk = -1;
+
+    private double xOffset = 0;
+    private double yOffset = 0;
+
+    /**
+     * Constructs a DiffWindow.
+     *
+     * @param owner      the window the comparison was started from.
+     * @param leftTitle  the name of the older or first note, shown on the left.
+     * @param rightTitle the name of the newer or second note, shown on the right.
+     */
+    public DiffWindow(Window owner, String leftTitle, String rightTitle) {
+        // Initialization
+        initStyle(StageStyle.TRANSPARENT);
+        initOwner(owner);
+        setTitle("Compare");
+
+        // Toolbar
+        HBox toolbar = createToolbar();
+
+        // Column titles
+        Label leftLabel = new Label(leftTitle);
+        Label rightLabel = new Label(rightTitle);
+        for (Label label : List.of(leftLabel, rightLabel)) {
+            label.getStyleClass().add("diff-title");
+            label.setMaxWidth(Double.MAX_VALUE);
+            HBox.setHgrow(label, Priority.ALWAYS);
+        }
+        HBox titleBox = new HBox(10, leftLabel, rightLabel);
+        titleBox.setPadding(new Insets(0, 10, 0, 10));
+
+        // Rows
+        rowList.setCellFactory(list -> new RowCell());
+        VBox.setVgrow(rowList, Priority.ALWAYS);
+        VBox listBox = new VBox(rowList);
+        listBox.setPadding(new Insets(0, 10, 0, 10));
+        VBox.setVgrow(listBox, Priority.ALWAYS);
+
+        // Buttons
+        previousButton.setDisable(true);
+        previousButton.setOnAction(e -> showHunk(currentHunk - 1));
+        nextButton.setDisable(true);
+        nextButton.setOnAction(e -> showHunk(currentHunk + 1));
+        Button closeButton = new Button("Close");
+        closeButton.setOnAction(e -> close());
+        HBox.setHgrow(statusLabel, Priority.ALWAYS);
+        statusLabel.setMaxWidth(Double.MAX_VALUE);
+        HBox buttonBox = new HBox(10, statusLabel, previousButton, nextButton, closeButton);
+        buttonBox.setAlignment(Pos.CENTER_RIGHT);
+        buttonBox.setPadding(new Insets(0, 10, 10, 10));
+
+        // Combine all sections into the root container
+        VBox root = new VBox(10, toolbar, titleBox, listBox, buttonBox);
+        root.getStyleClass().addAll("msg-popup", "diff-window");
+
+        Scene scene = new Scene(root, 1100, 640);
+        setScene(scene);
+
+        // Apply theme from CSS resources
+        String css = getClass().getResource("/theme.css").toExternalForm();
+        String fontsCss = getClass().getResource("/fonts.css").toExternalForm();
+        scene.getStylesheets().addAll(fontsCss, css);
+    }
+
+    /**
+     * Shows the window and compares two styled texts off the FX thread.
+     *
+     * @param leftText   the text shown on the left.
+     * @param leftSpans  its style spans.
+     * @param rightText  the text shown on the right.
+     * @param rightSpans its style spans.
+     */
+    public void compare(String leftText, StyleSpans<String> leftSpans, String rightText, StyleSpans<String> rightSpans) {
+        statusLabel.setText("Comparing...");
+        show();
+        CompletableFuture.supplyAsync(() -> DocumentDiff.compare(leftText, leftSpans, rightText, rightSpans))
+                .whenComplete((result, error) -> Platform.runLater(() -> {
+                    if (error != null) {
+                        error.printStackTrace();
+                        statusLabel.setText("The notes could not be compared: " + error.getMessage());
+                        return;
+                    }
+                    showDiff(result);
+                }));
+    }
+
+    private void showDiff(DocumentDiff result) {
+        diff = result;
+        segmentCache.clear();
+        rowList.setItems(FXCollections.observableArrayList(result.getRows()));
+        int hunks = result.getHunkRows().size();
+        if (hunks == 0) {
+            statusLabel.setText("The notes are the same.");
+            return;
+        }
+        statusLabel.setText("%,d %s, %,d paragraphs differ (compared in %,d ms)".formatted(
+                hunks, hunks == 1 ? "change" : "changes", result.getChangedParagraphs(), result.getElapsedNanos() / 1_000_000));
+        showHunk(0);
+    }
+
+    /**
+     * Scrolls to a change and selects its first row.
+     *
+     * @param hunk the index of the change.
+     */
+    private void showHunk(int hunk) {
+        List<Integer> hunkRows = diff.getHunkRows();
+        if (hunk < 0 || hunk >= hunkRows.size()) {
+            return;
+        }
+        currentHunk = hunk;
+        int row = hunkRows.get(hunk);
+        // Keep a row of context above the change.
+        rowList.scrollTo(Math.max(0, row - 1));
+        rowList.getSelectionModel().select(row);
+        previousButton.setDisable(hunk == 0);
+        nextButton.setDisable(hunk == hunkRows.size() - 1);
+    }
+
+    /**
+     * A cell showing both sides of a row, or a note for skipped paragraphs.
+     */
+    private class RowCell extends ListCell<DocumentDiff.Row> {
+        private final TextFlow leftFlow = new TextFlow();
+        private final TextFlow rightFlow = new TextFlow();
+        private final HBox sides = new HBox(10, leftFlow, rightFlow);
+
+        RowCell() {
+            for (TextFlow flow : List.of(leftFlow, rightFlow)) {
+                flow.getStyleClass().add("diff-side");
+                flow.setMinWidth(0);
+                flow.prefWidthProperty().bind(rowList.widthProperty().subtract(40).divide(2));
+                flow.setMinHeight(20);
+            }
+        }
+
+        @Override
+        protected void updateItem(DocumentDiff.Row row, boolean empty) {
+            super.updateItem(row, empty);
+            getStyleClass().remove("diff-skipped");
+            if (empty || row == null) {
+                setText(null);
+                setGraphic(null);
+                return;
+            }
+            if (row.kind() == DocumentDiff.Kind.SKIPPED) {
+                getStyleClass().add("diff-skipped");
+                setText("⋯ %,d unchanged %s".formatted(row.skipped(), row.skipped() == 1 ? "paragraph" : "paragraphs"));
+                setGraphic(null);
+                return;
+            }
+
+            List<List<DocumentDiff.Segment>> segments = segmentCache.computeIfAbsent(row, diff::segments);
+            fill(leftFlow, segments.get(0), row.left() >= 0,
+                    row.kind() == DocumentDiff.Kind.REMOVED || row.kind() == DocumentDiff.Kind.CHANGED ? "diff-removed" : null);
+            fill(rightFlow, segments.get(1), row.right() >= 0,
+                    row.kind() == DocumentDiff.Kind.ADDED || row.kind() == DocumentDiff.Kind.CHANGED ? "diff-added" : null);
+            setText(null);
+            setGraphic(sides);
+        }
+
+        /**
+         * Fills one side with styled Text nodes.
+         *
+         * @param flow       the side.
+         * @param segments   the segments of its paragraph.
+         * @param present    whether the side has a paragraph in this row.
+         * @param styleClass the background class for a changed side, or null.
+         */
+        private void fill(TextFlow flow, List<DocumentDiff.Segment> segments, boolean present, String styleClass) {
+            flow.getStyleClass().removeAll("diff-removed", "diff-added", "diff-missing");
+            if (!present) {
+                flow.getStyleClass().add("diff-missing");
+            } else if (styleClass != null) {
+                flow.getStyleClass().add(styleClass);
+            }
+
+            Text[] texts = new Text[segments.size()];
+            for (int i = 0; i < texts.length; i++) {
+                DocumentDiff.Segment segment = segments.get(i);
+                texts[i] = new Text(segment.text());
+                texts[i].getStyleClass().add("diff-text");
+                texts[i].setStyle(segment.style() + switch (segment.mark()) {
+                    case NONE -> "";
+                    case REMOVED -> REMOVED_STYLE;
+                    case ADDED -> ADDED_STYLE;
+                    case RESTYLED -> RESTYLED_STYLE;
+                });
+            }
+            flow.getChildren().setAll(texts);
+        }
+    }
+
+    /**
+     * Creates the toolbar for the window which includes the header text and
+     * enables window dragging.
+     *
+     * @return the configured HBox toolbar.
+     */
+    private HBox createToolbar() {
+        Label headerLabel = new Label("Compare");
+        headerLabel.getStyleClass().add("popup-header");
+
+        HBox toolbar = new HBox(headerLabel);
+        toolbar.setAlignment(Pos.CENTER_LEFT);
+        toolbar.setPadding(new Insets(5, 5, 5, 5));
+        toolbar.getStyleClass().add("toolbar");
+
+        // Enable window dragging
+        toolbar.setOnMousePressed(event -> {
+            xOffset = event.getSceneX();
+            yOffset = event.getSceneY();
+        });
+
+        toolbar.setOnMouseDragged(event -> WindowGeometry.of(this).moveTo(event.getScreenX() - xOffset, event.getScreenY() - yOffset));
+        toolbar.setOnMouseReleased(event -> WindowGeometry.of(this).flush());
+
+        return toolbar;
+    }
+}
@@ -1,19 +1,32 @@
 package com.notemat.Components;
 
+import com.notemat.Diagnostics.InputLatencyMonitor;
+import com.notemat.Diagnostics.PasteEvent;
+import com.notemat.Diagnostics.PhaseTracer;
+import com.notemat.Filesystem.ContentChunks;
 import com.notemat.Filesystem.NTMFile;
+import com.notemat.Filesystem.NoteEncryption;
+import com.notemat.Filesystem.VersionHistory;
+import com.notemat.Utils.AIRequestScheduler;
 import com.notemat.Utils.KeyBindings;
+import com.notemat.Utils.PreferencesStore;
+import com.notemat.Utils.UndoHistory;
 import com.notemat.Utils.WindowResizing;
 import javafx.application.Platform;
+import javafx.beans.value.ChangeListener;
+import javafx.beans.value.WeakChangeListener;
 import javafx.geometry.Bounds;
 import javafx.scene.Scene;
 import javafx.scene.image.Image;
 import javafx.scene.input.Clipboard;
+import javafx.scene.input.ContextMenuEvent;
 import javafx.scene.input.KeyEvent;
 import javafx.scene.layout.BorderPane;
 import javafx.scene.layout.Pane;
 import javafx.scene.layout.StackPane;
 import javafx.scene.layout.VBox;
 import javafx.scene.shape.Rectangle;
+import javafx.stage.DirectoryChooser;
 import javafx.stage.FileChooser;
 import javafx.stage.Stage;
 import javafx.stage.StageStyle;
@@ -22,6 +35,10 @@ import java.io.File;
 import java.io.IOException;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
 
 
 /**
@@ -34,22 +51,42 @@ public class EditorWindow extends Stage {
     private final Pane imageLayer;
     private final ToolBar toolBar;
     private final StyleBar styleBar;
-    public final Preferences preferences;
+    private final PerformanceHud performanceHud;
+    private final InputLatencyMonitor inputLatency;
+    private final UndoHistory undoHistory;
+    private final AIRequestScheduler aiRequests = new AIRequestScheduler(AIRequestScheduler.DEFAULT_MAX_IN_FLIGHT);
 
+    private final ChangeListener<Boolean> enableGeminiListener = (obs, oldValue, newValue) -> recreateContextMenu();
+    private final ChangeListener<Number> undoBudgetListener;
+
+    private Preferences preferences;
     private ContextMenu contextMenu;
+    private HistoryBrowser historyBrowser;
+    private VersionHistory versionHistory = new VersionHistory();
+    private String filePath = null;
+    private boolean changedSinceLastSave = false;
+    private long lastSaveNanos = -1;
+    private long lastLoadNanos = -1;
+    private ContentChunks.RecoveryReport lastRecoveryReport = ContentChunks.RecoveryReport.INTACT;
 
     /**
-     * Constructs an EditorWindow by loading content from a file.
+     * Constructs an EditorWindow by loading content from a file. If the file
+     * cannot be read, the user is told and the window starts empty.
      *
      * @param filePath the path of the file to load.
      */
     public EditorWindow(String filePath) {
         this();
+        long openStart = PhaseTracer.now();
         try {
             NTMFile.loadFromFile(this, filePath);
+            undoHistory.clear();
+            PhaseTracer.dump("open " + filePath, openStart);
             toolBar.updateFilenameLabel();
+            showRecoveryReport(filePath);
         } catch (IOException | ClassNotFoundException e) {
-            throw new RuntimeException(e);
+            e.printStackTrace();
+            showOpenError(filePath, e);
         }
     }
 
@@ -58,62 +95,84 @@ public class EditorWindow extends Stage {
      * bindings, and event handlers.
      */
     public EditorWindow() {
-        setTitle("Notemat");
-        initStyle(StageStyle.TRANSPARENT);
-
-        // Initialize the preferences.
-        preferences = new Preferences(this);
-
-        // Main layout container
-        BorderPane root = new BorderPane();
-
-        // Rich text area component.
-        richTextArea = new InlineCssTextArea();
-        richTextArea.setWrapText(true);
-        richTextArea.setPrefSize(1024, 600);
-        initRichTextArea();
-
-        // Image layer
-        imageLayer = new Pane();
-        initImageLayer();
-
-        // Stackpane that holds image layer and rta.
-        StackPane centerStack = new StackPane();
-        Rectangle clip = new Rectangle();
-        clip.widthProperty().bind(centerStack.widthProperty());
-        clip.heightProperty().bind(centerStack.heightProperty());
-        centerStack.setClip(clip);
-        centerStack.getChildren().addAll(richTextArea, imageLayer);
-        root.setCenter(centerStack);
-
-        // Toolbar and stylebar
-        toolBar = new ToolBar(this);
-        styleBar = new StyleBar(richTextArea);
-        VBox topContainer = new VBox();
-        topContainer.getChildren().addAll(toolBar, styleBar);
-        root.setTop(topContainer);
-
-        // Main scene
-        Scene scene = new Scene(root, 1024, 600);
-        setScene(scene);
-
-        // Initial style.
-        richTextArea.setStyle(0, 0, styleBar.getStyleBarStyle());
-
-        // Load the theme.
-        String css = getClass().getResource("/theme.css").toExternalForm();
-        String fontsCss = getClass().getResource("/fonts.css").toExternalForm();
-        scene.getStylesheets().addAll(fontsCss, css);
-
-        // Other components.
-        contextMenu = new ContextMenu(this, richTextArea);
-        new WindowResizing(this);
-        new KeyBindings(this, scene, richTextArea, styleBar, imageLayer);
+        try (PhaseTracer.Phase constructorPhase = PhaseTracer.begin("EditorWindow.<init>")) {
+            setTitle("Notemat");
+            initStyle(StageStyle.TRANSPARENT);
+
+            // Main layout container
+            BorderPane root = new BorderPane();
+
+            // Rich text area component.
+            try (PhaseTracer.Phase ignored = PhaseTracer.begin("EditorWindow.textArea")) {
+                richTextArea = new InlineCssTextArea();
+                richTextArea.setWrapText(true);
+                richTextArea.setPrefSize(1024, 600);
+                inputLatency = new InputLatencyMonitor(richTextArea);
+                initRichTextArea();
+            }
+
+            // Image layer
+            imageLayer = new Pane();
+            initImageLayer();
+
+            // Stackpane that holds image layer and rta.
+            StackPane centerStack = new StackPane();
+            Rectangle clip = new Rectangle();
+            clip.widthProperty().bind(centerStack.widthProperty());
+            clip.heightProperty().bind(centerStack.heightProperty());
+            centerStack.setClip(clip);
+            performanceHud = new PerformanceHud(this, inputLatency.getDistribution());
+            centerStack.getChildren().addAll(richTextArea, imageLayer, performanceHud);
+            root.setCenter(centerStack);
+
+            // Toolbar and stylebar
+            try (PhaseTracer.Phase ignored = PhaseTracer.begin("EditorWindow.bars")) {
+                toolBar = new ToolBar(this);
+                styleBar = new StyleBar(richTextArea);
+            }
+            VBox topContainer = new VBox();
+            topContainer.getChildren().addAll(toolBar, styleBar);
+            root.setTop(topContainer);
+
+            // Main scene
+            Scene scene = new Scene(root, 1024, 600);
+            setScene(scene);
+
+            // Initial style.
+            richTextArea.setStyle(0, 0, styleBar.getStyleBarStyle());
+
+            // Undo history with a memory budget, replacing the unbounded one of the text area.
+            PreferencesStore store = PreferencesStore.getInstance();
+            undoHistory = new UndoHistory(richTextArea, toBytes(store.getUndoBudgetMb()));
+            undoBudgetListener = (obs, oldValue, newValue) -> undoHistory.setBudgetBytes(toBytes(newValue.intValue()));
+            store.undoBudgetMbProperty().addListener(new WeakChangeListener<>(undoBudgetListener));
+
+            // Load the theme.
+            try (PhaseTracer.Phase ignored = PhaseTracer.begin("EditorWindow.css")) {
+                String css = getClass().getResource("/theme.css").toExternalForm();
+                String fontsCss = getClass().getResource("/fonts.css").toExternalForm();
+                scene.getStylesheets().addAll(fontsCss, css);
+            }
+
+            // Other components. The preferences window and the context menu are built on first use.
+            try (PhaseTracer.Phase ignored = PhaseTracer.begin("WindowResizing")) {
+                new WindowResizing(this, richTextArea);
+            }
+            try (PhaseTracer.Phase ignored = PhaseTracer.begin("KeyBindings")) {
+                new KeyBindings(this, scene, richTextArea, styleBar, imageLayer);
+            }
+        }
 
         setOnCloseRequest(event -> {
             event.consume();
             showCloseConfirmation();
         });
+
+        // Answers for a closed window are of no use, stop them and free their connections.
+        setOnHidden(event -> {
+            aiRequests.cancelAll();
+            inputLatency.logSummary("input latency " + getTitle());
+        });
     }
 
     /**
@@ -122,25 +181,36 @@ public class EditorWindow extends Stage {
      */
     private void initRichTextArea() {
         // Listen for text changes to mark the document as changed.
-        richTextArea.textProperty().addListener((obs, oldText, newText) -> NTMFile.markChanged(toolBar));
+        richTextArea.textProperty().addListener((obs, oldText, newText) -> markChanged());
 
-        // Filter key typed events to remove the style applier placeholder character.
-        richTextArea.addEventFilter(KeyEvent.KEY_TYPED, event -> Platform.runLater(() -> {
-            String currentText = richTextArea.getText();
-            int placeholderIndex = currentText.indexOf("\u200B");
-
-            if (placeholderIndex != -1) {
-                int selectionStart = richTextArea.getSelection().getStart();
+        // Build the context menu right before the text area shows it for the first time.
+        richTextArea.addEventFilter(ContextMenuEvent.CONTEXT_MENU_REQUESTED, event -> getContextMenu());
 
-                richTextArea.replaceText(placeholderIndex, placeholderIndex + 1, "");
+        // Rebuild it when Gemini is switched on or off. The store outlives this window, hence the weak listener.
+        PreferencesStore.getInstance().enableGeminiProperty().addListener(new WeakChangeListener<>(enableGeminiListener));
 
-                if (selectionStart - 2 == placeholderIndex) {
-                    richTextArea.moveTo(placeholderIndex + 1);
-                } else {
-                    richTextArea.moveTo(selectionStart);
+        // Filter key typed events to remove the style applier placeholder character.
+        // The keystroke counts as processed once the placeholder has been handled.
+        richTextArea.addEventFilter(KeyEvent.KEY_TYPED, event -> {
+            InputLatencyMonitor.Keystroke keystroke = inputLatency.keyTyped();
+            Platform.runLater(() -> {
+                String currentText = richTextArea.getText();
+                int placeholderIndex = currentText.indexOf("\u200B");
+
+                if (placeholderIndex != -1) {
+                    int selectionStart = richTextArea.getSelection().getStart();
+
+                    richTextArea.replaceText(placeholderIndex, placeholderIndex + 1, "");
+
+                    if (selectionStart - 2 == placeholderIndex) {
+                        richTextArea.moveTo(placeholderIndex + 1);
+                    } else {
+                        richTextArea.moveTo(selectionStart);
+                    }
                 }
-            }
-        }));
+                inputLatency.processed(keystroke);
+            });
+        });
     }
 
     /**
@@ -161,13 +231,18 @@ public class EditorWindow extends Stage {
      */
     public void saveFile(String fileType, boolean bypassAutoSave) {
         // If bypassing auto-save or no previous save path exists, ask user for a file path.
-        String lastSavedPath = NTMFile.getLastSavedPath();
+        String lastSavedPath = getFilePath();
 
         if (bypassAutoSave || lastSavedPath == null) {
             String filePath = saveFileGetPath(fileType);
 
             if (filePath != null) {
                 try {
+                    // A copy of an encrypted note is encrypted with the same passphrase,
+                    // see saveFileUnencrypted() for removing it.
+                    if (Objects.equals(fileType, "ntm") && lastSavedPath != null) {
+                        NoteEncryption.setKey(NTMFile.withExtension(filePath), NoteEncryption.getKey(NTMFile.withExtension(lastSavedPath)));
+                    }
                     NTMFile.saveToFile(this, filePath);
 
                     if (Objects.equals(fileType, "ntm")) {
@@ -188,6 +263,82 @@ public class EditorWindow extends Stage {
         }
     }
 
+    /**
+     * Asks for a location and a new passphrase and saves the note encrypted.
+     * Later saves to the same file stay encrypted with that passphrase.
+     */
+    public void saveFileEncrypted() {
+        String filePath = saveFileGetPath("ntm");
+        if (filePath == null) {
+            return;
+        }
+
+        char[] passphrase = PassphraseDialog.ask(
+                "Save Encrypted",
+                "Choose a passphrase for this note. It cannot be recovered if you forget it.",
+                true
+        );
+        if (passphrase == null) {
+            return;
+        }
+
+        try {
+            NoteEncryption.setKey(NTMFile.withExtension(filePath), NoteEncryption.createKey(passphrase));
+            NTMFile.saveToFile(this, filePath);
+            toolBar.updateFilenameLabel();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Asks for a location and saves the note without encryption, even if it
+     * is encrypted now. Choosing the note's own file removes its encryption;
+     * later saves to the chosen file stay unencrypted.
+     */
+    public void saveFileUnencrypted() {
+        String filePath = saveFileGetPath("ntm");
+        if (filePath == null) {
+            return;
+        }
+
+        try {
+            NoteEncryption.setKey(NTMFile.withExtension(filePath), null);
+            NTMFile.saveToFile(this, filePath);
+            toolBar.updateFilenameLabel();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Asks the user for the passphrase of an encrypted note.
+     *
+     * @param fileName the name of the note.
+     * @param retry    whether a previous passphrase was wrong.
+     * @return the passphrase, or null if cancelled.
+     */
+    public char[] requestPassphrase(String fileName, boolean retry) {
+        // Notes are also read in the background, e.g. to compare them; the dialog needs the FX thread.
+        if (!Platform.isFxApplicationThread()) {
+            FutureTask<char[]> ask = new FutureTask<>(() -> requestPassphrase(fileName, retry));
+            Platform.runLater(ask);
+            try {
+                return ask.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            } catch (ExecutionException e) {
+                throw new IllegalStateException(e.getCause());
+            }
+        }
+
+        String description = retry
+                ? "The passphrase is wrong. Enter the passphrase of %s.".formatted(fileName)
+                : "%s is encrypted. Enter its passphrase.".formatted(fileName);
+        return PassphraseDialog.ask("Encrypted Note", description, false);
+    }
+
     /**
      * Saves the file without bypassing auto-save.
      *
@@ -206,17 +357,74 @@ public class EditorWindow extends Stage {
         String filePath = openFileGetPath(fileType);
 
         if (filePath != null) {
-            try {
-                NTMFile.loadFromFile(this, filePath);
-                if (Objects.equals(fileType, "ntm")) {
-                    toolBar.updateFilenameLabel();
-                }
-            } catch (IOException | ClassNotFoundException e) {
-                e.printStackTrace();
+            openFile(filePath, fileType);
+        }
+    }
+
+    /**
+     * Opens a note without asking for it, for example from a vault.
+     *
+     * @param filePath the path of the note.
+     */
+    public void openNote(String filePath) {
+        openFile(filePath, "ntm");
+    }
+
+    /**
+     * Loads a file into this window.
+     *
+     * @param filePath the path of the file.
+     * @param fileType the file extension/type (e.g., "ntm").
+     */
+    private void openFile(String filePath, String fileType) {
+        long openStart = PhaseTracer.now();
+        try {
+            NTMFile.loadFromFile(this, filePath);
+            undoHistory.clear();
+            PhaseTracer.dump("open " + filePath, openStart);
+            if (Objects.equals(fileType, "ntm")) {
+                toolBar.updateFilenameLabel();
             }
+            showRecoveryReport(filePath);
+        } catch (IOException | ClassNotFoundException e) {
+            e.printStackTrace();
+            showOpenError(filePath, e);
         }
     }
 
+    /**
+     * Tells the user which parts of the note just opened were damaged and
+     * skipped, if any.
+     *
+     * @param filePath the path of the opened file.
+     */
+    private void showRecoveryReport(String filePath) {
+        ContentChunks.RecoveryReport report = lastRecoveryReport;
+        if (report.isDamaged()) {
+            Popup.callPopup(
+                    "Damaged Note",
+                    "%s is damaged. The rest of the note was opened.\n%s".formatted(new File(filePath).getName(), report.describe()),
+                    "OK",
+                    () -> {}
+            );
+        }
+    }
+
+    /**
+     * Tells the user that a file could not be opened.
+     *
+     * @param filePath the path of the file.
+     * @param e        the reason.
+     */
+    private void showOpenError(String filePath, Exception e) {
+        Popup.callPopup(
+                "Could Not Open Note",
+                "%s could not be opened: %s".formatted(new File(filePath).getName(), e.getMessage()),
+                "OK",
+                () -> {}
+        );
+    }
+
     /**
      * Opens a FileChooser dialog to let the user select a file to open, filtering
      * files by the specified file type.
@@ -256,9 +464,13 @@ public class EditorWindow extends Stage {
     /**
      * Handles pasting into the editor. If the clipboard contains an image, it
      * creates an ImageComponent and adds it to the image layer; otherwise, it
-     * pastes text into the rich text area.
+     * pastes into the rich text area, which replaces the selection in a single
+     * edit and keeps the styles of text copied within the editor.
      */
     public void pasteTextOrImage() {
+        PasteEvent event = new PasteEvent();
+        event.begin();
+
         Clipboard clipboard = Clipboard.getSystemClipboard();
         if (clipboard.hasImage()) {
             Image clipboardImage = clipboard.getImage();
@@ -270,17 +482,25 @@ public class EditorWindow extends Stage {
             imageComponent.setLayoutY(verticalPosition + 10);
 
             imageLayer.getChildren().add(imageComponent);
-            NTMFile.markChanged(toolBar);
+            markChanged();
+
+            event.image = true;
+            event.imageWidth = (int) clipboardImage.getWidth();
+            event.imageHeight = (int) clipboardImage.getHeight();
         } else {
+            int start = richTextArea.getSelection().getStart();
             richTextArea.paste();
+            richTextArea.requestFollowCaret();
+            event.textLength = Math.max(0, richTextArea.getCaretPosition() - start);
         }
+        event.commit();
     }
 
     /**
      * Shows a confirmation dialog when the user attempts to close the window.
      */
     public void showCloseConfirmation() {
-        if (NTMFile.getChangedSinceLastSave()) {
+        if (changedSinceLastSave) {
             Popup.callPopup(
                     "Unsaved Changes",
                     "You have unchanged changes, are you sure you want to exit?",
@@ -292,6 +512,99 @@ public class EditorWindow extends Stage {
         }
     }
 
+    /**
+     * Shows the version history of the note. The window is built on first use.
+     */
+    public void showHistoryBrowser() {
+        if (historyBrowser == null) {
+            historyBrowser = new HistoryBrowser(this);
+        }
+        if (historyBrowser.isShowing()) {
+            historyBrowser.refresh();
+            historyBrowser.toFront();
+        } else {
+            historyBrowser.show();
+        }
+    }
+
+    /**
+     * Lets the user pick two notes and shows them side by side with their
+     * differences marked. The first note picked is shown on the left. The
+     * notes are read off the FX thread, one after the other, so at most one
+     * passphrase is asked for at a time.
+     */
+    public void compareNotes() {
+        String leftPath = openFileGetPath("ntm");
+        if (leftPath == null) {
+            return;
+        }
+        String rightPath = openFileGetPath("ntm");
+        if (rightPath == null) {
+            return;
+        }
+
+        readContentAsync(leftPath).thenCompose(left -> readContentAsync(rightPath).thenAccept(right -> Platform.runLater(() ->
+                new DiffWindow(this, new File(leftPath).getName(), new File(rightPath).getName())
+                        .compare(left.text(), left.spans(), right.text(), right.spans()))));
+    }
+
+    /**
+     * Reads the styled text of a note off the FX thread. A failure is shown
+     * to the user.
+     *
+     * @param filePath the path of the note.
+     * @return the content, failing if it could not be read.
+     */
+    private CompletableFuture<ContentChunks.Content> readContentAsync(String filePath) {
+        CompletableFuture<ContentChunks.Content> content = CompletableFuture.supplyAsync(() -> {
+            try {
+                return NTMFile.readContent(this, filePath);
+            } catch (IOException | ClassNotFoundException e) {
+                throw new CompletionException(e);
+            }
+        });
+        content.whenComplete((ignored, error) -> {
+            if (error != null) {
+                Exception cause = error.getCause() instanceof Exception e ? e : new IOException(error);
+                cause.printStackTrace();
+                Platform.runLater(() -> showOpenError(filePath, cause));
+            }
+        });
+        return content;
+    }
+
+    /**
+     * Lets the user pick a folder of notes and lists them in a vault window.
+     */
+    public void openVault() {
+        DirectoryChooser directoryChooser = new DirectoryChooser();
+        directoryChooser.setTitle("Open Vault");
+        File directory = directoryChooser.showDialog(getScene().getWindow());
+        if (directory != null) {
+            new VaultWindow(this, directory.toPath()).show();
+        }
+    }
+
+    /**
+     * Lets the user pick a folder of notes and searches their text in a
+     * search window.
+     */
+    public void searchNotes() {
+        DirectoryChooser directoryChooser = new DirectoryChooser();
+        directoryChooser.setTitle("Search Notes");
+        File directory = directoryChooser.showDialog(getScene().getWindow());
+        if (directory != null) {
+            new SearchWindow(this, directory.toPath()).show();
+        }
+    }
+
+    /**
+     * Shows or hides the performance overlay.
+     */
+    public void togglePerformanceHud() {
+        performanceHud.toggle();
+    }
+
     /**
      * Gets the style bar for formatting the text.
      *
@@ -301,8 +614,180 @@ public class EditorWindow extends Stage {
         return styleBar;
     }
 
+    /**
+     * Gets the preferences window, creating it on first use.
+     *
+     * @return the Preferences instance.
+     */
+    public Preferences getPreferences() {
+        if (preferences == null) {
+            try (PhaseTracer.Phase ignored = PhaseTracer.begin("Preferences.<init>")) {
+                preferences = new Preferences();
+            }
+        }
+        return preferences;
+    }
+
+    /**
+     * Gets the context menu of the text area, creating it on first use.
+     *
+     * @return the ContextMenu instance.
+     */
+    public ContextMenu getContextMenu() {
+        if (contextMenu == null) {
+            try (PhaseTracer.Phase ignored = PhaseTracer.begin("ContextMenu.<init>")) {
+                contextMenu = new ContextMenu(this, richTextArea);
+            }
+        }
+        return contextMenu;
+    }
+
+    /**
+     * Discards the context menu so it is rebuilt with the current preferences
+     * the next time it is requested.
+     */
     public void recreateContextMenu() {
-        contextMenu = new ContextMenu(this, richTextArea);
+        if (contextMenu != null) {
+            richTextArea.setContextMenu(null);
+            contextMenu = null;
+        }
+    }
+
+    /**
+     * Gets the scheduler limiting the AI requests of this window.
+     *
+     * @return the AIRequestScheduler instance.
+     */
+    public AIRequestScheduler getAIRequestScheduler() {
+        return aiRequests;
+    }
+
+    /**
+     * Gets the keystroke latency monitor of this window.
+     *
+     * @return the input latency monitor.
+     */
+    public InputLatencyMonitor getInputLatencyMonitor() {
+        return inputLatency;
+    }
+
+    /**
+     * Gets the undo history of the text area.
+     *
+     * @return the UndoHistory instance.
+     */
+    public UndoHistory getUndoHistory() {
+        return undoHistory;
+    }
+
+    /**
+     * Gets the saved versions of the note.
+     *
+     * @return the version history.
+     */
+    public VersionHistory getVersionHistory() {
+        return versionHistory;
+    }
+
+    /**
+     * Replaces the version history, when a note is loaded.
+     *
+     * @param versionHistory the history of the loaded note.
+     */
+    public void setVersionHistory(VersionHistory versionHistory) {
+        this.versionHistory = versionHistory;
+        if (historyBrowser != null && historyBrowser.isShowing()) {
+            historyBrowser.refresh();
+        }
+    }
+
+    /**
+     * Gets the file this window was last saved to or loaded from.
+     *
+     * @return the file path, or null if the note was never saved.
+     */
+    public String getFilePath() {
+        return filePath;
+    }
+
+    /**
+     * Indicates whether the note has been changed since it was last saved.
+     *
+     * @return true if the note has unsaved changes; false otherwise.
+     */
+    public boolean isChangedSinceLastSave() {
+        return changedSinceLastSave;
+    }
+
+    /**
+     * Marks the note as changed and updates the filename label in the toolbar.
+     */
+    public void markChanged() {
+        changedSinceLastSave = true;
+        toolBar.updateFilenameLabel();
+    }
+
+    /**
+     * Records the file this window was saved to or loaded from.
+     *
+     * @param filePath             the path of the file.
+     * @param changedSinceLastSave whether the note still differs from the file.
+     */
+    public void setSaveState(String filePath, boolean changedSinceLastSave) {
+        this.filePath = filePath;
+        this.changedSinceLastSave = changedSinceLastSave;
+    }
+
+    /**
+     * Records how long the last save of this window took.
+     *
+     * @param nanos the duration in nanoseconds.
+     */
+    public void setLastSave(long nanos) {
+        lastSaveNanos = nanos;
+    }
+
+    /**
+     * Records how long the last load into this window took and what it could
+     * not recover.
+     *
+     * @param nanos  the duration in nanoseconds.
+     * @param report the report of the load.
+     */
+    public void setLastLoad(long nanos, ContentChunks.RecoveryReport report) {
+        lastLoadNanos = nanos;
+        lastRecoveryReport = report;
+    }
+
+    /**
+     * Retrieves how long the last save of this window took.
+     *
+     * @return the duration in nanoseconds, or -1 if nothing was saved yet.
+     */
+    public long getLastSaveNanos() {
+        return lastSaveNanos;
+    }
+
+    /**
+     * Retrieves how long the last load into this window took.
+     *
+     * @return the duration in nanoseconds, or -1 if nothing was loaded yet.
+     */
+    public long getLastLoadNanos() {
+        return lastLoadNanos;
+    }
+
+    /**
+     * Retrieves what the last load into this window could not recover.
+     *
+     * @return the report of the last load; intact if nothing was lost or nothing was loaded yet.
+     */
+    public ContentChunks.RecoveryReport getLastRecoveryReport() {
+        return lastRecoveryReport;
+    }
+
+    private static long toBytes(int megabytes) {
+        return Math.max(1, megabytes) * 1024L * 1024L;
     }
 
     /**
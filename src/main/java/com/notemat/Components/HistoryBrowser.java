@@ -0,0 +1,295 @@
+package com.notemat.Components;
+
+import com.notemat.Filesystem.VersionHistory;
+import com.notemat.Utils.EditTransaction;
+import com.notemat.Utils.WindowGeometry;
+import javafx.application.Platform;
+import javafx.collections.FXCollections;
+import javafx.collections.ListChangeListener;
+import javafx.geometry.Insets;
+import javafx.geometry.Pos;
+import javafx.scene.Scene;
+import javafx.scene.control.Button;
+import javafx.scene.control.Label;
+import javafx.scene.control.ListCell;
+import javafx.scene.control.ListView;
+import javafx.scene.control.SelectionMode;
+import javafx.scene.layout.HBox;
+import javafx.scene.layout.Priority;
+import javafx.scene.layout.VBox;
+import javafx.stage.Stage;
+import javafx.stage.StageStyle;
+import org.fxmisc.richtext.InlineCssTextArea;
+import org.fxmisc.richtext.util.UndoUtils;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+
+/**
+ * A window listing the saved revisions of a note, see {@link VersionHistory}.
+ * Selecting a revision rebuilds it in the background and shows it in a read
+ * only preview; Restore replaces the note with it as a single undoable edit,
+ * and Compare with Note shows what changed since in a {@link DiffWindow}.
+ * With two revisions selected, Compare Versions shows what changed between
+ * them, the older one on the left.
+ */
+public class HistoryBrowser extends Stage {
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss").withZone(ZoneId.systemDefault());
+
+    private final EditorWindow editor;
+    private final ListView<VersionHistory.RevisionInfo> revisionList = new ListView<>();
+    private final InlineCssTextArea preview = new InlineCssTextArea();
+    private final Label statusLabel = new Label();
+    private final Button restoreButton = new Button("Restore");
+    private final Button compareButton = new Button("Compare with Note");
+    private final Button compareVersionsButton = new Button("Compare Versions");
+    private VersionHistory.Snapshot shown = null;
+    private int requested = -1;
+
+    private double xOffset = 0;
+    private double yOffset = 0;
+
+    /**
+     * Constructs a HistoryBrowser for the note of an editor.
+     *
+     * @param editor the EditorWindow whose history is shown.
+     */
+    public HistoryBrowser(EditorWindow editor) {
+        this.editor = editor;
+
+        // Initialization
+        initStyle(StageStyle.TRANSPARENT);
+        initOwner(editor);
+        setTitle("Version History");
+
+        // Toolbar
+        HBox toolbar = createToolbar();
+
+        // Revisions and preview
+        revisionList.setPrefWidth(260);
+        revisionList.setCellFactory(list -> new ListCell<>() {
+            @Override
+            protected void updateItem(VersionHistory.RevisionInfo revision, boolean empty) {
+                super.updateItem(revision, empty);
+                if (empty || revision == null) {
+                    setText(null);
+                } else if (revision.current()) {
+                    setText(TIME_FORMAT.format(Instant.ofEpochMilli(revision.time())) + "  (saved)");
+                } else {
+                    setText(TIME_FORMAT.format(Instant.ofEpochMilli(revision.time())));
+                }
+            }
+        });
+        revisionList.getSelectionModel().setSelectionMode(SelectionMode.MULTIPLE);
+        revisionList.getSelectionModel().selectedItemProperty().addListener((obs, oldValue, newValue) -> showRevision(newValue));
+        revisionList.getSelectionModel().getSelectedItems().addListener((ListChangeListener<VersionHistory.RevisionInfo>) change ->
+                compareVersionsButton.setDisable(revisionList.getSelectionModel().getSelectedItems().size() != 2));
+
+        preview.setEditable(false);
+        // Each revision shown would otherwise be kept for undo until the window closes.
+        preview.setUndoManager(UndoUtils.noOpUndoManager());
+        preview.setWrapText(true);
+        HBox.setHgrow(preview, Priority.ALWAYS);
+        HBox contentBox = new HBox(10, revisionList, preview);
+        contentBox.setPadding(new Insets(0, 10, 0, 10));
+        VBox.setVgrow(contentBox, Priority.ALWAYS);
+
+        // Buttons
+        restoreButton.setDisable(true);
+        restoreButton.setOnAction(e -> restore());
+        compareButton.setDisable(true);
+        compareButton.setOnAction(e -> compareWithNote());
+        compareVersionsButton.setDisable(true);
+        compareVersionsButton.setOnAction(e -> compareVersions());
+        Button closeButton = new Button("Close");
+        closeButton.setOnAction(e -> close());
+        HBox.setHgrow(statusLabel, Priority.ALWAYS);
+        statusLabel.setMaxWidth(Double.MAX_VALUE);
+        HBox buttonBox = new HBox(10, statusLabel, compareVersionsButton, compareButton, restoreButton, closeButton);
+        buttonBox.setAlignment(Pos.CENTER_RIGHT);
+        buttonBox.setPadding(new Insets(0, 10, 10, 10));
+
+        // Combine all sections into the root container
+        VBox root = new VBox(10, toolbar, contentBox, buttonBox);
+        root.getStyleClass().addAll("msg-popup", "history-browser");
+
+        Scene scene = new Scene(root, 900, 560);
+        setScene(scene);
+
+        // Apply theme from CSS resources
+        String css = getClass().getResource("/theme.css").toExternalForm();
+        String fontsCss = getClass().getResource("/fonts.css").toExternalForm();
+        scene.getStylesheets().addAll(fontsCss, css);
+
+        setOnShowing(e -> refresh());
+    }
+
+    /**
+     * Lists the revisions again, newest first, and selects the newest.
+     */
+    public void refresh() {
+        VersionHistory history = editor.getVersionHistory();
+        List<VersionHistory.RevisionInfo> revisions = new ArrayList<>(history.getRevisions());
+        Collections.reverse(revisions);
+        revisionList.setItems(FXCollections.observableArrayList(revisions));
+        statusLabel.setText(describeHistory());
+        if (!revisions.isEmpty()) {
+            revisionList.getSelectionModel().selectFirst();
+        }
+    }
+
+    /**
+     * Describes the size of the history for the status label.
+     *
+     * @return the description.
+     */
+    private String describeHistory() {
+        VersionHistory history = editor.getVersionHistory();
+        int count = history.getRevisions().size();
+        return count == 0
+                ? "The note has no saved versions yet."
+                : "%d versions, %,d KB of history".formatted(count, (history.getStoredBytes() + 1023) / 1024);
+    }
+
+    /**
+     * Rebuilds a revision off the FX thread and shows it, unless another one
+     * was selected in the meantime.
+     *
+     * @param revision the revision, or null to clear the preview.
+     */
+    private void showRevision(VersionHistory.RevisionInfo revision) {
+        shown = null;
+        restoreButton.setDisable(true);
+        compareButton.setDisable(true);
+        if (revision == null) {
+            requested = -1;
+            preview.clear();
+            return;
+        }
+
+        int index = revision.index();
+        requested = index;
+        VersionHistory history = editor.getVersionHistory();
+        CompletableFuture.supplyAsync(() -> {
+            try {
+                return history.reconstruct(index);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }).whenComplete((snapshot, error) -> Platform.runLater(() -> {
+            if (requested != index) {
+                return;
+            }
+            if (error != null) {
+                error.printStackTrace();
+                preview.replaceText("This version could not be rebuilt: " + error.getMessage());
+                return;
+            }
+            new EditTransaction(preview)
+                    .replace(0, preview.getLength(), snapshot.text(), snapshot.spans())
+                    .commit();
+            preview.moveTo(0);
+            preview.requestFollowCaret();
+            shown = snapshot;
+            restoreButton.setDisable(false);
+            compareButton.setDisable(false);
+        }));
+    }
+
+    /**
+     * Replaces the note with the shown revision. The images are kept.
+     */
+    private void restore() {
+        if (shown == null) {
+            return;
+        }
+        InlineCssTextArea richTextArea = editor.getRichTextArea();
+        new EditTransaction(richTextArea)
+                .replace(0, richTextArea.getLength(), shown.text(), shown.spans())
+                .commit();
+    }
+
+    /**
+     * Shows the shown revision next to the note as it is being edited now.
+     */
+    private void compareWithNote() {
+        if (shown == null) {
+            return;
+        }
+        InlineCssTextArea richTextArea = editor.getRichTextArea();
+        new DiffWindow(this, "Version of " + TIME_FORMAT.format(Instant.ofEpochMilli(shown.time())), "Note")
+                .compare(shown.text(), shown.spans(), richTextArea.getText(), richTextArea.getStyleSpans(0, richTextArea.getLength()));
+    }
+
+    /**
+     * Rebuilds the two selected revisions off the FX thread and shows them
+     * side by side, the older one on the left.
+     */
+    private void compareVersions() {
+        List<VersionHistory.RevisionInfo> selected = new ArrayList<>(revisionList.getSelectionModel().getSelectedItems());
+        if (selected.size() != 2) {
+            return;
+        }
+        selected.sort(Comparator.comparingInt(VersionHistory.RevisionInfo::index));
+        int older = selected.get(0).index();
+        int newer = selected.get(1).index();
+
+        statusLabel.setText("Rebuilding versions...");
+        VersionHistory history = editor.getVersionHistory();
+        CompletableFuture.supplyAsync(() -> {
+            try {
+                return List.of(history.reconstruct(older), history.reconstruct(newer));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }).whenComplete((snapshots, error) -> Platform.runLater(() -> {
+            if (error != null) {
+                error.printStackTrace();
+                statusLabel.setText("The versions could not be rebuilt: " + error.getMessage());
+                return;
+            }
+            statusLabel.setText(describeHistory());
+            VersionHistory.Snapshot left = snapshots.get(0);
+            VersionHistory.Snapshot right = snapshots.get(1);
+            new DiffWindow(this, "Version of " + TIME_FORMAT.format(Instant.ofEpochMilli(left.time())),
+                    "Version of " + TIME_FORMAT.format(Instant.ofEpochMilli(right.time())))
+                    .compare(left.text(), left.spans(), right.text(), right.spans());
+        }));
+    }
+
+    /**
+     * Creates the toolbar for the window which includes the header text and
+     * enables window dragging.
+     *
+     * @return the configured HBox toolbar.
+     */
+    private HBox createToolbar() {
+        Label headerLabel = new Label("Version History");
+        headerLabel.getStyleClass().add("popup-header");
+
+        HBox toolbar = new HBox(headerLabel);
+        toolbar.setAlignment(Pos.CENTER_LEFT);
+        toolbar.setPadding(new Insets(5, 5, 5, 5));
+        toolbar.getStyleClass().add("toolbar");
+
+        // Enable window dragging
+        toolbar.setOnMousePressed(event -> {
+            xOffset = event.getSceneX();
+            yOffset = event.getSceneY();
+        });
+
+        toolbar.setOnMouseDragged(event -> WindowGeometry.of(this).moveTo(event.getScreenX() - xOffset, event.getScreenY() - yOffset));
+        toolbar.setOnMouseReleased(event -> WindowGeometry.of(this).flush());
+
+        return toolbar;
+    }
+}
@@ -0,0 +1,149 @@
+package com.notemat.Components;
+
+import com.notemat.Utils.WindowGeometry;
+import javafx.geometry.Insets;
+import javafx.geometry.Pos;
+import javafx.scene.Scene;
+import javafx.scene.control.Button;
+import javafx.scene.control.Label;
+import javafx.scene.control.PasswordField;
+import javafx.scene.layout.HBox;
+import javafx.scene.layout.VBox;
+import javafx.stage.Modality;
+import javafx.stage.Stage;
+import javafx.stage.StageStyle;
+
+import java.util.Arrays;
+
+/**
+ * A popup asking for the passphrase of an encrypted note, styled like
+ * {@link Popup}. When creating a passphrase it is asked twice.
+ */
+public class PassphraseDialog extends Stage {
+
+    private double xOffset = 0;
+    private double yOffset = 0;
+    private char[] passphrase = null;
+
+    /**
+     * Constructs a PassphraseDialog.
+     *
+     * @param header      The header text displayed at the top of the popup.
+     * @param description The description text displayed above the field.
+     * @param confirm     Whether the passphrase has to be entered twice.
+     */
+    public PassphraseDialog(String header, String description, boolean confirm) {
+        // Initialization
+        initStyle(StageStyle.TRANSPARENT);
+        setTitle("Passphrase");
+        setResizable(false);
+        initModality(Modality.APPLICATION_MODAL);
+
+        // Toolbar
+        HBox toolbar = createToolbar(header);
+
+        // description and fields
+        Label descriptionLabel = new Label(description);
+        descriptionLabel.setWrapText(true);
+        descriptionLabel.setMaxWidth(380);
+        descriptionLabel.getStyleClass().add("popup-description");
+
+        PasswordField passphraseField = new PasswordField();
+        passphraseField.setPromptText("Passphrase");
+
+        PasswordField confirmField = new PasswordField();
+        confirmField.setPromptText("Repeat passphrase");
+        confirmField.setVisible(confirm);
+        confirmField.setManaged(confirm);
+
+        Label errorLabel = new Label();
+        errorLabel.getStyleClass().add("popup-description");
+
+        VBox contentBox = new VBox(10, descriptionLabel, passphraseField, confirmField, errorLabel);
+        contentBox.setAlignment(Pos.TOP_LEFT);
+        contentBox.setPadding(new Insets(10, 10, 10, 10));
+
+        // Buttons
+        Button cancelButton = new Button("Cancel");
+        cancelButton.setOnAction(e -> close());
+
+        Button okButton = new Button("OK");
+        okButton.setDefaultButton(true);
+        okButton.setOnAction(e -> {
+            String text = passphraseField.getText();
+            if (text.isEmpty()) {
+                errorLabel.setText("The passphrase cannot be empty.");
+                return;
+            }
+            if (confirm && !text.equals(confirmField.getText())) {
+                errorLabel.setText("The passphrases do not match.");
+                return;
+            }
+            passphrase = text.toCharArray();
+            passphraseField.clear();
+            confirmField.clear();
+            close();
+        });
+
+        HBox buttonBox = new HBox(10, cancelButton, okButton);
+        buttonBox.setAlignment(Pos.CENTER_RIGHT);
+        buttonBox.setPadding(new Insets(6, 10, 10, 10));
+
+        // Combine all sections into the root container
+        VBox root = new VBox(10, toolbar, contentBox, buttonBox);
+        root.getStyleClass().add("msg-popup");
+
+        Scene scene = new Scene(root, 400, confirm ? 270 : 230);
+        setScene(scene);
+
+        // Apply theme from CSS resources
+        String css = getClass().getResource("/theme.css").toExternalForm();
+        String fontsCss = getClass().getResource("/fonts.css").toExternalForm();
+        scene.getStylesheets().addAll(fontsCss, css);
+
+        setOnShown(e -> passphraseField.requestFocus());
+    }
+
+    /**
+     * Creates the toolbar for the dialog which includes the header text and
+     * enables window dragging.
+     *
+     * @param header The header text to display in the toolbar.
+     * @return the configured HBox toolbar.
+     */
+    private HBox createToolbar(String header) {
+        Label headerLabel = new Label(header);
+        headerLabel.getStyleClass().add("popup-header");
+
+        HBox toolbar = new HBox(headerLabel);
+        toolbar.setAlignment(Pos.CENTER_LEFT);
+        toolbar.setPadding(new Insets(5, 5, 5, 5));
+        toolbar.getStyleClass().add("toolbar");
+
+        // Enable window dragging
+        toolbar.setOnMousePressed(event -> {
+            xOffset = event.getSceneX();
+            yOffset = event.getSceneY();
+        });
+
+        toolbar.setOnMouseDragged(event -> WindowGeometry.of(this).moveTo(event.getScreenX() - xOffset, event.getScreenY() - yOffset));
+        toolbar.setOnMouseReleased(event -> WindowGeometry.of(this).flush());
+
+        return toolbar;
+    }
+
+    /**
+     * Shows a PassphraseDialog and waits for the user.
+     *
+     * @param header      The header text displayed at the top of the popup.
+     * @param description The description text displayed above the field.
+     * @param confirm     Whether the passphrase has to be entered twice.
+     * @return the passphrase, or null if cancelled. The caller should clear it
+     * with {@link Arrays#fill(char[], char)} once it is no longer needed.
+     */
+    public static char[] ask(String header, String description, boolean confirm) {
+        PassphraseDialog dialog = new PassphraseDialog(header, description, confirm);
+        dialog.showAndWait();
+        return dialog.passphrase;
+    }
+}
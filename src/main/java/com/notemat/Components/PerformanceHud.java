@@ -0,0 +1,259 @@
+package com.notemat.Components;
+
+import com.notemat.Diagnostics.LatencyDistribution;
+import javafx.animation.AnimationTimer;
+import javafx.geometry.Pos;
+import javafx.scene.Node;
+import javafx.scene.Scene;
+import javafx.scene.control.Label;
+import javafx.scene.image.Image;
+import javafx.scene.layout.Pane;
+import javafx.scene.layout.StackPane;
+import javafx.scene.layout.VBox;
+import org.fxmisc.richtext.InlineCssTextArea;
+import org.fxmisc.richtext.model.RichTextChange;
+import org.fxmisc.richtext.model.StyledDocument;
+import org.fxmisc.richtext.model.TwoDimensional;
+import org.reactfx.Subscription;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.Arrays;
+import java.util.List;
+
+
+/**
+ * A toggleable overlay showing live rendering, memory and document statistics
+ * for the editor window it is placed in. Frame times are taken from an
+ * AnimationTimer and the CSS/layout part of each pulse from the scene's pulse
+ * listeners; keystroke latencies come from the window's input latency
+ * monitor; everything else is sampled a few times per second and only while
+ * the overlay is visible. The style span count is kept per paragraph and
+ * updated from the changes of the text area, so sampling it does not walk
+ * the document.
+ */
+public class PerformanceHud extends VBox {
+    private static final long SAMPLE_INTERVAL_NANOS = 250_000_000L;
+    private static final double SMOOTHING = 0.1;
+
+    private final EditorWindow editor;
+    private final InlineCssTextArea textArea;
+    private final Pane imageLayer;
+    private final LatencyDistribution inputLatency;
+    private final Label label = new Label();
+    private final MemoryMXBean memoryBean = ManagementFactory.getMemoryMXBean();
+    private final AnimationTimer timer;
+    private final Runnable preLayoutListener = this::onPreLayout;
+    private final Runnable postLayoutListener = this::onPostLayout;
+
+    private Scene scene;
+    private long lastFrame = 0;
+    private long lastSample = 0;
+    private long layoutStart = 0;
+    private double frameMillis = 0;
+    private double maxFrameMillis = 0;
+    private double layoutMillis = 0;
+    private double maxLayoutMillis = 0;
+
+    private Subscription changesSubscription = null;
+    private int[] paragraphSpans = new int[0];
+    private int paragraphCount = 0;
+    private int spanCount = 0;
+    private boolean spansStale = true;
+
+    /**
+     * Constructs the overlay for the given editor content. It is hidden until
+     * {@link #toggle()} is called.
+     *
+     * @param editor       the window to report document statistics and save and load times for.
+     * @param inputLatency the keystroke-to-paint latencies of the window.
+     */
+    public PerformanceHud(EditorWindow editor, LatencyDistribution inputLatency) {
+        this.editor = editor;
+        this.textArea = editor.getRichTextArea();
+        this.imageLayer = editor.getImageLayer();
+        this.inputLatency = inputLatency;
+
+        getStyleClass().add("performance-hud");
+        getChildren().add(label);
+        setMouseTransparent(true);
+        setVisible(false);
+        setManaged(false);
+        setMaxSize(USE_PREF_SIZE, USE_PREF_SIZE);
+        StackPane.setAlignment(this, Pos.TOP_RIGHT);
+
+        timer = new AnimationTimer() {
+            @Override
+            public void handle(long now) {
+                onFrame(now);
+            }
+        };
+    }
+
+    /**
+     * Shows the overlay if it is hidden and hides it otherwise. Sampling only
+     * runs while the overlay is shown.
+     */
+    public void toggle() {
+        if (isVisible()) {
+            timer.stop();
+            changesSubscription.unsubscribe();
+            changesSubscription = null;
+            scene.removePreLayoutPulseListener(preLayoutListener);
+            scene.removePostLayoutPulseListener(postLayoutListener);
+            scene = null;
+            setVisible(false);
+            setManaged(false);
+        } else {
+            scene = getScene();
+            scene.addPreLayoutPulseListener(preLayoutListener);
+            scene.addPostLayoutPulseListener(postLayoutListener);
+            lastFrame = 0;
+            lastSample = 0;
+            maxFrameMillis = 0;
+            maxLayoutMillis = 0;
+            spansStale = true;
+            changesSubscription = textArea.multiRichChanges().subscribe(this::onChanges);
+            setManaged(true);
+            setVisible(true);
+            timer.start();
+        }
+    }
+
+    /**
+     * Updates the span counts of the paragraphs an edit touched. Several
+     * changes applied at once are counted again from scratch at the next
+     * sample, as the paragraphs they touched cannot be told apart afterwards.
+     *
+     * @param changes the changes of one edit.
+     */
+    private void onChanges(List<RichTextChange<String, String, String>> changes) {
+        if (spansStale) {
+            return;
+        }
+        if (changes.size() != 1) {
+            spansStale = true;
+            return;
+        }
+        RichTextChange<String, String, String> change = changes.getFirst();
+        StyledDocument<String, String, String> removed = change.getRemoved();
+        StyledDocument<String, String, String> inserted = change.getInserted();
+        int first = textArea.offsetToPosition(change.getPosition(), TwoDimensional.Bias.Forward).getMajor();
+        int removedParagraphs = removed.getParagraphs().size();
+        int insertedParagraphs = inserted.getParagraphs().size();
+        if (first + removedParagraphs > paragraphCount) {
+            spansStale = true;
+            return;
+        }
+
+        for (int i = first; i < first + removedParagraphs; i++) {
+            spanCount -= paragraphSpans[i];
+        }
+        int shift = insertedParagraphs - removedParagraphs;
+        if (paragraphCount + shift > paragraphSpans.length) {
+            paragraphSpans = Arrays.copyOf(paragraphSpans, Math.max(paragraphSpans.length * 2, paragraphCount + shift));
+        }
+        System.arraycopy(paragraphSpans, first + removedParagraphs, paragraphSpans, first + insertedParagraphs,
+                paragraphCount - first - removedParagraphs);
+        paragraphCount += shift;
+        for (int i = first; i < first + insertedParagraphs; i++) {
+            paragraphSpans[i] = textArea.getParagraph(i).getStyleSpans().getSpanCount();
+            spanCount += paragraphSpans[i];
+        }
+    }
+
+    /**
+     * Counts the style spans of every paragraph, when the overlay is shown or
+     * the counts could not be kept up to date.
+     */
+    private void countSpans() {
+        paragraphCount = textArea.getParagraphs().size();
+        paragraphSpans = new int[Math.max(16, paragraphCount)];
+        spanCount = 0;
+        for (int i = 0; i < paragraphCount; i++) {
+            paragraphSpans[i] = textArea.getParagraph(i).getStyleSpans().getSpanCount();
+            spanCount += paragraphSpans[i];
+        }
+        spansStale = false;
+    }
+
+    private void onPreLayout() {
+        layoutStart = System.nanoTime();
+    }
+
+    private void onPostLayout() {
+        double millis = (System.nanoTime() - layoutStart) / 1e6;
+        layoutMillis += (millis - layoutMillis) * SMOOTHING;
+        maxLayoutMillis = Math.max(maxLayoutMillis, millis);
+    }
+
+    /**
+     * Updates the frame statistics and refreshes the text when a sample is due.
+     *
+     * @param now the pulse timestamp in nanoseconds.
+     */
+    private void onFrame(long now) {
+        if (lastFrame != 0) {
+            double millis = (now - lastFrame) / 1e6;
+            frameMillis = frameMillis == 0 ? millis : frameMillis + (millis - frameMillis) * SMOOTHING;
+            maxFrameMillis = Math.max(maxFrameMillis, millis);
+        }
+        lastFrame = now;
+
+        if (now - lastSample >= SAMPLE_INTERVAL_NANOS) {
+            lastSample = now;
+            label.setText(buildText());
+            maxFrameMillis = 0;
+            maxLayoutMillis = 0;
+        }
+    }
+
+    /**
+     * Collects the current statistics into the overlay text.
+     *
+     * @return the formatted statistics.
+     */
+    private String buildText() {
+        if (spansStale || paragraphCount != textArea.getParagraphs().size()) {
+            countSpans();
+        }
+
+        int imageCount = 0;
+        long imageBytes = 0;
+        for (Node node : imageLayer.getChildren()) {
+            if (node instanceof ImageComponent imageComponent) {
+                Image image = imageComponent.getImage();
+                imageCount++;
+                imageBytes += (long) image.getWidth() * (long) image.getHeight() * 4;
+            }
+        }
+
+        double fps = frameMillis > 0 ? 1000.0 / frameMillis : 0;
+        long heapUsed = memoryBean.getHeapMemoryUsage().getUsed();
+
+        return String.format("""
+                        FPS          %6.1f   frame %5.1f ms (max %5.1f)
+                        CSS+layout   %6.2f ms (max %6.2f)
+                        Key to paint p50 %.1f ms  p99 %.1f ms  max %.1f ms (%,d keys)
+                        Heap used    %6.1f MB
+                        Document     %,d chars, %,d paragraphs
+                        Spans        %,d
+                        Images       %,d (%.1f MB decoded)
+                        Last save    %s
+                        Last load    %s""",
+                fps, frameMillis, maxFrameMillis,
+                layoutMillis, maxLayoutMillis,
+                inputLatency.getPercentileMillis(0.50), inputLatency.getPercentileMillis(0.99),
+                inputLatency.getMaxMillis(), inputLatency.getCount(),
+                heapUsed / 1048576.0,
+                textArea.getLength(), textArea.getParagraphs().size(),
+                spanCount,
+                imageCount, imageBytes / 1048576.0,
+                formatDuration(editor.getLastSaveNanos()),
+                formatDuration(editor.getLastLoadNanos()));
+    }
+
+    private static String formatDuration(long nanos) {
+        return nanos < 0 ? "-" : String.format("%.1f ms", nanos / 1e6);
+    }
+}
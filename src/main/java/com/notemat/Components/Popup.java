@@ -1,5 +1,6 @@
 package com.notemat.Components;
 
+import com.notemat.Utils.WindowGeometry;
 import javafx.geometry.Insets;
 import javafx.geometry.Pos;
 import javafx.scene.Scene;
@@ -101,10 +102,8 @@ public class Popup extends Stage {
             yOffset = event.getSceneY();
         });
 
-        toolbar.setOnMouseDragged(event -> {
-            setX(event.getScreenX() - xOffset);
-            setY(event.getScreenY() - yOffset);
-        });
+        toolbar.setOnMouseDragged(event -> WindowGeometry.of(this).moveTo(event.getScreenX() - xOffset, event.getScreenY() - yOffset));
+        toolbar.setOnMouseReleased(event -> WindowGeometry.of(this).flush());
 
         return toolbar;
     }
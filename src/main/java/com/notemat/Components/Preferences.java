@@ -1,5 +1,7 @@
 package com.notemat.Components;
 
+import com.notemat.Utils.PreferencesStore;
+import com.notemat.Utils.WindowGeometry;
 import javafx.collections.FXCollections;
 import javafx.geometry.Insets;
 import javafx.geometry.Pos;
@@ -14,53 +16,39 @@ import javafx.scene.layout.VBox;
 import javafx.stage.Modality;
 import javafx.stage.Stage;
 import javafx.stage.StageStyle;
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
-import java.io.IOException;
-import java.util.Properties;
 
 
 /**
  * The Preferences class provides a custom window for managing user
  * preferences such as main font, font size, Gemini API key, and Gemini model.
- * The preferences are stored in a properties file.
+ * The values live in the application wide {@link PreferencesStore}, which
+ * persists them to a properties file.
  */
 public class Preferences extends Stage {
-    private static final String PREFS_FILE = "preferences.properties";
-    private static final String KEY_MAIN_FONT = "mainFont";
-    private static final String KEY_MAIN_FONT_SIZE = "mainFontSize";
-    private static final String KEY_GEMINI_API = "geminiApi";
-    private static final String KEY_GEMINI_MODEL = "geminiModel";
-    private static final String KEY_ENABLE_GEMINI = "enableGemini";
-
     private final ComboBox<String> fontComboBox;
     private final ComboBox<Integer> fontSizeComboBox;
     private final TextField geminiApiTextField;
     private final ComboBox<String> geminiModelComboBox;
     private final CheckBox enableGeminiCheckBox;
-    private final Properties properties;
+    private final CheckBox geminiStreamingCheckBox;
+    private final CheckBox geminiHedgingCheckBox;
+    private final CheckBox outlineResizeCheckBox;
+    private final PreferencesStore store = PreferencesStore.getInstance();
 
     private double xOffset = 0;
     private double yOffset = 0;
 
     /**
-     * Constructs the Preferences window for the specified EditorWindow.
-     *
-     * @param editor The EditorWindow instance to be updated when preferences
-     *               are saved.
+     * Constructs the Preferences window. Editor windows observe the store, so
+     * saving updates every open window.
      */
-    public Preferences(EditorWindow editor) {
+    public Preferences() {
         // Initialization
         initStyle(StageStyle.TRANSPARENT);
         setTitle("Preferences");
         setResizable(false);
         initModality(Modality.APPLICATION_MODAL);
 
-        // Load preferences from file.
-        properties = new Properties();
-        loadPreferences();
-
         // Toolbar
         HBox toolbar = createToolbar();
 
@@ -68,29 +56,25 @@ public class Preferences extends Stage {
         // Main font selection
         Label fontLabel = new Label("Main Font:");
         fontComboBox = new ComboBox<>(FXCollections.observableArrayList("Lexend", "Arial", "Times New Roman"));
-        String currentFont = properties.getProperty(KEY_MAIN_FONT, "Lexend");
-        fontComboBox.setValue(currentFont);
+        fontComboBox.setValue(store.getMainFont());
         HBox fontBox = new HBox(10, fontLabel, fontComboBox);
         fontBox.setAlignment(Pos.CENTER_LEFT);
 
         // Main font size selection
         Label fontSizeLabel = new Label("Main Font Size:");
         fontSizeComboBox = new ComboBox<>(FXCollections.observableArrayList(8, 10, 12, 14, 16, 18, 20, 24, 28, 32, 36, 42, 48, 54, 60, 66, 72, 78, 84));
-        int currentFontSize = 14;
-        String fontSizeProp = properties.getProperty(KEY_MAIN_FONT_SIZE);
-        if (fontSizeProp != null) {
-            try {
-                currentFontSize = Integer.parseInt(fontSizeProp);
-            } catch (NumberFormatException e) {
-                System.err.println("Invalid font size in preferences, using default: " + e.getMessage());
-            }
-        }
-        fontSizeComboBox.setValue(currentFontSize);
+        fontSizeComboBox.setValue(store.getMainFontSize());
         HBox fontSizeBox = new HBox(10, fontSizeLabel, fontSizeComboBox);
         fontSizeBox.setAlignment(Pos.CENTER_LEFT);
 
+        // Outline resizing checkbox
+        outlineResizeCheckBox = new CheckBox("Show only an outline while resizing");
+        outlineResizeCheckBox.setSelected(store.getOutlineResize());
+        HBox outlineResizeBox = new HBox(10, outlineResizeCheckBox);
+        outlineResizeBox.setAlignment(Pos.CENTER_LEFT);
+
         // Group font settings into their own VBox
-        VBox fontSettingsBox = new VBox(10, fontBox, fontSizeBox);
+        VBox fontSettingsBox = new VBox(10, fontBox, fontSizeBox, outlineResizeBox);
         fontSettingsBox.setPadding(new Insets(5, 0, 0, 8));
         fontSettingsBox.setAlignment(Pos.CENTER_LEFT);
 
@@ -98,29 +82,38 @@ public class Preferences extends Stage {
         // --- Gemini Settings ---
         // Enable Gemini checkbox
         enableGeminiCheckBox = new CheckBox("Enable Gemini");
-        String enableGeminiProp = properties.getProperty(KEY_ENABLE_GEMINI, "false");
-        enableGeminiCheckBox.setSelected(Boolean.parseBoolean(enableGeminiProp));
+        enableGeminiCheckBox.setSelected(store.getEnableGemini());
         HBox enableGeminiBox = new HBox(10, enableGeminiCheckBox);
         enableGeminiBox.setAlignment(Pos.CENTER_LEFT);
 
         // Gemini API textbox
         Label geminiApiLabel = new Label("Gemini API Key:");
         geminiApiTextField = new TextField();
-        String geminiApi = properties.getProperty(KEY_GEMINI_API, "");
-        geminiApiTextField.setText(geminiApi);
+        geminiApiTextField.setText(store.getGeminiApi());
         HBox geminiApiBox = new HBox(10, geminiApiLabel, geminiApiTextField);
         geminiApiBox.setAlignment(Pos.CENTER_LEFT);
 
         // Gemini Model combobox
         Label geminiModelLabel = new Label("Gemini Model:");
         geminiModelComboBox = new ComboBox<>(FXCollections.observableArrayList("Gemini 2.0 Flash", "Gemini 2.0 Flash-Lite", "Gemini 2.5 Flash", "Gemini 2.5 Pro"));
-        String currentModel = properties.getProperty(KEY_GEMINI_MODEL, "Gemini 2.0 Flash");
-        geminiModelComboBox.setValue(currentModel);
+        geminiModelComboBox.setValue(store.getGeminiModel());
         HBox geminiModelBox = new HBox(10, geminiModelLabel, geminiModelComboBox);
         geminiModelBox.setAlignment(Pos.CENTER_LEFT);
 
+        // Streaming checkbox
+        geminiStreamingCheckBox = new CheckBox("Show answers while generating");
+        geminiStreamingCheckBox.setSelected(store.getGeminiStreaming());
+        HBox geminiStreamingBox = new HBox(10, geminiStreamingCheckBox);
+        geminiStreamingBox.setAlignment(Pos.CENTER_LEFT);
+
+        // Hedging checkbox
+        geminiHedgingCheckBox = new CheckBox("Ask a faster model when slow");
+        geminiHedgingCheckBox.setSelected(store.getGeminiHedging());
+        HBox geminiHedgingBox = new HBox(10, geminiHedgingCheckBox);
+        geminiHedgingBox.setAlignment(Pos.CENTER_LEFT);
+
         // Group Gemini settings into their own VBox
-        VBox geminiSettingsBox = new VBox(10, enableGeminiBox, geminiApiBox, geminiModelBox);
+        VBox geminiSettingsBox = new VBox(10, enableGeminiBox, geminiApiBox, geminiModelBox, geminiStreamingBox, geminiHedgingBox);
         geminiSettingsBox.setPadding(new Insets(50, 0, 0, 8));
         geminiSettingsBox.setAlignment(Pos.CENTER_LEFT);
 
@@ -128,10 +121,12 @@ public class Preferences extends Stage {
         Button saveButton = new Button("Save");
         saveButton.setOnAction(e -> {
             savePreferences();
-            editor.recreateContextMenu();
             close();
         });
 
+        // Show the stored values again when reopened after a cancel or an external change.
+        setOnShowing(e -> loadPreferences());
+
         Button cancelButton = new Button("Cancel");
         cancelButton.setOnAction(e -> close());
         HBox buttonBox = new HBox(10, saveButton, cancelButton);
@@ -143,7 +138,7 @@ public class Preferences extends Stage {
         VBox root = new VBox(10, toolbar, fontSettingsBox, geminiSettingsBox, buttonBox);
         root.getStyleClass().add("preferences");
 
-        Scene scene = new Scene(root, 400, 405);
+        Scene scene = new Scene(root, 400, 500);
         setScene(scene);
 
         // Apply theme from CSS resources.
@@ -178,139 +173,103 @@ public class Preferences extends Stage {
             yOffset = event.getSceneY();
         });
 
-        toolbar.setOnMouseDragged(event -> {
-            setX(event.getScreenX() - xOffset);
-            setY(event.getScreenY() - yOffset);
-        });
+        toolbar.setOnMouseDragged(event -> WindowGeometry.of(this).moveTo(event.getScreenX() - xOffset, event.getScreenY() - yOffset));
+        toolbar.setOnMouseReleased(event -> WindowGeometry.of(this).flush());
 
         return toolbar;
     }
 
 
     /**
-     * Loads the preferences from the file if it exists.
+     * Fills the controls with the values from the store.
      */
     private void loadPreferences() {
-        File file = new File(PREFS_FILE);
-        if (file.exists()) {
-            try (FileInputStream in = new FileInputStream(file)) {
-                properties.load(in);
-            } catch (IOException e) {
-                System.err.println("Failed to load preferences: " + e.getMessage());
-            }
-        }
+        fontComboBox.setValue(store.getMainFont());
+        fontSizeComboBox.setValue(store.getMainFontSize());
+        geminiApiTextField.setText(store.getGeminiApi());
+        geminiModelComboBox.setValue(store.getGeminiModel());
+        enableGeminiCheckBox.setSelected(store.getEnableGemini());
+        geminiStreamingCheckBox.setSelected(store.getGeminiStreaming());
+        geminiHedgingCheckBox.setSelected(store.getGeminiHedging());
+        outlineResizeCheckBox.setSelected(store.getOutlineResize());
     }
 
     /**
-     * Saves the current preferences (selected main font, font size, Gemini API
-     * key, Gemini Model, and enable Gemini flag) to the file.
+     * Stores the current preferences (selected main font, font size, Gemini API
+     * key, Gemini Model, enable Gemini, streaming, hedging and outline resizing flags). The store writes them to the
+     * preferences file in the background.
      */
     private void savePreferences() {
-        properties.setProperty(KEY_MAIN_FONT, fontComboBox.getValue());
-        properties.setProperty(KEY_MAIN_FONT_SIZE, fontSizeComboBox.getValue().toString());
-        properties.setProperty(KEY_GEMINI_API, geminiApiTextField.getText());
-        properties.setProperty(KEY_GEMINI_MODEL, geminiModelComboBox.getValue());
-        properties.setProperty(KEY_ENABLE_GEMINI, Boolean.toString(enableGeminiCheckBox.isSelected()));
-        try (FileOutputStream out = new FileOutputStream(PREFS_FILE)) {
-            properties.store(out, "User Preferences");
-        } catch (IOException e) {
-            System.err.println("Failed to save preferences: " + e.getMessage());
-        }
+        store.mainFontProperty().set(fontComboBox.getValue());
+        store.mainFontSizeProperty().set(fontSizeComboBox.getValue());
+        store.geminiApiProperty().set(geminiApiTextField.getText());
+        store.geminiModelProperty().set(geminiModelComboBox.getValue());
+        store.enableGeminiProperty().set(enableGeminiCheckBox.isSelected());
+        store.geminiStreamingProperty().set(geminiStreamingCheckBox.isSelected());
+        store.geminiHedgingProperty().set(geminiHedgingCheckBox.isSelected());
+        store.outlineResizeProperty().set(outlineResizeCheckBox.isSelected());
     }
 
     /**
-     * Retrieves the main font setting from the preferences file.
+     * Retrieves the main font setting.
      *
      * @return the main font name; defaults to "Lexend" if not set.
      */
     public static String getMainFont() {
-        Properties props = new Properties();
-        File file = new File(PREFS_FILE);
-        if (file.exists()) {
-            try (FileInputStream in = new FileInputStream(file)) {
-                props.load(in);
-                return props.getProperty(KEY_MAIN_FONT, "Lexend");
-            } catch (IOException e) {
-                System.err.println("Failed to load main font from preferences: " + e.getMessage());
-            }
-        }
-        return "Lexend";
+        return PreferencesStore.getInstance().getMainFont();
     }
 
     /**
-     * Retrieves the main font size setting from the preferences file.
+     * Retrieves the main font size setting.
      *
      * @return the main font size; defaults to 14 if not set or invalid.
      */
     public static int getMainFontSize() {
-        Properties props = new Properties();
-        File file = new File(PREFS_FILE);
-        if (file.exists()) {
-            try (FileInputStream in = new FileInputStream(file)) {
-                props.load(in);
-                String sizeStr = props.getProperty(KEY_MAIN_FONT_SIZE, "14");
-                return Integer.parseInt(sizeStr);
-            } catch (IOException | NumberFormatException e) {
-                System.err.println("Failed to load main font size from preferences: " + e.getMessage());
-            }
-        }
-        return 14;
+        return PreferencesStore.getInstance().getMainFontSize();
     }
 
     /**
-     * Retrieves the Gemini API setting from the preferences file.
+     * Retrieves the Gemini API setting.
      *
      * @return the Gemini API string; defaults to an empty string if not set.
      */
     public static String getGeminiApi() {
-        Properties props = new Properties();
-        File file = new File(PREFS_FILE);
-        if (file.exists()) {
-            try (FileInputStream in = new FileInputStream(file)) {
-                props.load(in);
-                return props.getProperty(KEY_GEMINI_API, "");
-            } catch (IOException e) {
-                System.err.println("Failed to load Gemini API from preferences: " + e.getMessage());
-            }
-        }
-        return "";
+        return PreferencesStore.getInstance().getGeminiApi();
     }
 
     /**
-     * Retrieves the Gemini Model setting from the preferences file.
+     * Retrieves the Gemini Model setting.
      *
-     * @return the Gemini Model string; defaults to "Flash" if not set.
+     * @return the Gemini Model string; defaults to "Gemini 2.0 Flash" if not set.
      */
     public static String getGeminiModel() {
-        Properties props = new Properties();
-        File file = new File(PREFS_FILE);
-        if (file.exists()) {
-            try (FileInputStream in = new FileInputStream(file)) {
-                props.load(in);
-                return props.getProperty(KEY_GEMINI_MODEL, "Flash");
-            } catch (IOException e) {
-                System.err.println("Failed to load Gemini Model from preferences: " + e.getMessage());
-            }
-        }
-        return "Flash";
+        return PreferencesStore.getInstance().getGeminiModel();
     }
 
     /**
-     * Retrieves the "Enable Gemini" flag from the preferences file.
+     * Retrieves the "Enable Gemini" flag.
      *
      * @return true if Gemini is enabled; defaults to false if not set.
      */
     public static boolean getEnableGemini() {
-        Properties props = new Properties();
-        File file = new File(PREFS_FILE);
-        if (file.exists()) {
-            try (FileInputStream in = new FileInputStream(file)) {
-                props.load(in);
-                return Boolean.parseBoolean(props.getProperty(KEY_ENABLE_GEMINI, "false"));
-            } catch (IOException e) {
-                System.err.println("Failed to load enable Gemini flag from preferences: " + e.getMessage());
-            }
-        }
-        return false;
+        return PreferencesStore.getInstance().getEnableGemini();
+    }
+
+    /**
+     * Retrieves the flag showing Gemini answers while they are being generated.
+     *
+     * @return true if answers are streamed; defaults to true if not set.
+     */
+    public static boolean getGeminiStreaming() {
+        return PreferencesStore.getInstance().getGeminiStreaming();
+    }
+
+    /**
+     * Retrieves the flag asking a faster model when Gemini is slow to answer.
+     *
+     * @return true if slow requests are hedged; defaults to false if not set.
+     */
+    public static boolean getGeminiHedging() {
+        return PreferencesStore.getInstance().getGeminiHedging();
     }
 }
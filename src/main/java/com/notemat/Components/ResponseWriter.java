@@ -0,0 +1,256 @@
+package com.notemat.Components;
+
+import com.notemat.Utils.BoldMarkupParser;
+import com.notemat.Utils.EditTransaction;
+import com.notemat.Utils.TextAnchor;
+import javafx.animation.AnimationTimer;
+import org.fxmisc.richtext.InlineCssTextArea;
+import org.fxmisc.richtext.model.StyleSpansBuilder;
+
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+
+/**
+ * Writes an AI response into the text area while it is being received.
+ * Chunks may arrive from any thread; they are queued and written once per
+ * JavaFX pulse, so a fast stream results in one document change per frame
+ * instead of one per chunk. The "Generating..." placeholder is replaced by the
+ * first written text. The insertion point is a {@link TextAnchor}, so edits
+ * made elsewhere in the document while the answer arrives do not misplace it.
+ */
+public class ResponseWriter {
+    private static final String ERROR_TEXT = "Error generating a response.";
+    private static final String CANCELLED_TEXT = "Request cancelled.";
+
+    private final InlineCssTextArea textArea;
+    private final String style;
+    private final String boldStyle;
+    private final BoldMarkupParser parser = new BoldMarkupParser();
+    private final ConcurrentLinkedQueue<String> chunks = new ConcurrentLinkedQueue<>();
+    private final CompletableFuture<Integer> finished = new CompletableFuture<>();
+    private final AnimationTimer timer;
+    private final TextAnchor anchor;
+
+    private volatile boolean completed = false;
+    private volatile Throwable failure;
+    private volatile String progress;
+
+    private String placeholder;
+    private int written = 0;
+
+    /**
+     * Creates a writer for a response inserted at the given position.
+     *
+     * @param textArea    the text area to write into.
+     * @param position    where the response starts; the placeholder is expected here.
+     * @param placeholder the placeholder text to replace.
+     * @param style       the style of regular response text.
+     * @param boldStyle   the style of text wrapped in bold markers.
+     */
+    public ResponseWriter(InlineCssTextArea textArea, int position, String placeholder, String style, String boldStyle) {
+        this.textArea = textArea;
+        this.anchor = new TextAnchor(textArea, position, TextAnchor.Gravity.FORWARD);
+        this.placeholder = placeholder;
+        this.style = style;
+        this.boldStyle = boldStyle;
+        this.timer = new AnimationTimer() {
+            @Override
+            public void handle(long now) {
+                drain();
+            }
+        };
+    }
+
+    /**
+     * Starts writing queued chunks on every pulse. Must be called on the JavaFX
+     * application thread.
+     */
+    public void start() {
+        timer.start();
+    }
+
+    /**
+     * Queues a chunk of the response. May be called from any thread.
+     *
+     * @param chunk the received text, including bold markers.
+     */
+    public void append(String chunk) {
+        if (chunk != null && !chunk.isEmpty()) {
+            chunks.add(chunk);
+        }
+    }
+
+    /**
+     * Shows a progress message in place of the placeholder until the first
+     * text is written. May be called from any thread.
+     *
+     * @param message the message, e.g. "Reading 3 of 12 parts...".
+     */
+    public void setProgress(String message) {
+        progress = message;
+    }
+
+    /**
+     * Marks the response as complete. The writer stops after the queued chunks
+     * have been written. May be called from any thread.
+     */
+    public void complete() {
+        completed = true;
+    }
+
+    /**
+     * Marks the response as failed. An error notice, or a cancellation notice if
+     * the request was cancelled, is written after the text received so far. May
+     * be called from any thread.
+     *
+     * @param error the cause of the failure.
+     */
+    public void fail(Throwable error) {
+        failure = error;
+        completed = true;
+    }
+
+    /**
+     * Completes with the number of characters written once the writer has
+     * stopped, or exceptionally if the response failed.
+     *
+     * @return the future tracking the writer.
+     */
+    public CompletableFuture<Integer> finished() {
+        return finished;
+    }
+
+    /**
+     * Text and styles collected during one pulse.
+     */
+    private static class Batch {
+        private final StringBuilder text = new StringBuilder();
+        private final StyleSpansBuilder<String> styles = new StyleSpansBuilder<>();
+
+        private void add(String segment, String segmentStyle) {
+            text.append(segment);
+            styles.add(segmentStyle, segment.length());
+        }
+
+        private boolean isEmpty() {
+            return text.length() == 0;
+        }
+    }
+
+    /**
+     * Writes everything queued since the last pulse as a single change.
+     */
+    private void drain() {
+        // Read the flag first: everything queued before completion is visible afterwards.
+        boolean done = completed;
+
+        Batch batch = new Batch();
+        String chunk;
+        while ((chunk = chunks.poll()) != null) {
+            addSegments(batch, parser.feed(chunk));
+        }
+        if (done) {
+            addSegments(batch, parser.finish());
+            if (failure != null) {
+                String notice = isCancellation(failure) ? CANCELLED_TEXT : ERROR_TEXT;
+                batch.add((written == 0 && batch.isEmpty() ? "\n" : " ") + notice, style);
+            }
+        }
+
+        if (!batch.isEmpty()) {
+            write(batch);
+        } else {
+            showProgress();
+        }
+
+        if (done) {
+            timer.stop();
+            int placeholderEnd = findPlaceholderEnd();
+            if (placeholderEnd != anchor.getPosition()) {
+                textArea.deleteText(anchor.getPosition(), placeholderEnd);
+            }
+            placeholder = null;
+            anchor.dispose();
+            if (failure != null) {
+                finished.completeExceptionally(failure);
+            } else {
+                finished.complete(written);
+            }
+        }
+    }
+
+    private void addSegments(Batch batch, List<BoldMarkupParser.Segment> segments) {
+        for (BoldMarkupParser.Segment segment : segments) {
+            String text = segment.text();
+            // The response starts on its own line, as the non-streaming version did.
+            if (written == 0 && batch.isEmpty()) {
+                text = "\n" + text;
+            }
+            batch.add(text, segment.bold() ? boldStyle : style);
+        }
+    }
+
+    /**
+     * Inserts a batch at the end of the text written so far, replacing the
+     * placeholder with the first batch. Text and styles land in one update.
+     *
+     * @param batch the text and styles to insert.
+     */
+    private void write(Batch batch) {
+        // The anchor moves past the inserted text because of its forward gravity.
+        new EditTransaction(textArea)
+                .replace(anchor.getPosition(), findPlaceholderEnd(), batch.text.toString(), batch.styles.create())
+                .commit();
+        placeholder = null;
+        written += batch.text.length();
+    }
+
+    /**
+     * Replaces the placeholder with the latest progress message, if it changed
+     * and the placeholder is still intact.
+     */
+    private void showProgress() {
+        String message = progress;
+        if (message == null || placeholder == null) {
+            return;
+        }
+        String text = "\n" + message;
+        int placeholderEnd = findPlaceholderEnd();
+        if (text.equals(placeholder) || placeholderEnd == anchor.getPosition()) {
+            return;
+        }
+
+        // The anchor must stay in front of the placeholder, so insert after it and remove the old text.
+        int position = anchor.getPosition();
+        new EditTransaction(textArea)
+                .replace(position + 1, placeholderEnd, message, style)
+                .commit();
+        placeholder = text;
+    }
+
+    /**
+     * Finds the end of the placeholder at the anchor. If the placeholder was
+     * already replaced or edited by the user, nothing is removed.
+     *
+     * @return the end of the placeholder, or the anchor position if there is none.
+     */
+    private int findPlaceholderEnd() {
+        int position = anchor.getPosition();
+        if (placeholder == null || position + placeholder.length() > textArea.getLength()) {
+            return position;
+        }
+        boolean intact = textArea.getText(position, position + placeholder.length()).equals(placeholder);
+        return intact ? position + placeholder.length() : position;
+    }
+
+    private static boolean isCancellation(Throwable error) {
+        while (error instanceof CompletionException && error.getCause() != null) {
+            error = error.getCause();
+        }
+        return error instanceof CancellationException;
+    }
+}
@@ -0,0 +1,338 @@
+package com.notemat.Components;
+
+import com.notemat.Filesystem.SearchIndex;
+import com.notemat.Utils.WindowGeometry;
+import javafx.application.Platform;
+import javafx.collections.FXCollections;
+import javafx.geometry.Insets;
+import javafx.geometry.Pos;
+import javafx.scene.Scene;
+import javafx.scene.control.Button;
+import javafx.scene.control.Label;
+import javafx.scene.control.ListCell;
+import javafx.scene.control.ListView;
+import javafx.scene.control.TextField;
+import javafx.scene.input.KeyCode;
+import javafx.scene.layout.HBox;
+import javafx.scene.layout.Priority;
+import javafx.scene.layout.VBox;
+import javafx.scene.text.Text;
+import javafx.scene.text.TextFlow;
+import javafx.stage.Stage;
+import javafx.stage.StageStyle;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+
+/**
+ * A window searching the text of every note in a folder through its
+ * {@link SearchIndex}. Results follow typing; each shows the title, where the
+ * note is and a snippet around the first match, read when its cell is first
+ * shown.
+ */
+public class SearchWindow extends Stage {
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm").withZone(ZoneId.systemDefault());
+    private static final int RESULT_LIMIT = 200;
+
+    private record Results(List<SearchIndex.Hit> hits, long elapsedNanos) {
+    }
+
+    private final EditorWindow editor;
+    private final Path directory;
+    private final TextField queryField = new TextField();
+    private final ListView<SearchIndex.Hit> resultList = new ListView<>();
+    private final Label statusLabel = new Label();
+    private final Map<Path, SearchIndex.Snippet> snippets = new ConcurrentHashMap<>();
+    private SearchIndex index = null;
+    private String query = "";
+    private long searchNumber = 0;
+    private boolean closed = false;
+
+    private double xOffset = 0;
+    private double yOffset = 0;
+
+    /**
+     * Constructs a SearchWindow. The index is opened when the window is shown.
+     *
+     * @param editor    the EditorWindow notes are opened in.
+     * @param directory the folder of notes to search.
+     */
+    public SearchWindow(EditorWindow editor, Path directory) {
+        this.editor = editor;
+        this.directory = directory;
+
+        // Initialization
+        initStyle(StageStyle.TRANSPARENT);
+        initOwner(editor);
+        setTitle("Search");
+
+        // Toolbar
+        HBox toolbar = createToolbar();
+
+        // Query
+        queryField.setPromptText("Search the text of the notes in " + directory.getFileName());
+        queryField.setDisable(true);
+        queryField.textProperty().addListener((obs, oldValue, newValue) -> search(newValue));
+        queryField.setOnKeyPressed(event -> {
+            if (event.getCode() == KeyCode.DOWN && !resultList.getItems().isEmpty()) {
+                resultList.requestFocus();
+                resultList.getSelectionModel().selectFirst();
+            } else if (event.getCode() == KeyCode.ENTER && !resultList.getItems().isEmpty()) {
+                openNote(resultList.getItems().getFirst());
+            }
+        });
+        HBox queryBox = new HBox(queryField);
+        HBox.setHgrow(queryField, Priority.ALWAYS);
+        queryBox.setPadding(new Insets(0, 10, 0, 10));
+
+        // Results
+        resultList.setCellFactory(list -> new HitCell());
+        resultList.setPlaceholder(new Label("No results"));
+        resultList.setOnMouseClicked(event -> {
+            if (event.getClickCount() == 2) {
+                openNote(resultList.getSelectionModel().getSelectedItem());
+            }
+        });
+        resultList.setOnKeyPressed(event -> {
+            if (event.getCode() == KeyCode.ENTER) {
+                openNote(resultList.getSelectionModel().getSelectedItem());
+            }
+        });
+        VBox.setVgrow(resultList, Priority.ALWAYS);
+        VBox listBox = new VBox(resultList);
+        listBox.setPadding(new Insets(0, 10, 0, 10));
+        VBox.setVgrow(listBox, Priority.ALWAYS);
+
+        // Buttons
+        Button openButton = new Button("Open");
+        openButton.disableProperty().bind(resultList.getSelectionModel().selectedItemProperty().isNull());
+        openButton.setOnAction(e -> openNote(resultList.getSelectionModel().getSelectedItem()));
+        Button closeButton = new Button("Close");
+        closeButton.setOnAction(e -> close());
+        HBox.setHgrow(statusLabel, Priority.ALWAYS);
+        statusLabel.setMaxWidth(Double.MAX_VALUE);
+        HBox buttonBox = new HBox(10, statusLabel, openButton, closeButton);
+        buttonBox.setAlignment(Pos.CENTER_RIGHT);
+        buttonBox.setPadding(new Insets(0, 10, 10, 10));
+
+        // Combine all sections into the root container
+        VBox root = new VBox(10, toolbar, queryBox, listBox, buttonBox);
+        root.getStyleClass().addAll("msg-popup", "search-window");
+
+        Scene scene = new Scene(root, 900, 640);
+        setScene(scene);
+
+        // Apply theme from CSS resources
+        String css = getClass().getResource("/theme.css").toExternalForm();
+        String fontsCss = getClass().getResource("/fonts.css").toExternalForm();
+        scene.getStylesheets().addAll(fontsCss, css);
+
+        setOnShown(e -> openIndex());
+        setOnHidden(e -> closeIndex());
+    }
+
+    /**
+     * Opens the index off the FX thread and brings it up to date with the
+     * folder, which builds it the first time.
+     */
+    private void openIndex() {
+        statusLabel.setText("Opening the search index...");
+        CompletableFuture.supplyAsync(() -> {
+            SearchIndex opened = SearchIndex.open(directory);
+            boolean building = opened.getNoteCount() == 0;
+            Platform.runLater(() -> statusLabel.setText(building ? "Building the search index..." : "Checking for changed notes..."));
+            try {
+                opened.sync();
+            } catch (IOException e) {
+                closeQuietly(opened);
+                throw new UncheckedIOException(e);
+            }
+            return opened;
+        }).whenComplete((opened, error) -> Platform.runLater(() -> {
+            if (error != null) {
+                error.printStackTrace();
+                statusLabel.setText("The search index could not be opened: " + error.getMessage());
+                return;
+            }
+            if (closed) {
+                CompletableFuture.runAsync(() -> closeQuietly(opened));
+                return;
+            }
+            index = opened;
+            queryField.setDisable(false);
+            queryField.requestFocus();
+            statusLabel.setText("%,d notes indexed".formatted(opened.getNoteCount()));
+            search(queryField.getText());
+        }));
+    }
+
+    /**
+     * Searches off the FX thread. Results of a search overtaken by more
+     * typing are dropped.
+     *
+     * @param text the query.
+     */
+    private void search(String text) {
+        if (index == null) {
+            return;
+        }
+        long number = ++searchNumber;
+        SearchIndex searching = index;
+        query = text;
+        snippets.clear();
+        if (text.isBlank()) {
+            resultList.getItems().clear();
+            statusLabel.setText("%,d notes indexed".formatted(searching.getNoteCount()));
+            return;
+        }
+        CompletableFuture.supplyAsync(() -> {
+            long start = System.nanoTime();
+            try {
+                List<SearchIndex.Hit> hits = searching.search(text, RESULT_LIMIT);
+                return new Results(hits, System.nanoTime() - start);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }).whenComplete((result, error) -> Platform.runLater(() -> {
+            if (number != searchNumber || closed) {
+                return;
+            }
+            if (error != null) {
+                error.printStackTrace();
+                statusLabel.setText("The search failed: " + error.getMessage());
+                return;
+            }
+            List<SearchIndex.Hit> hits = result.hits();
+            resultList.setItems(FXCollections.observableArrayList(hits));
+            resultList.scrollTo(0);
+            statusLabel.setText("%s%,d %s in %.1f ms".formatted(hits.size() == RESULT_LIMIT ? "Top " : "",
+                    hits.size(), hits.size() == 1 ? "result" : "results", result.elapsedNanos() / 1_000_000.0));
+        }));
+    }
+
+    private void openNote(SearchIndex.Hit hit) {
+        if (hit != null) {
+            editor.openNote(hit.path().toString());
+        }
+    }
+
+    private void closeIndex() {
+        closed = true;
+        if (index != null) {
+            SearchIndex closing = index;
+            index = null;
+            CompletableFuture.runAsync(() -> closeQuietly(closing));
+        }
+    }
+
+    private static void closeQuietly(SearchIndex index) {
+        try {
+            index.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * A cell showing the title, location and snippet of a result. The snippet
+     * is read off the FX thread the first time the result is shown.
+     */
+    private class HitCell extends ListCell<SearchIndex.Hit> {
+        private final Label titleLabel = new Label();
+        private final Label detailLabel = new Label();
+        private final TextFlow snippetFlow = new TextFlow();
+        private final VBox box = new VBox(2, titleLabel, detailLabel, snippetFlow);
+
+        HitCell() {
+            titleLabel.getStyleClass().add("search-title");
+            detailLabel.getStyleClass().add("search-detail");
+            snippetFlow.getStyleClass().add("search-snippet");
+            snippetFlow.setMinWidth(0);
+            snippetFlow.prefWidthProperty().bind(resultList.widthProperty().subtract(40));
+        }
+
+        @Override
+        protected void updateItem(SearchIndex.Hit hit, boolean empty) {
+            super.updateItem(hit, empty);
+            if (empty || hit == null) {
+                setGraphic(null);
+                return;
+            }
+            titleLabel.setText(hit.title());
+            detailLabel.setText(directory.relativize(hit.path()) + "  ·  " + TIME_FORMAT.format(Instant.ofEpochMilli(hit.modified())));
+
+            SearchIndex.Snippet snippet = snippets.get(hit.path());
+            if (snippet != null) {
+                showSnippet(snippet);
+            } else {
+                snippetFlow.getChildren().clear();
+                String snippetQuery = query;
+                CompletableFuture.supplyAsync(() -> SearchIndex.snippet(hit.path(), snippetQuery))
+                        .thenAccept(loaded -> Platform.runLater(() -> {
+                            if (!snippetQuery.equals(query)) {
+                                return;
+                            }
+                            snippets.put(hit.path(), loaded);
+                            if (hit.equals(getItem())) {
+                                showSnippet(loaded);
+                            }
+                        }));
+            }
+            setGraphic(box);
+        }
+
+        private void showSnippet(SearchIndex.Snippet snippet) {
+            List<Text> texts = new ArrayList<>();
+            int position = 0;
+            for (SearchIndex.Match match : snippet.matches()) {
+                texts.add(new Text(snippet.text().substring(position, match.start())));
+                Text matched = new Text(snippet.text().substring(match.start(), match.end()));
+                matched.getStyleClass().add("search-match");
+                texts.add(matched);
+                position = match.end();
+            }
+            texts.add(new Text(snippet.text().substring(position)));
+            for (Text text : texts) {
+                text.getStyleClass().add("search-snippet-text");
+            }
+            snippetFlow.getChildren().setAll(texts);
+        }
+    }
+
+    /**
+     * Creates the toolbar for the window which includes the header text and
+     * enables window dragging.
+     *
+     * @return the configured HBox toolbar.
+     */
+    private HBox createToolbar() {
+        Label headerLabel = new Label("Search");
+        headerLabel.getStyleClass().add("popup-header");
+
+        HBox toolbar = new HBox(headerLabel);
+        toolbar.setAlignment(Pos.CENTER_LEFT);
+        toolbar.setPadding(new Insets(5, 5, 5, 5));
+        toolbar.getStyleClass().add("toolbar");
+
+        // Enable window dragging
+        toolbar.setOnMousePressed(event -> {
+            xOffset = event.getSceneX();
+            yOffset = event.getSceneY();
+        });
+
+        toolbar.setOnMouseDragged(event -> WindowGeometry.of(this).moveTo(event.getScreenX() - xOffset, event.getScreenY() - yOffset));
+        toolbar.setOnMouseReleased(event -> WindowGeometry.of(this).flush());
+
+        return toolbar;
+    }
+}
@@ -1,5 +1,6 @@
 package com.notemat.Components;
 
+import com.notemat.Diagnostics.StyleEvent;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import javafx.collections.FXCollections;
@@ -164,6 +165,28 @@ public class StyleBar extends HBox {
      * @param property The style property to update ("font", "size", "bold", "italic", "underline", or "color")
      */
     private void updateSpecificStyle(String property) {
+        StyleEvent event = new StyleEvent();
+        event.begin();
+        int spanCount = applySpecificStyle(property);
+
+        event.end();
+        if (event.shouldCommit()) {
+            event.property = property;
+            event.selectionLength = textArea.getSelection().getLength();
+            event.documentLength = textArea.getLength();
+            event.spanCount = spanCount;
+            event.commit();
+        }
+    }
+
+    /**
+     * Applies the change of a single style property to the selection, or to the
+     * caret position if nothing is selected.
+     *
+     * @param property The style property to update.
+     * @return the number of style spans written; zero if only the caret style changed.
+     */
+    private int applySpecificStyle(String property) {
         ignoreCaretUpdate = true;
         int selectionStart = textArea.getSelection().getStart();
         int selectionEnd = textArea.getSelection().getEnd();
@@ -193,7 +216,7 @@ public class StyleBar extends HBox {
                     textArea.setStyle(selectionStart, selectionStart + 1, updatedStyle);
                 }
             }
-            return;
+            return 0;
         }
 
         StyleSpans<String> currentSpans = textArea.getStyleSpans(0, textArea.getLength());
@@ -232,7 +255,9 @@ public class StyleBar extends HBox {
             pos += spanLength;
         }
 
-        textArea.setStyleSpans(0, spansBuilder.create());
+        StyleSpans<String> updatedSpans = spansBuilder.create();
+        textArea.setStyleSpans(0, updatedSpans);
+        return updatedSpans.getSpanCount();
     }
 
 
@@ -1,7 +1,8 @@
 package com.notemat.Components;
 
-import com.notemat.Filesystem.NTMFile;
+import com.notemat.Diagnostics.FlightRecording;
 import com.notemat.Filesystem.TXTFile;
+import com.notemat.Utils.WindowGeometry;
 import com.notemat.Utils.WindowResizing;
 import javafx.geometry.Insets;
 import javafx.geometry.Pos;
@@ -12,6 +13,8 @@ import javafx.scene.layout.Priority;
 import javafx.stage.Stage;
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Path;
+import java.text.ParseException;
 
 
 /**
@@ -41,10 +44,20 @@ public class ToolBar extends BorderPane {
         // File menu.
         Menu fileMenu = new Menu("File");
         MenuItem openFile = new MenuItem("Open");
+        MenuItem openVault = new MenuItem("Open Vault...");
+        MenuItem searchItem = new MenuItem("Search Notes...");
         MenuItem saveFile = new MenuItem("Save");
         MenuItem saveAsFile = new MenuItem("Save As");
+        MenuItem saveEncryptedFile = new MenuItem("Save Encrypted...");
+        MenuItem saveUnencryptedFile = new MenuItem("Save Unencrypted...");
+        MenuItem historyItem = new MenuItem("Version History...");
+        MenuItem compareItem = new MenuItem("Compare Notes...");
         MenuItem exitItem = new MenuItem("Exit");
-        enableLoadingSaving(saveFile, saveAsFile, openFile);
+        enableLoadingSaving(saveFile, saveAsFile, saveEncryptedFile, saveUnencryptedFile, openFile);
+        historyItem.setOnAction(event -> editor.showHistoryBrowser());
+        compareItem.setOnAction(event -> editor.compareNotes());
+        openVault.setOnAction(event -> editor.openVault());
+        searchItem.setOnAction(event -> editor.searchNotes());
 
         // Import submenu.
         Menu importMenu = new Menu("Import");
@@ -60,8 +73,14 @@ public class ToolBar extends BorderPane {
 
         fileMenu.getItems().addAll(
                 openFile,
+                openVault,
+                searchItem,
                 saveFile,
                 saveAsFile,
+                saveEncryptedFile,
+                saveUnencryptedFile,
+                historyItem,
+                compareItem,
                 new SeparatorMenuItem(),
                 importMenu,
                 exportMenu,
@@ -84,13 +103,24 @@ public class ToolBar extends BorderPane {
         Menu settingsMenu = new Menu("Settings");
 
         MenuItem preferencesItems = new MenuItem("Preferences");
-        preferencesItems.setOnAction(event -> editor.preferences.showAndWait());
+        preferencesItems.setOnAction(event -> editor.getPreferences().showAndWait());
 
         settingsMenu.getItems().addAll(preferencesItems);
 
+        // Diagnostics menu.
+        Menu diagnosticsMenu = new Menu("Diagnostics");
+        MenuItem startRecordingItem = new MenuItem("Start Flight Recording");
+        MenuItem dumpRecordingItem = new MenuItem("Save Flight Recording...");
+        MenuItem stopRecordingItem = new MenuItem("Stop Flight Recording");
+        MenuItem performanceHudItem = new MenuItem("Toggle Performance Overlay");
+        performanceHudItem.setOnAction(event -> editor.togglePerformanceHud());
+
+        addDiagnosticsMenuFunctions(diagnosticsMenu, startRecordingItem, dumpRecordingItem, stopRecordingItem);
+        diagnosticsMenu.getItems().addAll(performanceHudItem, new SeparatorMenuItem(), startRecordingItem, dumpRecordingItem, stopRecordingItem);
+
 
         // Add menus to the MenuBar.
-        menuBar.getMenus().addAll(fileMenu, editMenu, settingsMenu);
+        menuBar.getMenus().addAll(fileMenu, editMenu, settingsMenu, diagnosticsMenu);
         HBox.setHgrow(menuBar, Priority.ALWAYS);
 
         // Create filename label
@@ -154,25 +184,33 @@ public class ToolBar extends BorderPane {
             yOffset = event.getSceneY();
         });
 
+        // The window is moved once per frame, however often the mouse reports.
         setOnMouseDragged(event -> {
             Stage stage = (Stage) getScene().getWindow();
-            stage.setX(event.getScreenX() - xOffset);
-            stage.setY(event.getScreenY() - yOffset);
+            WindowGeometry.of(stage).moveTo(event.getScreenX() - xOffset, event.getScreenY() - yOffset);
         });
+
+        setOnMouseReleased(event -> WindowGeometry.of((Stage) getScene().getWindow()).flush());
     }
 
     /**
-     * Configures the basic file system actions (open, save, save as) for the File menu.
+     * Configures the basic file system actions (open, save, save as, save encrypted, save unencrypted) for the File menu.
      *
-     * @param saveFile   the MenuItem for saving a file.
-     * @param saveAsFile the MenuItem for "Save As".
-     * @param openFile   the MenuItem for opening a file.
+     * @param saveFile            the MenuItem for saving a file.
+     * @param saveAsFile          the MenuItem for "Save As".
+     * @param saveEncryptedFile   the MenuItem for saving a password protected copy.
+     * @param saveUnencryptedFile the MenuItem for saving without a password, removing it from encrypted notes.
+     * @param openFile            the MenuItem for opening a file.
      */
-    private void enableLoadingSaving(MenuItem saveFile, MenuItem saveAsFile, MenuItem openFile) {
+    private void enableLoadingSaving(MenuItem saveFile, MenuItem saveAsFile, MenuItem saveEncryptedFile, MenuItem saveUnencryptedFile, MenuItem openFile) {
         saveFile.setOnAction(event -> editor.saveFile("ntm"));
 
         saveAsFile.setOnAction(event -> editor.saveFile("ntm", true));
 
+        saveEncryptedFile.setOnAction(event -> editor.saveFileEncrypted());
+
+        saveUnencryptedFile.setOnAction(event -> editor.saveFileUnencrypted());
+
         openFile.setOnAction(event -> editor.openFile("ntm"));
     }
 
@@ -217,11 +255,49 @@ public class ToolBar extends BorderPane {
      * @param pasteItem the MenuItem for paste.
      */
     private void addEditMenuFunctions(MenuItem undoItem, MenuItem redoItem, MenuItem cutItem, MenuItem copyItem, MenuItem pasteItem) {
-        undoItem.setOnAction(event -> editor.getRichTextArea().undo());
-        redoItem.setOnAction(event -> editor.getRichTextArea().redo());
+        undoItem.setOnAction(event -> editor.getUndoHistory().undo());
+        redoItem.setOnAction(event -> editor.getUndoHistory().redo());
         cutItem.setOnAction(event -> editor.getRichTextArea().cut());
         copyItem.setOnAction(event -> editor.getRichTextArea().copy());
-        pasteItem.setOnAction(event -> editor.getRichTextArea().paste());
+        pasteItem.setOnAction(event -> editor.pasteTextOrImage());
+    }
+
+    /**
+     * Configures the Diagnostics menu options for starting, saving and stopping
+     * an in-process flight recording.
+     *
+     * @param diagnosticsMenu     the Diagnostics menu, used to refresh item states.
+     * @param startRecordingItem  the MenuItem for starting a recording.
+     * @param dumpRecordingItem   the MenuItem for saving the recording to a file.
+     * @param stopRecordingItem   the MenuItem for stopping the recording.
+     */
+    private void addDiagnosticsMenuFunctions(Menu diagnosticsMenu, MenuItem startRecordingItem, MenuItem dumpRecordingItem, MenuItem stopRecordingItem) {
+        diagnosticsMenu.setOnShowing(event -> {
+            boolean recording = FlightRecording.isRecording();
+            startRecordingItem.setDisable(recording);
+            dumpRecordingItem.setDisable(!recording);
+            stopRecordingItem.setDisable(!recording);
+        });
+
+        startRecordingItem.setOnAction(event -> {
+            try {
+                FlightRecording.start();
+            } catch (IOException | ParseException e) {
+                e.printStackTrace();
+            }
+        });
+        dumpRecordingItem.setOnAction(event -> {
+            String filePath = editor.saveFileGetPath("jfr");
+
+            if (filePath != null) {
+                try {
+                    FlightRecording.dump(Path.of(filePath.endsWith(".jfr") ? filePath : filePath + ".jfr"));
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        });
+        stopRecordingItem.setOnAction(event -> FlightRecording.stop());
     }
 
     /**
@@ -238,9 +314,9 @@ public class ToolBar extends BorderPane {
      * @return the display filename.
      */
     private String getDisplayFilename() {
-        boolean changedSinceLastSave = NTMFile.getChangedSinceLastSave();
+        boolean changedSinceLastSave = editor.isChangedSinceLastSave();
 
-        String lastSavedPath = NTMFile.getLastSavedPath();
+        String lastSavedPath = editor.getFilePath();
         String result = lastSavedPath != null ? new File(lastSavedPath).getName() : "Untitled";
 
         if (changedSinceLastSave) {
@@ -0,0 +1,299 @@
+package com.notemat.Components;
+
+import com.notemat.Filesystem.VaultIndex;
+import com.notemat.Utils.WindowGeometry;
+import javafx.application.Platform;
+import javafx.beans.property.ReadOnlyObjectWrapper;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+import javafx.collections.transformation.FilteredList;
+import javafx.collections.transformation.SortedList;
+import javafx.geometry.Insets;
+import javafx.geometry.Pos;
+import javafx.scene.Scene;
+import javafx.scene.control.Button;
+import javafx.scene.control.Label;
+import javafx.scene.control.TableCell;
+import javafx.scene.control.TableColumn;
+import javafx.scene.control.TableRow;
+import javafx.scene.control.TableView;
+import javafx.scene.control.TextField;
+import javafx.scene.layout.HBox;
+import javafx.scene.layout.Priority;
+import javafx.scene.layout.VBox;
+import javafx.stage.Stage;
+import javafx.stage.StageStyle;
+import javafx.util.Callback;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+
+/**
+ * A window listing the notes of a vault, a folder of notes, from its
+ * {@link VaultIndex}. The list comes from the index alone, so it shows up at
+ * once; the index is then brought up to date in the background and kept
+ * current while the window is open.
+ */
+public class VaultWindow extends Stage {
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm").withZone(ZoneId.systemDefault());
+
+    private final EditorWindow editor;
+    private final Path directory;
+    private final ObservableList<VaultIndex.Entry> entries = FXCollections.observableArrayList();
+    private final FilteredList<VaultIndex.Entry> filteredEntries = new FilteredList<>(entries);
+    private final TableView<VaultIndex.Entry> table = new TableView<>();
+    private final TextField filterField = new TextField();
+    private final Label previewLabel = new Label();
+    private final Label statusLabel = new Label();
+    private VaultIndex index = null;
+    private boolean closed = false;
+
+    private double xOffset = 0;
+    private double yOffset = 0;
+
+    /**
+     * Constructs a VaultWindow. The index is opened when the window is shown.
+     *
+     * @param editor    the EditorWindow notes are opened in.
+     * @param directory the folder of the vault.
+     */
+    public VaultWindow(EditorWindow editor, Path directory) {
+        this.editor = editor;
+        this.directory = directory;
+
+        // Initialization
+        initStyle(StageStyle.TRANSPARENT);
+        initOwner(editor);
+        setTitle("Vault");
+
+        // Toolbar
+        HBox toolbar = createToolbar();
+
+        // Filter
+        filterField.setPromptText("Filter by title or name");
+        filterField.textProperty().addListener((obs, oldValue, newValue) -> {
+            String filter = newValue.strip().toLowerCase(Locale.ROOT);
+            filteredEntries.setPredicate(filter.isEmpty() ? null : entry ->
+                    entry.title().toLowerCase(Locale.ROOT).contains(filter) || entry.path().toLowerCase(Locale.ROOT).contains(filter));
+        });
+        HBox filterBox = new HBox(filterField);
+        HBox.setHgrow(filterField, Priority.ALWAYS);
+        filterBox.setPadding(new Insets(0, 10, 0, 10));
+
+        // Notes
+        TableColumn<VaultIndex.Entry, String> titleColumn = column("Title", VaultIndex.Entry::title, 380);
+        TableColumn<VaultIndex.Entry, Long> modifiedColumn = column("Modified", VaultIndex.Entry::modified, 140);
+        modifiedColumn.setCellFactory(formatted((Long modified) -> TIME_FORMAT.format(Instant.ofEpochMilli(modified))));
+        modifiedColumn.setSortType(TableColumn.SortType.DESCENDING);
+        TableColumn<VaultIndex.Entry, Long> sizeColumn = column("Size", VaultIndex.Entry::size, 90);
+        sizeColumn.setCellFactory(formatted((Long size) -> "%,d KB".formatted((size + 1023) / 1024)));
+        TableColumn<VaultIndex.Entry, Integer> wordsColumn = column("Words", VaultIndex.Entry::wordCount, 80);
+        wordsColumn.setCellFactory(formatted("%,d"::formatted));
+        TableColumn<VaultIndex.Entry, Integer> imagesColumn = column("Images", VaultIndex.Entry::imageCount, 70);
+        table.getColumns().addAll(List.of(titleColumn, modifiedColumn, sizeColumn, wordsColumn, imagesColumn));
+        table.getSortOrder().add(modifiedColumn);
+        table.setPlaceholder(new Label("No notes"));
+
+        SortedList<VaultIndex.Entry> sortedEntries = new SortedList<>(filteredEntries);
+        sortedEntries.comparatorProperty().bind(table.comparatorProperty());
+        table.setItems(sortedEntries);
+
+        table.setRowFactory(view -> {
+            TableRow<VaultIndex.Entry> row = new TableRow<>();
+            row.setOnMouseClicked(event -> {
+                if (event.getClickCount() == 2 && !row.isEmpty()) {
+                    openNote(row.getItem());
+                }
+            });
+            return row;
+        });
+        table.getSelectionModel().selectedItemProperty().addListener((obs, oldValue, newValue) -> showPreview(newValue));
+
+        VBox.setVgrow(table, Priority.ALWAYS);
+        previewLabel.setWrapText(true);
+        previewLabel.setMinHeight(60);
+        previewLabel.setAlignment(Pos.TOP_LEFT);
+        previewLabel.getStyleClass().add("vault-preview");
+        VBox contentBox = new VBox(10, table, previewLabel);
+        contentBox.setPadding(new Insets(0, 10, 0, 10));
+        VBox.setVgrow(contentBox, Priority.ALWAYS);
+
+        // Buttons
+        Button searchButton = new Button("Search Text...");
+        searchButton.setOnAction(e -> new SearchWindow(editor, directory).show());
+        Button openButton = new Button("Open");
+        openButton.disableProperty().bind(table.getSelectionModel().selectedItemProperty().isNull());
+        openButton.setOnAction(e -> openNote(table.getSelectionModel().getSelectedItem()));
+        Button closeButton = new Button("Close");
+        closeButton.setOnAction(e -> close());
+        HBox.setHgrow(statusLabel, Priority.ALWAYS);
+        statusLabel.setMaxWidth(Double.MAX_VALUE);
+        HBox buttonBox = new HBox(10, statusLabel, searchButton, openButton, closeButton);
+        buttonBox.setAlignment(Pos.CENTER_RIGHT);
+        buttonBox.setPadding(new Insets(0, 10, 10, 10));
+
+        // Combine all sections into the root container
+        VBox root = new VBox(10, toolbar, filterBox, contentBox, buttonBox);
+        root.getStyleClass().addAll("msg-popup", "vault-window");
+
+        Scene scene = new Scene(root, 900, 640);
+        setScene(scene);
+
+        // Apply theme from CSS resources
+        String css = getClass().getResource("/theme.css").toExternalForm();
+        String fontsCss = getClass().getResource("/fonts.css").toExternalForm();
+        scene.getStylesheets().addAll(fontsCss, css);
+
+        setOnShown(e -> openIndex());
+        setOnHidden(e -> closeIndex());
+    }
+
+    private static <T> TableColumn<VaultIndex.Entry, T> column(String name, Function<VaultIndex.Entry, T> value, double width) {
+        TableColumn<VaultIndex.Entry, T> column = new TableColumn<>(name);
+        column.setCellValueFactory(features -> new ReadOnlyObjectWrapper<>(value.apply(features.getValue())));
+        column.setPrefWidth(width);
+        return column;
+    }
+
+    private static <T> Callback<TableColumn<VaultIndex.Entry, T>, TableCell<VaultIndex.Entry, T>> formatted(Function<T, String> format) {
+        return column -> new TableCell<>() {
+            @Override
+            protected void updateItem(T item, boolean empty) {
+                super.updateItem(item, empty);
+                setText(empty || item == null ? null : format.apply(item));
+            }
+        };
+    }
+
+    /**
+     * Opens the index off the FX thread and lists it, then updates it from
+     * the folder and starts watching the folder.
+     */
+    private void openIndex() {
+        statusLabel.setText("Opening vault...");
+        CompletableFuture.supplyAsync(() -> {
+            try {
+                return VaultIndex.open(directory);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }).whenComplete((opened, error) -> Platform.runLater(() -> {
+            if (error != null) {
+                error.printStackTrace();
+                statusLabel.setText("The vault could not be opened: " + error.getMessage());
+                return;
+            }
+            if (closed) {
+                closeQuietly(opened);
+                return;
+            }
+            index = opened;
+            refresh();
+            statusLabel.setText(statusLabel.getText() + ", checking for changes...");
+            CompletableFuture.runAsync(() -> {
+                try {
+                    opened.sync();
+                    opened.watch(() -> Platform.runLater(this::refresh));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }).whenComplete((ignored, syncError) -> Platform.runLater(() -> {
+                if (syncError != null) {
+                    syncError.printStackTrace();
+                }
+                refresh();
+            }));
+        }));
+    }
+
+    /**
+     * Lists the index again, keeping the sort order, the filter and, if it
+     * is still there, the selected note.
+     */
+    private void refresh() {
+        if (index == null || closed) {
+            return;
+        }
+        long start = System.nanoTime();
+        VaultIndex.Entry selected = table.getSelectionModel().getSelectedItem();
+        entries.setAll(index.list());
+        if (selected != null) {
+            entries.stream()
+                    .filter(entry -> entry.path().equals(selected.path()))
+                    .findFirst()
+                    .ifPresent(entry -> table.getSelectionModel().select(entry));
+        }
+        statusLabel.setText("%,d notes in %s (listed in %,d ms)".formatted(entries.size(), directory.getFileName(), (System.nanoTime() - start) / 1_000_000));
+    }
+
+    private void showPreview(VaultIndex.Entry entry) {
+        if (entry == null) {
+            previewLabel.setText("");
+        } else if (entry.encrypted()) {
+            previewLabel.setText(entry.path() + "\nPassword protected");
+        } else if (entry.damaged()) {
+            previewLabel.setText(entry.path() + "\nDamaged or unreadable\n" + entry.preview());
+        } else {
+            previewLabel.setText(entry.path() + "\n" + entry.preview());
+        }
+    }
+
+    private void openNote(VaultIndex.Entry entry) {
+        if (entry != null && index != null) {
+            editor.openNote(index.resolve(entry).toString());
+        }
+    }
+
+    private void closeIndex() {
+        closed = true;
+        if (index != null) {
+            VaultIndex closing = index;
+            index = null;
+            CompletableFuture.runAsync(() -> closeQuietly(closing));
+        }
+    }
+
+    private static void closeQuietly(VaultIndex index) {
+        try {
+            index.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Creates the toolbar for the window which includes the header text and
+     * enables window dragging.
+     *
+     * @return the configured HBox toolbar.
+     */
+    private HBox createToolbar() {
+        Label headerLabel = new Label("Vault");
+        headerLabel.getStyleClass().add("popup-header");
+
+        HBox toolbar = new HBox(headerLabel);
+        toolbar.setAlignment(Pos.CENTER_LEFT);
+        toolbar.setPadding(new Insets(5, 5, 5, 5));
+        toolbar.getStyleClass().add("toolbar");
+
+        // Enable window dragging
+        toolbar.setOnMousePressed(event -> {
+            xOffset = event.getSceneX();
+            yOffset = event.getSceneY();
+        });
+
+        toolbar.setOnMouseDragged(event -> WindowGeometry.of(this).moveTo(event.getScreenX() - xOffset, event.getScreenY() - yOffset));
+        toolbar.setOnMouseReleased(event -> WindowGeometry.of(this).flush());
+
+        return toolbar;
+    }
+}
@@ -0,0 +1,47 @@
+package com.notemat.Diagnostics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+
+/**
+ * JFR event spanning an AI query from the context menu until its response has
+ * been inserted into the document.
+ */
+@Name("com.notemat.AIRequest")
+@Label("AI Request")
+@Category({"Notemat", "AI"})
+@Description("A query sent to the AI model from the context menu.")
+public class AIRequestEvent extends jdk.jfr.Event {
+    @Label("Model")
+    public String model;
+
+    @Label("Selection Length")
+    public int selectionLength;
+
+    @Label("Streamed")
+    public boolean streamed;
+
+    @Label("Chunked")
+    @Description("The selection was too large for one prompt and was asked in parts.")
+    public boolean chunked;
+
+    @Label("Served from Cache")
+    public boolean cached;
+
+    @Label("Time to First Chunk")
+    @Timespan(Timespan.NANOSECONDS)
+    public long timeToFirstChunk;
+
+    @Label("Response Length")
+    public int responseLength;
+
+    @Label("Succeeded")
+    public boolean succeeded;
+
+    @Label("Error")
+    public String error;
+}
@@ -0,0 +1,193 @@
+package com.notemat.Diagnostics;
+
+import com.notemat.Components.ContextMenu;
+import com.notemat.Components.EditorWindow;
+import com.notemat.Utils.AIProvider;
+import com.notemat.Utils.LocalAIProvider;
+import com.notemat.Utils.PreferencesStore;
+import com.notemat.Utils.ResponseCache;
+import javafx.animation.AnimationTimer;
+import javafx.animation.KeyFrame;
+import javafx.animation.Timeline;
+import javafx.application.Application;
+import javafx.application.Platform;
+import javafx.stage.Stage;
+import javafx.util.Duration;
+import org.fxmisc.richtext.InlineCssTextArea;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
+
+
+/**
+ * Drives many concurrent AI queries through the full insertion path of an
+ * editor window, against the {@link LocalAIServer} stand-in, and reports how
+ * responsive the UI stayed. While the answers arrive, a character is typed at
+ * the start of the document every 100 ms so every pending insertion point has
+ * to follow edits. At the end each answer is checked to sit right below its
+ * question. Answers are cached in a temporary directory of the run, so the
+ * user's cache is left alone and no answer comes from it.
+ * <p>
+ * Settings are read from system properties: {@code notemat.loadTest.queries}
+ * (default 40), {@code notemat.loadTest.concurrency} (requests in flight,
+ * default 8), {@code notemat.loadTest.streaming} (default true) and the
+ * {@code notemat.ai.local.*} properties of the server. The Gradle task
+ * {@code aiLoadTest} sets them from project properties. Needs a display.
+ */
+public class AiLoadTest {
+    private static final String PREFIX = "notemat.loadTest.";
+    private static final String QUESTION = "Question %d: what should be on the agenda of the weekly meeting?";
+    private static final long SLOW_FRAME_NANOS = 50_000_000;
+
+    /**
+     * Starts the stand-in server and the load test application.
+     *
+     * @param args unused.
+     * @throws IOException if the server cannot be started.
+     */
+    public static void main(String[] args) throws IOException {
+        LocalAIServer server = new LocalAIServer(0, LocalAIServer.Config.fromSystemProperties());
+        System.setProperty(AIProvider.PROPERTY_PROVIDER, "local");
+        System.setProperty(LocalAIProvider.PROPERTY_URL, server.getUrl());
+        System.setProperty("notemat.ai.maxInFlight", Integer.toString(Integer.getInteger(PREFIX + "concurrency", 8)));
+        System.setProperty("notemat.singleInstance", "false");
+        Path cacheDirectory = Files.createTempDirectory("notemat-load-test-cache");
+        System.setProperty(ResponseCache.PROPERTY_DIRECTORY, cacheDirectory.toString());
+
+        // Launched through a separate class so this one can be the main class on the class path.
+        try {
+            Application.launch(LoadTestApplication.class, args);
+        } finally {
+            server.stop();
+            deleteDirectory(cacheDirectory);
+        }
+    }
+
+    /**
+     * Deletes the cache directory of the run, as far as possible.
+     *
+     * @param directory the directory.
+     */
+    private static void deleteDirectory(Path directory) {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> {
+                try {
+                    Files.deleteIfExists(path);
+                } catch (IOException e) {
+                    System.err.println("Could not delete " + path + ": " + e.getMessage());
+                }
+            });
+        } catch (IOException e) {
+            System.err.println("Could not delete " + directory + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * The JavaFX application running the test.
+     */
+    public static class LoadTestApplication extends Application {
+        private final List<Long> frameNanos = new ArrayList<>();
+        private long lastFrame = 0;
+
+        @Override
+        public void start(Stage primaryStage) {
+            int queries = Integer.getInteger(PREFIX + "queries", 40);
+            boolean streaming = Boolean.parseBoolean(System.getProperty(PREFIX + "streaming", "true"));
+            PreferencesStore.getInstance().geminiStreamingProperty().set(streaming);
+
+            EditorWindow editor = new EditorWindow();
+            InlineCssTextArea textArea = editor.getRichTextArea();
+            StringBuilder text = new StringBuilder();
+            for (int i = 0; i < queries; i++) {
+                text.append(String.format(QUESTION, i)).append('\n');
+            }
+            textArea.replaceText(text.toString());
+            editor.show();
+
+            AnimationTimer frames = new AnimationTimer() {
+                @Override
+                public void handle(long now) {
+                    if (lastFrame != 0) {
+                        frameNanos.add(now - lastFrame);
+                    }
+                    lastFrame = now;
+                }
+            };
+            frames.start();
+
+            Timeline typing = new Timeline(new KeyFrame(Duration.millis(100), event -> textArea.insertText(0, "x")));
+            typing.setCycleCount(Timeline.INDEFINITE);
+            typing.play();
+
+            // Ask from the last question up, so every insertion shifts the pending ones below it.
+            ContextMenu contextMenu = editor.getContextMenu();
+            long[] latencies = new long[queries];
+            List<CompletableFuture<Integer>> answers = new ArrayList<>();
+            long testStart = System.nanoTime();
+            for (int i = queries - 1; i >= 0; i--) {
+                int start = textArea.getAbsolutePosition(i, 0);
+                int end = start + textArea.getParagraph(i).length();
+                int index = i;
+                long submitted = System.nanoTime();
+                answers.add(contextMenu.queryAI(start, end, true)
+                        .whenComplete((written, error) -> latencies[index] = System.nanoTime() - submitted));
+            }
+
+            CompletableFuture.allOf(answers.toArray(new CompletableFuture[0])).whenComplete((ignored, error) -> Platform.runLater(() -> {
+                long elapsed = System.nanoTime() - testStart;
+                typing.stop();
+                frames.stop();
+                long failed = answers.stream().filter(CompletableFuture::isCompletedExceptionally).count();
+                report(queries, streaming, failed, countMisplaced(textArea, queries), elapsed, latencies);
+                Platform.exit();
+            }));
+        }
+
+        /**
+         * Counts the questions whose answer does not directly follow them.
+         */
+        private int countMisplaced(InlineCssTextArea textArea, int queries) {
+            String document = textArea.getText();
+            int misplaced = 0;
+            for (int i = 0; i < queries; i++) {
+                String question = String.format(QUESTION, i);
+                int at = document.indexOf(question);
+                String expected = question + "\nRe: " + question;
+                if (at == -1 || !document.startsWith(expected, at)) {
+                    misplaced++;
+                }
+            }
+            return misplaced;
+        }
+
+        private void report(int queries, boolean streaming, long failed, int misplaced, long elapsedNanos, long[] latencies) {
+            long[] frames = frameNanos.stream().mapToLong(Long::longValue).sorted().toArray();
+            long slowFrames = Arrays.stream(frames).filter(frame -> frame > SLOW_FRAME_NANOS).count();
+            Arrays.sort(latencies);
+
+            System.out.printf("AI load test: %d queries, %s, %d in flight, %d failed, %d misplaced, %.1f s%n",
+                    queries, streaming ? "streamed" : "not streamed", Integer.getInteger("notemat.ai.maxInFlight"),
+                    failed, misplaced, elapsedNanos / 1e9);
+            System.out.printf("  answer latency  p50=%d ms  p95=%d ms  p99=%d ms  max=%d ms%n",
+                    millis(latencies, 0.50), millis(latencies, 0.95), millis(latencies, 0.99), millis(latencies, 1.0));
+            System.out.printf("  frame interval  p50=%d ms  p95=%d ms  p99=%d ms  max=%d ms  frames over 50 ms=%d of %d%n",
+                    millis(frames, 0.50), millis(frames, 0.95), millis(frames, 0.99), millis(frames, 1.0),
+                    slowFrames, frames.length);
+        }
+
+        private static long millis(long[] sortedNanos, double percentile) {
+            if (sortedNanos.length == 0) {
+                return 0;
+            }
+            int index = (int) Math.ceil(percentile * sortedNanos.length) - 1;
+            return sortedNanos[Math.max(0, Math.min(sortedNanos.length - 1, index))] / 1_000_000;
+        }
+    }
+}
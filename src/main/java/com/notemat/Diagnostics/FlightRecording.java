@@ -0,0 +1,69 @@
+package com.notemat.Diagnostics;
+
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.text.ParseException;
+
+
+/**
+ * Starts, dumps and stops an in-process Java Flight Recorder recording so users
+ * can capture the Notemat events together with the JDK "profile" settings
+ * without attaching external tools.
+ */
+public class FlightRecording {
+    private static Recording recording;
+
+    /**
+     * Indicates whether a recording is currently running.
+     *
+     * @return true if a recording was started and not stopped yet.
+     */
+    public static synchronized boolean isRecording() {
+        return recording != null;
+    }
+
+    /**
+     * Starts a recording with the JDK "profile" configuration. Does nothing if a
+     * recording is already running.
+     *
+     * @throws IOException    if the configuration cannot be read.
+     * @throws ParseException if the configuration is malformed.
+     */
+    public static synchronized void start() throws IOException, ParseException {
+        if (recording != null) {
+            return;
+        }
+        recording = new Recording(Configuration.getConfiguration("profile"));
+        recording.setName("Notemat");
+        recording.setToDisk(true);
+        recording.start();
+    }
+
+    /**
+     * Writes everything recorded so far to a file. The recording keeps running.
+     *
+     * @param path the .jfr file to write.
+     * @throws IOException if the file cannot be written.
+     */
+    public static synchronized void dump(Path path) throws IOException {
+        if (recording == null) {
+            throw new IllegalStateException("No flight recording is running.");
+        }
+        recording.dump(path);
+    }
+
+    /**
+     * Stops and discards the running recording.
+     */
+    public static synchronized void stop() {
+        if (recording == null) {
+            return;
+        }
+        recording.stop();
+        recording.close();
+        recording = null;
+    }
+}
@@ -0,0 +1,26 @@
+package com.notemat.Diagnostics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+
+/**
+ * JFR event spanning a keystroke from its {@code KEY_TYPED} event until the
+ * end of the layout of the first pulse showing its result.
+ */
+@Name("com.notemat.InputLatency")
+@Label("Input Latency")
+@Category({"Notemat", "Editing"})
+@Description("Time from a typed key until the text area has been laid out with the result.")
+public class InputLatencyEvent extends jdk.jfr.Event {
+    @Label("Processing Time")
+    @Description("Time from the key until the text area and the placeholder filter were done with it.")
+    @Timespan(Timespan.NANOSECONDS)
+    public long processingTime;
+
+    @Label("Document Length")
+    public int documentLength;
+}
@@ -0,0 +1,140 @@
+package com.notemat.Diagnostics;
+
+import javafx.scene.Scene;
+import org.fxmisc.richtext.InlineCssTextArea;
+
+import java.util.ArrayList;
+import java.util.List;
+
+
+/**
+ * Measures keystroke-to-paint latency of an editor window. Each
+ * {@code KEY_TYPED} event is timestamped when it reaches the text area and
+ * marked as processed once the text area and the follow-up work it schedules
+ * (such as the removal of the style placeholder) are done with it. The latency
+ * is taken at the end of the layout of the next pulse after that, which is
+ * when the result is ready to be painted.
+ * <p>
+ * Latencies are recorded in a {@link LatencyDistribution} per window and one
+ * for the whole session, emitted as {@link InputLatencyEvent} JFR events, shown
+ * in the performance overlay and written to the trace log when the window is
+ * closed. All methods must be called on the JavaFX application thread.
+ */
+public class InputLatencyMonitor {
+    private static final LatencyDistribution session = new LatencyDistribution();
+
+    private final InlineCssTextArea textArea;
+    private final LatencyDistribution distribution = new LatencyDistribution();
+    private final List<Keystroke> processed = new ArrayList<>();
+    private final Runnable postLayoutListener = this::onPostLayout;
+
+    /**
+     * A keystroke being measured.
+     */
+    public static final class Keystroke {
+        private final long typedAt = System.nanoTime();
+        private final InputLatencyEvent event = new InputLatencyEvent();
+        private long processedAt;
+
+        private Keystroke() {
+            event.begin();
+        }
+    }
+
+    /**
+     * Creates a monitor for a text area. It observes the pulses of whatever
+     * scene the text area is in.
+     *
+     * @param textArea the text area receiving the keys.
+     */
+    public InputLatencyMonitor(InlineCssTextArea textArea) {
+        this.textArea = textArea;
+        textArea.sceneProperty().addListener((obs, oldScene, newScene) -> {
+            if (oldScene != null) {
+                oldScene.removePostLayoutPulseListener(postLayoutListener);
+            }
+            if (newScene != null) {
+                newScene.addPostLayoutPulseListener(postLayoutListener);
+            }
+        });
+        Scene scene = textArea.getScene();
+        if (scene != null) {
+            scene.addPostLayoutPulseListener(postLayoutListener);
+        }
+    }
+
+    /**
+     * Gets the latencies measured for all windows since launch.
+     *
+     * @return the session distribution.
+     */
+    public static LatencyDistribution getSessionDistribution() {
+        return session;
+    }
+
+    /**
+     * Gets the latencies measured for this window.
+     *
+     * @return the window's distribution.
+     */
+    public LatencyDistribution getDistribution() {
+        return distribution;
+    }
+
+    /**
+     * Starts measuring a keystroke. Call it from the first {@code KEY_TYPED}
+     * filter of the text area.
+     *
+     * @return the keystroke, to be passed to {@link #processed(Keystroke)}.
+     */
+    public Keystroke keyTyped() {
+        return new Keystroke();
+    }
+
+    /**
+     * Marks a keystroke as processed; its latency is taken at the end of the
+     * next pulse's layout.
+     *
+     * @param keystroke the keystroke returned by {@link #keyTyped()}.
+     */
+    public void processed(Keystroke keystroke) {
+        keystroke.processedAt = System.nanoTime();
+        processed.add(keystroke);
+    }
+
+    /**
+     * Appends a summary of this window's latencies to the trace log, if
+     * tracing is enabled.
+     *
+     * @param title a title for the summary.
+     */
+    public void logSummary(String title) {
+        if (distribution.getCount() > 0) {
+            PhaseTracer.log(title, "window:  " + distribution.summary() + System.lineSeparator()
+                    + "session: " + session.summary());
+        }
+    }
+
+    private void onPostLayout() {
+        if (processed.isEmpty()) {
+            return;
+        }
+
+        long now = System.nanoTime();
+        int documentLength = textArea.getLength();
+        for (Keystroke keystroke : processed) {
+            long latency = now - keystroke.typedAt;
+            distribution.record(latency);
+            session.record(latency);
+
+            InputLatencyEvent event = keystroke.event;
+            event.end();
+            if (event.shouldCommit()) {
+                event.processingTime = keystroke.processedAt - keystroke.typedAt;
+                event.documentLength = documentLength;
+                event.commit();
+            }
+        }
+        processed.clear();
+    }
+}
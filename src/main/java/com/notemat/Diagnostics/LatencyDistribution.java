@@ -0,0 +1,161 @@
+package com.notemat.Diagnostics;
+
+import java.util.Arrays;
+
+
+/**
+ * A latency histogram in the style of HdrHistogram. Values are kept in
+ * microseconds. Each power of two range is split into {@value #HALF} equal
+ * sub-buckets, so every value is stored with an error below 1/{@value #HALF}
+ * (about 1.6%), from 1 µs up to about twelve days, while the whole histogram
+ * stays a fixed array of a few thousand counts. Recording is constant time and
+ * allocation free. Safe to use from any thread.
+ * <p>
+ * A distribution can be made to follow recent behaviour rather than its whole
+ * history: once it holds a given number of values, all counts are halved.
+ */
+public class LatencyDistribution {
+    private static final int SUB_BUCKET_BITS = 7;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int HALF = SUB_BUCKETS / 2;
+    private static final int MAX_VALUE_BITS = 40;
+    private static final int MAX_MAGNITUDE = MAX_VALUE_BITS - SUB_BUCKET_BITS;
+    private static final long MAX_MICROS = (1L << MAX_VALUE_BITS) - 1;
+
+    private final long[] counts = new long[(MAX_MAGNITUDE + 2) * HALF];
+    private final long decayAfter;
+    private long count = 0;
+    private long totalMicros = 0;
+    private long maxMicros = 0;
+
+    /**
+     * Creates a distribution of all values recorded.
+     */
+    public LatencyDistribution() {
+        this(0);
+    }
+
+    /**
+     * Creates a distribution that decays: once it holds {@code decayAfter}
+     * values, all counts and the total are halved. The maximum stays that of
+     * all values recorded.
+     *
+     * @param decayAfter the number of values that triggers a decay, or 0 to never decay.
+     */
+    public LatencyDistribution(long decayAfter) {
+        this.decayAfter = decayAfter;
+    }
+
+    /**
+     * Records a latency.
+     *
+     * @param nanos the latency in nanoseconds; negative values count as zero.
+     */
+    public synchronized void record(long nanos) {
+        long micros = Math.max(0, nanos / 1000);
+        counts[indexOf(micros)]++;
+        count++;
+        totalMicros += micros;
+        maxMicros = Math.max(maxMicros, micros);
+
+        if (decayAfter > 0 && count >= decayAfter) {
+            count = 0;
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] /= 2;
+                count += counts[i];
+            }
+            totalMicros /= 2;
+        }
+    }
+
+    /**
+     * Removes all recorded values.
+     */
+    public synchronized void reset() {
+        Arrays.fill(counts, 0);
+        count = 0;
+        totalMicros = 0;
+        maxMicros = 0;
+    }
+
+    /**
+     * Gets the number of recorded values.
+     *
+     * @return the count; after a decay, the number of values left.
+     */
+    public synchronized long getCount() {
+        return count;
+    }
+
+    /**
+     * Gets the largest recorded value.
+     *
+     * @return the maximum in milliseconds, or 0 if nothing was recorded.
+     */
+    public synchronized double getMaxMillis() {
+        return maxMicros / 1000.0;
+    }
+
+    /**
+     * Gets the average of the recorded values.
+     *
+     * @return the mean in milliseconds, or 0 if nothing was recorded.
+     */
+    public synchronized double getMeanMillis() {
+        return count == 0 ? 0 : totalMicros / 1000.0 / count;
+    }
+
+    /**
+     * Estimates a percentile.
+     *
+     * @param percentile the percentile, between 0 and 1.
+     * @return the highest value equivalent to the percentile in milliseconds,
+     * or 0 if nothing was recorded.
+     */
+    public synchronized double getPercentileMillis(double percentile) {
+        if (count == 0) {
+            return 0;
+        }
+
+        long rank = Math.max(1, (long) Math.ceil(percentile * count));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(maxMicros, highestEquivalent(i)) / 1000.0;
+            }
+        }
+        return maxMicros / 1000.0;
+    }
+
+    /**
+     * Summarizes the distribution on one line.
+     *
+     * @return the count, mean, common percentiles and maximum.
+     */
+    public synchronized String summary() {
+        return String.format("n=%d  mean=%.2f ms  p50=%.2f ms  p90=%.2f ms  p99=%.2f ms  p99.9=%.2f ms  max=%.2f ms",
+                count, getMeanMillis(), getPercentileMillis(0.50), getPercentileMillis(0.90),
+                getPercentileMillis(0.99), getPercentileMillis(0.999), getMaxMillis());
+    }
+
+    /**
+     * Finds the bucket of a value. The magnitude is the shift that brings the
+     * value below {@value #SUB_BUCKETS}; values below that are stored exactly,
+     * larger ones in the upper half of the sub-buckets of their magnitude.
+     */
+    private static int indexOf(long micros) {
+        long value = Math.min(micros, MAX_MICROS);
+        int magnitude = Math.max(0, 63 - Long.numberOfLeadingZeros(value) - (SUB_BUCKET_BITS - 1));
+        return magnitude * HALF + (int) (value >>> magnitude);
+    }
+
+    private static long highestEquivalent(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int magnitude = index / HALF - 1;
+        long subBucket = index - (long) magnitude * HALF;
+        return ((subBucket + 1) << magnitude) - 1;
+    }
+}
@@ -0,0 +1,33 @@
+package com.notemat.Diagnostics;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+
+/**
+ * JFR event emitted by {@code NTMFile.loadFromFile}.
+ */
+@Name("com.notemat.Load")
+@Label("Load Note")
+@Category({"Notemat", "File"})
+@Description("Loading a note from disk into an editor window.")
+public class LoadEvent extends jdk.jfr.Event {
+    @Label("Path")
+    public String path;
+
+    @Label("Bytes Read")
+    @DataAmount
+    public long bytesRead;
+
+    @Label("Text Length")
+    public int textLength;
+
+    @Label("Span Count")
+    public int spanCount;
+
+    @Label("Image Count")
+    public int imageCount;
+}
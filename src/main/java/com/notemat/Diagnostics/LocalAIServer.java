@@ -0,0 +1,214 @@
+package com.notemat.Diagnostics;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+
+
+/**
+ * A local stand-in for the AI backend, used to exercise and benchmark the AI
+ * path of the editor offline. It answers {@code POST /generate} with a
+ * generated text that echoes the question and contains bold markers, either at
+ * once or in chunks. Its behaviour is configured with system properties:
+ * <ul>
+ *     <li>{@code notemat.ai.local.latencyMs}: delay before the first byte (default 400),</li>
+ *     <li>{@code notemat.ai.local.chunkChars}: characters per streamed chunk (default 24),</li>
+ *     <li>{@code notemat.ai.local.chunkDelayMs}: delay between chunks (default 30),</li>
+ *     <li>{@code notemat.ai.local.responseChars}: approximate answer length (default 1200),</li>
+ *     <li>{@code notemat.ai.local.errorRate}: share of requests failing with 503 (default 0).</li>
+ * </ul>
+ * Latency and chunk delays vary randomly between half and one and a half times
+ * the configured value so the backend behaves burstily.
+ * Run it on its own with {@code java -cp notemat.jar com.notemat.Diagnostics.LocalAIServer [port]}
+ * and start Notemat with {@code -Dnotemat.ai.provider=local}.
+ */
+public class LocalAIServer {
+    public static final int DEFAULT_PORT = 8765;
+
+    private static final String PREFIX = "notemat.ai.local.";
+    private static final String ANSWER_PREFIX = "Re: ";
+    private static final String[] SENTENCES = {
+            "This is a **generated** answer from the local stand-in server.",
+            "It has no knowledge of the question beyond its first words.",
+            "- Items are listed with a dash, like the real model does.",
+            "Some words are **bold** to exercise the formatting path.",
+            "Latency, chunk size and failures are configurable.",
+    };
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final Config config;
+
+    /**
+     * Behaviour of the stand-in server.
+     *
+     * @param latencyMs     delay before the first byte.
+     * @param chunkChars    characters per streamed chunk.
+     * @param chunkDelayMs  delay between streamed chunks.
+     * @param responseChars approximate length of each answer.
+     * @param errorRate     share of requests that fail, between 0 and 1.
+     */
+    public record Config(long latencyMs, int chunkChars, long chunkDelayMs, int responseChars, double errorRate) {
+        /**
+         * Reads the configuration from {@code notemat.ai.local.*} system properties.
+         *
+         * @return the configuration.
+         */
+        public static Config fromSystemProperties() {
+            return new Config(
+                    Long.getLong(PREFIX + "latencyMs", 400),
+                    Math.max(1, Integer.getInteger(PREFIX + "chunkChars", 24)),
+                    Long.getLong(PREFIX + "chunkDelayMs", 30),
+                    Integer.getInteger(PREFIX + "responseChars", 1200),
+                    Double.parseDouble(System.getProperty(PREFIX + "errorRate", "0")));
+        }
+    }
+
+    /**
+     * Starts a server on the loopback interface.
+     *
+     * @param port   the port, or 0 for any free port.
+     * @param config the behaviour of the server.
+     * @throws IOException if the port cannot be bound.
+     */
+    public LocalAIServer(int port, Config config) throws IOException {
+        this.config = config;
+        this.executor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "notemat-local-ai-server");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.setExecutor(executor);
+        server.createContext("/generate", this::handle);
+        server.start();
+    }
+
+    /**
+     * Gets the base URL of the running server.
+     *
+     * @return the URL, e.g. {@code http://127.0.0.1:8765}.
+     */
+    public String getUrl() {
+        InetSocketAddress address = server.getAddress();
+        return "http://" + address.getAddress().getHostAddress() + ":" + address.getPort();
+    }
+
+    /**
+     * Stops the server, aborting requests in progress.
+     */
+    public void stop() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    /**
+     * Builds the answer returned for a question. It starts with
+     * {@value #ANSWER_PREFIX} and the first line of the question, so callers
+     * can check where an answer was inserted.
+     *
+     * @param query the question.
+     * @return the answer, including bold markers.
+     */
+    public String answerFor(String query) {
+        String firstLine = query.lines().findFirst().orElse("").strip();
+        StringBuilder answer = new StringBuilder(ANSWER_PREFIX).append(firstLine);
+        for (int i = 0; answer.length() < config.responseChars; i++) {
+            answer.append(i % 3 == 0 ? "\n" : " ").append(SENTENCES[i % SENTENCES.length]);
+        }
+        return answer.toString();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                send(exchange, 405, "Only POST is supported.");
+                return;
+            }
+
+            String query = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+            boolean stream = "true".equals(parameter(exchange, "stream"));
+
+            sleep(config.latencyMs);
+            if (ThreadLocalRandom.current().nextDouble() < config.errorRate) {
+                send(exchange, 503, "Simulated failure.");
+                return;
+            }
+
+            String answer = answerFor(query);
+            if (!stream) {
+                send(exchange, 200, answer);
+                return;
+            }
+
+            // A zero length announces a chunked response.
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+            exchange.sendResponseHeaders(200, 0);
+            OutputStream out = exchange.getResponseBody();
+            for (int start = 0; start < answer.length(); start += config.chunkChars) {
+                if (start > 0) {
+                    sleep(config.chunkDelayMs);
+                }
+                int end = Math.min(answer.length(), start + config.chunkChars);
+                out.write(answer.substring(start, end).getBytes(StandardCharsets.UTF_8));
+                out.flush();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void send(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        exchange.getResponseBody().write(bytes);
+    }
+
+    private static String parameter(HttpExchange exchange, String name) {
+        String query = exchange.getRequestURI().getRawQuery();
+        if (query == null) {
+            return null;
+        }
+        for (String pair : query.split("&")) {
+            int equals = pair.indexOf('=');
+            if (equals != -1 && pair.substring(0, equals).equals(name)) {
+                return URLDecoder.decode(pair.substring(equals + 1), StandardCharsets.UTF_8);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Sleeps for a random time between half and one and a half times the
+     * given delay.
+     */
+    private static void sleep(long millis) throws InterruptedException {
+        if (millis > 0) {
+            Thread.sleep(ThreadLocalRandom.current().nextLong(millis / 2, millis + millis / 2 + 1));
+        }
+    }
+
+    /**
+     * Runs the server until the process is stopped.
+     *
+     * @param args an optional port number.
+     * @throws IOException          if the port cannot be bound.
+     * @throws InterruptedException if the main thread is interrupted.
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        LocalAIServer server = new LocalAIServer(port, Config.fromSystemProperties());
+        System.out.println("Local AI stand-in listening on " + server.getUrl());
+        Thread.currentThread().join();
+    }
+}
@@ -0,0 +1,29 @@
+package com.notemat.Diagnostics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+
+/**
+ * JFR event emitted by {@code EditorWindow.pasteTextOrImage}.
+ */
+@Name("com.notemat.Paste")
+@Label("Paste")
+@Category({"Notemat", "Editing"})
+@Description("Pasting text or an image from the clipboard.")
+public class PasteEvent extends jdk.jfr.Event {
+    @Label("Image")
+    @Description("True if an image was pasted, false for text.")
+    public boolean image;
+
+    @Label("Text Length")
+    public int textLength;
+
+    @Label("Image Width")
+    public int imageWidth;
+
+    @Label("Image Height")
+    public int imageHeight;
+}
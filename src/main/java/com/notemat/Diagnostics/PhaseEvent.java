@@ -0,0 +1,31 @@
+package com.notemat.Diagnostics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+
+/**
+ * JFR event emitted for every phase recorded by {@link PhaseTracer}.
+ * The event duration is the duration of the phase.
+ */
+@Name("com.notemat.Phase")
+@Label("Phase")
+@Category({"Notemat", "Startup"})
+@Description("A traced startup or document-open phase.")
+@StackTrace(false)
+class PhaseEvent extends jdk.jfr.Event {
+    @Label("Phase")
+    String phase;
+
+    @Label("Depth")
+    @Description("Nesting level of the phase on its thread.")
+    int depth;
+
+    @Label("Since Launch")
+    @Timespan(Timespan.NANOSECONDS)
+    long sinceLaunch;
+}
@@ -0,0 +1,213 @@
+package com.notemat.Diagnostics;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+
+/**
+ * A lightweight tracer for startup and document-open phases.
+ * Phases are recorded with monotonic timestamps relative to the launch of the
+ * application and are also emitted as {@link PhaseEvent} JFR events. A summary is
+ * appended to a log file when the {@code notemat.trace} system property is set,
+ * either to a file path or to {@code true} for {@code notemat-trace.log} in the
+ * working directory.
+ * <p>
+ * Usage:
+ * <pre>{@code
+ * try (PhaseTracer.Phase ignored = PhaseTracer.begin("EditorWindow.css")) {
+ *     // traced work
+ * }
+ * }</pre>
+ */
+public class PhaseTracer {
+    private static final String PROPERTY_TRACE = "notemat.trace";
+    private static final String DEFAULT_TRACE_FILE = "notemat-trace.log";
+    private static final int MAX_RECORDS = 512;
+
+    /** Monotonic time of the first use of the tracer, which is the start of Launcher.main. */
+    private static final long ORIGIN = System.nanoTime();
+    private static final ArrayDeque<Record> records = new ArrayDeque<>();
+    private static final ThreadLocal<int[]> depth = ThreadLocal.withInitial(() -> new int[1]);
+
+    /**
+     * A finished phase. Marks have the same start and end time.
+     */
+    private record Record(String name, int depth, long start, long end, String thread) {
+    }
+
+    /**
+     * An open phase, closed by {@link #close()}.
+     */
+    public static final class Phase implements AutoCloseable {
+        private final String name;
+        private final int depth;
+        private final long start;
+        private final PhaseEvent event;
+        private boolean closed = false;
+
+        private Phase(String name, int depth, long start) {
+            this.name = name;
+            this.depth = depth;
+            this.start = start;
+            this.event = new PhaseEvent();
+            event.begin();
+        }
+
+        /**
+         * Ends the phase, records it and commits its JFR event.
+         */
+        @Override
+        public void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            long end = System.nanoTime();
+            PhaseTracer.depth.get()[0]--;
+
+            event.end();
+            if (event.shouldCommit()) {
+                event.phase = name;
+                event.depth = depth;
+                event.sinceLaunch = start - ORIGIN;
+                event.commit();
+            }
+            add(new Record(name, depth, start, end, Thread.currentThread().getName()));
+        }
+    }
+
+    /**
+     * Starts a phase on the current thread.
+     *
+     * @param name the name of the phase.
+     * @return the open phase; close it when the phase ends.
+     */
+    public static Phase begin(String name) {
+        int[] level = depth.get();
+        return new Phase(name, level[0]++, System.nanoTime());
+    }
+
+    /**
+     * Records a point in time, such as the first frame being shown.
+     *
+     * @param name the name of the mark.
+     */
+    public static void mark(String name) {
+        try (Phase ignored = begin(name)) {
+            // A mark is a phase without duration.
+        }
+    }
+
+    /**
+     * Returns the current monotonic time, usable as the {@code since} argument
+     * of {@link #dump(String, long)}.
+     *
+     * @return the current value of {@link System#nanoTime()}.
+     */
+    public static long now() {
+        return System.nanoTime();
+    }
+
+    /**
+     * Indicates whether summaries are written to the trace log.
+     *
+     * @return true if the {@code notemat.trace} property is set.
+     */
+    public static boolean isLogging() {
+        String value = System.getProperty(PROPERTY_TRACE);
+        return value != null && !value.isEmpty() && !value.equals("false");
+    }
+
+    /**
+     * Appends the phases that started at or after {@code since} to the trace log.
+     * Does nothing unless {@link #isLogging()} is true.
+     *
+     * @param title a title for the summary, e.g. "startup".
+     * @param since the monotonic time of the oldest phase to include.
+     */
+    public static void dump(String title, long since) {
+        if (!isLogging()) {
+            return;
+        }
+
+        List<Record> selected = new ArrayList<>();
+        synchronized (records) {
+            for (Record record : records) {
+                if (record.start >= since) {
+                    selected.add(record);
+                }
+            }
+        }
+        selected.sort((a, b) -> Long.compare(a.start, b.start));
+
+        try (PrintWriter out = new PrintWriter(new FileWriter(getTracePath(), true))) {
+            out.printf("== %s (%s)%n", title, LocalDateTime.now());
+            out.printf("%12s %12s  %s%n", "start [ms]", "took [ms]", "phase");
+            for (Record record : selected) {
+                out.printf("%12.1f %12.1f  %s%s [%s]%n",
+                        (record.start - ORIGIN) / 1e6,
+                        (record.end - record.start) / 1e6,
+                        "  ".repeat(record.depth),
+                        record.name,
+                        record.thread);
+            }
+            out.println();
+        } catch (IOException e) {
+            System.err.println("Failed to write trace log: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Appends a block of text to the trace log, e.g. a latency summary.
+     * Does nothing unless {@link #isLogging()} is true.
+     *
+     * @param title a title for the block.
+     * @param text  the text to append.
+     */
+    public static void log(String title, String text) {
+        if (!isLogging()) {
+            return;
+        }
+
+        try (PrintWriter out = new PrintWriter(new FileWriter(getTracePath(), true))) {
+            out.printf("== %s (%s)%n", title, LocalDateTime.now());
+            out.println(text);
+            out.println();
+        } catch (IOException e) {
+            System.err.println("Failed to write trace log: " + e.getMessage());
+        }
+    }
+
+    private static String getTracePath() {
+        String value = System.getProperty(PROPERTY_TRACE);
+        return value.equals("true") ? DEFAULT_TRACE_FILE : value;
+    }
+
+    /**
+     * Appends every phase recorded since launch to the trace log.
+     *
+     * @param title a title for the summary.
+     */
+    public static void dumpSinceLaunch(String title) {
+        dump(title, ORIGIN);
+    }
+
+    /**
+     * Stores a finished phase, dropping the oldest once the buffer is full.
+     *
+     * @param record the phase to store.
+     */
+    private static void add(Record record) {
+        synchronized (records) {
+            if (records.size() == MAX_RECORDS) {
+                records.removeFirst();
+            }
+            records.addLast(record);
+        }
+    }
+}
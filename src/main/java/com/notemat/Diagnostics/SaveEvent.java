@@ -0,0 +1,33 @@
+package com.notemat.Diagnostics;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+
+/**
+ * JFR event emitted by {@code NTMFile.saveToFile}.
+ */
+@Name("com.notemat.Save")
+@Label("Save Note")
+@Category({"Notemat", "File"})
+@Description("Saving a note to disk.")
+public class SaveEvent extends jdk.jfr.Event {
+    @Label("Path")
+    public String path;
+
+    @Label("Bytes Written")
+    @DataAmount
+    public long bytesWritten;
+
+    @Label("Text Length")
+    public int textLength;
+
+    @Label("Span Count")
+    public int spanCount;
+
+    @Label("Image Count")
+    public int imageCount;
+}
@@ -0,0 +1,155 @@
+package com.notemat.Diagnostics;
+
+import com.notemat.Components.EditorWindow;
+import com.notemat.Components.ImageComponent;
+import com.notemat.Components.StyleBar;
+import com.notemat.Filesystem.NTMFile;
+import javafx.application.Platform;
+import javafx.scene.Scene;
+import javafx.scene.image.PixelWriter;
+import javafx.scene.image.WritableImage;
+import javafx.scene.paint.Color;
+import org.fxmisc.richtext.InlineCssTextArea;
+import org.fxmisc.richtext.model.StyleSpansBuilder;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.function.LongConsumer;
+
+
+/**
+ * Hooks used by the build to train the class-data-sharing archive and to
+ * benchmark startup. Nothing is installed unless one of the system properties
+ * below is set, so regular launches are unaffected.
+ * <ul>
+ *     <li>{@code notemat.exitAfterFirstFrame} prints the time from JVM start to the
+ *     first laid out frame and exits.</li>
+ *     <li>{@code notemat.cds.training} additionally builds the lazily created
+ *     windows before exiting so their classes end up in the archive.</li>
+ *     <li>{@code notemat.writeSampleNote} fills the editor with a generated note,
+ *     saves it to the given path and exits.</li>
+ * </ul>
+ */
+public class StartupProbe {
+    public static final String FIRST_FRAME_PREFIX = "notemat.firstFrame.ms=";
+
+    private static final String PROPERTY_EXIT = "notemat.exitAfterFirstFrame";
+    private static final String PROPERTY_TRAINING = "notemat.cds.training";
+    private static final String PROPERTY_SAMPLE = "notemat.writeSampleNote";
+    private static final int SAMPLE_SECTIONS = 200;
+
+    /**
+     * Installs the probe on the first editor window if any of the probe
+     * properties are set.
+     *
+     * @param editor the first EditorWindow shown by the application.
+     */
+    public static void install(EditorWindow editor) {
+        boolean exitAfterFirstFrame = Boolean.getBoolean(PROPERTY_EXIT);
+        String samplePath = System.getProperty(PROPERTY_SAMPLE);
+        if (!exitAfterFirstFrame && samplePath == null) {
+            return;
+        }
+
+        afterFirstFrame(editor.getScene(), firstFrameMillis -> onFirstFrame(editor, firstFrameMillis, samplePath));
+    }
+
+    /**
+     * Runs an action once, right after the first layout pulse of the scene.
+     *
+     * @param scene  the scene to watch.
+     * @param action receives the wall clock time (in milliseconds) of the first
+     *               laid out frame.
+     */
+    public static void afterFirstFrame(Scene scene, LongConsumer action) {
+        Runnable listener = new Runnable() {
+            private boolean fired = false;
+
+            @Override
+            public void run() {
+                if (fired) {
+                    return;
+                }
+                fired = true;
+                long firstFrameMillis = System.currentTimeMillis();
+
+                // Pulse listeners must not be removed while the scene iterates over them.
+                Platform.runLater(() -> {
+                    scene.removePostLayoutPulseListener(this);
+                    action.accept(firstFrameMillis);
+                });
+            }
+        };
+        scene.addPostLayoutPulseListener(listener);
+    }
+
+    /**
+     * Reports the startup time or writes the sample note, then exits.
+     *
+     * @param editor           the first EditorWindow.
+     * @param firstFrameMillis wall clock time of the first laid out frame.
+     * @param samplePath       where to write the sample note, or null.
+     */
+    private static void onFirstFrame(EditorWindow editor, long firstFrameMillis, String samplePath) {
+        if (samplePath != null) {
+            try {
+                writeSampleNote(editor, samplePath);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        } else {
+            long jvmStart = ManagementFactory.getRuntimeMXBean().getStartTime();
+            System.out.println(FIRST_FRAME_PREFIX + (firstFrameMillis - jvmStart));
+
+            if (Boolean.getBoolean(PROPERTY_TRAINING)) {
+                editor.getPreferences();
+                editor.getContextMenu();
+            }
+        }
+        Platform.exit();
+    }
+
+    /**
+     * Fills the editor with styled sections and an image and saves it as a note.
+     * The result is used as the document opened by training and benchmark runs.
+     *
+     * @param editor   the EditorWindow to fill.
+     * @param filePath where to save the note.
+     * @throws IOException if the note cannot be written.
+     */
+    private static void writeSampleNote(EditorWindow editor, String filePath) throws IOException {
+        InlineCssTextArea textArea = editor.getRichTextArea();
+        StyleBar styleBar = editor.getStylebar();
+        String normal = styleBar.getStyleBarStyle();
+        String bold = styleBar.updateCssProperty(normal, "-fx-font-weight", "bold");
+        String italic = styleBar.updateCssProperty(normal, "-fx-font-style", "italic");
+
+        StringBuilder text = new StringBuilder();
+        StyleSpansBuilder<String> spans = new StyleSpansBuilder<>();
+        for (int i = 1; i <= SAMPLE_SECTIONS; i++) {
+            String heading = "Section " + i + "\n";
+            String body = "Notes taken during the weekly meeting. Action items, decisions and open questions are listed below.\n";
+            String remark = "- Follow up on item " + i + " next week.\n";
+            text.append(heading).append(body).append(remark);
+            spans.add(bold, heading.length());
+            spans.add(normal, body.length());
+            spans.add(italic, remark.length());
+        }
+        textArea.replaceText(text.toString());
+        textArea.setStyleSpans(0, spans.create());
+
+        WritableImage image = new WritableImage(64, 64);
+        PixelWriter writer = image.getPixelWriter();
+        for (int x = 0; x < 64; x++) {
+            for (int y = 0; y < 64; y++) {
+                writer.setColor(x, y, Color.hsb(x * 5.6, 0.6, 0.4 + y / 160.0));
+            }
+        }
+        ImageComponent imageComponent = new ImageComponent(image);
+        imageComponent.setLayoutX(10);
+        imageComponent.setLayoutY(10);
+        editor.getImageLayer().getChildren().add(imageComponent);
+
+        NTMFile.saveToFile(editor, filePath);
+    }
+}
@@ -0,0 +1,30 @@
+package com.notemat.Diagnostics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+
+/**
+ * JFR event emitted by {@code StyleBar.updateSpecificStyle}.
+ */
+@Name("com.notemat.Style")
+@Label("Apply Style")
+@Category({"Notemat", "Editing"})
+@Description("Applying a style bar change to the selection or caret.")
+public class StyleEvent extends jdk.jfr.Event {
+    @Label("Property")
+    @Description("The style property that changed: font, size, bold, italic, underline or color.")
+    public String property;
+
+    @Label("Selection Length")
+    public int selectionLength;
+
+    @Label("Document Length")
+    public int documentLength;
+
+    @Label("Span Count")
+    @Description("Number of style spans written; zero when only the caret style changed.")
+    public int spanCount;
+}
@@ -0,0 +1,485 @@
+package com.notemat.Filesystem;
+
+import org.fxmisc.richtext.model.StyleSpan;
+import org.fxmisc.richtext.model.StyleSpans;
+import org.fxmisc.richtext.model.StyleSpansBuilder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.CRC32C;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+
+/**
+ * The styled text of a note, stored as a sequence of independently readable
+ * chunks of about {@value #CHUNK_CHARS} characters, split at paragraph ends:
+ * <pre>
+ * header: "NTMC" | version (1) | chunk count (4) | paragraph count (4) | text length (4) | CRC32C (4)
+ * chunk:  "NTCK" | index (4) | first paragraph (4) | paragraph count (4) | text length (4)
+ *         | payload length (4) | CRC32C of the fields and payload (4) | payload
+ * payload (deflated): text (UTF-8, length prefixed) | style table | spans as (length, style index)
+ * trailer: "NTCE"
+ * </pre>
+ * Each chunk carries its own style table, compression and checksum, so a
+ * flipped byte or a truncated write only loses the chunks it touches: the
+ * reader skips a chunk whose checksum does not match, searches forward for the
+ * next chunk marker and reports which paragraphs were lost. CRC32C is computed
+ * with hardware instructions on current CPUs, so checking it costs far less
+ * than inflating the chunks and runs on every open.
+ */
+public final class ContentChunks {
+    public static final int CHUNK_CHARS = 64 * 1024;
+
+    private static final int HEADER_MAGIC = 0x4E544D43; // "NTMC"
+    private static final int CHUNK_MAGIC = 0x4E54434B; // "NTCK"
+    private static final int END_MAGIC = 0x4E544345; // "NTCE"
+    private static final int TRAILER_BYTES = 4;
+    private static final byte VERSION = 1;
+    private static final int HEADER_BYTES = 4 + 1 + 4 + 4 + 4 + 4;
+    private static final int CHUNK_HEADER_BYTES = 4 + 4 + 4 + 4 + 4 + 4 + 4;
+    private static final int MAX_PAYLOAD_BYTES = 64 * 1024 * 1024;
+
+    private ContentChunks() {
+    }
+
+    /**
+     * A range of paragraphs that could not be recovered.
+     *
+     * @param chunk          the index of the lost chunk, or -1 if unknown.
+     * @param firstParagraph the first lost paragraph (0 based), or -1 if unknown.
+     * @param paragraphCount the number of lost paragraphs, or -1 if unknown.
+     * @param textLength     the number of lost characters, or -1 if unknown.
+     */
+    public record LostRange(int chunk, int firstParagraph, int paragraphCount, int textLength) {
+        /**
+         * Describes the range for the user.
+         *
+         * @return a one line description.
+         */
+        public String describe() {
+            if (firstParagraph < 0) {
+                return "An unknown part of the text";
+            }
+            String paragraphs;
+            if (paragraphCount < 0) {
+                paragraphs = "The text from paragraph " + (firstParagraph + 1);
+            } else if (paragraphCount <= 1) {
+                paragraphs = "Paragraph " + (firstParagraph + 1);
+            } else {
+                paragraphs = "Paragraphs " + (firstParagraph + 1) + " to " + (firstParagraph + paragraphCount);
+            }
+            return textLength < 0 ? paragraphs : "%s (%,d characters)".formatted(paragraphs, textLength);
+        }
+    }
+
+    /**
+     * What a load recovered and what it lost.
+     *
+     * @param chunkCount    the number of chunks the note was saved with, or -1 if unknown.
+     * @param lost          the text that could not be recovered.
+     * @param otherProblems problems outside the text, such as unreadable images.
+     */
+    public record RecoveryReport(int chunkCount, List<LostRange> lost, List<String> otherProblems) {
+        /**
+         * A report of a load that recovered everything.
+         */
+        public static final RecoveryReport INTACT = new RecoveryReport(0, List.of(), List.of());
+
+        /**
+         * Checks whether anything was lost.
+         *
+         * @return true if some text or other data could not be recovered.
+         */
+        public boolean isDamaged() {
+            return !lost.isEmpty() || !otherProblems.isEmpty();
+        }
+
+        /**
+         * Returns a report with one more problem outside the text.
+         *
+         * @param problem the description of the problem.
+         * @return the new report.
+         */
+        public RecoveryReport withProblem(String problem) {
+            List<String> problems = new ArrayList<>(otherProblems);
+            problems.add(problem);
+            return new RecoveryReport(chunkCount, lost, List.copyOf(problems));
+        }
+
+        /**
+         * Describes the damage for the user.
+         *
+         * @return one line per lost range or problem.
+         */
+        public String describe() {
+            StringBuilder text = new StringBuilder();
+            for (LostRange range : lost) {
+                text.append(range.describe()).append(" could not be recovered.\n");
+            }
+            for (String problem : otherProblems) {
+                text.append(problem).append('\n');
+            }
+            return text.toString().strip();
+        }
+    }
+
+    /**
+     * The text and styles read from the chunks that passed their checksum.
+     *
+     * @param text   the recovered text.
+     * @param spans  the styles of the recovered text.
+     * @param report what was lost.
+     */
+    public record Content(String text, StyleSpans<String> spans, RecoveryReport report) {
+    }
+
+    /**
+     * Writes styled text as chunks.
+     *
+     * @param out   the stream to write to; it is not closed.
+     * @param text  the text.
+     * @param spans the styles of the text.
+     * @return the number of chunks written.
+     * @throws IOException if an I/O error occurs.
+     */
+    public static int write(OutputStream out, String text, StyleSpans<String> spans) throws IOException {
+        List<int[]> bounds = split(text);
+        DataOutputStream data = new DataOutputStream(out);
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES)
+                .putInt(HEADER_MAGIC).put(VERSION).putInt(bounds.size())
+                .putInt(countParagraphs(text, 0, text.length())).putInt(text.length());
+        header.putInt(crc(header.array(), 0, HEADER_BYTES - 4));
+        data.write(header.array());
+
+        Iterator<StyleSpan<String>> spanIterator = spans.iterator();
+        StyleSpan<String> span = spanIterator.hasNext() ? spanIterator.next() : null;
+        int spanRemaining = span == null ? 0 : span.getLength();
+
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+        byte[] buffer = new byte[8192];
+        int paragraph = 0;
+        try {
+            for (int index = 0; index < bounds.size(); index++) {
+                int start = bounds.get(index)[0];
+                int end = bounds.get(index)[1];
+                int paragraphs = countParagraphs(text, start, end);
+
+                // Payload: text, then the slice of the style spans that covers it.
+                ByteArrayOutputStream raw = new ByteArrayOutputStream((end - start) + 256);
+                DataOutputStream payload = new DataOutputStream(raw);
+                byte[] utf8 = text.substring(start, end).getBytes(StandardCharsets.UTF_8);
+                payload.writeInt(utf8.length);
+                payload.write(utf8);
+
+                Map<String, Integer> styleIds = new HashMap<>();
+                List<String> styles = new ArrayList<>();
+                List<int[]> chunkSpans = new ArrayList<>();
+                int covered = 0;
+                while (covered < end - start && span != null) {
+                    int length = Math.min(spanRemaining, end - start - covered);
+                    if (length > 0) {
+                        int id = styleIds.computeIfAbsent(span.getStyle(), style -> {
+                            styles.add(style);
+                            return styles.size() - 1;
+                        });
+                        chunkSpans.add(new int[]{length, id});
+                        covered += length;
+                        spanRemaining -= length;
+                    }
+                    if (spanRemaining == 0) {
+                        span = spanIterator.hasNext() ? spanIterator.next() : null;
+                        spanRemaining = span == null ? 0 : span.getLength();
+                    }
+                }
+                payload.writeInt(styles.size());
+                for (String style : styles) {
+                    payload.writeUTF(style);
+                }
+                payload.writeInt(chunkSpans.size());
+                for (int[] chunkSpan : chunkSpans) {
+                    payload.writeInt(chunkSpan[0]);
+                    payload.writeInt(chunkSpan[1]);
+                }
+
+                ByteArrayOutputStream compressed = new ByteArrayOutputStream(raw.size() / 2 + 64);
+                deflater.reset();
+                deflater.setInput(raw.toByteArray());
+                deflater.finish();
+                while (!deflater.finished()) {
+                    int count = deflater.deflate(buffer);
+                    compressed.write(buffer, 0, count);
+                }
+                byte[] body = compressed.toByteArray();
+
+                ByteBuffer chunkHeader = ByteBuffer.allocate(CHUNK_HEADER_BYTES)
+                        .putInt(CHUNK_MAGIC).putInt(index).putInt(paragraph).putInt(paragraphs)
+                        .putInt(end - start).putInt(body.length);
+                CRC32C crc = new CRC32C();
+                crc.update(chunkHeader.array(), 4, CHUNK_HEADER_BYTES - 8);
+                crc.update(body);
+                chunkHeader.putInt((int) crc.getValue());
+
+                data.write(chunkHeader.array());
+                data.write(body);
+                paragraph += paragraphs;
+            }
+        } finally {
+            deflater.end();
+        }
+        data.writeInt(END_MAGIC);
+        data.flush();
+        return bounds.size();
+    }
+
+    /**
+     * Reads as many chunks as possible. Never fails on damaged data; whatever
+     * could not be read is listed in the report of the result.
+     * <p>
+     * A ZIP entry with a damaged byte fails its CRC check on the read that
+     * reaches its end, losing the bytes of that read. When the size is known,
+     * the trailer is read on its own so that only the trailer can be lost.
+     *
+     * @param in   the stream to read from, positioned at the header.
+     * @param size the number of bytes written, or -1 if unknown.
+     * @return the recovered content.
+     */
+    public static Content read(InputStream in, long size) {
+        byte[] bytes = readAvailable(in, size);
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+
+        // The header tells how much there should be; without it, whatever chunks are found are used.
+        int expectedChunks = -1;
+        int expectedParagraphs = -1;
+        int expectedLength = -1;
+        if (bytes.length >= HEADER_BYTES && buffer.getInt(0) == HEADER_MAGIC
+                && buffer.getInt(HEADER_BYTES - 4) == crc(bytes, 0, HEADER_BYTES - 4)) {
+            expectedChunks = buffer.getInt(5);
+            expectedParagraphs = buffer.getInt(9);
+            expectedLength = buffer.getInt(13);
+        }
+
+        TreeMap<Integer, Chunk> chunks = new TreeMap<>();
+        Inflater inflater = new Inflater();
+        try {
+            int position = bytes.length >= HEADER_BYTES && buffer.getInt(0) == HEADER_MAGIC ? HEADER_BYTES : 0;
+            while ((position = findChunk(bytes, position)) >= 0) {
+                Chunk chunk = readChunk(buffer, position, inflater);
+                if (chunk == null) {
+                    // Damaged: look for the next marker right after this one, as the length may be wrong too.
+                    position += 4;
+                } else {
+                    chunks.putIfAbsent(chunk.index, chunk);
+                    position = chunk.end;
+                }
+            }
+        } finally {
+            inflater.end();
+        }
+
+        return assemble(chunks, expectedChunks, expectedParagraphs, expectedLength);
+    }
+
+    /**
+     * One chunk that passed its checksum.
+     */
+    private record Chunk(int index, int firstParagraph, int paragraphCount, String text, List<String> styles,
+                         int[] spans, int end) {
+    }
+
+    private static Content assemble(TreeMap<Integer, Chunk> chunks, int expectedChunks, int expectedParagraphs, int expectedLength) {
+        StringBuilder text = new StringBuilder();
+        StyleSpansBuilder<String> spans = new StyleSpansBuilder<>();
+        List<LostRange> lost = new ArrayList<>();
+        boolean anySpans = false;
+
+        int nextIndex = 0;
+        int nextParagraph = 0;
+        int nextOffset = 0;
+        for (Chunk chunk : chunks.values()) {
+            if (expectedChunks >= 0 && chunk.index >= expectedChunks) {
+                break;
+            }
+            if (chunk.index > nextIndex) {
+                lost.add(new LostRange(chunk.index - nextIndex == 1 ? nextIndex : -1, nextParagraph,
+                        chunk.firstParagraph - nextParagraph, -1));
+            }
+            text.append(chunk.text);
+            for (int i = 0; i < chunk.spans.length; i += 2) {
+                spans.add(chunk.styles.get(chunk.spans[i + 1]), chunk.spans[i]);
+                anySpans = true;
+            }
+            nextIndex = chunk.index + 1;
+            nextParagraph = chunk.firstParagraph + chunk.paragraphCount;
+            nextOffset += chunk.text.length();
+        }
+
+        // Chunks missing at the end, usually from a truncated write.
+        if (expectedChunks >= 0 && nextIndex < expectedChunks) {
+            int missingParagraphs = expectedParagraphs >= 0 ? expectedParagraphs - nextParagraph : -1;
+            lost.add(new LostRange(expectedChunks - nextIndex == 1 ? nextIndex : -1, nextParagraph, missingParagraphs, -1));
+        } else if (expectedChunks < 0 && chunks.isEmpty()) {
+            lost.add(new LostRange(-1, -1, -1, -1));
+        }
+
+        // With a single gap, the header tells how long it was.
+        if (lost.size() == 1 && lost.getFirst().firstParagraph() >= 0 && expectedLength >= 0) {
+            LostRange range = lost.getFirst();
+            lost.set(0, new LostRange(range.chunk(), range.firstParagraph(), range.paragraphCount(), expectedLength - nextOffset));
+        }
+
+        if (!anySpans) {
+            spans.add("", text.length());
+        }
+        return new Content(text.toString(), spans.create(), new RecoveryReport(expectedChunks, List.copyOf(lost), List.of()));
+    }
+
+    private static Chunk readChunk(ByteBuffer buffer, int position, Inflater inflater) {
+        try {
+            if (position + CHUNK_HEADER_BYTES > buffer.limit()) {
+                return null;
+            }
+            int index = buffer.getInt(position + 4);
+            int firstParagraph = buffer.getInt(position + 8);
+            int paragraphCount = buffer.getInt(position + 12);
+            int textLength = buffer.getInt(position + 16);
+            int payloadLength = buffer.getInt(position + 20);
+            int storedCrc = buffer.getInt(position + 24);
+            int bodyStart = position + CHUNK_HEADER_BYTES;
+            if (payloadLength < 0 || payloadLength > MAX_PAYLOAD_BYTES || bodyStart + payloadLength > buffer.limit()) {
+                return null;
+            }
+
+            CRC32C crc = new CRC32C();
+            crc.update(buffer.array(), position + 4, CHUNK_HEADER_BYTES - 8);
+            crc.update(buffer.array(), bodyStart, payloadLength);
+            if ((int) crc.getValue() != storedCrc) {
+                return null;
+            }
+
+            inflater.reset();
+            inflater.setInput(buffer.array(), bodyStart, payloadLength);
+            ByteArrayOutputStream raw = new ByteArrayOutputStream(textLength + 256);
+            byte[] out = new byte[8192];
+            while (!inflater.finished()) {
+                int count = inflater.inflate(out);
+                if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    return null;
+                }
+                raw.write(out, 0, count);
+            }
+
+            DataInputStream payload = new DataInputStream(new ByteArrayInputStream(raw.toByteArray()));
+            byte[] utf8 = new byte[payload.readInt()];
+            payload.readFully(utf8);
+            String text = new String(utf8, StandardCharsets.UTF_8);
+            List<String> styles = new ArrayList<>();
+            int styleCount = payload.readInt();
+            for (int i = 0; i < styleCount; i++) {
+                styles.add(payload.readUTF());
+            }
+            int[] spans = new int[payload.readInt() * 2];
+            for (int i = 0; i < spans.length; i++) {
+                spans[i] = payload.readInt();
+            }
+            return new Chunk(index, firstParagraph, paragraphCount, text, styles, spans, bodyStart + payloadLength);
+        } catch (IOException | DataFormatException | BufferUnderflowException | IndexOutOfBoundsException e) {
+            // Cannot happen after a matching checksum unless the writer was broken; treat as damaged.
+            return null;
+        }
+    }
+
+    /**
+     * Reads the rest of a stream, keeping what was read before a failure such
+     * as a truncated archive or a damaged compressed block.
+     */
+    private static byte[] readAvailable(InputStream in, long size) {
+        long limit = size >= TRAILER_BYTES ? size - TRAILER_BYTES : Long.MAX_VALUE;
+        ByteArrayOutputStream out = new ByteArrayOutputStream(size > 0 && size < Integer.MAX_VALUE ? (int) size : 8192);
+        byte[] buffer = new byte[8192];
+        try {
+            long total = 0;
+            int count;
+            while (total < limit && (count = in.read(buffer, 0, (int) Math.min(buffer.length, limit - total))) != -1) {
+                out.write(buffer, 0, count);
+                total += count;
+            }
+            if (size >= TRAILER_BYTES) {
+                in.readNBytes(TRAILER_BYTES);
+            }
+        } catch (IOException e) {
+            System.err.println("Note content is truncated or damaged: " + e.getMessage());
+        }
+        return out.toByteArray();
+    }
+
+    private static int findChunk(byte[] bytes, int from) {
+        for (int i = from; i + 4 <= bytes.length; i++) {
+            if (bytes[i] == 'N' && bytes[i + 1] == 'T' && bytes[i + 2] == 'C' && bytes[i + 3] == 'K') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Splits text into chunk ranges ending after a line break where possible.
+     */
+    private static List<int[]> split(String text) {
+        List<int[]> bounds = new ArrayList<>();
+        int start = 0;
+        do {
+            int end = Math.min(text.length(), start + CHUNK_CHARS);
+            if (end < text.length()) {
+                int lineEnd = text.lastIndexOf('\n', end - 1);
+                if (lineEnd >= start) {
+                    end = lineEnd + 1;
+                } else if (Character.isHighSurrogate(text.charAt(end - 1))) {
+                    end--;
+                }
+            }
+            bounds.add(new int[]{start, end});
+            start = end;
+        } while (start < text.length());
+        return bounds;
+    }
+
+    /**
+     * Counts the paragraphs starting in a range. The empty paragraph after a
+     * final line break is counted in the range that ends the text.
+     */
+    private static int countParagraphs(String text, int start, int end) {
+        int count = start == 0 || text.charAt(start - 1) == '\n' ? 1 : 0;
+        for (int i = start; i < end - 1; i++) {
+            if (text.charAt(i) == '\n') {
+                count++;
+            }
+        }
+        if (end == text.length() && end > start && text.charAt(end - 1) == '\n') {
+            count++;
+        }
+        return count;
+    }
+
+    private static int crc(byte[] bytes, int offset, int length) {
+        CRC32C crc = new CRC32C();
+        crc.update(bytes, offset, length);
+        return (int) crc.getValue();
+    }
+}
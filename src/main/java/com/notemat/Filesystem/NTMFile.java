@@ -2,16 +2,23 @@ package com.notemat.Filesystem;
 
 import com.notemat.Components.EditorWindow;
 import com.notemat.Components.ImageComponent;
-import com.notemat.Components.ToolBar;
+import com.notemat.Diagnostics.LoadEvent;
+import com.notemat.Diagnostics.PhaseTracer;
+import com.notemat.Diagnostics.SaveEvent;
+import com.notemat.Utils.EditTransaction;
 import javafx.embed.swing.SwingFXUtils;
 import javafx.scene.image.Image;
-import org.fxmisc.richtext.model.StyleSpan;
 import org.fxmisc.richtext.model.StyleSpans;
 import org.fxmisc.richtext.model.StyleSpansBuilder;
 import org.fxmisc.richtext.InlineCssTextArea;
 import java.awt.image.BufferedImage;
 import java.io.*;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
+import java.util.zip.CRC32;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
 import java.util.zip.ZipOutputStream;
@@ -20,13 +27,35 @@ import javax.imageio.ImageIO;
 /**
  * Handles saving and loading of EditorWindow files in a custom format.
  * The file format is a ZIP archive containing text content (with style spans)
- * and serialized image data.
+ * stored in checksummed chunks by {@link ContentChunks}, the number of images
+ * and the serialized image data, followed by the earlier saved states in a
+ * {@link VersionHistory}.
+ * Files written before the chunked format keep their text in a single
+ * serialized object, which is still read. Password protected notes store the same archive
+ * encrypted by {@link NoteEncryption}.
  */
 public class NTMFile {
     private static final String TEXT_FILE = "content.dat";
+    private static final String CONTENT_FILE = "content.chunks";
     private static final String IMAGES_FILE = "images.dat";
-    private static boolean changedSinceLastSave = false;
-    private static String lastSavedPath = null;
+    private static final String IMAGE_COUNT_FILE = "images.count";
+    private static final String HISTORY_FILE = "history.dat";
+
+    /**
+     * The only classes a serialized image list may contain, Object being the
+     * element type of the array behind the list; anything else in a damaged or
+     * crafted file is rejected before it is created.
+     */
+    private static final ObjectInputFilter IMAGES_FILTER = ObjectInputFilter.Config.createFilter(
+            "java.util.ArrayList;java.lang.Object;" + ImageData.class.getName() + ";maxdepth=4;!*");
+
+    /**
+     * The same for the serialized text of a note written before the chunked
+     * format, which the indexes read without the note ever being opened.
+     */
+    private static final ObjectInputFilter DOCUMENT_FILTER = ObjectInputFilter.Config.createFilter(
+            "java.util.ArrayList;java.lang.Object;" + StyledDocument.class.getName() + ";"
+                    + StyleSpanData.class.getName() + ";maxdepth=4;maxarray=1000000;!*");
 
     /**
      * Serializable class to store image properties and image bytes.
@@ -76,68 +105,154 @@ public class NTMFile {
     }
 
     /**
-     * Saves the current state of the EditorWindow to a file.
+     * What an index needs to know about a note: its text, how many images it
+     * holds and whether it could be read at all.
+     *
+     * @param text       the text of the note; empty for an encrypted note.
+     * @param imageCount the number of images.
+     * @param encrypted  true if the note is password protected and was not read.
+     * @param damaged    true if parts of the text were lost.
+     */
+    public record Summary(String text, int imageCount, boolean encrypted, boolean damaged) {
+    }
+
+    /**
+     * Saves the current state of the EditorWindow to a file. The file is
+     * written next to the target and moved over it once complete, so a save
+     * that fails halfway leaves the previous version intact.
      *
      * @param editor   the EditorWindow instance to save
      * @param filePath the path to the file
      * @throws IOException if an I/O error occurs
      */
     public static void saveToFile(EditorWindow editor, String filePath) throws IOException {
-
-        if (!filePath.endsWith(".ntm")) {
-            filePath += ".ntm";
+        filePath = withExtension(filePath);
+        long start = System.nanoTime();
+        SaveEvent event = new SaveEvent();
+        event.begin();
+        int spanCount;
+        int imageCount;
+        // The state being saved becomes the newest version; the one saved before moves into the history.
+        // The history is written with the file, so it is committed first and rolled back if the save fails.
+        InlineCssTextArea richTextArea = editor.getRichTextArea();
+        String text = richTextArea.getText();
+        StyleSpans<String> styleSpans = richTextArea.getStyleSpans(0, text.length());
+        VersionHistory history = editor.getVersionHistory();
+        VersionHistory.Checkpoint checkpoint = history.checkpoint();
+        history.commit(text, styleSpans, System.currentTimeMillis());
+
+        Path target = Path.of(filePath);
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        try {
+            try (OutputStream out = openOutput(filePath, temp); ZipOutputStream zos = new ZipOutputStream(out)) {
+                // Save styled text content, images and the earlier versions.
+                spanCount = saveTextContent(zos, text, styleSpans);
+                imageCount = saveImages(editor, zos);
+                saveHistory(editor, zos);
+            }
+            try {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temp);
+            history.rollback(checkpoint);
+            throw e;
         }
-        try (FileOutputStream fos = new FileOutputStream(filePath); ZipOutputStream zos = new ZipOutputStream(fos)) {
-            // Save the file path and update changedSinceLastSave.
-            lastSavedPath = filePath;
-            changedSinceLastSave = false;
-
-            // Save styled text content and images.
-            saveTextContent(editor, zos);
-            saveImages(editor, zos);
+
+        // Keep the search index of the folder current; the text of an encrypted note is not indexed.
+        SearchIndex.noteSaved(filePath, NoteEncryption.getKey(filePath) == null ? text : null);
+
+        // The window now belongs to the saved file and has no unsaved changes.
+        editor.setSaveState(filePath, false);
+        editor.setLastSave(System.nanoTime() - start);
+
+        event.end();
+        if (event.shouldCommit()) {
+            event.path = filePath;
+            event.bytesWritten = new File(filePath).length();
+            event.textLength = editor.getRichTextArea().getLength();
+            event.spanCount = spanCount;
+            event.imageCount = imageCount;
+            event.commit();
         }
     }
 
     /**
-     * Saves the styled text content, including the plain text and its style spans.
+     * Appends the .ntm extension to a path if it is missing, as saving does.
      *
-     * @param editor the EditorWindow to retrieve content from.
-     * @param zos    the ZipOutputStream to write to.
-     * @throws IOException if an I/O error occurs.
+     * @param filePath the path to the file.
+     * @return the path the file is saved to.
      */
-    private static void saveTextContent(EditorWindow editor, ZipOutputStream zos) throws IOException {
-        ZipEntry textEntry = new ZipEntry(TEXT_FILE);
-        zos.putNextEntry(textEntry);
-
-        InlineCssTextArea richTextArea = editor.getRichTextArea();
-        String text = richTextArea.getText();
-        StyleSpans<String> styleSpans = richTextArea.getStyleSpans(0, text.length());
+    public static String withExtension(String filePath) {
+        return filePath.endsWith(".ntm") ? filePath : filePath + ".ntm";
+    }
 
-        // Convert the style spans to a serializable list.
-        ArrayList<StyleSpanData> spanDataList = new ArrayList<>();
-        for (StyleSpan<String> span : styleSpans) {
-            spanDataList.add(new StyleSpanData(span.getLength(), span.getStyle()));
+    /**
+     * Opens a file for writing, encrypting it if a key was set for the file.
+     *
+     * @param filePath the path to the file.
+     * @param temp     the path to write to until the file is complete.
+     * @return the stream to write the archive to.
+     * @throws IOException if the file cannot be opened.
+     */
+    private static OutputStream openOutput(String filePath, Path temp) throws IOException {
+        NoteEncryption.Key key = NoteEncryption.getKey(filePath);
+        FileOutputStream fos = new FileOutputStream(temp.toFile());
+        if (key == null) {
+            return fos;
+        }
+        try {
+            return NoteEncryption.encrypt(fos, key);
+        } catch (IOException e) {
+            fos.close();
+            throw e;
         }
-        StyledDocument styledDoc = new StyledDocument(text, spanDataList);
+    }
 
-        // Write the StyledDocument via an ObjectOutputStream.
-        ObjectOutputStream oos = new ObjectOutputStream(zos);
-        oos.writeObject(styledDoc);
-        oos.flush();
+    /**
+     * Saves the styled text content, including the plain text and its style
+     * spans, as checksummed chunks.
+     * <p>
+     * The chunks are compressed on their own, so the entry is stored without
+     * ZIP compression: a damaged byte in a deflated entry would make everything
+     * after it unreadable, while in a stored entry it only affects its chunk.
+     *
+     * @param zos        the ZipOutputStream to write to.
+     * @param text       the text of the note.
+     * @param styleSpans the styles of the text.
+     * @return the number of style spans written.
+     * @throws IOException if an I/O error occurs.
+     */
+    private static int saveTextContent(ZipOutputStream zos, String text, StyleSpans<String> styleSpans) throws IOException {
+        // Stored entries need their size and CRC up front; the compressed chunks are small.
+        ByteArrayOutputStream chunks = new ByteArrayOutputStream();
+        ContentChunks.write(chunks, text, styleSpans);
+        CRC32 crc = new CRC32();
+        crc.update(chunks.toByteArray());
+
+        ZipEntry contentEntry = new ZipEntry(CONTENT_FILE);
+        contentEntry.setMethod(ZipEntry.STORED);
+        contentEntry.setSize(chunks.size());
+        contentEntry.setCompressedSize(chunks.size());
+        contentEntry.setCrc(crc.getValue());
+        zos.putNextEntry(contentEntry);
+        chunks.writeTo(zos);
         zos.closeEntry();
+        return styleSpans.getSpanCount();
     }
 
     /**
-     * Saves all images added to the editor as a serialized ArrayList.
+     * Saves all images added to the editor as a serialized ArrayList, preceded
+     * by their number so indexes can count them without reading the images.
      *
      * @param editor the EditorWindow containing image components.
      * @param zos    the ZipOutputStream to write image data to.
+     * @return the number of images written.
      * @throws IOException if an I/O error occurs.
      */
-    private static void saveImages(EditorWindow editor, ZipOutputStream zos) throws IOException {
-        ZipEntry imagesEntry = new ZipEntry(IMAGES_FILE);
-        zos.putNextEntry(imagesEntry);
-
+    private static int saveImages(EditorWindow editor, ZipOutputStream zos) throws IOException {
         ArrayList<ImageData> imageDataList = new ArrayList<>();
 
         editor.getImageLayer().getChildren().forEach(node -> {
@@ -154,19 +269,41 @@ public class NTMFile {
             }
         });
 
-        // Write ArrayList<ImageData> object.
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        try (ObjectOutputStream oos = new ObjectOutputStream(baos)) {
-            oos.writeObject(imageDataList);
-        }
-        byte[] bytes = baos.toByteArray();
-        zos.write(bytes, 0, bytes.length);
+        zos.putNextEntry(new ZipEntry(IMAGE_COUNT_FILE));
+        DataOutputStream count = new DataOutputStream(zos);
+        count.writeInt(imageDataList.size());
+        count.flush();
+        zos.closeEntry();
+
+        ZipEntry imagesEntry = new ZipEntry(IMAGES_FILE);
+        zos.putNextEntry(imagesEntry);
+
+        // Write ArrayList<ImageData> object straight into the entry, without closing the archive.
+        ObjectOutputStream oos = new ObjectOutputStream(zos);
+        oos.writeObject(imageDataList);
+        oos.flush();
+        zos.closeEntry();
+        return imageDataList.size();
+    }
+
+    /**
+     * Saves the earlier versions of the note.
+     *
+     * @param editor the EditorWindow whose history is saved.
+     * @param zos    the ZipOutputStream to write to.
+     * @throws IOException if an I/O error occurs.
+     */
+    private static void saveHistory(EditorWindow editor, ZipOutputStream zos) throws IOException {
+        zos.putNextEntry(new ZipEntry(HISTORY_FILE));
+        editor.getVersionHistory().write(zos);
         zos.closeEntry();
     }
 
     /**
      * Loads the state of the EditorWindow from a file.
-     * Restores both the styled text content and images.
+     * Restores both the styled text content and images. Damaged chunks of text
+     * and unreadable images are skipped; what was lost is available from
+     * {@link EditorWindow#getLastRecoveryReport()} afterwards.
      *
      * @param editor   the EditorWindow instance to load into.
      * @param filePath the path to the file.
@@ -174,47 +311,293 @@ public class NTMFile {
      * @throws ClassNotFoundException if a required class is not found.
      */
     public static void loadFromFile(EditorWindow editor, String filePath) throws IOException, ClassNotFoundException {
+        long start = System.nanoTime();
+        LoadEvent event = new LoadEvent();
+        event.begin();
+        int spanCount = 0;
+        int imageCount = 0;
+        boolean textLoaded = false;
+        VersionHistory history = null;
+        ContentChunks.RecoveryReport report = ContentChunks.RecoveryReport.INTACT;
+
+        try (PhaseTracer.Phase ignored = PhaseTracer.begin("NTMFile.loadFromFile");
+             InputStream in = openInput(editor, filePath); ZipInputStream zis = new ZipInputStream(in)) {
+            try {
+                ZipEntry entry;
+                while ((entry = zis.getNextEntry()) != null) {
+                    switch (entry.getName()) {
+                        case CONTENT_FILE -> {
+                            try (PhaseTracer.Phase textPhase = PhaseTracer.begin("NTMFile.loadContentChunks")) {
+                                ContentChunks.Content content = ContentChunks.read(zis, entry.getSize());
+                                spanCount = applyTextContent(editor, content.text(), content.spans());
+                                report = content.report();
+                                textLoaded = true;
+                            }
+                        }
+                        case TEXT_FILE -> {
+                            try (PhaseTracer.Phase textPhase = PhaseTracer.begin("NTMFile.loadTextContent")) {
+                                spanCount = loadTextContent(editor, zis);
+                                textLoaded = true;
+                            }
+                        }
+                        case IMAGES_FILE -> {
+                            try (PhaseTracer.Phase imagesPhase = PhaseTracer.begin("NTMFile.loadImages")) {
+                                imageCount = loadImages(editor, zis);
+                            } catch (IOException | ClassNotFoundException e) {
+                                e.printStackTrace();
+                                report = report.withProblem("The images could not be recovered.");
+                            }
+                        }
+                        case HISTORY_FILE -> {
+                            try (PhaseTracer.Phase historyPhase = PhaseTracer.begin("NTMFile.loadHistory")) {
+                                history = VersionHistory.read(zis);
+                            } catch (IOException e) {
+                                e.printStackTrace();
+                                report = report.withProblem("The earlier versions could not be recovered.");
+                            }
+                        }
+                    }
+                    zis.closeEntry();
+                }
+
+                // Read past the central directory so the last chunk of an encrypted note is authenticated too.
+                in.transferTo(OutputStream.nullOutputStream());
+            } catch (IOException e) {
+                // Keep what was read if the damage is behind the text.
+                if (!textLoaded) {
+                    throw e;
+                }
+                e.printStackTrace();
+                report = report.withProblem("The end of the file is damaged; images after it may be missing.");
+            }
+        }
+
+        // The window now belongs to the loaded file. A damaged note counts as changed until saved again.
+        editor.setSaveState(filePath, report.isDamaged());
+
+        // The loaded content is the newest version of the history.
+        if (history == null) {
+            history = new VersionHistory();
+        }
+        InlineCssTextArea richTextArea = editor.getRichTextArea();
+        history.resume(richTextArea.getText(), richTextArea.getStyleSpans(0, richTextArea.getLength()), new File(filePath).lastModified());
+        editor.setVersionHistory(history);
+        editor.setLastLoad(System.nanoTime() - start, report);
+
+        event.end();
+        if (event.shouldCommit()) {
+            event.path = filePath;
+            event.bytesRead = new File(filePath).length();
+            event.textLength = editor.getRichTextArea().getLength();
+            event.spanCount = spanCount;
+            event.imageCount = imageCount;
+            event.commit();
+        }
+    }
+
+    /**
+     * Reads only the styled text of a note, without loading it into an
+     * editor, for example to compare two notes.
+     *
+     * @param editor   the EditorWindow asking for the passphrase of an encrypted note.
+     * @param filePath the path to the file.
+     * @return the text, its style spans and what could not be recovered.
+     * @throws IOException            if the file cannot be read or has no text.
+     * @throws ClassNotFoundException if a required class is not found.
+     */
+    public static ContentChunks.Content readContent(EditorWindow editor, String filePath) throws IOException, ClassNotFoundException {
+        try (InputStream in = openInput(editor, filePath); ZipInputStream zis = new ZipInputStream(in)) {
+            ZipEntry entry;
+            while ((entry = zis.getNextEntry()) != null) {
+                switch (entry.getName()) {
+                    case CONTENT_FILE -> {
+                        return ContentChunks.read(zis, entry.getSize());
+                    }
+                    case TEXT_FILE -> {
+                        return readStyledDocument(zis);
+                    }
+                }
+                zis.closeEntry();
+            }
+        }
+        throw new IOException(filePath + " contains no text.");
+    }
 
-        try (FileInputStream fis = new FileInputStream(filePath); ZipInputStream zis = new ZipInputStream(fis)) {
+    /**
+     * Reads the text and counts the images of a note for an index. Encrypted
+     * notes are not decrypted, so their text never ends up in an index. The
+     * images themselves are only read, restricted to the classes of an image
+     * list, for notes saved before their number was stored.
+     *
+     * @param filePath the path to the file.
+     * @return the summary of the note.
+     * @throws IOException            if the file cannot be read.
+     * @throws ClassNotFoundException if a required class is not found.
+     */
+    public static Summary readSummary(String filePath) throws IOException, ClassNotFoundException {
+        try (InputStream in = new BufferedInputStream(new FileInputStream(filePath))) {
+            if (NoteEncryption.isEncrypted(in)) {
+                return new Summary("", 0, true, false);
+            }
+
+            String text = "";
+            int imageCount = 0;
+            boolean imagesCounted = false;
+            boolean damaged = false;
+            ZipInputStream zis = new ZipInputStream(in);
             ZipEntry entry;
             while ((entry = zis.getNextEntry()) != null) {
                 switch (entry.getName()) {
-                    case TEXT_FILE -> loadTextContent(editor, zis);
-                    case IMAGES_FILE -> loadImages(editor, zis);
+                    case CONTENT_FILE -> {
+                        ContentChunks.Content content = ContentChunks.read(zis, entry.getSize());
+                        text = content.text();
+                        damaged = content.report().isDamaged();
+                    }
+                    case TEXT_FILE -> text = readStyledDocument(zis).text();
+                    case IMAGE_COUNT_FILE -> {
+                        imageCount = new DataInputStream(zis).readInt();
+                        imagesCounted = true;
+                    }
+                    case IMAGES_FILE -> {
+                        if (!imagesCounted) {
+                            imageCount = ((ArrayList<?>) readImageList(zis)).size();
+                        }
+                    }
                 }
                 zis.closeEntry();
+            }
+            return new Summary(text, imageCount, false, damaged);
+        }
+    }
 
-                // Save the file path and update changedSinceLastSave.
-                lastSavedPath = filePath;
-                changedSinceLastSave = false;
+    /**
+     * Reads only the text of a note, stopping at the end of the text entry.
+     *
+     * @param filePath the path to the file.
+     * @return the text, or null if the note is encrypted.
+     * @throws IOException            if the file cannot be read or has no text.
+     * @throws ClassNotFoundException if a required class is not found.
+     */
+    public static String readText(String filePath) throws IOException, ClassNotFoundException {
+        try (InputStream in = new BufferedInputStream(new FileInputStream(filePath))) {
+            if (NoteEncryption.isEncrypted(in)) {
+                return null;
+            }
+            ZipInputStream zis = new ZipInputStream(in);
+            ZipEntry entry;
+            while ((entry = zis.getNextEntry()) != null) {
+                switch (entry.getName()) {
+                    case CONTENT_FILE -> {
+                        return ContentChunks.read(zis, entry.getSize()).text();
+                    }
+                    case TEXT_FILE -> {
+                        return readStyledDocument(zis).text();
+                    }
+                }
+                zis.closeEntry();
             }
         }
+        throw new IOException(filePath + " contains no text.");
     }
 
     /**
-     * Loads the styled text content and re-applies both the plain text and its style spans.
+     * Opens a file for reading. If the file is encrypted, the key is taken from
+     * the session cache or derived from a passphrase the user is asked for.
+     *
+     * @param editor   the EditorWindow asking for the passphrase.
+     * @param filePath the path to the file.
+     * @return the stream to read the archive from.
+     * @throws IOException if the file cannot be opened, the user cancels or
+     *                     the passphrase is wrong.
+     */
+    private static InputStream openInput(EditorWindow editor, String filePath) throws IOException {
+        InputStream in = new BufferedInputStream(new FileInputStream(filePath));
+        try {
+            // Keys are kept under the path saving writes to, which has the extension.
+            if (!NoteEncryption.isEncrypted(in)) {
+                NoteEncryption.setKey(withExtension(filePath), null);
+                return in;
+            }
+
+            NoteEncryption.Header header = NoteEncryption.readHeader(in);
+            NoteEncryption.Key key = NoteEncryption.getCachedKey(header);
+            if (key == null || !NoteEncryption.checkKey(header, key)) {
+                key = null;
+                for (int attempt = 0; attempt < 3 && key == null; attempt++) {
+                    char[] passphrase = editor.requestPassphrase(new File(filePath).getName(), attempt > 0);
+                    if (passphrase == null) {
+                        throw new IOException("Opening " + filePath + " was cancelled.");
+                    }
+                    NoteEncryption.Key candidate = NoteEncryption.deriveKey(passphrase, header);
+                    if (NoteEncryption.checkKey(header, candidate)) {
+                        key = candidate;
+                    }
+                }
+                if (key == null) {
+                    throw new NoteEncryption.WrongPassphraseException();
+                }
+            }
+
+            // Saving the note again keeps it encrypted with the same passphrase.
+            NoteEncryption.setKey(withExtension(filePath), key);
+            return NoteEncryption.decrypt(in, header, key);
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Loads the styled text content and replaces the document with the text and
+     * its style spans in a single update.
      *
      * @param editor the EditorWindow to load text into.
      * @param zis    the ZipInputStream from which to read.
+     * @return the number of style spans applied.
+     * @throws IOException            if an I/O error occurs.
+     * @throws ClassNotFoundException if the StyledDocument class is not found.
+     */
+    private static int loadTextContent(EditorWindow editor, ZipInputStream zis) throws IOException, ClassNotFoundException {
+        ContentChunks.Content content = readStyledDocument(zis);
+        return applyTextContent(editor, content.text(), content.spans());
+    }
+
+    /**
+     * Reads the serialized text content of a file written before the chunked
+     * format.
+     *
+     * @param zis the ZipInputStream from which to read.
+     * @return the text and its style spans.
      * @throws IOException            if an I/O error occurs.
      * @throws ClassNotFoundException if the StyledDocument class is not found.
      */
-    private static void loadTextContent(EditorWindow editor, ZipInputStream zis) throws IOException, ClassNotFoundException {
+    private static ContentChunks.Content readStyledDocument(ZipInputStream zis) throws IOException, ClassNotFoundException {
         ObjectInputStream ois = new ObjectInputStream(zis);
+        ois.setObjectInputFilter(DOCUMENT_FILTER);
         StyledDocument styledDoc = (StyledDocument) ois.readObject();
-        InlineCssTextArea richTextArea = editor.getRichTextArea();
-
-        // Replace all text in the text area.
-        richTextArea.replaceText(styledDoc.text);
 
         // Build a StyleSpans object using the saved spans.
         StyleSpansBuilder<String> builder = new StyleSpansBuilder<>();
         for (StyleSpanData spanData : styledDoc.spans) {
             builder.add(spanData.style, spanData.length);
         }
+        return new ContentChunks.Content(styledDoc.text, builder.create(), ContentChunks.RecoveryReport.INTACT);
+    }
 
-        // Apply the style spans. The total length should match the text.
-        richTextArea.setStyleSpans(0, builder.create());
+    /**
+     * Replaces the document with styled text in a single update.
+     *
+     * @param editor the EditorWindow to load text into.
+     * @param text   the text.
+     * @param spans  the styles of the text; their total length should match the text.
+     * @return the number of style spans applied.
+     */
+    private static int applyTextContent(EditorWindow editor, String text, StyleSpans<String> spans) {
+        InlineCssTextArea richTextArea = editor.getRichTextArea();
+        new EditTransaction(richTextArea)
+                .replace(0, richTextArea.getLength(), text, spans)
+                .commit();
+        return spans.getSpanCount();
     }
 
     /**
@@ -222,64 +605,44 @@ public class NTMFile {
      *
      * @param editor the EditorWindow to load images into.
      * @param zis    the ZipInputStream from which to read.
+     * @return the number of images loaded.
      * @throws IOException            if an I/O error occurs.
      * @throws ClassNotFoundException if the ImageData class is not found.
      */
-    private static void loadImages(EditorWindow editor, ZipInputStream zis) throws IOException, ClassNotFoundException {
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        byte[] buffer = new byte[1024];
-        int len;
-        while ((len = zis.read(buffer)) > 0) {
-            baos.write(buffer, 0, len);
-        }
-        byte[] bytes = baos.toByteArray();
-
+    private static int loadImages(EditorWindow editor, ZipInputStream zis) throws IOException, ClassNotFoundException {
         // Remove existing ImageComponents.
         editor.getImageLayer().getChildren().removeIf(node -> node instanceof ImageComponent);
 
-        try (ByteArrayInputStream bais = new ByteArrayInputStream(bytes); ObjectInputStream ois = new ObjectInputStream(bais)) {
-            @SuppressWarnings("unchecked") ArrayList<ImageData> imageDataList = (ArrayList<ImageData>) ois.readObject();
-
-            // Recreate ImageComponents from saved data.
-            for (ImageData data : imageDataList) {
-                BufferedImage bImage = data.getImage();
-                Image fxImage = SwingFXUtils.toFXImage(bImage, null);
-                ImageComponent imageComponent = new ImageComponent(fxImage);
-                imageComponent.setLayoutX(data.layoutX);
-                imageComponent.setLayoutY(data.layoutY);
-                // Set width and height if your ImageComponent supports it.
-                imageComponent.setPrefWidth(data.width);
-                imageComponent.setPrefHeight(data.height);
-                editor.getImageLayer().getChildren().add(imageComponent);
-            }
+        // Read straight from the entry; the archive is closed by the caller.
+        @SuppressWarnings("unchecked") ArrayList<ImageData> imageDataList = (ArrayList<ImageData>) readImageList(zis);
+
+        // Recreate ImageComponents from saved data.
+        for (ImageData data : imageDataList) {
+            BufferedImage bImage = data.getImage();
+            Image fxImage = SwingFXUtils.toFXImage(bImage, null);
+            ImageComponent imageComponent = new ImageComponent(fxImage);
+            imageComponent.setLayoutX(data.layoutX);
+            imageComponent.setLayoutY(data.layoutY);
+            // Set width and height if your ImageComponent supports it.
+            imageComponent.setPrefWidth(data.width);
+            imageComponent.setPrefHeight(data.height);
+            editor.getImageLayer().getChildren().add(imageComponent);
         }
+        return imageDataList.size();
     }
 
     /**
-     * Marks the document as changed and updates the filename label in the toolbar.
-     *
-     * @param toolBar the ToolBar instance to update.
-     */
-    public static void markChanged(ToolBar toolBar) {
-        changedSinceLastSave = true;
-        toolBar.updateFilenameLabel();
-    }
-
-    /**
-     * Indicates whether the document has been changed since the last save.
+     * Deserializes the image list of the current entry, rejecting any class
+     * other than those of an image list.
      *
-     * @return true if the document has unsaved changes; false otherwise.
-     */
-    public static boolean getChangedSinceLastSave() {
-        return changedSinceLastSave;
-    }
-
-    /**
-     * Retrieves the last saved file path.
-     *
-     * @return the last saved file path, or null if not set.
+     * @param zis the ZipInputStream, at the start of the images entry.
+     * @return the image list.
+     * @throws IOException            if an I/O error occurs or the entry holds other classes.
+     * @throws ClassNotFoundException if the ImageData class is not found.
      */
-    public static String getLastSavedPath() {
-        return lastSavedPath;
+    private static Object readImageList(ZipInputStream zis) throws IOException, ClassNotFoundException {
+        ObjectInputStream ois = new ObjectInputStream(zis);
+        ois.setObjectInputFilter(IMAGES_FILTER);
+        return ois.readObject();
     }
 }
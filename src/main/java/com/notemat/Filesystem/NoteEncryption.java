@@ -0,0 +1,471 @@
+package com.notemat.Filesystem;
+
+import javax.crypto.AEADBadTagException;
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.PBEKeySpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PushbackInputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+
+/**
+ * Password protection of NTM files. An encrypted file starts with a plain
+ * header followed by the regular NTM archive, encrypted with AES-256-GCM in
+ * chunks of {@value #CHUNK_SIZE} bytes:
+ * <pre>
+ * header:  "NTME" | version (1) | KDF iterations (4) | salt (16) | nonce prefix (8) | key check (16)
+ * chunk i: AES-GCM(plaintext chunk i), 16 byte tag appended
+ * </pre>
+ * The key is derived from the passphrase with PBKDF2-HMAC-SHA256. Each chunk
+ * uses the nonce prefix followed by its index as IV and is authenticated
+ * together with the header, its index and whether it is the last chunk, so
+ * chunks cannot be reordered, dropped or appended. The key check is the tag of
+ * an empty message, which tells a wrong passphrase apart from a damaged file.
+ * <p>
+ * Data is encrypted and decrypted one chunk at a time while the archive is
+ * written or read, so memory use does not grow with the size of the note.
+ * Derived keys are cached for the session, by file and by salt, so saving or
+ * reopening an encrypted note neither asks for the passphrase again nor runs
+ * the deliberately slow key derivation again. A key derived for an existing
+ * file is only cached once it has been checked against the file.
+ */
+public class NoteEncryption {
+    public static final int CHUNK_SIZE = 64 * 1024;
+
+    private static final byte[] MAGIC = {'N', 'T', 'M', 'E'};
+    private static final byte VERSION = 1;
+    private static final int ITERATIONS = 600_000;
+    private static final int MIN_ITERATIONS = 10_000;
+    private static final int MAX_ITERATIONS = 10_000_000;
+    private static final int SALT_BYTES = 16;
+    private static final int NONCE_PREFIX_BYTES = 8;
+    private static final int TAG_BYTES = 16;
+    private static final int KEY_BITS = 256;
+    private static final int KEY_CHECK_INDEX = -1;
+    private static final int HEADER_BYTES = MAGIC.length + 1 + 4 + SALT_BYTES + NONCE_PREFIX_BYTES;
+    private static final String CIPHER = "AES/GCM/NoPadding";
+
+    private static final SecureRandom random = new SecureRandom();
+    private static final Map<String, Key> keysByFile = new ConcurrentHashMap<>();
+    private static final Map<String, Key> keysBySalt = new ConcurrentHashMap<>();
+
+    /**
+     * A key derived from a passphrase, with the parameters that derived it.
+     *
+     * @param salt       the KDF salt.
+     * @param iterations the KDF iteration count.
+     * @param secret     the AES key.
+     */
+    public record Key(byte[] salt, int iterations, SecretKey secret) {
+    }
+
+    /**
+     * The plain header of an encrypted file.
+     *
+     * @param bytes      the header as stored, without the key check; authenticated with every chunk.
+     * @param salt       the KDF salt.
+     * @param iterations the KDF iteration count.
+     * @param prefix     the nonce prefix.
+     * @param keyCheck   the tag proving knowledge of the key.
+     */
+    public record Header(byte[] bytes, byte[] salt, int iterations, byte[] prefix, byte[] keyCheck) {
+    }
+
+    /**
+     * Thrown when a passphrase does not match an encrypted file.
+     */
+    public static class WrongPassphraseException extends IOException {
+        public WrongPassphraseException() {
+            super("Wrong passphrase.");
+        }
+    }
+
+    /**
+     * Checks whether a stream starts with the header of an encrypted file.
+     * The stream must support mark and reset; it is left at its start.
+     *
+     * @param in the stream.
+     * @return true if the file is encrypted.
+     * @throws IOException if the stream cannot be read.
+     */
+    public static boolean isEncrypted(InputStream in) throws IOException {
+        in.mark(MAGIC.length);
+        byte[] magic = in.readNBytes(MAGIC.length);
+        in.reset();
+        return Arrays.equals(magic, MAGIC);
+    }
+
+    /**
+     * Derives a key for a new encrypted file, with a fresh salt.
+     *
+     * @param passphrase the passphrase; cleared afterwards.
+     * @return the key.
+     * @throws IOException if the platform lacks the algorithms.
+     */
+    public static Key createKey(char[] passphrase) throws IOException {
+        byte[] salt = new byte[SALT_BYTES];
+        random.nextBytes(salt);
+        Key key = deriveKey(passphrase, salt, ITERATIONS);
+        keysBySalt.put(saltId(key.salt(), key.iterations()), key);
+        return key;
+    }
+
+    /**
+     * Derives the key of an existing file from a passphrase.
+     *
+     * @param passphrase the passphrase; cleared afterwards.
+     * @param header     the header of the file.
+     * @return the key; it may still be wrong, see {@link #checkKey(Header, Key)}.
+     * @throws IOException if the platform lacks the algorithms.
+     */
+    public static Key deriveKey(char[] passphrase, Header header) throws IOException {
+        return deriveKey(passphrase, header.salt(), header.iterations());
+    }
+
+    /**
+     * Returns a key created or checked earlier in this session for the salt of
+     * a file.
+     *
+     * @param header the header of the file.
+     * @return the key, or null if none is known for this salt yet.
+     */
+    public static Key getCachedKey(Header header) {
+        return keysBySalt.get(saltId(header.salt(), header.iterations()));
+    }
+
+    /**
+     * Remembers the key to save a file with for the rest of the session.
+     *
+     * @param filePath the file.
+     * @param key      its key, or null to save it unencrypted.
+     */
+    public static void setKey(String filePath, Key key) {
+        if (key == null) {
+            keysByFile.remove(normalize(filePath));
+        } else {
+            keysByFile.put(normalize(filePath), key);
+        }
+    }
+
+    /**
+     * Gets the key a file is saved with.
+     *
+     * @param filePath the file.
+     * @return the key, or null if the file is saved unencrypted.
+     */
+    public static Key getKey(String filePath) {
+        return keysByFile.get(normalize(filePath));
+    }
+
+    /**
+     * Reads the header of an encrypted file.
+     *
+     * @param in the stream, at the start of the file.
+     * @return the header.
+     * @throws IOException if the header is missing, truncated, of an unknown
+     *                     version or asks for an unreasonable KDF iteration count.
+     */
+    public static Header readHeader(InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(in);
+        byte[] bytes = new byte[HEADER_BYTES];
+        data.readFully(bytes);
+        byte[] keyCheck = new byte[TAG_BYTES];
+        data.readFully(keyCheck);
+
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        byte[] magic = new byte[MAGIC.length];
+        buffer.get(magic);
+        if (!Arrays.equals(magic, MAGIC)) {
+            throw new IOException("Not an encrypted note.");
+        }
+        byte version = buffer.get();
+        if (version != VERSION) {
+            throw new IOException("Unsupported encrypted note version " + version + ".");
+        }
+        int iterations = buffer.getInt();
+        // A damaged or crafted count would make opening the note fail or hang in the key derivation.
+        if (iterations < MIN_ITERATIONS || iterations > MAX_ITERATIONS) {
+            throw new IOException("Unsupported key derivation iteration count " + iterations + ".");
+        }
+        byte[] salt = new byte[SALT_BYTES];
+        buffer.get(salt);
+        byte[] prefix = new byte[NONCE_PREFIX_BYTES];
+        buffer.get(prefix);
+        return new Header(bytes, salt, iterations, prefix, keyCheck);
+    }
+
+    /**
+     * Checks whether a key opens a file. A matching key is cached for the salt
+     * of the file, see {@link #getCachedKey(Header)}.
+     *
+     * @param header the header of the file.
+     * @param key    the key.
+     * @return true if the key matches.
+     * @throws IOException if the platform lacks the algorithms.
+     */
+    public static boolean checkKey(Header header, Key key) throws IOException {
+        if (!MessageDigest.isEqual(header.keyCheck(), computeKeyCheck(key, header.bytes(), header.prefix()))) {
+            return false;
+        }
+        keysBySalt.put(saltId(header.salt(), header.iterations()), key);
+        return true;
+    }
+
+    /**
+     * Writes the header of a new encrypted file and returns a stream
+     * encrypting everything written to it. Closing it writes the last chunk and
+     * closes {@code out}.
+     *
+     * @param out the file stream.
+     * @param key the key.
+     * @return the encrypting stream.
+     * @throws IOException if the header cannot be written.
+     */
+    public static OutputStream encrypt(OutputStream out, Key key) throws IOException {
+        byte[] prefix = new byte[NONCE_PREFIX_BYTES];
+        random.nextBytes(prefix);
+        byte[] header = ByteBuffer.allocate(HEADER_BYTES)
+                .put(MAGIC).put(VERSION).putInt(key.iterations()).put(key.salt()).put(prefix)
+                .array();
+        out.write(header);
+        out.write(computeKeyCheck(key, header, prefix));
+        return new EncryptingStream(out, key.secret(), header, prefix);
+    }
+
+    /**
+     * Returns a stream decrypting the chunks following the header.
+     *
+     * @param in     the file stream, positioned after the header.
+     * @param header the header.
+     * @param key    the key, already checked with {@link #checkKey(Header, Key)}.
+     * @return the decrypting stream. It fails with an IOException when a chunk
+     * does not authenticate or the file was truncated.
+     */
+    public static InputStream decrypt(InputStream in, Header header, Key key) {
+        return new DecryptingStream(in, key.secret(), header.bytes(), header.prefix());
+    }
+
+    private static Key deriveKey(char[] passphrase, byte[] salt, int iterations) throws IOException {
+        PBEKeySpec spec = new PBEKeySpec(passphrase, salt, iterations, KEY_BITS);
+        try {
+            byte[] encoded = SecretKeyFactory.getInstance("PBKDF2WithHmacSHA256").generateSecret(spec).getEncoded();
+            Key key = new Key(salt.clone(), iterations, new SecretKeySpec(encoded, "AES"));
+            Arrays.fill(encoded, (byte) 0);
+            return key;
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Key derivation is not available.", e);
+        } finally {
+            spec.clearPassword();
+            Arrays.fill(passphrase, '\0');
+        }
+    }
+
+    private static byte[] computeKeyCheck(Key key, byte[] header, byte[] prefix) throws IOException {
+        try {
+            Cipher cipher = Cipher.getInstance(CIPHER);
+            cipher.init(Cipher.ENCRYPT_MODE, key.secret(), new GCMParameterSpec(TAG_BYTES * 8, iv(prefix, KEY_CHECK_INDEX)));
+            cipher.updateAAD(header);
+            return cipher.doFinal();
+        } catch (GeneralSecurityException e) {
+            throw new IOException("AES-GCM is not available.", e);
+        }
+    }
+
+    private static byte[] iv(byte[] prefix, int index) {
+        return ByteBuffer.allocate(NONCE_PREFIX_BYTES + 4).put(prefix).putInt(index).array();
+    }
+
+    private static byte[] aad(byte[] header, int index, boolean last) {
+        return ByteBuffer.allocate(header.length + 5).put(header).putInt(index).put((byte) (last ? 1 : 0)).array();
+    }
+
+    private static String saltId(byte[] salt, int iterations) {
+        return Base64.getEncoder().encodeToString(salt) + ":" + iterations;
+    }
+
+    private static String normalize(String filePath) {
+        return Path.of(filePath).toAbsolutePath().normalize().toString();
+    }
+
+    /**
+     * Encrypts written data one chunk at a time. A full chunk is only sealed
+     * once more data follows, so the chunk sealed on close is always the last.
+     */
+    private static final class EncryptingStream extends OutputStream {
+        private final OutputStream out;
+        private final SecretKey key;
+        private final byte[] header;
+        private final byte[] prefix;
+        private final Cipher cipher;
+        private final byte[] buffer = new byte[CHUNK_SIZE];
+        private final byte[] sealed = new byte[CHUNK_SIZE + TAG_BYTES];
+        private int buffered = 0;
+        private int index = 0;
+        private boolean closed = false;
+
+        private EncryptingStream(OutputStream out, SecretKey key, byte[] header, byte[] prefix) throws IOException {
+            this.out = out;
+            this.key = key;
+            this.header = header;
+            this.prefix = prefix;
+            try {
+                this.cipher = Cipher.getInstance(CIPHER);
+            } catch (GeneralSecurityException e) {
+                throw new IOException("AES-GCM is not available.", e);
+            }
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            while (length > 0) {
+                if (buffered == CHUNK_SIZE) {
+                    seal(false);
+                }
+                int count = Math.min(length, CHUNK_SIZE - buffered);
+                System.arraycopy(bytes, offset, buffer, buffered, count);
+                buffered += count;
+                offset += count;
+                length -= count;
+            }
+        }
+
+        /**
+         * Flushes the underlying stream. Data of the current chunk is only
+         * written once the chunk is complete or the stream is closed.
+         */
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try (out) {
+                seal(true);
+            }
+        }
+
+        private void seal(boolean last) throws IOException {
+            try {
+                cipher.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(TAG_BYTES * 8, iv(prefix, index)));
+                cipher.updateAAD(aad(header, index, last));
+                int length = cipher.doFinal(buffer, 0, buffered, sealed, 0);
+                out.write(sealed, 0, length);
+            } catch (GeneralSecurityException e) {
+                throw new IOException("Encryption failed.", e);
+            }
+            buffered = 0;
+            index++;
+        }
+    }
+
+    /**
+     * Decrypts and authenticates one chunk at a time as data is read.
+     */
+    private static final class DecryptingStream extends InputStream {
+        private final PushbackInputStream in;
+        private final SecretKey key;
+        private final byte[] header;
+        private final byte[] prefix;
+        private final byte[] sealed = new byte[CHUNK_SIZE + TAG_BYTES];
+        private final byte[] plain = new byte[CHUNK_SIZE];
+        private Cipher cipher;
+        private int position = 0;
+        private int limit = 0;
+        private int index = 0;
+        private boolean lastRead = false;
+
+        private DecryptingStream(InputStream in, SecretKey key, byte[] header, byte[] prefix) {
+            this.in = new PushbackInputStream(in, 1);
+            this.key = key;
+            this.header = header;
+            this.prefix = prefix;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+            return read(single, 0, 1) == -1 ? -1 : single[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) throws IOException {
+            if (length == 0) {
+                return 0;
+            }
+            while (position == limit) {
+                if (lastRead) {
+                    return -1;
+                }
+                openNextChunk();
+            }
+            int count = Math.min(length, limit - position);
+            System.arraycopy(plain, position, bytes, offset, count);
+            position += count;
+            return count;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+
+        private void openNextChunk() throws IOException {
+            int length = in.readNBytes(sealed, 0, sealed.length);
+            if (length < TAG_BYTES) {
+                throw new EOFException("The encrypted note is truncated.");
+            }
+            // A full chunk is the last one only if nothing follows it.
+            boolean last = length < sealed.length;
+            if (!last) {
+                int next = in.read();
+                if (next == -1) {
+                    last = true;
+                } else {
+                    in.unread(next);
+                }
+            }
+
+            try {
+                if (cipher == null) {
+                    cipher = Cipher.getInstance(CIPHER);
+                }
+                cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(TAG_BYTES * 8, iv(prefix, index)));
+                cipher.updateAAD(aad(header, index, last));
+                limit = cipher.doFinal(sealed, 0, length, plain, 0);
+            } catch (AEADBadTagException e) {
+                throw new IOException("The encrypted note is damaged or truncated at chunk " + index + ".", e);
+            } catch (GeneralSecurityException e) {
+                throw new IOException("Decryption failed.", e);
+            }
+            position = 0;
+            index++;
+            lastRead = last;
+        }
+    }
+}
@@ -0,0 +1,1089 @@
+package com.notemat.Filesystem;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+
+/**
+ * A full text index of a folder of notes, for ranked search with snippets.
+ * <p>
+ * The index is an inverted index: for every word, the notes containing it
+ * and how often. It lives in {@value #INDEX_FILE} inside the folder, written
+ * in one go and only read afterwards:
+ * <ul>
+ *     <li>a header with the counts and the offsets of the sections;</li>
+ *     <li>the notes: relative path, title, size, modification time and
+ *     number of words;</li>
+ *     <li>the postings of each word, one after the other: the gaps between
+ *     note numbers and the word counts, as variable length integers, which
+ *     takes one or two bytes per note for most words;</li>
+ *     <li>the words themselves, as UTF-8;</li>
+ *     <li>a sorted table of fixed size entries pointing at the word and its
+ *     postings, binary searched with positional reads, so only the postings
+ *     of the words searched for are ever read.</li>
+ * </ul>
+ * Notes saved with {@link NTMFile#saveToFile} are indexed right away into an
+ * in memory addition to the index and appended to the journal
+ * {@value #JOURNAL_FILE}, which is replayed when the index is opened.
+ * {@link #sync()} reindexes notes changed by other programs, in parallel on
+ * all cores and without blocking searches while it reads them; it also builds
+ * the whole index the first time. Whenever the
+ * additions grow large or {@code sync} changed anything, the index file is
+ * written again with them merged in.
+ * <p>
+ * Results are ranked by how many of the searched words a note contains, then
+ * by BM25. The last word of a query also matches words it is the start of,
+ * so results can follow typing. Encrypted notes are listed by name only;
+ * their text is never indexed.
+ */
+public class SearchIndex implements Closeable {
+    /** The name of the index file inside the folder. */
+    public static final String INDEX_FILE = ".notemat-search.idx";
+    /** The name of the journal of notes indexed since the index file was written. */
+    public static final String JOURNAL_FILE = ".notemat-search.log";
+
+    private static final int MAGIC = 0x4E544D53; // "NTMS"
+    private static final int JOURNAL_MAGIC = 0x4E544D4A; // "NTMJ"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 64;
+    private static final int TERM_ENTRY_SIZE = 24;
+
+    private static final int MIN_TERM_LENGTH = 2;
+    private static final int MAX_TERM_LENGTH = 64;
+    private static final int MAX_QUERY_TERMS = 16;
+    private static final int PREFIX_EXPANSIONS = 64;
+    private static final int TITLE_LENGTH = 200;
+    private static final int JOURNAL_MERGE_THRESHOLD = 256;
+    private static final int BUILD_BATCH = 256;
+    private static final float K1 = 1.2f;
+    private static final float B = 0.75f;
+    private static final float PREFIX_WEIGHT = 0.5f;
+    private static final int SNIPPET_BEFORE = 60;
+    private static final int SNIPPET_LENGTH = 220;
+
+    private static final List<SearchIndex> OPEN_INDEXES = new CopyOnWriteArrayList<>();
+    private static final ExecutorService UPDATES = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "notemat-search-updates");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * A note found by a search.
+     *
+     * @param path         the absolute path of the note.
+     * @param title        the first line of the note, or its file name.
+     * @param modified     the modification time in milliseconds since the epoch.
+     * @param matchedTerms how many of the searched words the note contains.
+     * @param score        the BM25 score of the note.
+     */
+    public record Hit(Path path, String title, long modified, int matchedTerms, float score) {
+    }
+
+    /**
+     * A range of a snippet that matches a searched word.
+     *
+     * @param start the first character.
+     * @param end   the end of the range.
+     */
+    public record Match(int start, int end) {
+    }
+
+    /**
+     * A piece of a note around the first match.
+     *
+     * @param text    the text, on one line.
+     * @param matches the matching words in it.
+     */
+    public record Snippet(String text, List<Match> matches) {
+        public static final Snippet EMPTY = new Snippet("", List.of());
+    }
+
+    /**
+     * A note in the index.
+     */
+    private record Doc(String path, String title, long size, long modified, int length) {
+    }
+
+    /**
+     * A note read and split into words, ready to be added.
+     */
+    private record Indexed(Doc doc, String[] terms, int[] frequencies) {
+    }
+
+    /**
+     * An entry of the sorted word table.
+     */
+    private record TermEntry(int termOffset, int termLength, int docFreq, long postingsOffset, int postingsLength) {
+    }
+
+    @FunctionalInterface
+    private interface PostingConsumer {
+        void accept(int doc, int frequency);
+    }
+
+    @FunctionalInterface
+    private interface TokenConsumer {
+        void accept(int start, int end, String term);
+    }
+
+    /**
+     * The postings of one word: note numbers in increasing order and word
+     * counts, as gaps and counts in variable length integers.
+     */
+    private static final class Postings {
+        byte[] bytes = new byte[8];
+        int length = 0;
+        int lastDoc = 0;
+        int docFreq = 0;
+
+        void add(int doc, int frequency) {
+            if (bytes.length - length < 10) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, length + 10));
+            }
+            writeVarInt(doc - lastDoc);
+            writeVarInt(frequency);
+            lastDoc = doc;
+            docFreq++;
+        }
+
+        void addAll(Postings other, int offset) {
+            decode(other.bytes, other.length, (doc, frequency) -> add(offset + doc, frequency));
+        }
+
+        private void writeVarInt(int value) {
+            while ((value & ~0x7F) != 0) {
+                bytes[length++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            bytes[length++] = (byte) value;
+        }
+    }
+
+    private final Path directory;
+    private final Path indexPath;
+    private final Path journalPath;
+    private FileChannel channel = null;
+    private int mainTermCount = 0;
+    private long termIndexOffset = 0;
+    private long termBlobOffset = 0;
+
+    private final List<Doc> docs = new ArrayList<>();
+    private final BitSet deleted = new BitSet();
+    private final Map<String, Integer> docByPath = new HashMap<>();
+    private final Map<String, Postings> added = new HashMap<>();
+    private volatile int liveDocs = 0;
+    private long liveLength = 0;
+    private int journalRecords = 0;
+    private final Object syncLock = new Object();
+    private boolean syncing = false;
+    private boolean closed = false;
+
+    private SearchIndex(Path directory) {
+        this.directory = directory;
+        this.indexPath = directory.resolve(INDEX_FILE);
+        this.journalPath = directory.resolve(JOURNAL_FILE);
+    }
+
+    /**
+     * Opens the search index of a folder and replays its journal. A missing
+     * or unreadable index starts empty; call {@link #sync()} to build it.
+     *
+     * @param directory the folder of notes.
+     * @return the index.
+     */
+    public static SearchIndex open(Path directory) {
+        SearchIndex index = new SearchIndex(directory.toAbsolutePath().normalize());
+        synchronized (index) {
+            try {
+                index.loadMain();
+            } catch (IOException e) {
+                e.printStackTrace();
+                index.reset();
+            }
+            index.replayJournal();
+        }
+        OPEN_INDEXES.add(index);
+        return index;
+    }
+
+    /**
+     * @return the folder of notes.
+     */
+    public Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * @return the number of notes in the index.
+     */
+    public int getNoteCount() {
+        return liveDocs;
+    }
+
+    /**
+     * Tells the indexes of the folders a note is in that it was saved. The
+     * note is indexed on a background thread: by an open index directly, or
+     * into the journal of the nearest folder with an index. When a note that
+     * was indexed with its text is saved encrypted, the index file is written
+     * again right away, so its earlier words do not stay on disk.
+     *
+     * @param filePath the path of the saved note.
+     * @param text     its text, or null if the note is encrypted.
+     */
+    public static void noteSaved(String filePath, String text) {
+        Path note = Path.of(filePath).toAbsolutePath().normalize();
+        if (!note.getFileName().toString().endsWith(".ntm")) {
+            return;
+        }
+        UPDATES.execute(() -> {
+            try {
+                BasicFileAttributes attributes = Files.readAttributes(note, BasicFileAttributes.class);
+                for (SearchIndex index : OPEN_INDEXES) {
+                    if (note.startsWith(index.directory)) {
+                        index.update(note, attributes, text);
+                        return;
+                    }
+                }
+                for (Path folder = note.getParent(); folder != null; folder = folder.getParent()) {
+                    if (Files.isRegularFile(folder.resolve(INDEX_FILE))) {
+                        if (text == null) {
+                            // Opening the index lets it drop the words of a note that was just encrypted from its file.
+                            try (SearchIndex index = open(folder)) {
+                                index.update(note, attributes, null);
+                            }
+                        } else {
+                            appendJournal(folder.resolve(JOURNAL_FILE), index(relative(folder, note), attributes, text));
+                        }
+                        return;
+                    }
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        });
+    }
+
+    private synchronized void update(Path note, BasicFileAttributes attributes, String text) throws IOException {
+        if (closed || channel == null && docs.isEmpty() && !syncing) {
+            // Not built yet; sync() will read the note.
+            return;
+        }
+        Indexed indexed = index(relative(directory, note), attributes, text);
+        Integer old = docByPath.get(indexed.doc().path());
+        boolean encryptedNow = text == null && old != null
+                && (docs.get(old).length() > 0 || !docs.get(old).title().equals(indexed.doc().title()));
+        add(indexed);
+        if (encryptedNow) {
+            // The words and title of the note from before it was encrypted must leave the index file and journal now.
+            writeMain();
+            return;
+        }
+        appendJournal(journalPath, indexed);
+        journalRecords++;
+        if (journalRecords >= JOURNAL_MERGE_THRESHOLD) {
+            writeMain();
+        }
+    }
+
+    /**
+     * Brings the index up to date with the folder: notes that are new or whose
+     * size or modification time changed are read again, in parallel, notes
+     * that are gone are dropped, and the index file is written again if
+     * anything changed. The notes are read into structures of their own while
+     * searches and saves go on; only merging them in and writing the index
+     * file hold the lock. A note saved while it was being read keeps the
+     * version indexed by the save.
+     *
+     * @return the number of notes read or dropped.
+     * @throws IOException if the folder cannot be listed or the index written.
+     */
+    public int sync() throws IOException {
+        synchronized (syncLock) {
+            Map<String, BasicFileAttributes> files = new HashMap<>();
+            try (Stream<Path> paths = Files.walk(directory)) {
+                for (Path path : (Iterable<Path>) paths::iterator) {
+                    if (path.getFileName().toString().endsWith(".ntm") && Files.isRegularFile(path)) {
+                        try {
+                            files.put(relative(directory, path), Files.readAttributes(path, BasicFileAttributes.class));
+                        } catch (NoSuchFileException e) {
+                            // Deleted while walking.
+                        }
+                    }
+                }
+            }
+
+            // Decide what to read from the index as it is now, remembering the entries that are replaced.
+            List<String> gone = new ArrayList<>();
+            List<String> changed = new ArrayList<>();
+            Map<String, Doc> before = new HashMap<>();
+            synchronized (this) {
+                if (closed) {
+                    return 0;
+                }
+                docByPath.forEach((name, id) -> {
+                    if (!files.containsKey(name)) {
+                        gone.add(name);
+                        before.put(name, docs.get(id));
+                    }
+                });
+                files.forEach((name, attributes) -> {
+                    Integer id = docByPath.get(name);
+                    Doc doc = id == null ? null : docs.get(id);
+                    if (doc == null || doc.size() != attributes.size() || doc.modified() != attributes.lastModifiedTime().toMillis()) {
+                        changed.add(name);
+                        before.put(name, doc);
+                    }
+                });
+                syncing = true;
+            }
+            Collections.sort(changed);
+
+            try {
+                // Read the notes in batches, a wave of batches in parallel at a time, numbering them from 0.
+                List<Doc> builtDocs = new ArrayList<>(changed.size());
+                Map<String, Postings> built = new HashMap<>();
+                int batches = (changed.size() + BUILD_BATCH - 1) / BUILD_BATCH;
+                int parallelism = Runtime.getRuntime().availableProcessors();
+                for (int first = 0; first < batches; first += parallelism) {
+                    IntStream.range(first, Math.min(first + parallelism, batches)).parallel()
+                            .mapToObj(batch -> indexBatch(changed, batch, files))
+                            .toList()
+                            .forEach(result -> {
+                                builtDocs.addAll(Arrays.asList((Doc[]) result[0]));
+                                @SuppressWarnings("unchecked") Map<String, Postings> postings = (Map<String, Postings>) result[1];
+                                postings.forEach((term, more) -> built.computeIfAbsent(term, key -> new Postings()).addAll(more, 0));
+                            });
+                }
+
+                synchronized (this) {
+                    if (closed) {
+                        return 0;
+                    }
+                    int dropped = 0;
+                    for (String name : gone) {
+                        Integer id = docByPath.get(name);
+                        if (id != null && docs.get(id).equals(before.get(name))) {
+                            remove(id);
+                            dropped++;
+                        }
+                    }
+                    int base = docs.size();
+                    for (Doc doc : builtDocs) {
+                        Integer id = docByPath.get(doc.path());
+                        Doc current = id == null ? null : docs.get(id);
+                        if (Objects.equals(current, before.get(doc.path()))) {
+                            if (id != null) {
+                                remove(id);
+                            }
+                            addDoc(doc);
+                        } else {
+                            // Saved and indexed while it was being read; its words are skipped as a deleted note.
+                            deleted.set(docs.size());
+                            docs.add(doc);
+                        }
+                    }
+                    built.forEach((term, postings) -> added.computeIfAbsent(term, key -> new Postings()).addAll(postings, base));
+
+                    if (dropped + builtDocs.size() > 0) {
+                        writeMain();
+                    }
+                    return dropped + builtDocs.size();
+                }
+            } finally {
+                synchronized (this) {
+                    syncing = false;
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads one batch of notes into its own postings, numbering the notes by
+     * their position in {@code names}.
+     *
+     * @return the documents of the batch and their postings.
+     */
+    private Object[] indexBatch(List<String> names, int batch, Map<String, BasicFileAttributes> files) {
+        int from = batch * BUILD_BATCH;
+        int to = Math.min(from + BUILD_BATCH, names.size());
+        Doc[] batchDocs = new Doc[to - from];
+        Map<String, Postings> postings = new HashMap<>();
+        for (int i = from; i < to; i++) {
+            String name = names.get(i);
+            String text;
+            try {
+                text = NTMFile.readText(directory.resolve(name).toString());
+            } catch (IOException | ClassNotFoundException | RuntimeException e) {
+                System.err.println("Could not index " + name + ": " + e.getMessage());
+                text = null;
+            }
+            Indexed indexed = index(name, files.get(name), text);
+            batchDocs[i - from] = indexed.doc();
+            for (int t = 0; t < indexed.terms().length; t++) {
+                postings.computeIfAbsent(indexed.terms()[t], key -> new Postings()).add(i, indexed.frequencies()[t]);
+            }
+        }
+        return new Object[]{batchDocs, postings};
+    }
+
+    /**
+     * Finds the notes containing the words of a query.
+     *
+     * @param query the words to look for; the last one also matches words it starts.
+     * @param limit the most results to return.
+     * @return the best results first.
+     * @throws IOException if the index cannot be read.
+     */
+    public synchronized List<Hit> search(String query, int limit) throws IOException {
+        List<String> words = new ArrayList<>();
+        tokenize(query, 1, (start, end, term) -> words.add(term));
+        boolean prefix = !query.isEmpty() && Character.isLetterOrDigit(query.charAt(query.length() - 1));
+        List<String> groupWords = new ArrayList<>();
+        List<List<String>> groups = new ArrayList<>();
+        for (int i = 0; i < words.size() && groups.size() < MAX_QUERY_TERMS; i++) {
+            boolean last = i == words.size() - 1;
+            if (last && prefix) {
+                groupWords.add(words.get(i));
+                groups.add(expand(words.get(i)));
+            } else if (words.get(i).length() >= MIN_TERM_LENGTH) {
+                groupWords.add(words.get(i));
+                groups.add(List.of(words.get(i)));
+            }
+        }
+        if (groups.isEmpty() || liveDocs == 0) {
+            return List.of();
+        }
+
+        int count = docs.size();
+        float[] scores = new float[count];
+        byte[] matched = new byte[count];
+        int[] seen = new int[count];
+        List<Integer> touched = new ArrayList<>();
+        float averageLength = Math.max(1f, (float) liveLength / liveDocs);
+        for (int g = 0; g < groups.size(); g++) {
+            int group = g + 1;
+            for (String term : groups.get(g)) {
+                TermEntry entry = mainEntry(term);
+                Postings more = added.get(term);
+                int docFreq = (entry == null ? 0 : entry.docFreq()) + (more == null ? 0 : more.docFreq);
+                // Words that only start with what was typed count for less than the word itself.
+                float idf = (float) Math.log(1 + (liveDocs - docFreq + 0.5) / (docFreq + 0.5))
+                        * (term.equals(groupWords.get(g)) ? 1 : PREFIX_WEIGHT);
+                PostingConsumer score = (doc, frequency) -> {
+                    if (deleted.get(doc)) {
+                        return;
+                    }
+                    if (matched[doc] == 0) {
+                        touched.add(doc);
+                    }
+                    float norm = K1 * (1 - B + B * docs.get(doc).length() / averageLength);
+                    scores[doc] += idf * frequency * (K1 + 1) / (frequency + norm);
+                    if (seen[doc] != group) {
+                        seen[doc] = group;
+                        matched[doc]++;
+                    }
+                };
+                if (entry != null) {
+                    byte[] bytes = read(entry.postingsOffset(), entry.postingsLength()).array();
+                    decode(bytes, bytes.length, score);
+                }
+                if (more != null) {
+                    decode(more.bytes, more.length, score);
+                }
+            }
+        }
+
+        // Keep the best results in a small heap with the worst on top.
+        Comparator<Integer> ranking = Comparator.<Integer>comparingInt(doc -> matched[doc]).thenComparingDouble(doc -> scores[doc]);
+        PriorityQueue<Integer> best = new PriorityQueue<>(ranking);
+        for (int doc : touched) {
+            best.add(doc);
+            if (best.size() > limit) {
+                best.poll();
+            }
+        }
+        List<Hit> hits = new ArrayList<>(best.size());
+        while (!best.isEmpty()) {
+            int doc = best.poll();
+            Doc note = docs.get(doc);
+            hits.add(new Hit(directory.resolve(note.path()), note.title(), note.modified(), matched[doc], scores[doc]));
+        }
+        Collections.reverse(hits);
+        return hits;
+    }
+
+    /**
+     * Finds the indexed words starting with a prefix, the prefix itself first
+     * if it is a word.
+     */
+    private List<String> expand(String prefix) throws IOException {
+        List<String> terms = new ArrayList<>();
+        int low = findTerm(prefix);
+        for (int i = low < 0 ? -low - 1 : low; i < mainTermCount && terms.size() < PREFIX_EXPANSIONS; i++) {
+            String term = termText(termEntry(i));
+            if (!term.startsWith(prefix)) {
+                break;
+            }
+            terms.add(term);
+        }
+        for (String term : added.keySet()) {
+            if (terms.size() >= PREFIX_EXPANSIONS) {
+                break;
+            }
+            if (term.startsWith(prefix) && !terms.contains(term)) {
+                terms.add(term);
+            }
+        }
+        return terms;
+    }
+
+    /**
+     * Cuts the piece of a note around the first word matching a query, for
+     * showing with a result. Reads the note; encrypted notes have no snippet.
+     *
+     * @param note  the path of the note.
+     * @param query the query the note was found with.
+     * @return the snippet, or {@link Snippet#EMPTY}.
+     */
+    public static Snippet snippet(Path note, String query) {
+        String text;
+        try {
+            text = NTMFile.readText(note.toString());
+        } catch (IOException | ClassNotFoundException | RuntimeException e) {
+            return Snippet.EMPTY;
+        }
+        if (text == null) {
+            return Snippet.EMPTY;
+        }
+
+        List<String> words = new ArrayList<>();
+        tokenize(query, 1, (start, end, term) -> words.add(term));
+        boolean prefix = !query.isEmpty() && Character.isLetterOrDigit(query.charAt(query.length() - 1));
+        List<Match> matches = new ArrayList<>();
+        tokenize(text, 1, (start, end, term) -> {
+            for (int i = 0; i < words.size(); i++) {
+                boolean last = i == words.size() - 1;
+                if (term.equals(words.get(i)) || (last && prefix && term.startsWith(words.get(i)))) {
+                    matches.add(new Match(start, end));
+                    return;
+                }
+            }
+        });
+
+        int first = matches.isEmpty() ? 0 : matches.getFirst().start();
+        int start = Math.max(0, first - SNIPPET_BEFORE);
+        // Start and end on word boundaries.
+        while (start > 0 && start < first && !Character.isWhitespace(text.charAt(start - 1))) {
+            start++;
+        }
+        int end = Math.min(text.length(), start + SNIPPET_LENGTH);
+        while (end < text.length() && end > first && !Character.isWhitespace(text.charAt(end))) {
+            end--;
+        }
+        String prefixText = start > 0 ? "… " : "";
+        String snippet = prefixText + text.substring(start, end).replace('\n', ' ').replace('\t', ' ') + (end < text.length() ? " …" : "");
+        int shift = prefixText.length() - start;
+        List<Match> inside = new ArrayList<>();
+        for (Match match : matches) {
+            if (match.start() >= start && match.end() <= end) {
+                inside.add(new Match(match.start() + shift, match.end() + shift));
+            }
+        }
+        return new Snippet(snippet, inside);
+    }
+
+    /**
+     * Closes the index. The journal keeps what was indexed since the index
+     * file was last written.
+     *
+     * @throws IOException if the index file cannot be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        OPEN_INDEXES.remove(this);
+        synchronized (this) {
+            closed = true;
+            if (channel != null) {
+                channel.close();
+                channel = null;
+            }
+        }
+    }
+
+    // Index contents
+
+    private void reset() {
+        docs.clear();
+        deleted.clear();
+        docByPath.clear();
+        added.clear();
+        liveDocs = 0;
+        liveLength = 0;
+        mainTermCount = 0;
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            channel = null;
+        }
+    }
+
+    private void addDoc(Doc doc) {
+        int id = docs.size();
+        docs.add(doc);
+        docByPath.put(doc.path(), id);
+        liveDocs++;
+        liveLength += doc.length();
+    }
+
+    private void add(Indexed indexed) {
+        Integer old = docByPath.get(indexed.doc().path());
+        if (old != null) {
+            remove(old);
+        }
+        int id = docs.size();
+        addDoc(indexed.doc());
+        for (int t = 0; t < indexed.terms().length; t++) {
+            added.computeIfAbsent(indexed.terms()[t], key -> new Postings()).add(id, indexed.frequencies()[t]);
+        }
+    }
+
+    private void remove(int id) {
+        if (deleted.get(id)) {
+            return;
+        }
+        Doc doc = docs.get(id);
+        deleted.set(id);
+        docByPath.remove(doc.path(), id);
+        liveDocs--;
+        liveLength -= doc.length();
+    }
+
+    /**
+     * Splits a note into words and counts them.
+     *
+     * @param text the text, or null for a note whose text is not indexed.
+     */
+    private static Indexed index(String name, BasicFileAttributes attributes, String text) {
+        String fileName = name.substring(name.lastIndexOf('/') + 1);
+        String title = fileName.endsWith(".ntm") ? fileName.substring(0, fileName.length() - 4) : fileName;
+        if (text == null) {
+            text = "";
+        } else {
+            for (String line : text.split("\n", 50)) {
+                if (!line.isBlank()) {
+                    title = line.strip();
+                    break;
+                }
+            }
+        }
+        if (title.length() > TITLE_LENGTH) {
+            title = title.substring(0, TITLE_LENGTH);
+        }
+
+        Map<String, int[]> counts = new HashMap<>();
+        int[] length = {0};
+        tokenize(text, MIN_TERM_LENGTH, (start, end, term) -> {
+            counts.computeIfAbsent(term, key -> new int[1])[0]++;
+            length[0]++;
+        });
+        String[] terms = new String[counts.size()];
+        int[] frequencies = new int[counts.size()];
+        int i = 0;
+        for (Map.Entry<String, int[]> entry : counts.entrySet()) {
+            terms[i] = entry.getKey();
+            frequencies[i] = entry.getValue()[0];
+            i++;
+        }
+        Doc doc = new Doc(name, title, attributes.size(), attributes.lastModifiedTime().toMillis(), length[0]);
+        return new Indexed(doc, terms, frequencies);
+    }
+
+    /**
+     * Splits text into lower case words: runs of letters and digits.
+     */
+    private static void tokenize(String text, int minLength, TokenConsumer consumer) {
+        int length = text.length();
+        int i = 0;
+        while (i < length) {
+            while (i < length && !Character.isLetterOrDigit(text.charAt(i))) {
+                i++;
+            }
+            int start = i;
+            while (i < length && Character.isLetterOrDigit(text.charAt(i))) {
+                i++;
+            }
+            int tokenLength = i - start;
+            if (tokenLength >= minLength && tokenLength <= MAX_TERM_LENGTH) {
+                consumer.accept(start, i, text.substring(start, i).toLowerCase(Locale.ROOT));
+            }
+        }
+    }
+
+    private static String relative(Path folder, Path note) {
+        return folder.relativize(note).toString().replace('\\', '/');
+    }
+
+    private static void decode(byte[] bytes, int length, PostingConsumer consumer) {
+        int position = 0;
+        int doc = 0;
+        while (position < length) {
+            int gap = 0;
+            for (int shift = 0; ; shift += 7) {
+                byte b = bytes[position++];
+                gap |= (b & 0x7F) << shift;
+                if (b >= 0) {
+                    break;
+                }
+            }
+            int frequency = 0;
+            for (int shift = 0; ; shift += 7) {
+                byte b = bytes[position++];
+                frequency |= (b & 0x7F) << shift;
+                if (b >= 0) {
+                    break;
+                }
+            }
+            doc += gap;
+            consumer.accept(doc, frequency);
+        }
+    }
+
+    // Index file
+
+    /**
+     * Opens the index file and reads its notes. The words and postings stay
+     * on disk.
+     */
+    private void loadMain() throws IOException {
+        if (!Files.isRegularFile(indexPath)) {
+            return;
+        }
+        channel = FileChannel.open(indexPath, StandardOpenOption.READ);
+        ByteBuffer header = read(0, HEADER_SIZE);
+        if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+            throw new IOException(indexPath + " is not a search index of this version.");
+        }
+        int docCount = header.getInt();
+        mainTermCount = header.getInt();
+        long docTableOffset = header.getLong();
+        header.getLong(); // postings offset
+        termBlobOffset = header.getLong();
+        termIndexOffset = header.getLong();
+        if (termIndexOffset + (long) mainTermCount * TERM_ENTRY_SIZE > channel.size()) {
+            throw new IOException(indexPath + " is truncated.");
+        }
+
+        channel.position(docTableOffset);
+        DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+        for (int i = 0; i < docCount; i++) {
+            addDoc(new Doc(in.readUTF(), in.readUTF(), in.readLong(), in.readLong(), in.readInt()));
+        }
+    }
+
+    private ByteBuffer read(long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException(indexPath + " is truncated.");
+            }
+        }
+        return buffer.flip();
+    }
+
+    private TermEntry termEntry(int index) throws IOException {
+        ByteBuffer entry = read(termIndexOffset + (long) index * TERM_ENTRY_SIZE, TERM_ENTRY_SIZE);
+        return new TermEntry(entry.getInt(), entry.getInt(), entry.getInt(), entry.getLong(), entry.getInt());
+    }
+
+    private String termText(TermEntry entry) throws IOException {
+        return new String(read(termBlobOffset + entry.termOffset(), entry.termLength()).array(), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Binary searches the word table.
+     *
+     * @return the index of the word, or -(insertion point) - 1.
+     */
+    private int findTerm(String term) throws IOException {
+        int low = 0, high = mainTermCount - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int comparison = termText(termEntry(middle)).compareTo(term);
+            if (comparison < 0) {
+                low = middle + 1;
+            } else if (comparison > 0) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -low - 1;
+    }
+
+    private TermEntry mainEntry(String term) throws IOException {
+        if (mainTermCount == 0) {
+            return null;
+        }
+        int index = findTerm(term);
+        return index < 0 ? null : termEntry(index);
+    }
+
+    /**
+     * Writes the index file again with the additions merged in and deleted
+     * notes left out, then starts a new, empty journal. The words of the old
+     * file and the additions are merged in sorted order, renumbering the notes.
+     */
+    private void writeMain() throws IOException {
+        int[] renumbered = new int[docs.size()];
+        List<Doc> live = new ArrayList<>(liveDocs);
+        for (int id = 0; id < docs.size(); id++) {
+            if (deleted.get(id)) {
+                renumbered[id] = -1;
+            } else {
+                renumbered[id] = live.size();
+                live.add(docs.get(id));
+            }
+        }
+        List<String> addedTerms = new ArrayList<>(added.keySet());
+        Collections.sort(addedTerms);
+
+        Path temp = indexPath.resolveSibling(INDEX_FILE + ".tmp");
+        long docTableOffset, postingsOffset, blobOffset, indexOffset;
+        int termCount = 0;
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp), 1 << 16))) {
+            out.write(new byte[HEADER_SIZE]);
+            docTableOffset = out.size();
+            for (Doc doc : live) {
+                out.writeUTF(doc.path());
+                out.writeUTF(doc.title());
+                out.writeLong(doc.size());
+                out.writeLong(doc.modified());
+                out.writeInt(doc.length());
+            }
+
+            // The old postings are read in order, as they were written.
+            postingsOffset = out.size();
+            ByteArrayOutputStream blob = new ByteArrayOutputStream();
+            ByteArrayOutputStream table = new ByteArrayOutputStream();
+            DataOutputStream tableOut = new DataOutputStream(table);
+            ByteBuffer mainTable = mainTermCount == 0 ? null : read(termIndexOffset, mainTermCount * TERM_ENTRY_SIZE);
+            byte[] mainBlob = mainTermCount == 0 ? null : read(termBlobOffset, (int) (termIndexOffset - termBlobOffset)).array();
+            InputStream mainPostings = null;
+            if (mainTermCount > 0) {
+                channel.position(termEntry(0).postingsOffset());
+                mainPostings = new BufferedInputStream(Channels.newInputStream(channel), 1 << 16);
+            }
+
+            int m = 0, a = 0;
+            while (m < mainTermCount || a < addedTerms.size()) {
+                String mainTerm = null;
+                int mainPostingsLength = 0;
+                if (m < mainTermCount) {
+                    int base = m * TERM_ENTRY_SIZE;
+                    mainTerm = new String(mainBlob, mainTable.getInt(base), mainTable.getInt(base + 4), StandardCharsets.UTF_8);
+                    mainPostingsLength = mainTable.getInt(base + 20);
+                }
+                String addedTerm = a < addedTerms.size() ? addedTerms.get(a) : null;
+                int comparison = mainTerm == null ? 1 : addedTerm == null ? -1 : mainTerm.compareTo(addedTerm);
+                String term = comparison <= 0 ? mainTerm : addedTerm;
+
+                Postings merged = new Postings();
+                PostingConsumer keep = (doc, frequency) -> {
+                    if (renumbered[doc] >= 0) {
+                        merged.add(renumbered[doc], frequency);
+                    }
+                };
+                if (comparison <= 0) {
+                    byte[] bytes = mainPostings.readNBytes(mainPostingsLength);
+                    if (bytes.length < mainPostingsLength) {
+                        throw new EOFException(indexPath + " is truncated.");
+                    }
+                    decode(bytes, bytes.length, keep);
+                    m++;
+                }
+                if (comparison >= 0) {
+                    Postings more = added.get(addedTerm);
+                    decode(more.bytes, more.length, keep);
+                    a++;
+                }
+
+                if (merged.docFreq > 0) {
+                    byte[] termBytes = term.getBytes(StandardCharsets.UTF_8);
+                    tableOut.writeInt(blob.size());
+                    tableOut.writeInt(termBytes.length);
+                    tableOut.writeInt(merged.docFreq);
+                    tableOut.writeLong(out.size());
+                    tableOut.writeInt(merged.length);
+                    blob.write(termBytes);
+                    out.write(merged.bytes, 0, merged.length);
+                    termCount++;
+                }
+            }
+
+            blobOffset = out.size();
+            blob.writeTo(out);
+            indexOffset = out.size();
+            table.writeTo(out);
+            if (out.size() == Integer.MAX_VALUE) {
+                throw new IOException("The search index is too large.");
+            }
+        } catch (IOException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+
+        try (RandomAccessFile file = new RandomAccessFile(temp.toFile(), "rw")) {
+            file.writeInt(MAGIC);
+            file.writeInt(VERSION);
+            file.writeInt(live.size());
+            file.writeInt(termCount);
+            file.writeLong(docTableOffset);
+            file.writeLong(postingsOffset);
+            file.writeLong(blobOffset);
+            file.writeLong(indexOffset);
+            file.getFD().sync();
+        }
+
+        // The old file is closed before it is replaced, which some platforms require.
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+        boolean moved = false;
+        try {
+            try {
+                Files.move(temp, indexPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, indexPath, StandardCopyOption.REPLACE_EXISTING);
+            }
+            moved = true;
+            Files.deleteIfExists(journalPath);
+        } finally {
+            // Read back what is on disk; if the file could not be replaced, that is the old index and its journal.
+            reset();
+            journalRecords = 0;
+            loadMain();
+            if (!moved) {
+                Files.deleteIfExists(temp);
+                replayJournal();
+            }
+        }
+    }
+
+    // Journal
+
+    private static void appendJournal(Path journal, Indexed indexed) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream data = new DataOutputStream(bytes);
+        Doc doc = indexed.doc();
+        data.writeUTF(doc.path());
+        data.writeUTF(doc.title());
+        data.writeLong(doc.size());
+        data.writeLong(doc.modified());
+        data.writeInt(doc.length());
+        data.writeInt(indexed.terms().length);
+        for (int t = 0; t < indexed.terms().length; t++) {
+            data.writeUTF(indexed.terms()[t]);
+            data.writeInt(indexed.frequencies()[t]);
+        }
+        CRC32C crc = new CRC32C();
+        crc.update(bytes.toByteArray());
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(journal,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)))) {
+            out.writeInt(JOURNAL_MAGIC);
+            out.writeInt(bytes.size());
+            bytes.writeTo(out);
+            out.writeInt((int) crc.getValue());
+        }
+    }
+
+    /**
+     * Adds the notes in the journal. Reading stops at the first record that is
+     * incomplete or fails its checksum, as left by a crash while appending.
+     */
+    private void replayJournal() {
+        if (!Files.isRegularFile(journalPath)) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(journalPath)))) {
+            while (true) {
+                int magic;
+                try {
+                    magic = in.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+                int length = in.readInt();
+                if (magic != JOURNAL_MAGIC || length < 0 || length > 1 << 28) {
+                    break;
+                }
+                byte[] payload = in.readNBytes(length);
+                if (payload.length < length) {
+                    break;
+                }
+                CRC32C crc = new CRC32C();
+                crc.update(payload);
+                if (in.readInt() != (int) crc.getValue()) {
+                    break;
+                }
+
+                DataInputStream record = new DataInputStream(new ByteArrayInputStream(payload));
+                Doc doc = new Doc(record.readUTF(), record.readUTF(), record.readLong(), record.readLong(), record.readInt());
+                String[] terms = new String[record.readInt()];
+                int[] frequencies = new int[terms.length];
+                for (int t = 0; t < terms.length; t++) {
+                    terms[t] = record.readUTF();
+                    frequencies[t] = record.readInt();
+                }
+                add(new Indexed(doc, terms, frequencies));
+                journalRecords++;
+            }
+        } catch (EOFException e) {
+            // A record cut short by a crash; the ones before it were added.
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,617 @@
+package com.notemat.Filesystem;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+
+/**
+ * A metadata index of a folder of notes, a "vault", kept in a memory mapped
+ * file inside the folder so the notes can be listed and sorted without
+ * opening any of them.
+ * <p>
+ * The index file is a small header followed by fixed size slots, one per
+ * note: flags, file size, modification time, word and image counts, and the
+ * relative path, title and first lines as length prefixed UTF-8 truncated to
+ * fit. A note is read only when its size or modification time no longer
+ * match its slot; its slot is then rewritten in place, and the slot of a
+ * deleted note is reused. {@link #watch} keeps the index current while the
+ * vault is open by reindexing the notes a {@link WatchService} reports.
+ * <p>
+ * Password protected notes are listed by name only; their text is never
+ * written to the index.
+ */
+public class VaultIndex implements Closeable {
+    /** The name of the index file inside the vault. */
+    public static final String INDEX_FILE = ".notemat-vault.idx";
+
+    private static final int MAGIC = 0x4E544D56; // "NTMV"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+    private static final int INITIAL_CAPACITY = 1024;
+
+    // Slot layout.
+    private static final int SLOT_SIZE = 512;
+    private static final int STATE = 0;
+    private static final int FLAGS = 1;
+    private static final int NAME_LENGTH = 2;
+    private static final int TITLE_LENGTH = 4;
+    private static final int PREVIEW_LENGTH = 6;
+    private static final int SIZE = 8;
+    private static final int MODIFIED = 16;
+    private static final int WORDS = 24;
+    private static final int IMAGES = 28;
+    private static final int NAME = 32;
+    private static final int NAME_MAX = 224;
+    private static final int TITLE = NAME + NAME_MAX;
+    private static final int TITLE_MAX = 96;
+    private static final int PREVIEW = TITLE + TITLE_MAX;
+    private static final int PREVIEW_MAX = SLOT_SIZE - PREVIEW;
+
+    private static final byte FREE = 0;
+    private static final byte USED = 1;
+    private static final byte ENCRYPTED = 1;
+    private static final byte DAMAGED = 2;
+    private static final byte UNREADABLE = 4;
+
+    private static final byte[] EMPTY_SLOT = new byte[SLOT_SIZE];
+
+    private static final int PREVIEW_LINES = 3;
+    private static final long WATCH_SETTLE_MILLIS = 300;
+
+    /**
+     * A note as recorded in the index.
+     *
+     * @param path       the path of the note relative to the vault, with / as separator.
+     * @param title      the first line of the note, or its file name if it has no text.
+     * @param preview    the next few non empty lines.
+     * @param size       the file size in bytes.
+     * @param modified   the modification time in milliseconds since the epoch.
+     * @param wordCount  the number of words.
+     * @param imageCount the number of images.
+     * @param encrypted  true if the note is password protected.
+     * @param damaged    true if the note is damaged or could not be read.
+     */
+    public record Entry(String path, String title, String preview, long size, long modified,
+                        int wordCount, int imageCount, boolean encrypted, boolean damaged) {
+    }
+
+    private final Path directory;
+    private final FileChannel channel;
+    private MappedByteBuffer buffer;
+    private int capacity;
+    private final Map<String, Integer> slots = new HashMap<>();
+    private final Deque<Integer> freeSlots = new ArrayDeque<>();
+    private WatchService watchService = null;
+    private Thread watchThread = null;
+
+    private VaultIndex(Path directory, FileChannel channel) {
+        this.directory = directory;
+        this.channel = channel;
+    }
+
+    /**
+     * Opens the index of a vault, creating it if needed. This only maps the
+     * index file; call {@link #sync()} to bring it up to date with the folder.
+     *
+     * @param directory the folder of the vault.
+     * @return the index.
+     * @throws IOException if the index file cannot be opened or created.
+     */
+    public static VaultIndex open(Path directory) throws IOException {
+        FileChannel channel = FileChannel.open(directory.resolve(INDEX_FILE),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        VaultIndex index = new VaultIndex(directory, channel);
+        try {
+            index.load();
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        return index;
+    }
+
+    /**
+     * Maps the index file and finds the used slots. A file that is not an
+     * index of this version is started over.
+     */
+    private void load() throws IOException {
+        long fileSize = channel.size();
+        boolean valid = false;
+        if (fileSize >= HEADER_SIZE) {
+            MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+            int storedCapacity = header.getInt(8);
+            valid = header.getInt(0) == MAGIC && header.getInt(4) == VERSION && storedCapacity > 0
+                    && fileSize >= HEADER_SIZE + (long) storedCapacity * SLOT_SIZE;
+            if (valid) {
+                capacity = storedCapacity;
+            }
+        }
+        if (!valid) {
+            channel.truncate(0);
+            capacity = INITIAL_CAPACITY;
+        }
+        map();
+        if (!valid) {
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(4, VERSION);
+            buffer.putInt(8, capacity);
+        }
+
+        for (int slot = capacity - 1; slot >= 0; slot--) {
+            int base = base(slot);
+            if (buffer.get(base + STATE) == USED) {
+                Integer duplicate = slots.put(readString(base + NAME, buffer.getShort(base + NAME_LENGTH), NAME_MAX), slot);
+                if (duplicate != null) {
+                    buffer.put(base(duplicate) + STATE, FREE);
+                    freeSlots.push(duplicate);
+                }
+            } else {
+                freeSlots.push(slot);
+            }
+        }
+    }
+
+    private void map() throws IOException {
+        // Mapping past the end of the file extends it.
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) capacity * SLOT_SIZE);
+    }
+
+    private static int base(int slot) {
+        return HEADER_SIZE + slot * SLOT_SIZE;
+    }
+
+    /**
+     * @return the folder of the vault.
+     */
+    public Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Lists the notes in the index. Only the index is read.
+     *
+     * @return the notes, in no particular order.
+     */
+    public synchronized List<Entry> list() {
+        List<Entry> entries = new ArrayList<>(slots.size());
+        for (int slot : slots.values()) {
+            int base = base(slot);
+            byte flags = buffer.get(base + FLAGS);
+            entries.add(new Entry(
+                    readString(base + NAME, buffer.getShort(base + NAME_LENGTH), NAME_MAX),
+                    readString(base + TITLE, buffer.getShort(base + TITLE_LENGTH), TITLE_MAX),
+                    readString(base + PREVIEW, buffer.getShort(base + PREVIEW_LENGTH), PREVIEW_MAX),
+                    buffer.getLong(base + SIZE),
+                    buffer.getLong(base + MODIFIED),
+                    buffer.getInt(base + WORDS),
+                    buffer.getInt(base + IMAGES),
+                    (flags & ENCRYPTED) != 0,
+                    (flags & (DAMAGED | UNREADABLE)) != 0));
+        }
+        return entries;
+    }
+
+    /**
+     * Resolves an entry to the path of its note.
+     *
+     * @param entry an entry of {@link #list()}.
+     * @return the absolute path of the note.
+     */
+    public Path resolve(Entry entry) {
+        return directory.resolve(entry.path());
+    }
+
+    /**
+     * Brings the index up to date with the folder: notes that are new or whose
+     * size or modification time changed are read, in parallel, and notes that
+     * are gone are dropped.
+     *
+     * @return the number of notes read or dropped.
+     * @throws IOException if the folder cannot be listed.
+     */
+    public int sync() throws IOException {
+        Map<String, BasicFileAttributes> files = new HashMap<>();
+        try (Stream<Path> paths = Files.walk(directory)) {
+            for (Path path : (Iterable<Path>) paths::iterator) {
+                if (!isNote(path) || !Files.isRegularFile(path)) {
+                    continue;
+                }
+                String name = relative(path);
+                if (encodedLength(name) > NAME_MAX) {
+                    System.err.println("Not indexing " + path + ": the path is too long.");
+                    continue;
+                }
+                try {
+                    files.put(name, Files.readAttributes(path, BasicFileAttributes.class));
+                } catch (IOException e) {
+                    // Deleted while walking.
+                }
+            }
+        }
+
+        List<String> changed = new ArrayList<>();
+        int dropped = 0;
+        synchronized (this) {
+            for (String name : List.copyOf(slots.keySet())) {
+                if (!files.containsKey(name)) {
+                    free(name);
+                    dropped++;
+                }
+            }
+            files.forEach((name, attributes) -> {
+                if (!isCurrent(name, attributes.size(), attributes.lastModifiedTime().toMillis())) {
+                    changed.add(name);
+                }
+            });
+        }
+
+        // Reading the notes is the slow part; it runs outside the lock on all cores.
+        changed.parallelStream()
+                .forEach(name -> {
+                    BasicFileAttributes attributes = files.get(name);
+                    NTMFile.Summary summary = summarize(directory.resolve(name));
+                    synchronized (this) {
+                        write(name, attributes.size(), attributes.lastModifiedTime().toMillis(), summary);
+                    }
+                });
+        force();
+        return changed.size() + dropped;
+    }
+
+    /**
+     * Reindexes one note, or drops it if it no longer exists.
+     *
+     * @param path the path of the note.
+     * @return true if the index changed.
+     */
+    public boolean update(Path path) {
+        if (!path.startsWith(directory)) {
+            return false;
+        }
+        String name = relative(path);
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        } catch (IOException e) {
+            synchronized (this) {
+                return free(name);
+            }
+        }
+        if (!attributes.isRegularFile() || encodedLength(name) > NAME_MAX) {
+            return false;
+        }
+        synchronized (this) {
+            if (isCurrent(name, attributes.size(), attributes.lastModifiedTime().toMillis())) {
+                return false;
+            }
+        }
+        NTMFile.Summary summary = summarize(path);
+        synchronized (this) {
+            write(name, attributes.size(), attributes.lastModifiedTime().toMillis(), summary);
+        }
+        return true;
+    }
+
+    /**
+     * Watches the vault and reindexes notes as they are created, changed or
+     * deleted, until the index is closed.
+     *
+     * @param onChange called on the watching thread after the index changed.
+     * @throws IOException if the folder cannot be watched.
+     */
+    public synchronized void watch(Runnable onChange) throws IOException {
+        if (watchService != null || !channel.isOpen()) {
+            return;
+        }
+        watchService = FileSystems.getDefault().newWatchService();
+        try (Stream<Path> paths = Files.walk(directory)) {
+            for (Path path : (Iterable<Path>) paths::iterator) {
+                if (Files.isDirectory(path)) {
+                    register(watchService, path);
+                }
+            }
+        }
+
+        WatchService service = watchService;
+        watchThread = new Thread(() -> {
+            try {
+                while (true) {
+                    WatchKey key = service.take();
+                    Set<Path> changed = new LinkedHashSet<>();
+                    boolean overflow = false;
+                    // Gather the burst of events a save causes before reindexing.
+                    while (key != null) {
+                        Path dir = (Path) key.watchable();
+                        for (WatchEvent<?> event : key.pollEvents()) {
+                            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                                overflow = true;
+                                continue;
+                            }
+                            Path path = dir.resolve((Path) event.context());
+                            if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(path)) {
+                                try {
+                                    register(service, path);
+                                } catch (IOException e) {
+                                    // Deleted again already; the sync below drops what was in it.
+                                    e.printStackTrace();
+                                }
+                                overflow = true;
+                            } else if (isNote(path)) {
+                                changed.add(path);
+                            }
+                        }
+                        key.reset();
+                        key = service.poll(WATCH_SETTLE_MILLIS, TimeUnit.MILLISECONDS);
+                    }
+
+                    if (reindex(changed, overflow)) {
+                        onChange.run();
+                    }
+                }
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                // The index was closed.
+            }
+        }, "notemat-vault-watcher");
+        watchThread.setDaemon(true);
+        watchThread.start();
+    }
+
+    /**
+     * Reindexes the notes of one burst of watch events. A failure is logged
+     * and does not stop the watching; the notes are picked up again by the
+     * next change or sync.
+     *
+     * @param changed  the notes that changed.
+     * @param overflow true if events were lost or folders were added, so the
+     *                 whole folder has to be synced.
+     * @return true if the index changed.
+     */
+    private boolean reindex(Set<Path> changed, boolean overflow) {
+        if (overflow) {
+            try {
+                return sync() > 0;
+            } catch (IOException | UncheckedIOException e) {
+                e.printStackTrace();
+                return false;
+            }
+        }
+
+        boolean updated = false;
+        for (Path path : changed) {
+            try {
+                updated |= update(path);
+            } catch (UncheckedIOException e) {
+                e.printStackTrace();
+            }
+        }
+        force();
+        return updated;
+    }
+
+    private static void register(WatchService service, Path dir) throws IOException {
+        dir.register(service, StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+    }
+
+    /**
+     * Stops watching and unmaps the index.
+     *
+     * @throws IOException if the index cannot be written.
+     */
+    @Override
+    public void close() throws IOException {
+        WatchService service;
+        synchronized (this) {
+            service = watchService;
+            watchService = null;
+        }
+        if (service != null) {
+            service.close();
+            watchThread.interrupt();
+        }
+        synchronized (this) {
+            buffer.force();
+            channel.close();
+        }
+    }
+
+    private synchronized void force() {
+        if (channel.isOpen()) {
+            buffer.force();
+        }
+    }
+
+    private boolean isCurrent(String name, long size, long modified) {
+        Integer slot = slots.get(name);
+        if (slot == null) {
+            return false;
+        }
+        int base = base(slot);
+        return buffer.getLong(base + SIZE) == size && buffer.getLong(base + MODIFIED) == modified;
+    }
+
+    private static boolean isNote(Path path) {
+        return path.getFileName() != null && path.getFileName().toString().endsWith(".ntm");
+    }
+
+    private String relative(Path path) {
+        return directory.relativize(path).toString().replace('\\', '/');
+    }
+
+    /**
+     * Reads a note for the index. A note that cannot be read is still listed,
+     * marked as damaged.
+     */
+    private static NTMFile.Summary summarize(Path path) {
+        try {
+            return NTMFile.readSummary(path.toString());
+        } catch (IOException | ClassNotFoundException | RuntimeException e) {
+            System.err.println("Could not index " + path + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Fills the slot of a note, taking a free slot or growing the index if it
+     * has none. The slot is marked used last.
+     *
+     * @param summary the summary of the note, or null if it could not be read.
+     */
+    private void write(String name, long size, long modified, NTMFile.Summary summary) {
+        if (!channel.isOpen()) {
+            return;
+        }
+        Integer slot = slots.get(name);
+        if (slot == null) {
+            if (freeSlots.isEmpty()) {
+                grow();
+            }
+            slot = freeSlots.pop();
+            slots.put(name, slot);
+        }
+
+        String text = summary == null ? "" : summary.text();
+        String fileName = name.substring(name.lastIndexOf('/') + 1);
+        String[] lines = firstLines(text, PREVIEW_LINES + 1);
+        String title = lines.length > 0 ? lines[0] : fileName.substring(0, fileName.length() - ".ntm".length());
+        String preview = lines.length > 1 ? String.join("\n", List.of(lines).subList(1, lines.length)) : "";
+        byte flags = 0;
+        if (summary == null) {
+            flags |= UNREADABLE;
+        } else {
+            flags |= summary.encrypted() ? ENCRYPTED : 0;
+            flags |= summary.damaged() ? DAMAGED : 0;
+        }
+
+        int base = base(slot);
+        // Clear the whole slot so no text of the previous note or version,
+        // such as a note since saved with a password, is left past the new strings.
+        buffer.put(base, EMPTY_SLOT);
+        buffer.put(base + FLAGS, flags);
+        buffer.putLong(base + SIZE, size);
+        buffer.putLong(base + MODIFIED, modified);
+        buffer.putInt(base + WORDS, countWords(text));
+        buffer.putInt(base + IMAGES, summary == null ? 0 : summary.imageCount());
+        buffer.putShort(base + NAME_LENGTH, writeString(base + NAME, NAME_MAX, name));
+        buffer.putShort(base + TITLE_LENGTH, writeString(base + TITLE, TITLE_MAX, title));
+        buffer.putShort(base + PREVIEW_LENGTH, writeString(base + PREVIEW, PREVIEW_MAX, preview));
+        buffer.put(base + STATE, USED);
+    }
+
+    private boolean free(String name) {
+        Integer slot = slots.remove(name);
+        if (slot == null || !channel.isOpen()) {
+            return false;
+        }
+        buffer.put(base(slot), EMPTY_SLOT);
+        freeSlots.push(slot);
+        return true;
+    }
+
+    /**
+     * Doubles the number of slots and maps the larger file.
+     */
+    private void grow() {
+        int oldCapacity = capacity;
+        capacity *= 2;
+        try {
+            map();
+        } catch (IOException e) {
+            capacity = oldCapacity;
+            throw new IllegalStateException("The vault index could not grow.", e);
+        }
+        buffer.putInt(8, capacity);
+        for (int slot = capacity - 1; slot >= oldCapacity; slot--) {
+            freeSlots.push(slot);
+        }
+    }
+
+    /**
+     * Reads UTF-8 text; a length out of range, from a damaged index, is clamped.
+     */
+    private String readString(int offset, int length, int max) {
+        byte[] bytes = new byte[Math.max(0, Math.min(length, max))];
+        buffer.get(offset, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Writes UTF-8 text, cut at a character boundary to fit.
+     *
+     * @return the number of bytes written.
+     */
+    private short writeString(int offset, int max, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        int length = Math.min(bytes.length, max);
+        // Do not split a multi-byte character.
+        while (length < bytes.length && length > 0 && (bytes[length] & 0xC0) == 0x80) {
+            length--;
+        }
+        buffer.put(offset, bytes, 0, length);
+        return (short) length;
+    }
+
+    private static int encodedLength(String value) {
+        return value.getBytes(StandardCharsets.UTF_8).length;
+    }
+
+    /**
+     * Finds the first non empty lines of a text, trimmed.
+     */
+    private static String[] firstLines(String text, int count) {
+        List<String> lines = new ArrayList<>(count);
+        int start = 0;
+        while (lines.size() < count && start < text.length()) {
+            int end = text.indexOf('\n', start);
+            if (end < 0) {
+                end = text.length();
+            }
+            String line = text.substring(start, Math.min(end, start + PREVIEW_MAX)).strip();
+            if (!line.isEmpty()) {
+                lines.add(line);
+            }
+            start = end + 1;
+        }
+        return lines.toArray(String[]::new);
+    }
+
+    /**
+     * Counts runs of letters and digits.
+     */
+    private static int countWords(String text) {
+        int words = 0;
+        boolean inWord = false;
+        for (int i = 0; i < text.length(); i++) {
+            boolean wordChar = Character.isLetterOrDigit(text.charAt(i));
+            if (wordChar && !inWord) {
+                words++;
+            }
+            inWord = wordChar;
+        }
+        return words;
+    }
+}
@@ -0,0 +1,614 @@
+package com.notemat.Filesystem;
+
+import org.fxmisc.richtext.model.StyleSpan;
+import org.fxmisc.richtext.model.StyleSpans;
+import org.fxmisc.richtext.model.StyleSpansBuilder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * The saved states of a note, kept inside its NTM archive next to the current
+ * content. Every save turns the previously saved state into a stored revision.
+ * Revisions are stored as paragraph level deltas against the next newer state:
+ * runs of paragraphs copied from it, and the paragraphs it does not have. The
+ * current content is the newest keyframe, so the history costs only the
+ * paragraphs that changed between saves. A revision is stored in full as an
+ * older keyframe whenever the deltas between it and the next keyframe would
+ * add up to more than {@value #KEYFRAME_CHAIN_FACTOR} times the size of the
+ * note, so rebuilding any revision reads at most a few times the size of the
+ * note.
+ * <p>
+ * Paragraphs are matched by a 64 bit hash of their text and styles. The
+ * paragraphs of the current state are kept in memory to produce the next
+ * delta. The oldest revisions are dropped once there are more than
+ * {@value #MAX_REVISIONS}.
+ * <p>
+ * Safe to use from any thread.
+ */
+public class VersionHistory {
+    public static final int MAX_REVISIONS = 100;
+
+    private static final int MAGIC = 0x4E544D48; // "NTMH"
+    private static final byte VERSION = 1;
+    private static final byte KEYFRAME = 0;
+    private static final byte DELTA = 1;
+    private static final byte COPY = 0;
+    private static final byte INSERT = 1;
+    private static final int KEYFRAME_CHAIN_FACTOR = 2;
+
+    private final List<Revision> revisions = new ArrayList<>();
+    private List<Paragraph> head = null;
+    private long[] headHashes = null;
+    private long headTime = 0;
+    private long headStateHash = 0;
+
+    /**
+     * One stored revision, older than the current state.
+     *
+     * @param time      when it was saved, in milliseconds since the epoch.
+     * @param keyframe  whether it is stored in full.
+     * @param stateHash the hash of the whole document.
+     * @param data      the encoded paragraphs, or the delta against the next newer state.
+     */
+    private record Revision(long time, boolean keyframe, long stateHash, byte[] data) {
+    }
+
+    /**
+     * A description of a revision for listing.
+     *
+     * @param index    the revision number, 0 being the oldest kept.
+     * @param time     when it was saved, in milliseconds since the epoch.
+     * @param current  whether it is the current content of the note.
+     * @param keyframe whether it is stored in full.
+     * @param bytes    the size of its stored data; 0 for the current content.
+     */
+    public record RevisionInfo(int index, long time, boolean current, boolean keyframe, int bytes) {
+    }
+
+    /**
+     * A rebuilt revision.
+     *
+     * @param time  when it was saved, in milliseconds since the epoch.
+     * @param text  the text.
+     * @param spans the styles of the text.
+     */
+    public record Snapshot(long time, String text, StyleSpans<String> spans) {
+    }
+
+    /**
+     * A paragraph including its line break, with its style runs.
+     */
+    private record Paragraph(String text, int[] lengths, String[] styles) {
+    }
+
+    /**
+     * The state of a history at one point, to undo a commit with when the
+     * save it belongs to fails. See {@link #checkpoint()}.
+     */
+    public static final class Checkpoint {
+        private final List<Revision> revisions;
+        private final List<Paragraph> head;
+        private final long[] headHashes;
+        private final long headTime;
+        private final long headStateHash;
+
+        private Checkpoint(VersionHistory history) {
+            revisions = new ArrayList<>(history.revisions);
+            head = history.head;
+            headHashes = history.headHashes;
+            headTime = history.headTime;
+            headStateHash = history.headStateHash;
+        }
+    }
+
+    /**
+     * Records the state being saved. The previously saved state becomes a
+     * stored revision, unless nothing changed.
+     *
+     * @param text  the text of the note.
+     * @param spans the styles of the text.
+     * @param time  the time of the save, in milliseconds since the epoch.
+     * @return true if the state differs from the previously saved one.
+     */
+    public synchronized boolean commit(String text, StyleSpans<String> spans, long time) {
+        List<Paragraph> paragraphs = split(text, spans);
+        long[] hashes = hashes(paragraphs);
+        long stateHash = stateHash(hashes);
+        if (head != null && stateHash == headStateHash) {
+            return false;
+        }
+
+        if (head != null) {
+            byte[] delta = encodeDelta(head, headHashes, hashes);
+
+            // The chain from the oldest revision after the newest stored keyframe now runs through this delta.
+            long chain = delta.length;
+            for (int i = revisions.size() - 1; i >= 0 && !revisions.get(i).keyframe(); i--) {
+                chain += revisions.get(i).data().length;
+            }
+            boolean keyframe = chain > (long) KEYFRAME_CHAIN_FACTOR * text.length();
+            revisions.add(new Revision(headTime, keyframe, headStateHash, keyframe ? encodeKeyframe(head) : delta));
+            if (revisions.size() > MAX_REVISIONS) {
+                revisions.subList(0, revisions.size() - MAX_REVISIONS).clear();
+            }
+        }
+
+        head = paragraphs;
+        headHashes = hashes;
+        headTime = time;
+        headStateHash = stateHash;
+        return true;
+    }
+
+    /**
+     * Captures the current state. Cheap, as revisions and paragraph lists are
+     * never modified, only replaced.
+     *
+     * @return the checkpoint to pass to {@link #rollback(Checkpoint)}.
+     */
+    public synchronized Checkpoint checkpoint() {
+        return new Checkpoint(this);
+    }
+
+    /**
+     * Returns to a state captured by {@link #checkpoint()}, undoing the
+     * commits made since.
+     *
+     * @param checkpoint the captured state.
+     */
+    public synchronized void rollback(Checkpoint checkpoint) {
+        revisions.clear();
+        revisions.addAll(checkpoint.revisions);
+        head = checkpoint.head;
+        headHashes = checkpoint.headHashes;
+        headTime = checkpoint.headTime;
+        headStateHash = checkpoint.headStateHash;
+    }
+
+    /**
+     * Attaches a history read from a file to the loaded content, which is its
+     * newest state. If the content is not the state the history was saved
+     * with, the deltas that depend on it are dropped.
+     *
+     * @param text  the loaded text.
+     * @param spans the styles of the loaded text.
+     * @param time  when the loaded text was saved, used if the history does not know.
+     */
+    public synchronized void resume(String text, StyleSpans<String> spans, long time) {
+        List<Paragraph> paragraphs = split(text, spans);
+        long[] hashes = hashes(paragraphs);
+        long stateHash = stateHash(hashes);
+        if (head == null && stateHash != headStateHash) {
+            int lastKeyframe = revisions.size() - 1;
+            while (lastKeyframe >= 0 && !revisions.get(lastKeyframe).keyframe()) {
+                lastKeyframe--;
+            }
+            revisions.subList(lastKeyframe + 1, revisions.size()).clear();
+        }
+        head = paragraphs;
+        headHashes = hashes;
+        headStateHash = stateHash;
+        if (headTime == 0) {
+            headTime = time;
+        }
+    }
+
+    /**
+     * Lists the revisions, oldest first. The last one is the current content.
+     *
+     * @return the revisions; empty if the note was never saved.
+     */
+    public synchronized List<RevisionInfo> getRevisions() {
+        List<RevisionInfo> result = new ArrayList<>(revisions.size() + 1);
+        for (int i = 0; i < revisions.size(); i++) {
+            Revision revision = revisions.get(i);
+            result.add(new RevisionInfo(i, revision.time(), false, revision.keyframe(), revision.data().length));
+        }
+        if (head != null) {
+            result.add(new RevisionInfo(revisions.size(), headTime, true, true, 0));
+        }
+        return result;
+    }
+
+    /**
+     * Gets the number of bytes the history adds to the note, before the
+     * archive compresses it.
+     *
+     * @return the size of all stored revisions.
+     */
+    public synchronized long getStoredBytes() {
+        long total = 0;
+        for (Revision revision : revisions) {
+            total += revision.data().length;
+        }
+        return total;
+    }
+
+    /**
+     * Rebuilds a revision, starting from the nearest newer keyframe or the
+     * current content and applying the deltas back to the revision.
+     *
+     * @param index the revision number, as listed by {@link #getRevisions()}.
+     * @return the revision.
+     * @throws IOException if the stored data is damaged.
+     */
+    public Snapshot reconstruct(int index) throws IOException {
+        List<Revision> chain;
+        List<Paragraph> base;
+        long time;
+        synchronized (this) {
+            if (head == null || index < 0 || index > revisions.size()) {
+                throw new IndexOutOfBoundsException("No revision " + index + ".");
+            }
+            int keyframe = index;
+            while (keyframe < revisions.size() && !revisions.get(keyframe).keyframe()) {
+                keyframe++;
+            }
+            chain = new ArrayList<>(revisions.subList(index, Math.min(keyframe + 1, revisions.size())));
+            base = head;
+            time = index == revisions.size() ? headTime : revisions.get(index).time();
+        }
+
+        // Decoding is done outside the lock; revisions and paragraph lists are never modified.
+        List<Paragraph> paragraphs = base;
+        int i = chain.size() - 1;
+        if (i >= 0 && chain.get(i).keyframe()) {
+            paragraphs = decodeKeyframe(chain.get(i).data());
+            i--;
+        }
+        for (; i >= 0; i--) {
+            paragraphs = applyDelta(paragraphs, chain.get(i).data());
+        }
+        return toSnapshot(time, paragraphs);
+    }
+
+    /**
+     * Writes the stored revisions. The current state is not written; it is
+     * the content of the note.
+     *
+     * @param out the stream to write to; it is not closed.
+     * @throws IOException if an I/O error occurs.
+     */
+    public synchronized void write(OutputStream out) throws IOException {
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(MAGIC);
+        data.writeByte(VERSION);
+        data.writeLong(headTime);
+        data.writeLong(headStateHash);
+        data.writeInt(revisions.size());
+        for (Revision revision : revisions) {
+            data.writeLong(revision.time());
+            data.writeByte(revision.keyframe() ? KEYFRAME : DELTA);
+            data.writeLong(revision.stateHash());
+            data.writeInt(revision.data().length);
+            data.write(revision.data());
+        }
+        data.flush();
+    }
+
+    /**
+     * Reads a history written by {@link #write(OutputStream)}. Call
+     * {@link #resume(String, StyleSpans, long)} once the note's text is loaded.
+     *
+     * @param in the stream to read from, up to its end.
+     * @return the history.
+     * @throws IOException if the history is damaged or of an unknown version.
+     */
+    public static VersionHistory read(InputStream in) throws IOException {
+        // Read in full, so every count and length can be checked against what is left.
+        DataInputStream data = new DataInputStream(new ByteArrayInputStream(in.readAllBytes()));
+        if (data.readInt() != MAGIC) {
+            throw new IOException("Not a version history.");
+        }
+        byte version = data.readByte();
+        if (version != VERSION) {
+            throw new IOException("Unsupported version history version " + version + ".");
+        }
+        VersionHistory history = new VersionHistory();
+        history.headTime = data.readLong();
+        history.headStateHash = data.readLong();
+        int count = readSize(data, 21);
+        for (int i = 0; i < count; i++) {
+            long time = data.readLong();
+            boolean keyframe = data.readByte() == KEYFRAME;
+            long stateHash = data.readLong();
+            byte[] bytes = new byte[readSize(data, 1)];
+            data.readFully(bytes);
+            history.revisions.add(new Revision(time, keyframe, stateHash, bytes));
+        }
+        return history;
+    }
+
+    /**
+     * Splits styled text into paragraphs, each keeping its line break and the
+     * style runs covering it.
+     */
+    private static List<Paragraph> split(String text, StyleSpans<String> spans) {
+        List<Paragraph> paragraphs = new ArrayList<>();
+        Iterator<StyleSpan<String>> spanIterator = spans.iterator();
+        StyleSpan<String> span = spanIterator.hasNext() ? spanIterator.next() : null;
+        int spanRemaining = span == null ? 0 : span.getLength();
+
+        int start = 0;
+        while (true) {
+            int lineEnd = text.indexOf('\n', start);
+            int end = lineEnd < 0 ? text.length() : lineEnd + 1;
+
+            List<Integer> lengths = new ArrayList<>();
+            List<String> styles = new ArrayList<>();
+            int covered = 0;
+            while (covered < end - start && span != null) {
+                int length = Math.min(spanRemaining, end - start - covered);
+                if (length > 0) {
+                    lengths.add(length);
+                    styles.add(span.getStyle());
+                    covered += length;
+                    spanRemaining -= length;
+                }
+                if (spanRemaining == 0) {
+                    span = spanIterator.hasNext() ? spanIterator.next() : null;
+                    spanRemaining = span == null ? 0 : span.getLength();
+                }
+            }
+            int[] lengthArray = lengths.stream().mapToInt(Integer::intValue).toArray();
+            paragraphs.add(new Paragraph(text.substring(start, end), lengthArray, styles.toArray(String[]::new)));
+
+            if (lineEnd < 0) {
+                return paragraphs;
+            }
+            start = end;
+        }
+    }
+
+    private static Snapshot toSnapshot(long time, List<Paragraph> paragraphs) {
+        StringBuilder text = new StringBuilder();
+        StyleSpansBuilder<String> spans = new StyleSpansBuilder<>();
+        boolean anySpans = false;
+        for (Paragraph paragraph : paragraphs) {
+            text.append(paragraph.text());
+            for (int i = 0; i < paragraph.lengths().length; i++) {
+                spans.add(paragraph.styles()[i], paragraph.lengths()[i]);
+                anySpans = true;
+            }
+        }
+        if (!anySpans) {
+            spans.add("", text.length());
+        }
+        return new Snapshot(time, text.toString(), spans.create());
+    }
+
+    /**
+     * Hashes a paragraph's text and styles with 64 bit FNV-1a.
+     */
+    private static long hash(Paragraph paragraph) {
+        long hash = 0xcbf29ce484222325L;
+        String text = paragraph.text();
+        for (int i = 0; i < text.length(); i++) {
+            hash = (hash ^ text.charAt(i)) * 0x100000001b3L;
+        }
+        for (int i = 0; i < paragraph.lengths().length; i++) {
+            hash = (hash ^ paragraph.lengths()[i]) * 0x100000001b3L;
+            hash = (hash ^ paragraph.styles()[i].hashCode()) * 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    private static long[] hashes(List<Paragraph> paragraphs) {
+        long[] hashes = new long[paragraphs.size()];
+        for (int i = 0; i < hashes.length; i++) {
+            hashes[i] = hash(paragraphs.get(i));
+        }
+        return hashes;
+    }
+
+    private static long stateHash(long[] hashes) {
+        long hash = 0xcbf29ce484222325L;
+        for (long paragraphHash : hashes) {
+            hash = (hash ^ paragraphHash) * 0x100000001b3L;
+        }
+        return hash ^ hashes.length;
+    }
+
+    private static byte[] encodeKeyframe(List<Paragraph> paragraphs) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream data = new DataOutputStream(bytes);
+            StyleTable styles = new StyleTable();
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            DataOutputStream bodyData = new DataOutputStream(body);
+            bodyData.writeInt(paragraphs.size());
+            for (Paragraph paragraph : paragraphs) {
+                writeParagraph(bodyData, paragraph, styles);
+            }
+            styles.write(data);
+            body.writeTo(data);
+            data.flush();
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Encodes paragraphs as copies of runs of another state's paragraphs,
+     * found by hash, and literal paragraphs the other state does not have.
+     *
+     * @param paragraphs the paragraphs to encode.
+     * @param hashes     their hashes.
+     * @param previous   the hashes of the paragraphs of the state the delta is applied to.
+     */
+    private static byte[] encodeDelta(List<Paragraph> paragraphs, long[] hashes, long[] previous) {
+        Map<Long, Integer> previousIndex = new HashMap<>(previous.length * 2);
+        for (int i = previous.length - 1; i >= 0; i--) {
+            previousIndex.put(previous[i], i);
+        }
+
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream data = new DataOutputStream(bytes);
+            StyleTable styles = new StyleTable();
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            DataOutputStream bodyData = new DataOutputStream(body);
+            int operations = 0;
+
+            int i = 0;
+            while (i < paragraphs.size()) {
+                Integer from = previousIndex.get(hashes[i]);
+                if (from == null) {
+                    bodyData.writeByte(INSERT);
+                    writeParagraph(bodyData, paragraphs.get(i), styles);
+                    i++;
+                } else {
+                    // Extend the copy as long as the following paragraphs follow in the previous revision too.
+                    int count = 1;
+                    while (i + count < paragraphs.size() && from + count < previous.length
+                            && previous[from + count] == hashes[i + count]) {
+                        count++;
+                    }
+                    bodyData.writeByte(COPY);
+                    bodyData.writeInt(from);
+                    bodyData.writeInt(count);
+                    i += count;
+                }
+                operations++;
+            }
+
+            styles.write(data);
+            data.writeInt(paragraphs.size());
+            data.writeInt(operations);
+            body.writeTo(data);
+            data.flush();
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static List<Paragraph> decodeKeyframe(byte[] bytes) throws IOException {
+        DataInputStream data = new DataInputStream(new ByteArrayInputStream(bytes));
+        String[] styles = StyleTable.read(data);
+        int count = readSize(data, 8);
+        List<Paragraph> paragraphs = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            paragraphs.add(readParagraph(data, styles));
+        }
+        return paragraphs;
+    }
+
+    private static List<Paragraph> applyDelta(List<Paragraph> previous, byte[] bytes) throws IOException {
+        DataInputStream data = new DataInputStream(new ByteArrayInputStream(bytes));
+        String[] styles = StyleTable.read(data);
+        int count = data.readInt();
+        int operations = readSize(data, 1);
+        if (count < 0) {
+            throw new IOException("The version history is damaged.");
+        }
+        // Copied runs may repeat paragraphs, so the count is only a hint and is capped before allocating.
+        List<Paragraph> paragraphs = new ArrayList<>(Math.min(count, previous.size() + data.available()));
+        for (int i = 0; i < operations; i++) {
+            byte operation = data.readByte();
+            if (operation == COPY) {
+                int from = data.readInt();
+                int length = data.readInt();
+                if (from < 0 || length < 0 || from + length > previous.size()) {
+                    throw new IOException("The version history is damaged.");
+                }
+                paragraphs.addAll(previous.subList(from, from + length));
+            } else if (operation == INSERT) {
+                paragraphs.add(readParagraph(data, styles));
+            } else {
+                throw new IOException("The version history is damaged.");
+            }
+        }
+        return paragraphs;
+    }
+
+    private static void writeParagraph(DataOutputStream data, Paragraph paragraph, StyleTable styles) throws IOException {
+        byte[] utf8 = paragraph.text().getBytes(StandardCharsets.UTF_8);
+        data.writeInt(utf8.length);
+        data.write(utf8);
+        data.writeInt(paragraph.lengths().length);
+        for (int i = 0; i < paragraph.lengths().length; i++) {
+            data.writeInt(paragraph.lengths()[i]);
+            data.writeInt(styles.idOf(paragraph.styles()[i]));
+        }
+    }
+
+    private static Paragraph readParagraph(DataInputStream data, String[] styles) throws IOException {
+        byte[] utf8 = new byte[readSize(data, 1)];
+        data.readFully(utf8);
+        int runs = readSize(data, 8);
+        int[] lengths = new int[runs];
+        String[] runStyles = new String[runs];
+        for (int i = 0; i < runs; i++) {
+            lengths[i] = data.readInt();
+            int style = data.readInt();
+            if (style < 0 || style >= styles.length) {
+                throw new IOException("The version history is damaged.");
+            }
+            runStyles[i] = styles[style];
+        }
+        return new Paragraph(new String(utf8, StandardCharsets.UTF_8), lengths, runStyles);
+    }
+
+    /**
+     * Reads a count or length and checks that the rest of the data can hold
+     * it, so damaged data fails with an IOException instead of a negative or
+     * huge allocation.
+     *
+     * @param data         the data, read from a byte array so its remaining size is known.
+     * @param bytesPerItem the least number of bytes each counted item takes.
+     * @return the count or length.
+     * @throws IOException if it is negative or larger than the rest of the data.
+     */
+    private static int readSize(DataInputStream data, int bytesPerItem) throws IOException {
+        int size = data.readInt();
+        if (size < 0 || (long) size * bytesPerItem > data.available()) {
+            throw new IOException("The version history is damaged.");
+        }
+        return size;
+    }
+
+    /**
+     * The distinct styles of one revision, so each is stored once.
+     */
+    private static final class StyleTable {
+        private final Map<String, Integer> ids = new HashMap<>();
+        private final List<String> styles = new ArrayList<>();
+
+        int idOf(String style) {
+            return ids.computeIfAbsent(style, key -> {
+                styles.add(key);
+                return styles.size() - 1;
+            });
+        }
+
+        void write(DataOutputStream data) throws IOException {
+            data.writeInt(styles.size());
+            for (String style : styles) {
+                data.writeUTF(style);
+            }
+        }
+
+        static String[] read(DataInputStream data) throws IOException {
+            String[] styles = new String[readSize(data, 2)];
+            for (int i = 0; i < styles.length; i++) {
+                styles[i] = data.readUTF();
+            }
+            return styles;
+        }
+    }
+}
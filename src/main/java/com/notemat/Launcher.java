@@ -1,7 +1,18 @@
 package com.notemat;
 
+import com.notemat.Diagnostics.PhaseTracer;
+import com.notemat.Utils.SingleInstance;
+
 public class Launcher {
     public static void main(String[] args) {
+        PhaseTracer.mark("Launcher.main");
+
+        // Hand the file over to an already running instance instead of cold starting JavaFX.
+        try (PhaseTracer.Phase ignored = PhaseTracer.begin("SingleInstance.forward")) {
+            if (SingleInstance.forwardToRunningInstance(args)) {
+                return;
+            }
+        }
         Main.main(args);
     }
-}
\ No newline at end of file
+}
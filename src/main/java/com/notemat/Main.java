@@ -1,27 +1,62 @@
 package com.notemat;
 
 import com.notemat.Components.EditorWindow;
+import com.notemat.Diagnostics.PhaseTracer;
+import com.notemat.Diagnostics.StartupProbe;
+import com.notemat.Utils.SingleInstance;
 import javafx.application.Application;
+import javafx.application.Platform;
 import javafx.stage.Stage;
 
 import java.util.List;
 
 public class Main extends Application {
     public static void main(String[] args) {
+        PhaseTracer.mark("Main.main");
         System.setProperty("prism.lcdtext", "false");
         launch(args);
     }
 
     @Override
     public void start(Stage primaryStage) {
-        List<String> params = getParameters().getRaw();
         EditorWindow editorWindow;
-        if (!params.isEmpty()) {
-            String filePath = params.getFirst();
-            editorWindow = new EditorWindow(filePath);
-        } else {
-            editorWindow = new EditorWindow();
+        try (PhaseTracer.Phase ignored = PhaseTracer.begin("Main.start")) {
+            List<String> params = getParameters().getRaw();
+            if (!params.isEmpty()) {
+                String filePath = params.getFirst();
+                editorWindow = new EditorWindow(filePath);
+            } else {
+                editorWindow = new EditorWindow();
+            }
+            editorWindow.show();
+        }
+        StartupProbe.afterFirstFrame(editorWindow.getScene(), firstFrameMillis -> {
+            PhaseTracer.mark("first frame");
+            PhaseTracer.dumpSinceLaunch("startup");
+        });
+        StartupProbe.install(editorWindow);
+
+        // Later launches forward their file here and get a new window in this JVM.
+        SingleInstance.startServer(filePath -> Platform.runLater(() -> openForwardedFile(filePath)));
+    }
+
+    @Override
+    public void stop() {
+        SingleInstance.stopServer();
+    }
+
+    /**
+     * Opens a file forwarded by another launch in a new window.
+     *
+     * @param filePath the file to open, or an empty string for an empty window.
+     */
+    private void openForwardedFile(String filePath) {
+        try {
+            EditorWindow editorWindow = filePath.isEmpty() ? new EditorWindow() : new EditorWindow(filePath);
+            editorWindow.show();
+            editorWindow.toFront();
+        } catch (RuntimeException e) {
+            e.printStackTrace();
         }
-        editorWindow.show();
     }
 }
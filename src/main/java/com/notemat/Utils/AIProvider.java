@@ -0,0 +1,56 @@
+package com.notemat.Utils;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+
+/**
+ * A backend answering the questions asked from the editor's context menu.
+ * Implementations must be safe to call from any thread and deliver results on
+ * background threads. Cancelling a returned future should abort the request.
+ */
+public interface AIProvider {
+    String PROPERTY_PROVIDER = "notemat.ai.provider";
+
+    /**
+     * A short name identifying the backend, e.g. in cache keys.
+     *
+     * @return the provider name.
+     */
+    String getName();
+
+    /**
+     * Asks a question and returns the whole answer at once.
+     *
+     * @param model the display name of the model.
+     * @param query the question.
+     * @return a future completing with the answer.
+     */
+    CompletableFuture<String> generate(String model, String query);
+
+    /**
+     * Asks a question and passes the answer on in chunks as it is generated.
+     *
+     * @param model   the display name of the model.
+     * @param query   the question.
+     * @param onChunk receives each chunk of text, in order, on a background thread.
+     * @return a future completing once the last chunk has been delivered.
+     */
+    CompletableFuture<Void> stream(String model, String query, Consumer<String> onChunk);
+
+    /**
+     * Returns the provider selected for this run. Gemini is used unless
+     * {@code -Dnotemat.ai.provider=local} points the editor at the local
+     * stand-in server (see {@link LocalAIProvider}). If enabled in the
+     * preferences, it is wrapped in a {@link HedgedProvider}.
+     *
+     * @return the active provider.
+     */
+    static AIProvider current() {
+        AIProvider provider = "local".equals(System.getProperty(PROPERTY_PROVIDER)) ? LocalAIProvider.getShared() : Gemini.getShared();
+        if (PreferencesStore.getInstance().getGeminiHedging()) {
+            return new HedgedProvider(provider);
+        }
+        return provider;
+    }
+}
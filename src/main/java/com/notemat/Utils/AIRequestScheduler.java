@@ -0,0 +1,158 @@
+package com.notemat.Utils;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+
+/**
+ * Limits how many AI requests of an editor window are in flight at once.
+ * Further requests wait in a queue and start as earlier ones finish. Every
+ * submitted request can be cancelled through the future returned by
+ * {@link #submit(Supplier)}, and {@link #cancelAll()} cancels everything, e.g.
+ * when the window is closed.
+ */
+public class AIRequestScheduler {
+    /**
+     * The in-flight limit of editor windows, 4 unless overridden with
+     * {@code -Dnotemat.ai.maxInFlight}. Large selections are asked in parallel
+     * chunks, which all count against this limit.
+     */
+    public static final int DEFAULT_MAX_IN_FLIGHT = Math.max(1, Integer.getInteger("notemat.ai.maxInFlight", 4));
+
+    private final int maxInFlight;
+    private final ArrayDeque<Task<?>> queued = new ArrayDeque<>();
+    private final Set<Task<?>> running = new HashSet<>();
+
+    /**
+     * A submitted request. {@code result} is handed out before the request
+     * starts; {@code request} is set once it has been started.
+     */
+    private static class Task<T> {
+        private final Supplier<CompletableFuture<T>> start;
+        private final CompletableFuture<T> result = new CompletableFuture<>();
+        private CompletableFuture<T> request;
+
+        private Task(Supplier<CompletableFuture<T>> start) {
+            this.start = start;
+        }
+    }
+
+    /**
+     * Creates a scheduler.
+     *
+     * @param maxInFlight the maximum number of requests running at once.
+     */
+    public AIRequestScheduler(int maxInFlight) {
+        this.maxInFlight = maxInFlight;
+    }
+
+    /**
+     * Queues a request. It is started right away if fewer than the maximum
+     * number of requests are running.
+     *
+     * @param start starts the request and returns its future.
+     * @param <T>   the result type of the request.
+     * @return a future completing with the result of the request. Cancelling it
+     * removes a queued request or cancels a running one.
+     */
+    public <T> CompletableFuture<T> submit(Supplier<CompletableFuture<T>> start) {
+        Task<T> task = new Task<>(start);
+        task.result.whenComplete((result, error) -> {
+            if (task.result.isCancelled()) {
+                cancel(task);
+            }
+        });
+
+        synchronized (this) {
+            queued.add(task);
+        }
+        startQueued();
+        return task.result;
+    }
+
+    /**
+     * Cancels all queued and running requests.
+     */
+    public void cancelAll() {
+        List<Task<?>> tasks;
+        synchronized (this) {
+            tasks = new ArrayList<>(queued);
+            tasks.addAll(running);
+        }
+        for (Task<?> task : tasks) {
+            task.result.cancel(true);
+        }
+    }
+
+    /**
+     * Gets the number of requests that are queued or running.
+     *
+     * @return the number of unfinished requests.
+     */
+    public synchronized int getPendingCount() {
+        return queued.size() + running.size();
+    }
+
+    /**
+     * Starts queued requests while there is room. Requests are started outside
+     * the lock since they may complete synchronously.
+     */
+    private void startQueued() {
+        while (true) {
+            Task<?> task;
+            synchronized (this) {
+                if (running.size() >= maxInFlight || queued.isEmpty()) {
+                    return;
+                }
+                task = queued.poll();
+                running.add(task);
+            }
+            start(task);
+        }
+    }
+
+    private <T> void start(Task<T> task) {
+        CompletableFuture<T> request;
+        try {
+            request = task.start.get();
+        } catch (RuntimeException e) {
+            request = CompletableFuture.failedFuture(e);
+        }
+
+        synchronized (this) {
+            task.request = request;
+        }
+        // The result may have been cancelled while the request was starting.
+        if (task.result.isCancelled()) {
+            request.cancel(true);
+        }
+
+        request.whenComplete((result, error) -> {
+            if (error != null) {
+                task.result.completeExceptionally(error);
+            } else {
+                task.result.complete(result);
+            }
+            synchronized (this) {
+                running.remove(task);
+            }
+            startQueued();
+        });
+    }
+
+    private void cancel(Task<?> task) {
+        CompletableFuture<?> request;
+        synchronized (this) {
+            queued.remove(task);
+            request = task.request;
+        }
+        if (request != null) {
+            request.cancel(true);
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.notemat.Utils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+
+/**
+ * Splits AI responses into plain and bold segments while they are being
+ * received. Bold text is wrapped in double asterisks; a marker may be split
+ * across two chunks, so a trailing single asterisk is held back until the next
+ * chunk shows whether it starts a marker.
+ */
+public class BoldMarkupParser {
+    private static final String MARKER = "**";
+
+    private boolean bold = false;
+    private String pending = "";
+
+    /**
+     * A run of response text with its weight.
+     *
+     * @param text the text without markers.
+     * @param bold true if the text was wrapped in markers.
+     */
+    public record Segment(String text, boolean bold) {
+    }
+
+    /**
+     * Parses the next chunk of the response.
+     *
+     * @param chunk the received text.
+     * @return the segments that are complete so far, without markers.
+     */
+    public List<Segment> feed(String chunk) {
+        List<Segment> segments = new ArrayList<>();
+        String text = pending + chunk;
+        pending = "";
+
+        int start = 0;
+        int marker;
+        while ((marker = text.indexOf(MARKER, start)) != -1) {
+            add(segments, text.substring(start, marker));
+            bold = !bold;
+            start = marker + MARKER.length();
+        }
+
+        // Keep a trailing asterisk, it may be the first half of a marker.
+        int end = text.length();
+        if (end > start && text.charAt(end - 1) == '*') {
+            pending = "*";
+            end--;
+        }
+        add(segments, text.substring(start, end));
+        return segments;
+    }
+
+    /**
+     * Flushes the text held back at the end of the response.
+     *
+     * @return the remaining segments.
+     */
+    public List<Segment> finish() {
+        List<Segment> segments = new ArrayList<>();
+        add(segments, pending);
+        pending = "";
+        bold = false;
+        return segments;
+    }
+
+    private void add(List<Segment> segments, String text) {
+        if (!text.isEmpty()) {
+            segments.add(new Segment(text, bold));
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package com.notemat.Utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+
+/**
+ * Answers questions about selections too large for a single prompt.
+ * The text is split on paragraph boundaries into chunks that fit a token
+ * budget. Every chunk is condensed by its own request (map), all of them
+ * going through the window's {@link AIRequestScheduler} so its in-flight limit
+ * applies, and the partial answers are then combined by a final request
+ * (reduce) whose answer is streamed like a regular one. If the partial
+ * answers are still too large, they are condensed again first.
+ */
+public class ChunkedQuery {
+    /**
+     * The token budget of a single prompt, 8000 unless overridden with
+     * {@code -Dnotemat.ai.chunkTokens}. Tokens are estimated as four characters.
+     */
+    public static final int CHUNK_TOKENS = Math.max(256, Integer.getInteger("notemat.ai.chunkTokens", 8000));
+
+    private static final int CHARS_PER_TOKEN = 4;
+    private static final String MAP_PROMPT = """
+            The following text is part %d of %d of a long note. Condense it into the points someone needs to \
+            understand or answer questions about the whole note. Keep names, numbers and decisions.
+
+            %s""";
+    private static final String REDUCE_PROMPT = """
+            The following are condensed notes on the %d parts of a long note, in order. Using only them, \
+            respond to the whole note as if it had been given to you directly.
+
+            %s""";
+
+    private final AIProvider provider;
+    private final AIRequestScheduler scheduler;
+    private final String model;
+    private final boolean streaming;
+
+    /**
+     * Creates a chunked query.
+     *
+     * @param provider  the backend to ask.
+     * @param scheduler the scheduler every request goes through.
+     * @param model     the display name of the model.
+     * @param streaming true to stream the final answer.
+     */
+    public ChunkedQuery(AIProvider provider, AIRequestScheduler scheduler, String model, boolean streaming) {
+        this.provider = provider;
+        this.scheduler = scheduler;
+        this.model = model;
+        this.streaming = streaming;
+    }
+
+    /**
+     * Indicates whether a text exceeds the token budget of a single prompt.
+     *
+     * @param text the question.
+     * @return true if the text should be asked in chunks.
+     */
+    public static boolean needsChunking(String text) {
+        return text.length() > maxChars();
+    }
+
+    /**
+     * Runs the query.
+     *
+     * @param text       the whole question.
+     * @param onProgress receives short progress messages, on background threads.
+     * @param onChunk    receives the final answer in chunks, on a background thread.
+     * @return a future completing once the final answer has been delivered.
+     */
+    public CompletableFuture<Void> run(String text, Consumer<String> onProgress, Consumer<String> onChunk) {
+        return condense(split(text, maxChars()), onProgress).thenCompose(partials -> {
+            onProgress.accept("Combining " + partials.size() + " parts...");
+            String query = String.format(REDUCE_PROMPT, partials.size(), String.join("\n\n", partials));
+            if (streaming) {
+                return scheduler.submit(() -> provider.stream(model, query, onChunk));
+            }
+            return scheduler.submit(() -> provider.generate(model, query)).thenAccept(onChunk);
+        });
+    }
+
+    /**
+     * Condenses the chunks in parallel, repeating on the partial answers until
+     * they fit a single prompt.
+     *
+     * @param chunks     the texts to condense.
+     * @param onProgress receives progress messages.
+     * @return a future completing with the partial answers, in order.
+     */
+    private CompletableFuture<List<String>> condense(List<String> chunks, Consumer<String> onProgress) {
+        int total = chunks.size();
+        int inputLength = chunks.stream().mapToInt(String::length).sum();
+        AtomicInteger done = new AtomicInteger();
+        onProgress.accept("Reading " + total + " parts...");
+
+        List<CompletableFuture<String>> partials = new ArrayList<>(total);
+        for (int i = 0; i < total; i++) {
+            String query = String.format(MAP_PROMPT, i + 1, total, chunks.get(i));
+            partials.add(scheduler.submit(() -> provider.generate(model, query))
+                    .whenComplete((partial, error) -> {
+                        if (error == null) {
+                            onProgress.accept("Read " + done.incrementAndGet() + " of " + total + " parts...");
+                        }
+                    }));
+        }
+
+        return CompletableFuture.allOf(partials.toArray(new CompletableFuture[0])).thenCompose(ignored -> {
+            List<String> answers = partials.stream().map(CompletableFuture::join).toList();
+            String joined = String.join("\n\n", answers);
+            // Stop if condensing no longer shrinks the text, rather than looping forever.
+            if (!needsChunking(joined) || joined.length() >= inputLength) {
+                return CompletableFuture.completedFuture(answers);
+            }
+            return condense(split(joined, maxChars()), onProgress);
+        });
+    }
+
+    /**
+     * Splits a text into chunks of at most {@code maxChars} characters. Chunks
+     * end at paragraph boundaries; paragraphs longer than a chunk are cut at
+     * the last whitespace that fits.
+     *
+     * @param text     the text to split.
+     * @param maxChars the maximum length of a chunk.
+     * @return the chunks, in order.
+     */
+    public static List<String> split(String text, int maxChars) {
+        List<String> chunks = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+
+        int start = 0;
+        while (start < text.length()) {
+            int newline = text.indexOf('\n', start);
+            int end = newline == -1 ? text.length() : newline + 1;
+            String paragraph = text.substring(start, end);
+            start = end;
+
+            if (current.length() + paragraph.length() > maxChars && current.length() > 0) {
+                chunks.add(current.toString());
+                current.setLength(0);
+            }
+            while (paragraph.length() > maxChars) {
+                int cut = paragraph.lastIndexOf(' ', maxChars - 1);
+                cut = cut <= 0 ? maxChars : cut + 1;
+                chunks.add(paragraph.substring(0, cut));
+                paragraph = paragraph.substring(cut);
+            }
+            current.append(paragraph);
+        }
+        if (current.length() > 0) {
+            chunks.add(current.toString());
+        }
+        return chunks;
+    }
+
+    private static int maxChars() {
+        return CHUNK_TOKENS * CHARS_PER_TOKEN;
+    }
+}
@@ -0,0 +1,384 @@
+package com.notemat.Utils;
+
+import org.fxmisc.richtext.model.StyleSpan;
+import org.fxmisc.richtext.model.StyleSpans;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+
+/**
+ * The differences between two styled documents, paragraph by paragraph.
+ * <p>
+ * Every paragraph is reduced to a 64 bit hash of its text and styles and the
+ * two hash sequences are compared with {@link MyersDiff}, which takes a few
+ * milliseconds even for notes with a hundred thousand paragraphs. The result
+ * is a list of {@link Row}s: the changed paragraphs with a little unchanged
+ * context around them, side by side, and one row standing for each longer
+ * unchanged stretch. Which characters changed inside a paragraph is worked
+ * out by {@link #segments} only when the row is shown, so a view that renders
+ * just the visible rows never diffs the rest.
+ */
+public final class DocumentDiff {
+    /**
+     * The number of unchanged paragraphs shown before and after a change.
+     */
+    public static final int CONTEXT = 2;
+
+    /**
+     * Paragraph pairs longer than this together are marked as a whole instead
+     * of character by character.
+     */
+    private static final int CHARACTER_DIFF_LIMIT = 100_000;
+
+    /**
+     * What a row shows.
+     */
+    public enum Kind {
+        /** The same paragraph on both sides. */
+        UNCHANGED,
+        /** A paragraph on the left replaced by the one on the right. */
+        CHANGED,
+        /** A paragraph only on the left. */
+        REMOVED,
+        /** A paragraph only on the right. */
+        ADDED,
+        /** A run of unchanged paragraphs that is not shown. */
+        SKIPPED
+    }
+
+    /**
+     * How a piece of text differs from the other side.
+     */
+    public enum Mark {
+        NONE,
+        REMOVED,
+        ADDED,
+        /** Same text, different style. */
+        RESTYLED
+    }
+
+    /**
+     * One line of the side by side view.
+     *
+     * @param kind    what the row shows.
+     * @param left    the paragraph index on the left, or -1.
+     * @param right   the paragraph index on the right, or -1.
+     * @param skipped the number of unchanged paragraphs a {@link Kind#SKIPPED} row stands for.
+     */
+    public record Row(Kind kind, int left, int right, int skipped) {
+    }
+
+    /**
+     * A piece of a paragraph with one style and one mark.
+     *
+     * @param text  the text.
+     * @param style the inline CSS of the text in its document.
+     * @param mark  how the text differs from the other side.
+     */
+    public record Segment(String text, String style, Mark mark) {
+    }
+
+    /**
+     * A document split into paragraphs, with its style runs kept as flat
+     * arrays so the style at any offset is a binary search away.
+     */
+    private static final class Side {
+        final String text;
+        final int[] paragraphStarts;
+        final int[] runStarts;
+        final String[] runStyles;
+        final long[] hashes;
+
+        Side(String text, StyleSpans<String> spans) {
+            this.text = text;
+
+            int count = 1;
+            for (int i = text.indexOf('\n'); i >= 0; i = text.indexOf('\n', i + 1)) {
+                count++;
+            }
+            paragraphStarts = new int[count + 1];
+            int paragraph = 1;
+            for (int i = text.indexOf('\n'); i >= 0; i = text.indexOf('\n', i + 1)) {
+                paragraphStarts[paragraph++] = i + 1;
+            }
+            // Paragraph i ends before paragraphStarts[i + 1] - 1, its line break.
+            paragraphStarts[count] = text.length() + 1;
+
+            runStarts = new int[spans.getSpanCount()];
+            runStyles = new String[spans.getSpanCount()];
+            int position = 0;
+            int run = 0;
+            for (StyleSpan<String> span : spans) {
+                runStarts[run] = position;
+                runStyles[run] = span.getStyle();
+                position += span.getLength();
+                run++;
+            }
+
+            hashes = new long[count];
+            for (int i = 0; i < count; i++) {
+                hashes[i] = hash(i);
+            }
+        }
+
+        int paragraphCount() {
+            return hashes.length;
+        }
+
+        int start(int paragraph) {
+            return paragraphStarts[paragraph];
+        }
+
+        int end(int paragraph) {
+            return paragraphStarts[paragraph + 1] - 1;
+        }
+
+        /**
+         * Finds the style run covering an offset.
+         */
+        int runAt(int offset) {
+            int run = Arrays.binarySearch(runStarts, offset);
+            if (run < 0) {
+                run = -run - 2;
+            }
+            // Skip empty runs sharing the offset.
+            while (run + 1 < runStarts.length && runStarts[run + 1] <= offset) {
+                run++;
+            }
+            return Math.max(run, 0);
+        }
+
+        String styleAt(int offset) {
+            return runStyles.length == 0 ? "" : runStyles[runAt(offset)];
+        }
+
+        /**
+         * Hashes a paragraph's text and the styles of its characters with 64 bit
+         * FNV-1a. The line break is left out, so a paragraph that became the last
+         * one is still the same paragraph.
+         */
+        long hash(int paragraph) {
+            int start = start(paragraph);
+            int end = end(paragraph);
+            long hash = 0xcbf29ce484222325L;
+            for (int i = start; i < end; i++) {
+                hash = (hash ^ text.charAt(i)) * 0x100000001b3L;
+            }
+            if (runStyles.length > 0 && end > start) {
+                for (int run = runAt(start); run < runStarts.length && runStarts[run] < end; run++) {
+                    int runEnd = run + 1 < runStarts.length ? Math.min(runStarts[run + 1], end) : end;
+                    int length = runEnd - Math.max(runStarts[run], start);
+                    if (length > 0) {
+                        hash = (hash ^ length) * 0x100000001b3L;
+                        hash = (hash ^ runStyles[run].hashCode()) * 0x100000001b3L;
+                    }
+                }
+            }
+            return hash;
+        }
+
+        /**
+         * Splits a paragraph into segments at style changes and where the mark
+         * of its characters changes.
+         *
+         * @param paragraph the paragraph index.
+         * @param marks     the mark of each character, or null to mark all with {@code whole}.
+         * @param whole     the mark used when {@code marks} is null.
+         */
+        List<Segment> segments(int paragraph, Mark[] marks, Mark whole) {
+            int start = start(paragraph);
+            int end = end(paragraph);
+            List<Segment> segments = new ArrayList<>();
+            int segmentStart = start;
+            String style = styleAt(start);
+            for (int i = start + 1; i <= end; i++) {
+                String nextStyle = i < end ? styleAt(i) : null;
+                boolean markChanges = marks != null && i < end && marks[i - start] != marks[i - 1 - start];
+                if (i == end || !nextStyle.equals(style) || markChanges) {
+                    Mark mark = marks != null ? marks[segmentStart - start] : whole;
+                    segments.add(new Segment(text.substring(segmentStart, i), style, mark));
+                    segmentStart = i;
+                    style = nextStyle;
+                }
+            }
+            return segments;
+        }
+    }
+
+    private final Side left;
+    private final Side right;
+    private final List<Row> rows = new ArrayList<>();
+    private final List<Integer> hunkRows = new ArrayList<>();
+    private int changedParagraphs = 0;
+    private final long elapsedNanos;
+
+    private DocumentDiff(Side left, Side right, List<MyersDiff.Hunk> hunks, long start) {
+        this.left = left;
+        this.right = right;
+
+        // Walk the hunks, keeping CONTEXT unchanged paragraphs on either side of each.
+        int leftPosition = 0;
+        int rightPosition = 0;
+        for (int h = 0; h < hunks.size(); h++) {
+            MyersDiff.Hunk hunk = hunks.get(h);
+            int contextStart = Math.max(leftPosition, hunk.aStart() - CONTEXT);
+            if (contextStart > leftPosition) {
+                rows.add(new Row(Kind.SKIPPED, leftPosition, rightPosition, contextStart - leftPosition));
+                rightPosition += contextStart - leftPosition;
+                leftPosition = contextStart;
+            }
+            while (leftPosition < hunk.aStart()) {
+                rows.add(new Row(Kind.UNCHANGED, leftPosition++, rightPosition++, 0));
+            }
+
+            hunkRows.add(rows.size());
+            int leftLength = hunk.aEnd() - hunk.aStart();
+            int rightLength = hunk.bEnd() - hunk.bStart();
+            for (int i = 0; i < Math.max(leftLength, rightLength); i++) {
+                int leftParagraph = i < leftLength ? hunk.aStart() + i : -1;
+                int rightParagraph = i < rightLength ? hunk.bStart() + i : -1;
+                Kind kind = leftParagraph < 0 ? Kind.ADDED : rightParagraph < 0 ? Kind.REMOVED : Kind.CHANGED;
+                rows.add(new Row(kind, leftParagraph, rightParagraph, 0));
+                changedParagraphs++;
+            }
+            leftPosition = hunk.aEnd();
+            rightPosition = hunk.bEnd();
+
+            // Trailing context stops at the next hunk, which adds its own leading context.
+            int nextStart = h + 1 < hunks.size() ? hunks.get(h + 1).aStart() : left.paragraphCount();
+            int contextEnd = Math.min(leftPosition + CONTEXT, nextStart);
+            while (leftPosition < contextEnd) {
+                rows.add(new Row(Kind.UNCHANGED, leftPosition++, rightPosition++, 0));
+            }
+        }
+        if (!hunks.isEmpty() && leftPosition < left.paragraphCount()) {
+            rows.add(new Row(Kind.SKIPPED, leftPosition, rightPosition, left.paragraphCount() - leftPosition));
+        }
+        elapsedNanos = System.nanoTime() - start;
+    }
+
+    /**
+     * Compares two styled documents.
+     *
+     * @param leftText   the text of the older or first document.
+     * @param leftSpans  its style spans.
+     * @param rightText  the text of the newer or second document.
+     * @param rightSpans its style spans.
+     * @return the differences.
+     */
+    public static DocumentDiff compare(String leftText, StyleSpans<String> leftSpans, String rightText, StyleSpans<String> rightSpans) {
+        long start = System.nanoTime();
+        Side left = new Side(leftText, leftSpans);
+        Side right = new Side(rightText, rightSpans);
+        return new DocumentDiff(left, right, MyersDiff.diff(left.hashes, right.hashes), start);
+    }
+
+    /**
+     * @return the rows of the side by side view, in document order. Empty when
+     * the documents are the same.
+     */
+    public List<Row> getRows() {
+        return rows;
+    }
+
+    /**
+     * @return the index of the first changed row of each hunk, for jumping
+     * from change to change.
+     */
+    public List<Integer> getHunkRows() {
+        return hunkRows;
+    }
+
+    /**
+     * @return the number of changed, removed and added paragraphs.
+     */
+    public int getChangedParagraphs() {
+        return changedParagraphs;
+    }
+
+    /**
+     * @return how long splitting, hashing and comparing the paragraphs took.
+     */
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    /**
+     * Splits both sides of a row into styled segments marked with what
+     * changed. Within a changed paragraph the characters are compared with
+     * {@link MyersDiff}, and short runs of equal characters between two larger
+     * changes are shown as changed, so a rewritten word reads as one change
+     * instead of a scatter of letters. Characters that are the same on both sides but styled
+     * differently are marked {@link Mark#RESTYLED}.
+     *
+     * @param row a row of {@link #getRows()}.
+     * @return the segments of the left and the right paragraph; a side without
+     * a paragraph is empty. A {@link Kind#SKIPPED} row has no segments.
+     */
+    public List<List<Segment>> segments(Row row) {
+        return switch (row.kind()) {
+            case SKIPPED -> List.of(List.of(), List.of());
+            case UNCHANGED -> List.of(left.segments(row.left(), null, Mark.NONE), right.segments(row.right(), null, Mark.NONE));
+            case REMOVED -> List.of(left.segments(row.left(), null, Mark.REMOVED), List.of());
+            case ADDED -> List.of(List.of(), right.segments(row.right(), null, Mark.ADDED));
+            case CHANGED -> changedSegments(row.left(), row.right());
+        };
+    }
+
+    private List<List<Segment>> changedSegments(int leftParagraph, int rightParagraph) {
+        int leftStart = left.start(leftParagraph);
+        int rightStart = right.start(rightParagraph);
+        String leftText = left.text.substring(leftStart, left.end(leftParagraph));
+        String rightText = right.text.substring(rightStart, right.end(rightParagraph));
+        if (leftText.length() + rightText.length() > CHARACTER_DIFF_LIMIT) {
+            return List.of(left.segments(leftParagraph, null, Mark.REMOVED), right.segments(rightParagraph, null, Mark.ADDED));
+        }
+
+        Mark[] leftMarks = new Mark[leftText.length()];
+        Mark[] rightMarks = new Mark[rightText.length()];
+        int i = 0, j = 0;
+        List<MyersDiff.Hunk> hunks = mergeShortEqualities(MyersDiff.diff(leftText, rightText));
+        for (int h = 0; h <= hunks.size(); h++) {
+            // Characters up to the next hunk are equal; compare their styles.
+            int equalEnd = h < hunks.size() ? hunks.get(h).aStart() : leftText.length();
+            for (; i < equalEnd; i++, j++) {
+                boolean restyled = !left.styleAt(leftStart + i).equals(right.styleAt(rightStart + j));
+                leftMarks[i] = rightMarks[j] = restyled ? Mark.RESTYLED : Mark.NONE;
+            }
+            if (h < hunks.size()) {
+                MyersDiff.Hunk hunk = hunks.get(h);
+                Arrays.fill(leftMarks, hunk.aStart(), hunk.aEnd(), Mark.REMOVED);
+                Arrays.fill(rightMarks, hunk.bStart(), hunk.bEnd(), Mark.ADDED);
+                i = hunk.aEnd();
+                j = hunk.bEnd();
+            }
+        }
+        return List.of(left.segments(leftParagraph, leftMarks, Mark.NONE), right.segments(rightParagraph, rightMarks, Mark.NONE));
+    }
+
+    /**
+     * Joins neighbouring changes separated by an unchanged run no longer than
+     * the larger side of either change.
+     */
+    private static List<MyersDiff.Hunk> mergeShortEqualities(List<MyersDiff.Hunk> hunks) {
+        List<MyersDiff.Hunk> merged = new ArrayList<>();
+        for (MyersDiff.Hunk hunk : hunks) {
+            if (!merged.isEmpty()) {
+                MyersDiff.Hunk last = merged.getLast();
+                int equal = hunk.aStart() - last.aEnd();
+                if (equal <= size(last) && equal <= size(hunk)) {
+                    merged.set(merged.size() - 1, new MyersDiff.Hunk(last.aStart(), hunk.aEnd(), last.bStart(), hunk.bEnd()));
+                    continue;
+                }
+            }
+            merged.add(hunk);
+        }
+        return merged;
+    }
+
+    private static int size(MyersDiff.Hunk hunk) {
+        return Math.max(hunk.aEnd() - hunk.aStart(), hunk.bEnd() - hunk.bStart());
+    }
+}
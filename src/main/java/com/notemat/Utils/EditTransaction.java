@@ -0,0 +1,127 @@
+package com.notemat.Utils;
+
+import org.fxmisc.richtext.InlineCssTextArea;
+import org.fxmisc.richtext.MultiChangeBuilder;
+import org.fxmisc.richtext.model.GenericEditableStyledDocument;
+import org.fxmisc.richtext.model.ReadOnlyStyledDocument;
+import org.fxmisc.richtext.model.StyleSpans;
+import org.fxmisc.richtext.model.StyledDocument;
+
+
+/**
+ * Groups several edits of the text area into one atomic update.
+ * Text and styles are applied together, so the area lays out once, emits a
+ * single change and the undo history records a single step, no matter how
+ * many styled runs the inserted text has.
+ * <p>
+ * As with RichTextFX's multi-change builder, the positions of each edit refer
+ * to the document after the previous edits of the same transaction.
+ */
+public class EditTransaction {
+    private final InlineCssTextArea textArea;
+    private final MultiChangeBuilder<String, String, String> builder;
+    private boolean empty = true;
+
+    /**
+     * Starts a transaction on a text area.
+     *
+     * @param textArea the text area to edit.
+     */
+    public EditTransaction(InlineCssTextArea textArea) {
+        this.textArea = textArea;
+        this.builder = textArea.createMultiChange();
+    }
+
+    /**
+     * Replaces a range with a styled document.
+     *
+     * @param start    the start of the range.
+     * @param end      the end of the range.
+     * @param document the replacement.
+     * @return this transaction.
+     */
+    public EditTransaction replace(int start, int end, StyledDocument<String, String, String> document) {
+        builder.replace(start, end, document);
+        empty = false;
+        return this;
+    }
+
+    /**
+     * Replaces a range with text styled by the given spans.
+     *
+     * @param start  the start of the range.
+     * @param end    the end of the range.
+     * @param text   the replacement text.
+     * @param styles the styles of the replacement; their total length must match the text.
+     * @return this transaction.
+     */
+    public EditTransaction replace(int start, int end, String text, StyleSpans<String> styles) {
+        return replace(start, end, document(textArea, text, styles));
+    }
+
+    /**
+     * Replaces a range with text in a single style.
+     *
+     * @param start the start of the range.
+     * @param end   the end of the range.
+     * @param text  the replacement text.
+     * @param style the style of the replacement.
+     * @return this transaction.
+     */
+    public EditTransaction replace(int start, int end, String text, String style) {
+        return replace(start, end, document(textArea, text, style));
+    }
+
+    /**
+     * Removes a range.
+     *
+     * @param start the start of the range.
+     * @param end   the end of the range.
+     * @return this transaction.
+     */
+    public EditTransaction delete(int start, int end) {
+        if (start != end) {
+            builder.deleteText(start, end);
+            empty = false;
+        }
+        return this;
+    }
+
+    /**
+     * Applies all edits as one update. Does nothing if no edit was added.
+     */
+    public void commit() {
+        if (!empty) {
+            builder.commit();
+        }
+    }
+
+    /**
+     * Builds a document from text in a single style.
+     *
+     * @param textArea the text area the document is meant for.
+     * @param text     the text; newlines start new paragraphs.
+     * @param style    the style of the text.
+     * @return the immutable document.
+     */
+    public static StyledDocument<String, String, String> document(InlineCssTextArea textArea, String text, String style) {
+        return ReadOnlyStyledDocument.fromString(text, textArea.getInitialParagraphStyle(), style, textArea.getSegOps());
+    }
+
+    /**
+     * Builds a document from text and its style spans. The spans are applied to
+     * a detached document, which is cheap since nothing observes it.
+     *
+     * @param textArea the text area the document is meant for.
+     * @param text     the text; newlines start new paragraphs.
+     * @param styles   the styles; their total length must match the text.
+     * @return the immutable document.
+     */
+    public static StyledDocument<String, String, String> document(InlineCssTextArea textArea, String text, StyleSpans<String> styles) {
+        GenericEditableStyledDocument<String, String, String> document = new GenericEditableStyledDocument<>(
+                textArea.getInitialParagraphStyle(), textArea.getInitialTextStyle(), textArea.getSegOps());
+        document.replace(0, 0, document(textArea, text, textArea.getInitialTextStyle()));
+        document.setStyleSpans(0, styles);
+        return document.snapshot();
+    }
+}
@@ -6,34 +6,69 @@ import com.google.genai.Client;
 import java.io.IOException;
 import java.util.Objects;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
 
 import com.google.genai.ResponseStream;
 import com.google.genai.types.*;
 import com.notemat.Components.Preferences;
 import org.apache.http.HttpException;
 
-public class Gemini {
-    private Client client;
-    private GenerateContentConfig config;
+/**
+ * {@link AIProvider} backed by the Google Gen AI SDK. All editor windows share
+ * one client per API key.
+ */
+public class Gemini implements AIProvider {
+    /**
+     * Version of {@link #SYSTEM_PROMPT}. Bump it whenever the prompt changes so
+     * cached answers produced with the old prompt are no longer used.
+     */
+    public static final int SYSTEM_PROMPT_VERSION = 1;
 
-    public Gemini() {
-        String apiKey = Preferences.getGeminiApi();
+    private static final String SYSTEM_PROMPT = """
+            You are "Notemat AI", an AI assistant. Your role is to assist and engage in conversation while being helpful, respectful, and engaging.
 
-        client = Client.builder().apiKey(apiKey).build();
+            - If you are specifically asked about the model you are using, you may mention it. If you are not asked specifically about the model you are using, you do not need to mention it.
 
-        String systemPrompt = """
-                You are "Notemat AI", an AI assistant. Your role is to assist and engage in conversation while being helpful, respectful, and engaging.
+            - Your entire response must consist of plain characters, only exception is bold text formatting. To use bold text wrap the text in double asterisks.
+            - Do not use markdown in any circumstance.
+            - For bullet points use "-".
+            """;
 
-                - If you are specifically asked about the model you are using, you may mention it. If you are not asked specifically about the model you are using, you do not need to mention it.
+    private static final ExecutorService STREAM_EXECUTOR = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "notemat-gemini-stream");
+        thread.setDaemon(true);
+        return thread;
+    });
 
-                - Your entire response must consist of plain characters, only exception is bold text formatting. To use bold text wrap the text in double asterisks.
-                - Do not use markdown in any circumstance.
-                - For bullet points use "-".
-                """;
+    private static Gemini shared;
 
+    private final String apiKey;
+    private Client client;
+    private GenerateContentConfig config;
 
+    /**
+     * Returns the client shared by all editor windows, creating it on first use.
+     * The client is rebuilt if the API key in the preferences has changed since
+     * it was created.
+     *
+     * @return the shared Gemini instance.
+     */
+    public static synchronized Gemini getShared() {
+        String apiKey = Preferences.getGeminiApi();
+        if (shared == null || !Objects.equals(shared.apiKey, apiKey)) {
+            shared = new Gemini(apiKey);
+        }
+        return shared;
+    }
+
+    private Gemini(String apiKey) {
+        this.apiKey = apiKey;
+
+        client = Client.builder().apiKey(apiKey).build();
 
-        Content systemInstruction = Content.fromParts(Part.fromText(systemPrompt));
+        Content systemInstruction = Content.fromParts(Part.fromText(SYSTEM_PROMPT));
         Tool googleSearchTool = Tool.builder().googleSearch(GoogleSearch.builder().build()).build();
         config = GenerateContentConfig.builder().candidateCount(1).maxOutputTokens(10240).systemInstruction(systemInstruction).tools(ImmutableList.of(googleSearchTool)).build();
     }
@@ -50,4 +85,79 @@ public class Gemini {
     public CompletableFuture<GenerateContentResponse> getResponse(String model, String query) throws HttpException, IOException {
         return client.async.models.generateContent(formatModel(model), query, config);
     }
-}
\ No newline at end of file
+
+    @Override
+    public String getName() {
+        return "gemini";
+    }
+
+    @Override
+    public CompletableFuture<String> generate(String model, String query) {
+        try {
+            return getResponse(model, query).thenApply(response -> {
+                String text = response.text();
+                return text != null ? text : "";
+            });
+        } catch (HttpException | IOException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * Queries the model and passes the answer on in chunks as they are
+     * generated, so the first words can be shown long before the answer is
+     * complete. The chunks are delivered on a background thread. Cancelling the
+     * returned future closes the connection and stops delivering chunks.
+     *
+     * @param model   the display name of the model.
+     * @param query   the question.
+     * @param onChunk receives each chunk of text, in order.
+     * @return a future completing once the last chunk has been delivered.
+     */
+    @Override
+    public CompletableFuture<Void> stream(String model, String query, Consumer<String> onChunk) {
+        CompletableFuture<Void> result = new CompletableFuture<>();
+        STREAM_EXECUTOR.execute(() -> {
+            if (result.isDone()) {
+                return;
+            }
+
+            ResponseStream<GenerateContentResponse> stream;
+            try {
+                stream = openStream(model, query);
+            } catch (HttpException | IOException | RuntimeException e) {
+                result.completeExceptionally(e);
+                return;
+            }
+
+            // Closing the stream from the cancelling thread aborts a blocked read.
+            result.whenComplete((ignored, error) -> {
+                if (result.isCancelled()) {
+                    stream.close();
+                }
+            });
+
+            try {
+                for (GenerateContentResponse chunk : stream) {
+                    if (result.isDone()) {
+                        break;
+                    }
+                    String text = chunk.text();
+                    if (text != null && !text.isEmpty()) {
+                        onChunk.accept(text);
+                    }
+                }
+                result.complete(null);
+            } catch (RuntimeException e) {
+                result.completeExceptionally(e);
+            } finally {
+                stream.close();
+            }
+        });
+        return result;
+    }
+
+    private ResponseStream<GenerateContentResponse> openStream(String model, String query) throws HttpException, IOException {
+        return client.models.generateContentStream(formatModel(model), query, config);
+    }
+}
@@ -0,0 +1,365 @@
+package com.notemat.Utils;
+
+import com.notemat.Diagnostics.LatencyDistribution;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+
+/**
+ * {@link AIProvider} cutting the tail latency of another provider. Every
+ * request is retried with exponential backoff when it fails with a transient
+ * error before producing any text. If the requested model has not produced its
+ * first text within the 95th percentile of its recent latencies, the same
+ * question is also sent to {@value #FALLBACK_MODEL}, and whichever model
+ * answers first is used while the other request is cancelled.
+ * <p>
+ * Latencies are kept per provider, model and kind of request (streamed or
+ * not). Until enough have been recorded, a fixed deadline is used. The
+ * models whose answers were used are available from
+ * {@link #getAnsweringModels()}, so an answer of the fallback model is not
+ * mistaken for one of the requested model, e.g. when it is cached.
+ */
+public class HedgedProvider implements AIProvider {
+    public static final String FALLBACK_MODEL = "Gemini 2.0 Flash-Lite";
+
+    private static final double DEADLINE_PERCENTILE = 0.95;
+    private static final int MIN_SAMPLES = 20;
+    private static final int LATENCY_WINDOW = 1000;
+    private static final long DEFAULT_DEADLINE_MS = 4000;
+    private static final long MIN_DEADLINE_MS = 1000;
+    private static final long MAX_DEADLINE_MS = 30000;
+    private static final int MAX_TRIES = 3;
+    private static final long BACKOFF_MS = 500;
+    private static final Pattern STATUS = Pattern.compile("\\b([45]\\d\\d)\\b");
+
+    private static final Map<String, LatencyDistribution> LATENCIES = new ConcurrentHashMap<>();
+
+    private final AIProvider delegate;
+    private final Set<String> answeringModels = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Starts a request on a model, passing its text on to {@code sink}.
+     */
+    @FunctionalInterface
+    private interface Request {
+        CompletableFuture<?> start(String model, Consumer<String> sink);
+    }
+
+    /**
+     * Wraps a provider.
+     *
+     * @param delegate the provider answering the requests.
+     */
+    public HedgedProvider(AIProvider delegate) {
+        this.delegate = delegate;
+    }
+
+    /**
+     * Gets the latencies recorded for a model of a provider. Counts are
+     * halved every {@value #LATENCY_WINDOW} values, so the percentiles follow
+     * recent behaviour.
+     *
+     * @param provider the provider name.
+     * @param model    the display name of the model.
+     * @param streamed true for the time to the first chunk of streamed answers,
+     *                 false for the time to complete answers.
+     * @return the distribution, created empty if nothing was recorded yet.
+     */
+    public static LatencyDistribution getLatencies(String provider, String model, boolean streamed) {
+        String key = provider + "/" + model + (streamed ? "/first-chunk" : "/answer");
+        return LATENCIES.computeIfAbsent(key, ignored -> new LatencyDistribution(LATENCY_WINDOW));
+    }
+
+    @Override
+    public String getName() {
+        return delegate.getName();
+    }
+
+    /**
+     * Gets the models whose answers were used by the requests of this
+     * provider so far: the requested model, the fallback model or both.
+     *
+     * @return the display names of the models.
+     */
+    public Set<String> getAnsweringModels() {
+        return Set.copyOf(answeringModels);
+    }
+
+    @Override
+    public CompletableFuture<String> generate(String model, String query) {
+        StringBuilder answer = new StringBuilder();
+        CompletableFuture<Void> race = new Race(false, (attemptModel, sink) -> {
+            CompletableFuture<String> request = delegate.generate(attemptModel, query);
+            CompletableFuture<Void> accepted = request.thenAccept(sink);
+            // A cancelled attempt has to cancel the request itself, not just the stage after it.
+            accepted.whenComplete((ignored, error) -> {
+                if (accepted.isCancelled()) {
+                    request.cancel(true);
+                }
+            });
+            return accepted;
+        }, answer::append).start(model);
+
+        CompletableFuture<String> result = new CompletableFuture<>();
+        race.whenComplete((ignored, error) -> {
+            if (error != null) {
+                result.completeExceptionally(error);
+            } else {
+                result.complete(answer.toString());
+            }
+        });
+        result.whenComplete((ignored, error) -> {
+            if (result.isCancelled()) {
+                race.cancel(true);
+            }
+        });
+        return result;
+    }
+
+    @Override
+    public CompletableFuture<Void> stream(String model, String query, Consumer<String> onChunk) {
+        return new Race(true, (attemptModel, sink) -> delegate.stream(attemptModel, query, sink), onChunk).start(model);
+    }
+
+    /**
+     * Indicates whether a failed request may succeed when sent again: network
+     * errors, timeouts, rate limits and server errors.
+     *
+     * @param error the failure.
+     * @return true if the request should be retried.
+     */
+    static boolean isTransient(Throwable error) {
+        while ((error instanceof CompletionException || error instanceof ExecutionException) && error.getCause() != null) {
+            error = error.getCause();
+        }
+        if (error instanceof CancellationException) {
+            return false;
+        }
+
+        Matcher status = STATUS.matcher(String.valueOf(error.getMessage()));
+        if (status.find()) {
+            int code = Integer.parseInt(status.group(1));
+            return code == 408 || code == 429 || code >= 500;
+        }
+        return error instanceof IOException;
+    }
+
+    /**
+     * The primary request of one question and its possible hedge. The first
+     * attempt producing text wins; text of the other attempt is dropped.
+     */
+    private final class Race {
+        private final boolean streamed;
+        private final Request request;
+        private final Consumer<String> onChunk;
+        private final CompletableFuture<Void> result = new CompletableFuture<>();
+        private final List<Attempt> attempts = new ArrayList<>();
+        private String primaryModel;
+        private Attempt winner;
+        private boolean hedged = false;
+
+        private Race(boolean streamed, Request request, Consumer<String> onChunk) {
+            this.streamed = streamed;
+            this.request = request;
+            this.onChunk = onChunk;
+        }
+
+        private CompletableFuture<Void> start(String model) {
+            primaryModel = model;
+            result.whenComplete((ignored, error) -> {
+                if (result.isCancelled()) {
+                    cancelAllBut(null);
+                }
+            });
+
+            launch(model);
+            if (!FALLBACK_MODEL.equals(model)) {
+                CompletableFuture.delayedExecutor(deadlineMillis(model), TimeUnit.MILLISECONDS).execute(this::hedge);
+            }
+            return result;
+        }
+
+        private long deadlineMillis(String model) {
+            LatencyDistribution latencies = getLatencies(delegate.getName(), model, streamed);
+            if (latencies.getCount() < MIN_SAMPLES) {
+                return DEFAULT_DEADLINE_MS;
+            }
+            long percentile = (long) Math.ceil(latencies.getPercentileMillis(DEADLINE_PERCENTILE));
+            return Math.max(MIN_DEADLINE_MS, Math.min(MAX_DEADLINE_MS, percentile));
+        }
+
+        private void launch(String model) {
+            Attempt attempt = new Attempt(this, model);
+            synchronized (this) {
+                attempts.add(attempt);
+            }
+            attempt.run();
+        }
+
+        /**
+         * Sends the question to the fallback model, unless an answer has
+         * arrived or the fallback is already running.
+         */
+        private void hedge() {
+            synchronized (this) {
+                if (hedged || winner != null || result.isDone()) {
+                    return;
+                }
+                hedged = true;
+            }
+            launch(FALLBACK_MODEL);
+        }
+
+        private void deliver(Attempt attempt, String chunk) {
+            if (claim(attempt)) {
+                onChunk.accept(chunk);
+            }
+        }
+
+        private void finished(Attempt attempt, Throwable error) {
+            if (error == null) {
+                if (claim(attempt)) {
+                    result.complete(null);
+                }
+                return;
+            }
+
+            boolean hedgeNow;
+            synchronized (this) {
+                if (winner != null && winner != attempt) {
+                    return;
+                }
+                if (winner == null && attempts.stream().anyMatch(other -> other != attempt && !other.done.isDone())) {
+                    return;
+                }
+                hedgeNow = winner == null && !hedged && !FALLBACK_MODEL.equals(primaryModel);
+            }
+
+            // The requested model failed for good; the fallback may still answer.
+            if (hedgeNow) {
+                hedge();
+            } else {
+                result.completeExceptionally(error);
+            }
+        }
+
+        /**
+         * Makes an attempt the winner if there is none yet, recording its
+         * latency and cancelling the others.
+         *
+         * @return true if the attempt is the winner.
+         */
+        private boolean claim(Attempt attempt) {
+            synchronized (this) {
+                if (winner == attempt) {
+                    return true;
+                }
+                if (winner != null || result.isDone()) {
+                    return false;
+                }
+                winner = attempt;
+            }
+            answeringModels.add(attempt.model);
+
+            getLatencies(delegate.getName(), attempt.model, streamed).record(System.nanoTime() - attempt.started);
+            cancelAllBut(attempt);
+            return true;
+        }
+
+        private void cancelAllBut(Attempt keep) {
+            List<Attempt> others;
+            synchronized (this) {
+                others = new ArrayList<>(attempts);
+            }
+            for (Attempt other : others) {
+                if (other != keep && !other.done.isDone()) {
+                    // The loser took at least this long, which keeps its percentiles honest.
+                    getLatencies(delegate.getName(), other.model, streamed).record(System.nanoTime() - other.started);
+                    other.cancel();
+                }
+            }
+        }
+    }
+
+    /**
+     * The requests sent to one model for one question, including retries.
+     */
+    private static final class Attempt {
+        private final Race race;
+        private final String model;
+        private final long started = System.nanoTime();
+        private final CompletableFuture<Void> done = new CompletableFuture<>();
+        private volatile CompletableFuture<?> current;
+        private volatile boolean delivered = false;
+        private int tries = 0;
+
+        private Attempt(Race race, String model) {
+            this.race = race;
+            this.model = model;
+        }
+
+        private void run() {
+            tries++;
+            CompletableFuture<?> request;
+            try {
+                request = race.request.start(model, chunk -> {
+                    delivered = true;
+                    race.deliver(this, chunk);
+                });
+            } catch (RuntimeException e) {
+                request = CompletableFuture.failedFuture(e);
+            }
+
+            current = request;
+            if (done.isDone()) {
+                request.cancel(true);
+            }
+
+            request.whenComplete((ignored, error) -> {
+                if (done.isDone()) {
+                    return;
+                }
+                // Text already shown cannot be taken back, so only retry before the first chunk.
+                if (error != null && !delivered && tries < MAX_TRIES && isTransient(error)) {
+                    long backoff = BACKOFF_MS << (tries - 1);
+                    long delay = ThreadLocalRandom.current().nextLong(backoff / 2, backoff + 1);
+                    CompletableFuture.delayedExecutor(delay, TimeUnit.MILLISECONDS).execute(() -> {
+                        if (!done.isDone()) {
+                            run();
+                        }
+                    });
+                    return;
+                }
+
+                if (error != null) {
+                    done.completeExceptionally(error);
+                } else {
+                    done.complete(null);
+                }
+                race.finished(this, error);
+            });
+        }
+
+        private void cancel() {
+            done.cancel(true);
+            CompletableFuture<?> request = current;
+            if (request != null) {
+                request.cancel(true);
+            }
+        }
+    }
+}
@@ -12,7 +12,8 @@ import org.fxmisc.richtext.InlineCssTextArea;
 /**
  * Configures key bindings for common editor actions.
  * This class installs an event filter on the provided Scene to handle
- * shortcut keys for styling, saving, and clipboard operations on the editor.
+ * shortcut keys for styling, saving, clipboard operations, undo/redo and the
+ * performance overlay on the editor.
  */
 public class KeyBindings {
     /**
@@ -53,6 +54,24 @@ public class KeyBindings {
                         event.consume();
                         editor.pasteTextOrImage();
                         break;
+                    case Z:
+                        event.consume();
+                        if (event.isShiftDown()) {
+                            editor.getUndoHistory().redo();
+                        } else {
+                            editor.getUndoHistory().undo();
+                        }
+                        break;
+                    case Y:
+                        event.consume();
+                        editor.getUndoHistory().redo();
+                        break;
+                    case P:
+                        if (event.isShiftDown()) {
+                            event.consume();
+                            editor.togglePerformanceHud();
+                        }
+                        break;
                     default:
                         break;
                 }
@@ -0,0 +1,150 @@
+package com.notemat.Utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+
+
+/**
+ * Provider talking to the local stand-in server
+ * ({@link com.notemat.Diagnostics.LocalAIServer}) over plain HTTP. It lets the
+ * whole AI path of the editor run without network access or an API key, with
+ * the latency, chunking and failures configured on the server.
+ */
+public class LocalAIProvider implements AIProvider {
+    public static final String PROPERTY_URL = "notemat.ai.local.url";
+    public static final String DEFAULT_URL = "http://127.0.0.1:8765";
+
+    private static final int READ_BUFFER_CHARS = 4096;
+    private static final ExecutorService READ_EXECUTOR = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "notemat-local-ai");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private static LocalAIProvider shared;
+
+    private final URI baseUri;
+    private final HttpClient client;
+
+    /**
+     * Returns the provider for the server configured with
+     * {@code -Dnotemat.ai.local.url}, rebuilding it if the URL has changed.
+     *
+     * @return the shared LocalAIProvider instance.
+     */
+    public static synchronized LocalAIProvider getShared() {
+        URI uri = URI.create(System.getProperty(PROPERTY_URL, DEFAULT_URL));
+        if (shared == null || !Objects.equals(shared.baseUri, uri)) {
+            shared = new LocalAIProvider(uri);
+        }
+        return shared;
+    }
+
+    private LocalAIProvider(URI baseUri) {
+        this.baseUri = baseUri;
+        this.client = HttpClient.newBuilder()
+                .connectTimeout(Duration.ofSeconds(5))
+                .executor(READ_EXECUTOR)
+                .build();
+    }
+
+    @Override
+    public String getName() {
+        return "local";
+    }
+
+    @Override
+    public CompletableFuture<String> generate(String model, String query) {
+        CompletableFuture<HttpResponse<String>> sent = client.sendAsync(request(model, query, false), HttpResponse.BodyHandlers.ofString());
+        CompletableFuture<String> result = sent.thenCompose(response -> response.statusCode() == 200
+                ? CompletableFuture.completedFuture(response.body())
+                : CompletableFuture.failedFuture(new IOException("HTTP " + response.statusCode() + ": " + response.body())));
+        result.whenComplete((answer, error) -> {
+            if (result.isCancelled()) {
+                sent.cancel(true);
+            }
+        });
+        return result;
+    }
+
+    @Override
+    public CompletableFuture<Void> stream(String model, String query, Consumer<String> onChunk) {
+        CompletableFuture<Void> result = new CompletableFuture<>();
+        CompletableFuture<HttpResponse<InputStream>> sent = client.sendAsync(request(model, query, true), HttpResponse.BodyHandlers.ofInputStream());
+
+        sent.whenComplete((response, error) -> {
+            if (error != null) {
+                result.completeExceptionally(error);
+                return;
+            }
+            READ_EXECUTOR.execute(() -> readChunks(response, onChunk, result));
+        });
+        result.whenComplete((ignored, error) -> {
+            if (result.isCancelled()) {
+                sent.cancel(true);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Passes the response body on as it arrives until it ends or the request
+     * is cancelled.
+     *
+     * @param response the response with an unread body.
+     * @param onChunk  receives the text.
+     * @param result   completed when reading stops.
+     */
+    private void readChunks(HttpResponse<InputStream> response, Consumer<String> onChunk, CompletableFuture<Void> result) {
+        try (InputStream body = response.body()) {
+            if (response.statusCode() != 200) {
+                String message = new String(body.readAllBytes(), StandardCharsets.UTF_8);
+                result.completeExceptionally(new IOException("HTTP " + response.statusCode() + ": " + message));
+                return;
+            }
+
+            // Closing the body from the cancelling thread aborts a blocked read.
+            result.whenComplete((ignored, error) -> {
+                if (result.isCancelled()) {
+                    try {
+                        body.close();
+                    } catch (IOException e) {
+                        // The request is abandoned anyway.
+                    }
+                }
+            });
+
+            Reader reader = new InputStreamReader(body, StandardCharsets.UTF_8);
+            char[] buffer = new char[READ_BUFFER_CHARS];
+            int read;
+            while (!result.isDone() && (read = reader.read(buffer)) != -1) {
+                onChunk.accept(new String(buffer, 0, read));
+            }
+            result.complete(null);
+        } catch (IOException | RuntimeException e) {
+            result.completeExceptionally(e);
+        }
+    }
+
+    private HttpRequest request(String model, String query, boolean stream) {
+        URI uri = baseUri.resolve("/generate?stream=" + stream + "&model=" + URLEncoder.encode(model, StandardCharsets.UTF_8));
+        return HttpRequest.newBuilder(uri)
+                .header("Content-Type", "text/plain; charset=utf-8")
+                .POST(HttpRequest.BodyPublishers.ofString(query, StandardCharsets.UTF_8))
+                .build();
+    }
+}
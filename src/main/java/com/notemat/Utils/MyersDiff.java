@@ -0,0 +1,298 @@
+package com.notemat.Utils;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+
+
+/**
+ * Myers' O(ND) difference algorithm in its linear space form: the middle snake
+ * of the edit graph is found by searching from both ends at once, and the
+ * halves on either side of it are compared the same way. Common prefixes and
+ * suffixes are stripped first, so documents with a few scattered edits are
+ * compared in little more than one pass.
+ * <p>
+ * Hash sequences are first reduced to the elements that occur on both sides,
+ * as GNU diff does with lines: an element unique to one side is always part of
+ * a change, and leaving it out keeps long rewritten stretches from costing a
+ * search of their full length.
+ * <p>
+ * For very different inputs a search is cut off after about twice the square
+ * root of the input size edits: the furthest point reached splits the
+ * problem instead of the middle snake. The result is still a correct edit
+ * script, only not always the shortest one, and the running time stays close
+ * to linear.
+ */
+public final class MyersDiff {
+    private static final int MIN_COST_LIMIT = 256;
+
+    private MyersDiff() {
+    }
+
+    /**
+     * Tells whether element {@code a} of the first sequence equals element
+     * {@code b} of the second.
+     */
+    @FunctionalInterface
+    public interface Equality {
+        boolean equal(int a, int b);
+    }
+
+    /**
+     * A changed region: elements {@code [aStart, aEnd)} of the first sequence
+     * were replaced by elements {@code [bStart, bEnd)} of the second. Either
+     * range may be empty.
+     *
+     * @param aStart the first changed element of the first sequence.
+     * @param aEnd   the end of the changed elements of the first sequence.
+     * @param bStart the first changed element of the second sequence.
+     * @param bEnd   the end of the changed elements of the second sequence.
+     */
+    public record Hunk(int aStart, int aEnd, int bStart, int bEnd) {
+    }
+
+    /**
+     * Compares two arrays of hashes, such as paragraph hashes.
+     *
+     * @param a the first sequence.
+     * @param b the second sequence.
+     * @return the changed regions in order.
+     */
+    public static List<Hunk> diff(long[] a, long[] b) {
+        // Equal ends are skipped before filtering, so only the edited middle is hashed.
+        int prefix = 0;
+        while (prefix < a.length && prefix < b.length && a[prefix] == b[prefix]) {
+            prefix++;
+        }
+        int suffix = 0;
+        while (suffix < a.length - prefix && suffix < b.length - prefix
+                && a[a.length - 1 - suffix] == b[b.length - 1 - suffix]) {
+            suffix++;
+        }
+        int aEnd = a.length - suffix;
+        int bEnd = b.length - suffix;
+
+        int[] aShared = shared(a, prefix, aEnd, b, prefix, bEnd);
+        int[] bShared = shared(b, prefix, bEnd, a, prefix, aEnd);
+
+        // Diff the shared elements, then map the unchanged runs back; everything between them changed.
+        List<Hunk> reduced = diff(aShared.length, bShared.length, (i, j) -> a[aShared[i]] == b[bShared[j]]);
+        List<Hunk> hunks = new ArrayList<>();
+        int aPrevious = prefix, bPrevious = prefix;
+        int i = 0, j = 0;
+        for (int h = 0; h <= reduced.size(); h++) {
+            int aEqualEnd = h < reduced.size() ? reduced.get(h).aStart() : aShared.length;
+            for (; i < aEqualEnd; i++, j++) {
+                int aMatch = aShared[i], bMatch = bShared[j];
+                if (aMatch > aPrevious || bMatch > bPrevious) {
+                    hunks.add(new Hunk(aPrevious, aMatch, bPrevious, bMatch));
+                }
+                aPrevious = aMatch + 1;
+                bPrevious = bMatch + 1;
+            }
+            if (h < reduced.size()) {
+                i = reduced.get(h).aEnd();
+                j = reduced.get(h).bEnd();
+            }
+        }
+        if (aPrevious < aEnd || bPrevious < bEnd) {
+            hunks.add(new Hunk(aPrevious, aEnd, bPrevious, bEnd));
+        }
+        return hunks;
+    }
+
+    /**
+     * Finds the elements of a range that also occur in a range of another
+     * sequence, using an open addressing hash table of the other range.
+     *
+     * @return the indexes of the elements of {@code sequence[from, to)} found in {@code other[otherFrom, otherTo)}.
+     */
+    private static int[] shared(long[] sequence, int from, int to, long[] other, int otherFrom, int otherTo) {
+        int capacity = Integer.highestOneBit(Math.max(2, otherTo - otherFrom) * 2 - 1) << 1;
+        long[] table = new long[capacity];
+        boolean[] used = new boolean[capacity];
+        int mask = capacity - 1;
+        for (int i = otherFrom; i < otherTo; i++) {
+            int slot = slot(other[i], mask);
+            while (used[slot] && table[slot] != other[i]) {
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = other[i];
+            used[slot] = true;
+        }
+
+        int[] indexes = new int[to - from];
+        int count = 0;
+        for (int i = from; i < to; i++) {
+            int slot = slot(sequence[i], mask);
+            while (used[slot] && table[slot] != sequence[i]) {
+                slot = (slot + 1) & mask;
+            }
+            if (used[slot]) {
+                indexes[count++] = i;
+            }
+        }
+        return Arrays.copyOf(indexes, count);
+    }
+
+    private static int slot(long value, int mask) {
+        long mixed = value * 0x9E3779B97F4A7C15L;
+        return (int) (mixed ^ (mixed >>> 32)) & mask;
+    }
+
+    /**
+     * Compares two texts character by character.
+     *
+     * @param a the first text.
+     * @param b the second text.
+     * @return the changed regions in order.
+     */
+    public static List<Hunk> diff(CharSequence a, CharSequence b) {
+        return diff(a.length(), b.length(), (i, j) -> a.charAt(i) == b.charAt(j));
+    }
+
+    /**
+     * Compares two sequences.
+     *
+     * @param n        the length of the first sequence.
+     * @param m        the length of the second sequence.
+     * @param equality compares elements of the two sequences.
+     * @return the changed regions in order; adjacent changes are merged.
+     */
+    public static List<Hunk> diff(int n, int m, Equality equality) {
+        List<Hunk> hunks = new ArrayList<>();
+        int costLimit = Math.max(MIN_COST_LIMIT, (int) (2 * Math.sqrt((double) n + m)));
+        int max = (n + m + 1) / 2 + 1;
+        int[] forward = new int[2 * max + 3];
+        int[] backward = new int[2 * max + 3];
+        int[] snake = new int[4];
+
+        // An explicit stack instead of recursion, as the depth grows with the number of edits.
+        Deque<int[]> pending = new ArrayDeque<>();
+        pending.push(new int[]{0, n, 0, m});
+        while (!pending.isEmpty()) {
+            int[] range = pending.pop();
+            int aLo = range[0], aHi = range[1], bLo = range[2], bHi = range[3];
+
+            while (aLo < aHi && bLo < bHi && equality.equal(aLo, bLo)) {
+                aLo++;
+                bLo++;
+            }
+            while (aLo < aHi && bLo < bHi && equality.equal(aHi - 1, bHi - 1)) {
+                aHi--;
+                bHi--;
+            }
+            if (aLo == aHi || bLo == bHi) {
+                if (aLo < aHi || bLo < bHi) {
+                    add(hunks, new Hunk(aLo, aHi, bLo, bHi));
+                }
+                continue;
+            }
+
+            middleSnake(equality, aLo, aHi, bLo, bHi, costLimit, forward, backward, snake);
+            // The right half is pushed first so the left half, and its hunks, come first.
+            pending.push(new int[]{snake[2], aHi, snake[3], bHi});
+            pending.push(new int[]{aLo, snake[0], bLo, snake[1]});
+        }
+        return hunks;
+    }
+
+    private static void add(List<Hunk> hunks, Hunk hunk) {
+        if (!hunks.isEmpty()) {
+            Hunk last = hunks.getLast();
+            if (last.aEnd() == hunk.aStart() && last.bEnd() == hunk.bStart()) {
+                hunks.set(hunks.size() - 1, new Hunk(last.aStart(), hunk.aEnd(), last.bStart(), hunk.bEnd()));
+                return;
+            }
+        }
+        hunks.add(hunk);
+    }
+
+    /**
+     * Finds the middle snake of a region whose first and last elements differ
+     * on both sides. Stores its start and end as {@code x, y, u, v} in
+     * {@code snake}. The arrays hold the furthest x reached on each diagonal k,
+     * at index k + offset; the backward search works on the reversed region.
+     */
+    private static void middleSnake(Equality equality, int aLo, int aHi, int bLo, int bHi, int costLimit,
+                                    int[] forward, int[] backward, int[] snake) {
+        int n = aHi - aLo;
+        int m = bHi - bLo;
+        int delta = n - m;
+        boolean odd = (delta & 1) != 0;
+        int maxD = (n + m + 1) / 2;
+        int offset = maxD + 1;
+        forward[offset + 1] = 0;
+        backward[offset + 1] = 0;
+
+        for (int d = 0; d <= maxD; d++) {
+            if (d > costLimit) {
+                // Too expensive: split at the forward point that got furthest along.
+                int bestX = 0, bestY = 0;
+                for (int k = -d + 1; k <= d - 1; k += 2) {
+                    int x = Math.min(forward[offset + k], n);
+                    int y = x - k;
+                    if (y >= 0 && y <= m && x + y > bestX + bestY) {
+                        bestX = x;
+                        bestY = y;
+                    }
+                }
+                if (bestX + bestY == 0 || (bestX == n && bestY == m)) {
+                    bestX = n / 2;
+                    bestY = m / 2;
+                }
+                snake[0] = snake[2] = aLo + bestX;
+                snake[1] = snake[3] = bLo + bestY;
+                return;
+            }
+
+            for (int k = -d; k <= d; k += 2) {
+                int x = k == -d || (k != d && forward[offset + k - 1] < forward[offset + k + 1])
+                        ? forward[offset + k + 1]
+                        : forward[offset + k - 1] + 1;
+                int y = x - k;
+                int startX = x, startY = y;
+                while (x < n && y < m && equality.equal(aLo + x, bLo + y)) {
+                    x++;
+                    y++;
+                }
+                forward[offset + k] = x;
+                int backwardK = delta - k;
+                if (odd && backwardK >= -(d - 1) && backwardK <= d - 1 && x + backward[offset + backwardK] >= n) {
+                    snake[0] = aLo + startX;
+                    snake[1] = bLo + startY;
+                    snake[2] = aLo + x;
+                    snake[3] = bLo + y;
+                    return;
+                }
+            }
+
+            for (int k = -d; k <= d; k += 2) {
+                int x = k == -d || (k != d && backward[offset + k - 1] < backward[offset + k + 1])
+                        ? backward[offset + k + 1]
+                        : backward[offset + k - 1] + 1;
+                int y = x - k;
+                int startX = x, startY = y;
+                while (x < n && y < m && equality.equal(aHi - 1 - x, bHi - 1 - y)) {
+                    x++;
+                    y++;
+                }
+                backward[offset + k] = x;
+                int forwardK = delta - k;
+                if (!odd && forwardK >= -d && forwardK <= d && x + forward[offset + forwardK] >= n) {
+                    snake[0] = aHi - x;
+                    snake[1] = bHi - y;
+                    snake[2] = aHi - startX;
+                    snake[3] = bHi - startY;
+                    return;
+                }
+            }
+        }
+
+        // Not reached for regions that differ at both ends; split in the middle to be safe.
+        snake[0] = snake[2] = aLo + n / 2;
+        snake[1] = snake[3] = bLo + m / 2;
+    }
+}
@@ -0,0 +1,414 @@
+package com.notemat.Utils;
+
+import javafx.application.Platform;
+import javafx.beans.Observable;
+import javafx.beans.property.BooleanProperty;
+import javafx.beans.property.IntegerProperty;
+import javafx.beans.property.SimpleBooleanProperty;
+import javafx.beans.property.SimpleIntegerProperty;
+import javafx.beans.property.SimpleStringProperty;
+import javafx.beans.property.StringProperty;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+
+/**
+ * Holds the user preferences in memory for the whole application.
+ * The preferences file is read once, exposed as observable JavaFX properties,
+ * written in the background whenever a property changes and re-read when the
+ * file is changed by another program. Properties must only be modified on the
+ * JavaFX application thread; reading them is safe from any thread.
+ */
+public class PreferencesStore {
+    public static final String PREFS_FILE = "preferences.properties";
+
+    private static final String KEY_MAIN_FONT = "mainFont";
+    private static final String KEY_MAIN_FONT_SIZE = "mainFontSize";
+    private static final String KEY_GEMINI_API = "geminiApi";
+    private static final String KEY_GEMINI_MODEL = "geminiModel";
+    private static final String KEY_ENABLE_GEMINI = "enableGemini";
+    private static final String KEY_GEMINI_STREAMING = "geminiStreaming";
+    private static final String KEY_GEMINI_HEDGING = "geminiHedging";
+    private static final String KEY_UNDO_BUDGET_MB = "undoBudgetMb";
+    private static final String KEY_OUTLINE_RESIZE = "outlineResize";
+
+    private static final String DEFAULT_MAIN_FONT = "Lexend";
+    private static final int DEFAULT_MAIN_FONT_SIZE = 14;
+    private static final String DEFAULT_GEMINI_MODEL = "Gemini 2.0 Flash";
+    private static final int DEFAULT_UNDO_BUDGET_MB = 32;
+
+    private static PreferencesStore instance;
+
+    private final Path path;
+    private final Properties properties = new Properties();
+    private final StringProperty mainFont = new SimpleStringProperty(this, KEY_MAIN_FONT, DEFAULT_MAIN_FONT);
+    private final IntegerProperty mainFontSize = new SimpleIntegerProperty(this, KEY_MAIN_FONT_SIZE, DEFAULT_MAIN_FONT_SIZE);
+    private final StringProperty geminiApi = new SimpleStringProperty(this, KEY_GEMINI_API, "");
+    private final StringProperty geminiModel = new SimpleStringProperty(this, KEY_GEMINI_MODEL, DEFAULT_GEMINI_MODEL);
+    private final BooleanProperty enableGemini = new SimpleBooleanProperty(this, KEY_ENABLE_GEMINI, false);
+    private final BooleanProperty geminiStreaming = new SimpleBooleanProperty(this, KEY_GEMINI_STREAMING, true);
+    private final BooleanProperty geminiHedging = new SimpleBooleanProperty(this, KEY_GEMINI_HEDGING, false);
+    private final IntegerProperty undoBudgetMb = new SimpleIntegerProperty(this, KEY_UNDO_BUDGET_MB, DEFAULT_UNDO_BUDGET_MB);
+    private final BooleanProperty outlineResize = new SimpleBooleanProperty(this, KEY_OUTLINE_RESIZE, false);
+
+    private final ExecutorService writer = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "notemat-preferences-writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final AtomicReference<Properties> pendingWrite = new AtomicReference<>();
+    private volatile Properties lastWritten = null;
+    private boolean applyingFile = false;
+
+    /**
+     * Returns the application wide store, loading the preferences file on first use.
+     *
+     * @return the PreferencesStore instance.
+     */
+    public static synchronized PreferencesStore getInstance() {
+        if (instance == null) {
+            instance = new PreferencesStore(Path.of(PREFS_FILE).toAbsolutePath());
+        }
+        return instance;
+    }
+
+    private PreferencesStore(Path path) {
+        this.path = path;
+        loadFromFile();
+
+        for (Observable property : new Observable[]{mainFont, mainFontSize, geminiApi, geminiModel, enableGemini, geminiStreaming, geminiHedging, undoBudgetMb, outlineResize}) {
+            property.addListener(observable -> scheduleWrite());
+        }
+        startWatching();
+    }
+
+    /**
+     * The main font name.
+     *
+     * @return the observable main font property.
+     */
+    public StringProperty mainFontProperty() {
+        return mainFont;
+    }
+
+    /**
+     * Gets the main font name.
+     *
+     * @return the current value.
+     */
+    public String getMainFont() {
+        return mainFont.get();
+    }
+
+    /**
+     * The main font size in points.
+     *
+     * @return the observable main font size property.
+     */
+    public IntegerProperty mainFontSizeProperty() {
+        return mainFontSize;
+    }
+
+    /**
+     * Gets the main font size in points.
+     *
+     * @return the current value.
+     */
+    public int getMainFontSize() {
+        return mainFontSize.get();
+    }
+
+    /**
+     * The Gemini API key.
+     *
+     * @return the observable Gemini API key property.
+     */
+    public StringProperty geminiApiProperty() {
+        return geminiApi;
+    }
+
+    /**
+     * Gets the Gemini API key.
+     *
+     * @return the current value.
+     */
+    public String getGeminiApi() {
+        return geminiApi.get();
+    }
+
+    /**
+     * The display name of the Gemini model.
+     *
+     * @return the observable Gemini model property.
+     */
+    public StringProperty geminiModelProperty() {
+        return geminiModel;
+    }
+
+    /**
+     * Gets the display name of the Gemini model.
+     *
+     * @return the current value.
+     */
+    public String getGeminiModel() {
+        return geminiModel.get();
+    }
+
+    /**
+     * The flag enabling the Gemini features.
+     *
+     * @return the observable "Enable Gemini" flag property.
+     */
+    public BooleanProperty enableGeminiProperty() {
+        return enableGemini;
+    }
+
+    /**
+     * Gets the flag enabling the Gemini features.
+     *
+     * @return the current value.
+     */
+    public boolean getEnableGemini() {
+        return enableGemini.get();
+    }
+
+    /**
+     * The flag showing Gemini answers while they are being generated.
+     *
+     * @return the observable streaming flag property.
+     */
+    public BooleanProperty geminiStreamingProperty() {
+        return geminiStreaming;
+    }
+
+    /**
+     * Gets the flag showing Gemini answers while they are being generated.
+     *
+     * @return the current value.
+     */
+    public boolean getGeminiStreaming() {
+        return geminiStreaming.get();
+    }
+
+    /**
+     * The flag asking a faster model when Gemini is slow to answer.
+     *
+     * @return the observable hedging flag property.
+     */
+    public BooleanProperty geminiHedgingProperty() {
+        return geminiHedging;
+    }
+
+    /**
+     * Gets the flag asking a faster model when Gemini is slow to answer.
+     *
+     * @return the current value.
+     */
+    public boolean getGeminiHedging() {
+        return geminiHedging.get();
+    }
+
+    /**
+     * The memory budget of the undo history of each editor window, in megabytes.
+     *
+     * @return the observable undo budget property.
+     */
+    public IntegerProperty undoBudgetMbProperty() {
+        return undoBudgetMb;
+    }
+
+    /**
+     * Gets the memory budget of the undo history of each editor window, in megabytes.
+     *
+     * @return the current value.
+     */
+    public int getUndoBudgetMb() {
+        return undoBudgetMb.get();
+    }
+
+    /**
+     * The flag resizing windows as an outline, laying them out only once the mouse is released.
+     *
+     * @return the observable outline resize flag property.
+     */
+    public BooleanProperty outlineResizeProperty() {
+        return outlineResize;
+    }
+
+    /**
+     * Gets the flag resizing windows as an outline, laying them out only once the mouse is released.
+     *
+     * @return the current value.
+     */
+    public boolean getOutlineResize() {
+        return outlineResize.get();
+    }
+
+    /**
+     * Reads the preferences file and updates the properties. Keys unknown to
+     * this version are kept so they survive the next write. The file is not
+     * applied if it is the last snapshot written by this store or if another
+     * write is pending, see {@link #startWatching()}.
+     */
+    private void loadFromFile() {
+        Properties loaded = new Properties();
+        if (Files.exists(path)) {
+            try (InputStream in = Files.newInputStream(path)) {
+                loaded.load(in);
+            } catch (IOException e) {
+                System.err.println("Failed to load preferences: " + e.getMessage());
+                return;
+            }
+        }
+
+        if (loaded.equals(lastWritten) || pendingWrite.get() != null) {
+            return;
+        }
+
+        applyingFile = true;
+        try {
+            properties.clear();
+            properties.putAll(loaded);
+            mainFont.set(loaded.getProperty(KEY_MAIN_FONT, DEFAULT_MAIN_FONT));
+            mainFontSize.set(parseInt(loaded.getProperty(KEY_MAIN_FONT_SIZE), DEFAULT_MAIN_FONT_SIZE));
+            geminiApi.set(loaded.getProperty(KEY_GEMINI_API, ""));
+            geminiModel.set(loaded.getProperty(KEY_GEMINI_MODEL, DEFAULT_GEMINI_MODEL));
+            enableGemini.set(Boolean.parseBoolean(loaded.getProperty(KEY_ENABLE_GEMINI, "false")));
+            geminiStreaming.set(Boolean.parseBoolean(loaded.getProperty(KEY_GEMINI_STREAMING, "true")));
+            geminiHedging.set(Boolean.parseBoolean(loaded.getProperty(KEY_GEMINI_HEDGING, "false")));
+            undoBudgetMb.set(parseInt(loaded.getProperty(KEY_UNDO_BUDGET_MB), DEFAULT_UNDO_BUDGET_MB));
+            outlineResize.set(Boolean.parseBoolean(loaded.getProperty(KEY_OUTLINE_RESIZE, "false")));
+        } finally {
+            applyingFile = false;
+        }
+    }
+
+    /**
+     * Takes a snapshot of the current values and writes it in the background.
+     * Several changes in a row result in a single write of the latest snapshot.
+     */
+    private void scheduleWrite() {
+        if (applyingFile) {
+            return;
+        }
+
+        properties.setProperty(KEY_MAIN_FONT, mainFont.get());
+        properties.setProperty(KEY_MAIN_FONT_SIZE, Integer.toString(mainFontSize.get()));
+        properties.setProperty(KEY_GEMINI_API, geminiApi.get());
+        properties.setProperty(KEY_GEMINI_MODEL, geminiModel.get());
+        properties.setProperty(KEY_ENABLE_GEMINI, Boolean.toString(enableGemini.get()));
+        properties.setProperty(KEY_GEMINI_STREAMING, Boolean.toString(geminiStreaming.get()));
+        properties.setProperty(KEY_GEMINI_HEDGING, Boolean.toString(geminiHedging.get()));
+        properties.setProperty(KEY_UNDO_BUDGET_MB, Integer.toString(undoBudgetMb.get()));
+        properties.setProperty(KEY_OUTLINE_RESIZE, Boolean.toString(outlineResize.get()));
+
+        Properties snapshot = new Properties();
+        snapshot.putAll(properties);
+        if (pendingWrite.getAndSet(snapshot) == null) {
+            writer.execute(() -> writeToFile(pendingWrite.getAndSet(null)));
+        }
+    }
+
+    /**
+     * Writes a snapshot to a temporary file and moves it over the preferences
+     * file, so readers never see a partially written file.
+     *
+     * @param snapshot the preferences to write.
+     */
+    private void writeToFile(Properties snapshot) {
+        Path temp = path.resolveSibling(PREFS_FILE + ".tmp");
+        try {
+            try (OutputStream out = Files.newOutputStream(temp)) {
+                snapshot.store(out, "User Preferences");
+            }
+            try {
+                Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING);
+            }
+            lastWritten = snapshot;
+        } catch (IOException e) {
+            System.err.println("Failed to save preferences: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Watches the directory of the preferences file and reloads the file when it
+     * is changed externally. Our own writes are reported too, possibly only once
+     * the properties have changed again, so reloading one would revert the newer
+     * values and fire their listeners. A reload is therefore skipped when the
+     * file holds the snapshot last written here, and while another write is
+     * pending, as that write replaces the file anyway.
+     */
+    private void startWatching() {
+        WatchService watchService;
+        try {
+            watchService = FileSystems.getDefault().newWatchService();
+            path.getParent().register(watchService,
+                    StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY);
+        } catch (IOException | UnsupportedOperationException e) {
+            System.err.println("Preferences will not be reloaded on external changes: " + e.getMessage());
+            return;
+        }
+
+        Thread watcher = new Thread(() -> watchLoop(watchService), "notemat-preferences-watcher");
+        watcher.setDaemon(true);
+        watcher.start();
+    }
+
+    private void watchLoop(WatchService watchService) {
+        Path fileName = path.getFileName();
+        try {
+            while (true) {
+                WatchKey key = watchService.take();
+                boolean changed = false;
+
+                // Editors often write a file in several steps; collect them into one reload.
+                do {
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        if (fileName.equals(event.context())) {
+                            changed = true;
+                        }
+                    }
+                    key.reset();
+                } while ((key = watchService.poll(50, TimeUnit.MILLISECONDS)) != null);
+
+                if (changed) {
+                    Platform.runLater(this::loadFromFile);
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // The watcher only stops with the JVM.
+        }
+    }
+
+    private static int parseInt(String value, int fallback) {
+        if (value == null) {
+            return fallback;
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            System.err.println("Invalid number in preferences, using default: " + e.getMessage());
+            return fallback;
+        }
+    }
+}
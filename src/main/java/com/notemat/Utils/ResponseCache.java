@@ -0,0 +1,270 @@
+package com.notemat.Utils;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+
+/**
+ * Caches AI answers so asking the same question twice does not cost another
+ * round trip. Answers are kept in a small in-memory LRU and in a directory of
+ * files under the user's home, keyed by a hash of the model, the system prompt
+ * version and the question. Entries expire after {@link #TTL_MILLIS}; the
+ * memory and disk stores are bounded by size and drop the least recently used
+ * entries first. All disk access happens on a background thread.
+ */
+public class ResponseCache {
+    public static final long TTL_MILLIS = 7L * 24 * 60 * 60 * 1000;
+    /** System property moving the disk store away from {@code ~/.notemat/ai-cache}, e.g. for test runs. */
+    public static final String PROPERTY_DIRECTORY = "notemat.ai.cacheDir";
+
+    private static final int MEMORY_MAX_ENTRIES = 128;
+    private static final long MEMORY_MAX_CHARS = 4L * 1024 * 1024;
+    private static final long DISK_MAX_BYTES = 64L * 1024 * 1024;
+    private static final int FILE_MAGIC = 0x4E54414B; // "NTAK"
+    private static final String FILE_SUFFIX = ".answer";
+
+    private static ResponseCache shared;
+
+    private final Path directory;
+    private final LinkedHashMap<String, Entry> memory = new LinkedHashMap<>(16, 0.75f, true);
+    private long memoryChars = 0;
+
+    private final ExecutorService diskExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "notemat-response-cache");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * A cached answer with the time it was received.
+     */
+    private record Entry(String response, long createdMillis) {
+        boolean isExpired(long now) {
+            return now - createdMillis > TTL_MILLIS;
+        }
+    }
+
+    /**
+     * Returns the cache shared by all editor windows. Its files are kept in
+     * {@code ~/.notemat/ai-cache} unless {@value #PROPERTY_DIRECTORY} names
+     * another directory.
+     *
+     * @return the ResponseCache instance.
+     */
+    public static synchronized ResponseCache getShared() {
+        if (shared == null) {
+            String directory = System.getProperty(PROPERTY_DIRECTORY);
+            shared = new ResponseCache(directory != null && !directory.isBlank()
+                    ? Path.of(directory)
+                    : Path.of(System.getProperty("user.home"), ".notemat", "ai-cache"));
+        }
+        return shared;
+    }
+
+    private ResponseCache(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Looks up a cached answer. Memory hits complete immediately; otherwise the
+     * disk store is read in the background.
+     *
+     * @param model  the display name of the model.
+     * @param prompt the question.
+     * @return a future completing with the answer, or with null on a miss.
+     */
+    public CompletableFuture<String> lookup(String model, String prompt) {
+        String key = key(model, prompt);
+        long now = System.currentTimeMillis();
+
+        synchronized (memory) {
+            Entry entry = memory.get(key);
+            if (entry != null) {
+                if (!entry.isExpired(now)) {
+                    return CompletableFuture.completedFuture(entry.response);
+                }
+                removeFromMemory(key);
+            }
+        }
+
+        return CompletableFuture.supplyAsync(() -> {
+            Entry entry = readFromDisk(key, now);
+            if (entry == null) {
+                return null;
+            }
+            putInMemory(key, entry);
+            return entry.response;
+        }, diskExecutor);
+    }
+
+    /**
+     * Stores an answer in memory and, in the background, on disk.
+     *
+     * @param model    the display name of the model.
+     * @param prompt   the question.
+     * @param response the complete answer.
+     */
+    public void store(String model, String prompt, String response) {
+        String key = key(model, prompt);
+        Entry entry = new Entry(response, System.currentTimeMillis());
+        putInMemory(key, entry);
+        diskExecutor.execute(() -> {
+            writeToDisk(key, entry);
+            pruneDisk();
+        });
+    }
+
+    private void putInMemory(String key, Entry entry) {
+        synchronized (memory) {
+            removeFromMemory(key);
+            memory.put(key, entry);
+            memoryChars += entry.response.length();
+
+            Iterator<Map.Entry<String, Entry>> eldest = memory.entrySet().iterator();
+            while ((memory.size() > MEMORY_MAX_ENTRIES || memoryChars > MEMORY_MAX_CHARS) && eldest.hasNext()) {
+                memoryChars -= eldest.next().getValue().response.length();
+                eldest.remove();
+            }
+        }
+    }
+
+    private void removeFromMemory(String key) {
+        Entry removed = memory.remove(key);
+        if (removed != null) {
+            memoryChars -= removed.response.length();
+        }
+    }
+
+    /**
+     * Reads an entry from the disk store, deleting it if it has expired.
+     *
+     * @param key the hashed key.
+     * @param now the current time in milliseconds.
+     * @return the entry, or null if it is missing, expired or unreadable.
+     */
+    private Entry readFromDisk(String key, long now) {
+        Path file = directory.resolve(key + FILE_SUFFIX);
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(file))) {
+            if (in.readInt() != FILE_MAGIC) {
+                Files.deleteIfExists(file);
+                return null;
+            }
+            long createdMillis = in.readLong();
+            byte[] response = in.readNBytes(in.readInt());
+            Entry entry = new Entry(new String(response, StandardCharsets.UTF_8), createdMillis);
+            if (entry.isExpired(now)) {
+                Files.deleteIfExists(file);
+                return null;
+            }
+
+            // The modification time doubles as the last access time for pruning.
+            Files.setLastModifiedTime(file, FileTime.fromMillis(now));
+            return entry;
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException e) {
+            System.err.println("Failed to read cached response: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private void writeToDisk(String key, Entry entry) {
+        Path file = directory.resolve(key + FILE_SUFFIX);
+        Path temp = directory.resolve(key + ".tmp");
+        try {
+            Files.createDirectories(directory);
+            try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(temp))) {
+                byte[] response = entry.response.getBytes(StandardCharsets.UTF_8);
+                out.writeInt(FILE_MAGIC);
+                out.writeLong(entry.createdMillis);
+                out.writeInt(response.length);
+                out.write(response);
+            }
+            try {
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            System.err.println("Failed to cache response: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Deletes expired entries and, while the store is over its size limit, the
+     * least recently used ones.
+     */
+    private void pruneDisk() {
+        record CachedFile(Path path, long size, long lastUsedMillis) {
+        }
+
+        List<CachedFile> files = new ArrayList<>();
+        long totalBytes = 0;
+        long now = System.currentTimeMillis();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + FILE_SUFFIX)) {
+            for (Path path : stream) {
+                long lastUsed = Files.getLastModifiedTime(path).toMillis();
+                long size = Files.size(path);
+                if (now - lastUsed > TTL_MILLIS) {
+                    Files.deleteIfExists(path);
+                    continue;
+                }
+                files.add(new CachedFile(path, size, lastUsed));
+                totalBytes += size;
+            }
+
+            files.sort(Comparator.comparingLong(CachedFile::lastUsedMillis));
+            for (CachedFile file : files) {
+                if (totalBytes <= DISK_MAX_BYTES) {
+                    break;
+                }
+                Files.deleteIfExists(file.path);
+                totalBytes -= file.size;
+            }
+        } catch (IOException e) {
+            System.err.println("Failed to prune response cache: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Hashes the parts that determine an answer into a file name safe key.
+     *
+     * @param model  the display name of the model.
+     * @param prompt the question.
+     * @return the hex encoded SHA-256 hash.
+     */
+    private static String key(String model, String prompt) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(model.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(Integer.toString(Gemini.SYSTEM_PROMPT_VERSION).getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(prompt.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+}
@@ -0,0 +1,215 @@
+package com.notemat.Utils;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Set;
+import java.util.function.Consumer;
+
+
+/**
+ * Keeps Notemat to a single running JVM per user.
+ * The first instance listens on a Unix domain socket in a directory only the
+ * user can access, {@code $XDG_RUNTIME_DIR/notemat} or {@code ~/.notemat}; later launches
+ * connect to it, hand over the file they were asked to open and exit without
+ * starting JavaFX. This class deliberately avoids any JavaFX types so the
+ * forwarding path stays as cheap as possible.
+ */
+public class SingleInstance {
+    private static final String PROPERTY_ENABLED = "notemat.singleInstance";
+    private static final int MAX_MESSAGE_BYTES = 64 * 1024;
+    private static final String SOCKET_FILE = "notemat.sock";
+    private static final Set<PosixFilePermission> OWNER_ONLY = PosixFilePermissions.fromString("rwx------");
+
+    private static ServerSocketChannel server;
+
+    /**
+     * Indicates whether single-instance mode is enabled. It can be turned off
+     * with {@code -Dnotemat.singleInstance=false}.
+     *
+     * @return true if launches should be forwarded to a running instance.
+     */
+    public static boolean isEnabled() {
+        return Boolean.parseBoolean(System.getProperty(PROPERTY_ENABLED, "true"));
+    }
+
+    /**
+     * Tries to hand the launch arguments over to an already running instance.
+     * An empty message asks the running instance to open an empty window.
+     *
+     * @param args the command line arguments of this launch.
+     * @return true if a running instance accepted the request; false if this
+     * launch should start normally.
+     */
+    public static boolean forwardToRunningInstance(String[] args) {
+        if (!isEnabled()) {
+            return false;
+        }
+
+        Path socketPath;
+        try {
+            socketPath = getSocketPath();
+        } catch (IOException e) {
+            return false;
+        }
+        if (!Files.exists(socketPath)) {
+            return false;
+        }
+
+        String message = args.length > 0 ? Path.of(args[0]).toAbsolutePath().toString() : "";
+        try (SocketChannel channel = SocketChannel.open(StandardProtocolFamily.UNIX)) {
+            channel.connect(UnixDomainSocketAddress.of(socketPath));
+            ByteBuffer buffer = ByteBuffer.wrap((message + "\n").getBytes(StandardCharsets.UTF_8));
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            return true;
+        } catch (IOException | UnsupportedOperationException e) {
+            // Nobody is listening (stale socket file) or the platform has no Unix domain sockets.
+            return false;
+        }
+    }
+
+    /**
+     * Starts listening for forwarded launches. Each received path is passed to
+     * {@code onOpen} from a background thread; an empty string means a new empty
+     * window was requested. Failing to bind is not fatal, the application simply
+     * runs without single-instance support.
+     *
+     * @param onOpen callback receiving the forwarded file path.
+     */
+    public static synchronized void startServer(Consumer<String> onOpen) {
+        if (!isEnabled() || server != null) {
+            return;
+        }
+
+        try {
+            Path socketPath = getSocketPath();
+            // A socket file left behind by a crashed instance would make bind fail. Only a socket
+            // nobody listens on is removed; a live instance keeps it and this one runs on its own.
+            if (Files.exists(socketPath)) {
+                if (isListening(socketPath)) {
+                    System.err.println("Single-instance mode unavailable: another instance is listening on " + socketPath);
+                    return;
+                }
+                Files.deleteIfExists(socketPath);
+            }
+            server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+            server.bind(UnixDomainSocketAddress.of(socketPath));
+        } catch (IOException | UnsupportedOperationException e) {
+            System.err.println("Single-instance mode unavailable: " + e.getMessage());
+            server = null;
+            return;
+        }
+
+        Thread acceptThread = new Thread(() -> acceptLoop(server, onOpen), "notemat-single-instance");
+        acceptThread.setDaemon(true);
+        acceptThread.start();
+    }
+
+    /**
+     * Checks whether an instance is listening on a socket file.
+     *
+     * @param socketPath the socket file.
+     * @return true if the connection was accepted, false if it was refused.
+     * @throws IOException if it cannot be told, in which case the file is left alone.
+     */
+    private static boolean isListening(Path socketPath) throws IOException {
+        try (SocketChannel channel = SocketChannel.open(StandardProtocolFamily.UNIX)) {
+            channel.connect(UnixDomainSocketAddress.of(socketPath));
+            // The running instance ignores a connection that sends nothing.
+            return true;
+        } catch (ConnectException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Stops listening and removes the socket file so the next launch starts a
+     * fresh instance.
+     */
+    public static synchronized void stopServer() {
+        if (server == null) {
+            return;
+        }
+        try {
+            server.close();
+            Files.deleteIfExists(getSocketPath());
+        } catch (IOException e) {
+            System.err.println("Failed to close single-instance socket: " + e.getMessage());
+        }
+        server = null;
+    }
+
+    /**
+     * Accepts connections until the server channel is closed.
+     *
+     * @param channel the bound server channel.
+     * @param onOpen  callback receiving the forwarded file path.
+     */
+    private static void acceptLoop(ServerSocketChannel channel, Consumer<String> onOpen) {
+        while (channel.isOpen()) {
+            try (SocketChannel client = channel.accept()) {
+                String message = readMessage(client);
+                if (message != null) {
+                    onOpen.accept(message);
+                }
+            } catch (IOException e) {
+                if (channel.isOpen()) {
+                    System.err.println("Failed to receive forwarded launch: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads a single newline terminated UTF-8 message from the client.
+     *
+     * @param client the connected client channel.
+     * @return the message without its terminator, or null if it was malformed.
+     * @throws IOException if an I/O error occurs.
+     */
+    private static String readMessage(SocketChannel client) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(MAX_MESSAGE_BYTES);
+        while (buffer.hasRemaining() && client.read(buffer) != -1) {
+            if (buffer.position() > 0 && buffer.get(buffer.position() - 1) == '\n') {
+                break;
+            }
+        }
+
+        buffer.flip();
+        String message = StandardCharsets.UTF_8.decode(buffer).toString();
+        int newline = message.indexOf('\n');
+        return newline == -1 ? null : message.substring(0, newline);
+    }
+
+    /**
+     * Builds the socket path inside a directory only the user can access,
+     * creating the directory if needed. {@code $XDG_RUNTIME_DIR} is private to
+     * the user already; {@code ~/.notemat} is restricted to the owner.
+     *
+     * @return the path of the socket file.
+     * @throws IOException if the directory cannot be created or made private.
+     */
+    private static Path getSocketPath() throws IOException {
+        String runtimeDir = System.getenv("XDG_RUNTIME_DIR");
+        Path directory = runtimeDir != null && !runtimeDir.isBlank()
+                ? Path.of(runtimeDir, "notemat")
+                : Path.of(System.getProperty("user.home"), ".notemat");
+        Files.createDirectories(directory);
+        if (Files.getFileStore(directory).supportsFileAttributeView("posix")
+                && !Files.getPosixFilePermissions(directory).equals(OWNER_ONLY)) {
+            Files.setPosixFilePermissions(directory, OWNER_ONLY);
+        }
+        return directory.resolve(SOCKET_FILE);
+    }
+}
@@ -0,0 +1,77 @@
+package com.notemat.Utils;
+
+import org.fxmisc.richtext.InlineCssTextArea;
+import org.fxmisc.richtext.model.PlainTextChange;
+import org.reactfx.Subscription;
+
+
+/**
+ * A position in the text area that follows edits made after it was created,
+ * like a mark in a text editor. Text inserted or removed before the anchor
+ * shifts it; text inserted exactly at the anchor moves it only if its gravity
+ * is {@link Gravity#FORWARD}.
+ */
+public class TextAnchor {
+    /**
+     * Where the anchor goes when text is inserted exactly at its position.
+     */
+    public enum Gravity {
+        /** The anchor stays before the inserted text. */
+        BACKWARD,
+        /** The anchor moves after the inserted text. */
+        FORWARD
+    }
+
+    private final Gravity gravity;
+    private final Subscription subscription;
+    private int position;
+
+    /**
+     * Creates an anchor and starts tracking edits.
+     *
+     * @param textArea the text area to track.
+     * @param position the initial position.
+     * @param gravity  the behaviour for insertions at the anchor.
+     */
+    public TextAnchor(InlineCssTextArea textArea, int position, Gravity gravity) {
+        this.position = position;
+        this.gravity = gravity;
+        this.subscription = textArea.plainTextChanges().subscribe(this::update);
+    }
+
+    /**
+     * Gets the current position of the anchor.
+     *
+     * @return the position in the document.
+     */
+    public int getPosition() {
+        return position;
+    }
+
+    /**
+     * Stops tracking edits. The anchor keeps its last position.
+     */
+    public void dispose() {
+        subscription.unsubscribe();
+    }
+
+    private void update(PlainTextChange change) {
+        int start = change.getPosition();
+        int removedEnd = start + change.getRemoved().length();
+        int inserted = change.getInserted().length();
+
+        if (start > position) {
+            return;
+        }
+        if (start == position) {
+            if (gravity == Gravity.FORWARD) {
+                position = start + inserted;
+            }
+        } else if (removedEnd <= position) {
+            position += inserted - (removedEnd - start);
+        } else {
+            // The anchor was inside the removed text.
+            position = gravity == Gravity.FORWARD ? start + inserted : start;
+        }
+    }
+}
@@ -0,0 +1,363 @@
+package com.notemat.Utils;
+
+import org.fxmisc.richtext.InlineCssTextArea;
+import org.fxmisc.richtext.model.RichTextChange;
+import org.fxmisc.richtext.model.StyleSpans;
+import org.fxmisc.richtext.model.StyledDocument;
+import org.fxmisc.richtext.util.UndoUtils;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+
+
+/**
+ * An undo history for the editor text area with a memory budget.
+ * It replaces the unbounded undo manager of RichTextFX and differs from it in
+ * three ways:
+ * <ul>
+ *     <li>adjacent typing within a short time window is merged into one entry,</li>
+ *     <li>every change is trimmed to the range where text or style actually
+ *     differ, so a whole-document {@code setStyleSpans} that restyles one word
+ *     only keeps that word,</li>
+ *     <li>the oldest entries are evicted once the estimated size of the history
+ *     exceeds the budget.</li>
+ * </ul>
+ */
+public class UndoHistory {
+    private static final long MERGE_WINDOW_MILLIS = 1000;
+    private static final long ENTRY_OVERHEAD_BYTES = 96;
+    private static final long SPAN_BYTES = 48;
+
+    private final InlineCssTextArea textArea;
+    private final ArrayDeque<Entry> undoStack = new ArrayDeque<>();
+    private final ArrayDeque<Entry> redoStack = new ArrayDeque<>();
+
+    private long budgetBytes;
+    private long usedBytes = 0;
+    private long lastChangeMillis = 0;
+    private boolean applying = false;
+
+    /**
+     * A single undoable step made of one or more changes applied together.
+     */
+    private record Entry(List<RichTextChange<String, String, String>> changes, long bytes, boolean typing) {
+    }
+
+    /**
+     * Installs the history on the text area, replacing its own undo manager.
+     *
+     * @param textArea    the text area to track.
+     * @param budgetBytes the maximum estimated memory used by undo and redo entries.
+     */
+    public UndoHistory(InlineCssTextArea textArea, long budgetBytes) {
+        this.textArea = textArea;
+        this.budgetBytes = budgetBytes;
+
+        textArea.setUndoManager(UndoUtils.noOpUndoManager());
+        textArea.multiRichChanges().subscribe(this::record);
+    }
+
+    /**
+     * Changes the memory budget, evicting old entries if necessary.
+     *
+     * @param budgetBytes the new budget in bytes.
+     */
+    public void setBudgetBytes(long budgetBytes) {
+        this.budgetBytes = budgetBytes;
+        evict();
+    }
+
+    /**
+     * Gets the estimated memory used by the undo and redo entries.
+     *
+     * @return the estimate in bytes.
+     */
+    public long getUsedBytes() {
+        return usedBytes;
+    }
+
+    /**
+     * Reverts the most recent entry.
+     *
+     * @return true if there was something to undo.
+     */
+    public boolean undo() {
+        Entry entry = undoStack.pollLast();
+        if (entry == null) {
+            return false;
+        }
+
+        applying = true;
+        try {
+            List<RichTextChange<String, String, String>> changes = entry.changes;
+            RichTextChange<String, String, String> last = null;
+            for (int i = changes.size() - 1; i >= 0; i--) {
+                last = changes.get(i).invert();
+                apply(last);
+            }
+            textArea.moveTo(last.getPosition() + last.getInserted().length());
+        } finally {
+            applying = false;
+        }
+        redoStack.addLast(entry);
+        lastChangeMillis = 0;
+        return true;
+    }
+
+    /**
+     * Re-applies the most recently undone entry.
+     *
+     * @return true if there was something to redo.
+     */
+    public boolean redo() {
+        Entry entry = redoStack.pollLast();
+        if (entry == null) {
+            return false;
+        }
+
+        applying = true;
+        try {
+            RichTextChange<String, String, String> last = null;
+            for (RichTextChange<String, String, String> change : entry.changes) {
+                last = change;
+                apply(change);
+            }
+            textArea.moveTo(last.getPosition() + last.getInserted().length());
+        } finally {
+            applying = false;
+        }
+        undoStack.addLast(entry);
+        lastChangeMillis = 0;
+        return true;
+    }
+
+    /**
+     * Forgets all entries, e.g. after a different document has been loaded.
+     */
+    public void clear() {
+        undoStack.clear();
+        redoStack.clear();
+        usedBytes = 0;
+        lastChangeMillis = 0;
+    }
+
+    /**
+     * Records the changes of a single update of the text area.
+     *
+     * @param changes the changes emitted by the text area.
+     */
+    private void record(List<RichTextChange<String, String, String>> changes) {
+        if (applying) {
+            return;
+        }
+
+        List<RichTextChange<String, String, String>> trimmed = new ArrayList<>(changes.size());
+        for (RichTextChange<String, String, String> change : changes) {
+            RichTextChange<String, String, String> compact = trim(change);
+            if (compact != null) {
+                trimmed.add(compact);
+            }
+        }
+        if (trimmed.isEmpty()) {
+            return;
+        }
+
+        // A new edit invalidates everything that was undone.
+        for (Entry entry : redoStack) {
+            usedBytes -= entry.bytes;
+        }
+        redoStack.clear();
+
+        long now = System.currentTimeMillis();
+        boolean typing = trimmed.size() == 1 && isTyping(trimmed.get(0));
+        Entry previous = undoStack.peekLast();
+
+        if (typing && previous != null && previous.typing && now - lastChangeMillis <= MERGE_WINDOW_MILLIS) {
+            Optional<RichTextChange<String, String, String>> merged = previous.changes.get(0).mergeWith(trimmed.get(0));
+            if (merged.isPresent()) {
+                undoStack.pollLast();
+                usedBytes -= previous.bytes;
+                push(List.of(merged.get()), true);
+                lastChangeMillis = now;
+                return;
+            }
+        }
+
+        push(trimmed, typing);
+        lastChangeMillis = now;
+    }
+
+    private void push(List<RichTextChange<String, String, String>> changes, boolean typing) {
+        long bytes = ENTRY_OVERHEAD_BYTES;
+        for (RichTextChange<String, String, String> change : changes) {
+            bytes += estimateBytes(change.getRemoved()) + estimateBytes(change.getInserted());
+        }
+        undoStack.addLast(new Entry(changes, bytes, typing));
+        usedBytes += bytes;
+        evict();
+    }
+
+    /**
+     * Drops the oldest undo entries until the history fits the budget. Redo
+     * entries are dropped last since they are the most recent state.
+     */
+    private void evict() {
+        while (usedBytes > budgetBytes && !undoStack.isEmpty()) {
+            usedBytes -= undoStack.pollFirst().bytes;
+        }
+        while (usedBytes > budgetBytes && !redoStack.isEmpty()) {
+            usedBytes -= redoStack.pollFirst().bytes;
+        }
+    }
+
+    /**
+     * Replaces the removed part of a change with its inserted part.
+     *
+     * @param change the change to apply.
+     */
+    private void apply(RichTextChange<String, String, String> change) {
+        int start = change.getPosition();
+        textArea.replace(start, start + change.getRemoved().length(), change.getInserted());
+    }
+
+    /**
+     * Indicates whether a change looks like typing or deleting a few characters
+     * on a single line, which may be merged with its neighbours.
+     *
+     * @param change the change to check.
+     * @return true for small single-line text edits.
+     */
+    private boolean isTyping(RichTextChange<String, String, String> change) {
+        String inserted = change.getInserted().getText();
+        String removed = change.getRemoved().getText();
+        return inserted.length() + removed.length() <= 2
+                && !inserted.equals(removed)
+                && inserted.indexOf('\n') == -1
+                && removed.indexOf('\n') == -1;
+    }
+
+    /**
+     * Shrinks a change to the range where text or style differ between its
+     * removed and inserted documents. The unchanged text at either end is
+     * found first, each end on its own, and then narrowed to where the style
+     * is unchanged as well, so a restyle that keeps the text keeps only the
+     * restyled range.
+     *
+     * @param change the change as emitted by the text area.
+     * @return the trimmed change, or null if it changed nothing.
+     */
+    static RichTextChange<String, String, String> trim(RichTextChange<String, String, String> change) {
+        StyledDocument<String, String, String> removed = change.getRemoved();
+        StyledDocument<String, String, String> inserted = change.getInserted();
+        String removedText = removed.getText();
+        String insertedText = inserted.getText();
+        int removedLength = removedText.length();
+        int insertedLength = insertedText.length();
+        int shorter = Math.min(removedLength, insertedLength);
+
+        int prefix = 0;
+        while (prefix < shorter && removedText.charAt(prefix) == insertedText.charAt(prefix)) {
+            prefix++;
+        }
+        int suffix = 0;
+        while (suffix < shorter
+                && removedText.charAt(removedLength - 1 - suffix) == insertedText.charAt(insertedLength - 1 - suffix)) {
+            suffix++;
+        }
+        if (prefix == 0 && suffix == 0) {
+            return change;
+        }
+
+        // The shared text only counts as unchanged where its style is unchanged as well.
+        if (prefix > 0) {
+            prefix = matchingStylePrefix(removed.getStyleSpans(0, prefix), inserted.getStyleSpans(0, prefix));
+        }
+        if (suffix > 0) {
+            suffix = matchingStyleSuffix(
+                    removed.getStyleSpans(removedLength - suffix, removedLength),
+                    inserted.getStyleSpans(insertedLength - suffix, insertedLength));
+        }
+        // Both ends may cover the same characters; they must not overlap in either document.
+        suffix = Math.min(suffix, shorter - prefix);
+
+        if (prefix == removedLength && prefix == insertedLength) {
+            return null;
+        }
+        if (prefix == 0 && suffix == 0) {
+            return change;
+        }
+        return new RichTextChange<>(
+                change.getPosition() + prefix,
+                removed.subSequence(prefix, removedLength - suffix),
+                inserted.subSequence(prefix, insertedLength - suffix));
+    }
+
+    /**
+     * Finds how many leading characters of two equally long runs of text carry
+     * the same style.
+     */
+    private static int matchingStylePrefix(StyleSpans<String> a, StyleSpans<String> b) {
+        int ia = 0, ib = 0;
+        int restA = a.getSpanCount() > 0 ? a.getStyleSpan(0).getLength() : 0;
+        int restB = b.getSpanCount() > 0 ? b.getStyleSpan(0).getLength() : 0;
+        int matched = 0;
+        while (ia < a.getSpanCount() && ib < b.getSpanCount()) {
+            if (!Objects.equals(a.getStyleSpan(ia).getStyle(), b.getStyleSpan(ib).getStyle())) {
+                break;
+            }
+            int step = Math.min(restA, restB);
+            matched += step;
+            restA -= step;
+            restB -= step;
+            if (restA == 0 && ++ia < a.getSpanCount()) {
+                restA = a.getStyleSpan(ia).getLength();
+            }
+            if (restB == 0 && ++ib < b.getSpanCount()) {
+                restB = b.getStyleSpan(ib).getLength();
+            }
+        }
+        return matched;
+    }
+
+    /**
+     * Finds how many trailing characters of two equally long runs of text carry
+     * the same style.
+     */
+    private static int matchingStyleSuffix(StyleSpans<String> a, StyleSpans<String> b) {
+        int ia = a.getSpanCount() - 1, ib = b.getSpanCount() - 1;
+        int restA = ia >= 0 ? a.getStyleSpan(ia).getLength() : 0;
+        int restB = ib >= 0 ? b.getStyleSpan(ib).getLength() : 0;
+        int matched = 0;
+        while (ia >= 0 && ib >= 0) {
+            if (!Objects.equals(a.getStyleSpan(ia).getStyle(), b.getStyleSpan(ib).getStyle())) {
+                break;
+            }
+            int step = Math.min(restA, restB);
+            matched += step;
+            restA -= step;
+            restB -= step;
+            if (restA == 0 && --ia >= 0) {
+                restA = a.getStyleSpan(ia).getLength();
+            }
+            if (restB == 0 && --ib >= 0) {
+                restB = b.getStyleSpan(ib).getLength();
+            }
+        }
+        return matched;
+    }
+
+    /**
+     * Estimates the heap used by a document fragment kept in the history.
+     *
+     * @param document the fragment.
+     * @return the estimate in bytes.
+     */
+    private static long estimateBytes(StyledDocument<String, String, String> document) {
+        int length = document.length();
+        int spans = length == 0 ? 0 : document.getStyleSpans(0, length).getSpanCount();
+        return 2L * length + SPAN_BYTES * (spans + document.getParagraphs().size());
+    }
+}
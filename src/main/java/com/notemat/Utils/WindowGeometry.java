@@ -0,0 +1,92 @@
+package com.notemat.Utils;
+
+import javafx.animation.AnimationTimer;
+import javafx.stage.Stage;
+
+
+/**
+ * Coalesces position and size changes of a window. Mouse drags can report
+ * several positions per frame, and every call to {@code setX}, {@code setWidth}
+ * etc. reconfigures the native window and lays out the scene. Instead, the
+ * latest target bounds are recorded and applied once per animation pulse.
+ * Each window has a single instance, obtained with {@link #of(Stage)}, so all
+ * code moving it shares the same pending bounds. Must be used on the JavaFX
+ * application thread.
+ */
+public class WindowGeometry {
+    private static final String KEY = WindowGeometry.class.getName();
+
+    private final Stage stage;
+    private final AnimationTimer pulse = new AnimationTimer() {
+        @Override
+        public void handle(long now) {
+            flush();
+        }
+    };
+
+    private double x;
+    private double y;
+    private double width;
+    private double height;
+    private boolean movePending = false;
+    private boolean resizePending = false;
+
+    private WindowGeometry(Stage stage) {
+        this.stage = stage;
+    }
+
+    /**
+     * Returns the geometry updater of a window, creating it on first use.
+     *
+     * @param stage the window.
+     * @return the window's updater.
+     */
+    public static WindowGeometry of(Stage stage) {
+        return (WindowGeometry) stage.getProperties().computeIfAbsent(KEY, key -> new WindowGeometry(stage));
+    }
+
+    /**
+     * Moves the window on the next pulse.
+     *
+     * @param x the new x coordinate on screen.
+     * @param y the new y coordinate on screen.
+     */
+    public void moveTo(double x, double y) {
+        this.x = x;
+        this.y = y;
+        movePending = true;
+        pulse.start();
+    }
+
+    /**
+     * Moves and resizes the window on the next pulse.
+     *
+     * @param x      the new x coordinate on screen.
+     * @param y      the new y coordinate on screen.
+     * @param width  the new width.
+     * @param height the new height.
+     */
+    public void setBounds(double x, double y, double width, double height) {
+        moveTo(x, y);
+        this.width = width;
+        this.height = height;
+        resizePending = true;
+    }
+
+    /**
+     * Applies the pending bounds right away, e.g. when a drag ends.
+     */
+    public void flush() {
+        pulse.stop();
+        if (movePending) {
+            movePending = false;
+            stage.setX(x);
+            stage.setY(y);
+        }
+        if (resizePending) {
+            resizePending = false;
+            stage.setWidth(width);
+            stage.setHeight(height);
+        }
+    }
+}
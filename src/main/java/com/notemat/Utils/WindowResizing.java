@@ -2,9 +2,14 @@ package com.notemat.Utils;
 
 import javafx.geometry.Rectangle2D;
 import javafx.scene.Cursor;
+import javafx.scene.Node;
+import javafx.scene.Scene;
 import javafx.scene.input.MouseEvent;
+import javafx.scene.layout.Region;
+import javafx.scene.paint.Color;
 import javafx.stage.Screen;
 import javafx.stage.Stage;
+import javafx.stage.StageStyle;
 
 
 /**
@@ -12,13 +17,23 @@ import javafx.stage.Stage;
  * It sets up mouse event filters to detect when the user is in a window
  * resize zone and then resizes the window accordingly. It also provides
  * a simple maximize/restore function.
+ * <p>
+ * Mouse movement only has an effect when the pointer moves from one resize
+ * zone to another (or in or out of the border), so moving it over the document
+ * costs a few comparisons. While resizing, the new bounds are applied once
+ * per frame through the window's {@link WindowGeometry}. With the outline
+ * resize preference, only an outline follows the mouse and the window itself
+ * is resized and laid out once, when the mouse is released.
  */
 public class WindowResizing {
     private final Stage stage;
+    private final Node textArea;
     private final double borderThickness = 5.0;
 
-    private boolean inResizeZone = false;
+    private ResizeDirection hoverDirection = ResizeDirection.NONE;
     private boolean resizing = false;
+    private Stage outline;
+    private boolean outlineResizing = false;
 
     private double initX;
     private double initY;
@@ -41,10 +56,12 @@ public class WindowResizing {
     /**
      * Constructs a WindowResizing object for the given Stage and installs the necessary event filters.
      *
-     * @param stage the Stage (window) to enable resizing on.
+     * @param stage    the Stage (window) to enable resizing on.
+     * @param textArea the text area of the window, which lets the resize cursor show through near the border.
      */
-    public WindowResizing(Stage stage) {
+    public WindowResizing(Stage stage, Node textArea) {
         this.stage = stage;
+        this.textArea = textArea;
         installEventFilters();
     }
 
@@ -61,7 +78,8 @@ public class WindowResizing {
 
     /**
      * Handles mouse movements by checking if the pointer is in the resize zone.
-     * If so, updates the cursor to the appropriate resize cursor.
+     * Nothing happens unless the zone under the pointer has changed since the
+     * last movement.
      *
      * @param event the MouseEvent to process.
      */
@@ -72,8 +90,28 @@ public class WindowResizing {
         double height = stage.getHeight();
 
         ResizeDirection newDirection = getResizeDirection(mouseX, mouseY, width, height);
-        inResizeZone = (newDirection != ResizeDirection.NONE);
-        updateTextAreaStyles(stage.getScene().getRoot(), inResizeZone);
+        if (newDirection != hoverDirection) {
+            setHoverDirection(newDirection);
+        }
+    }
+
+    /**
+     * Moves to a new resize zone: marks the text area when the pointer enters
+     * or leaves the border and updates the cursor to the appropriate resize
+     * cursor.
+     *
+     * @param newDirection the zone under the pointer.
+     */
+    private void setHoverDirection(ResizeDirection newDirection) {
+        boolean wasInResizeZone = hoverDirection != ResizeDirection.NONE;
+        boolean inResizeZone = newDirection != ResizeDirection.NONE;
+        hoverDirection = newDirection;
+
+        if (inResizeZone && !wasInResizeZone) {
+            textArea.getStyleClass().add("resize-zone");
+        } else if (!inResizeZone && wasInResizeZone) {
+            textArea.getStyleClass().remove("resize-zone");
+        }
 
         Cursor cursor = switch (newDirection) {
             case NW -> Cursor.NW_RESIZE;
@@ -111,6 +149,7 @@ public class WindowResizing {
             initStageY = stage.getY();
             initStageWidth = stage.getWidth();
             initStageHeight = stage.getHeight();
+            outlineResizing = PreferencesStore.getInstance().getOutlineResize();
             event.consume();
         }
     }
@@ -186,10 +225,13 @@ public class WindowResizing {
             newHeight = 300;
         }
 
-        stage.setX(newX);
-        stage.setY(newY);
-        stage.setWidth(newWidth);
-        stage.setHeight(newHeight);
+        // Mice can report several positions per frame, only the last one is applied.
+        if (outlineResizing) {
+            showOutline();
+            WindowGeometry.of(outline).setBounds(newX, newY, newWidth, newHeight);
+        } else {
+            WindowGeometry.of(stage).setBounds(newX, newY, newWidth, newHeight);
+        }
         event.consume();
     }
 
@@ -205,11 +247,42 @@ public class WindowResizing {
         if (resizing) {
             resizing = false;
             direction = ResizeDirection.NONE;
-            stage.getScene().setCursor(Cursor.DEFAULT);
+            if (outlineResizing && outline != null && outline.isShowing()) {
+                WindowGeometry outlineGeometry = WindowGeometry.of(outline);
+                outlineGeometry.flush();
+                outline.hide();
+                WindowGeometry.of(stage).setBounds(outline.getX(), outline.getY(), outline.getWidth(), outline.getHeight());
+            }
+            WindowGeometry.of(stage).flush();
+            setHoverDirection(ResizeDirection.NONE);
             event.consume();
         }
     }
 
+    /**
+     * Shows the resize outline over the window, creating it on first use.
+     */
+    private void showOutline() {
+        if (outline == null) {
+            Region frame = new Region();
+            frame.getStyleClass().add("resize-outline");
+            Scene scene = new Scene(frame);
+            scene.setFill(Color.TRANSPARENT);
+            scene.getStylesheets().addAll(stage.getScene().getStylesheets());
+
+            outline = new Stage(StageStyle.TRANSPARENT);
+            outline.initOwner(stage);
+            outline.setScene(scene);
+        }
+        if (!outline.isShowing()) {
+            outline.setX(initStageX);
+            outline.setY(initStageY);
+            outline.setWidth(initStageWidth);
+            outline.setHeight(initStageHeight);
+            outline.show();
+        }
+    }
+
     /**
      * Determines the resize direction based on the mouse position relative
      * to the stage's borders.
@@ -286,29 +359,4 @@ public class WindowResizing {
             isMaximized = true;
         }
     }
-
-    /**
-     * Recursively updates style classes for nodes in the given scene graph.
-     * Adds or removes the "resize-zone" class based on the inResizeZone flag.
-     *
-     * @param node         the root node of the scene graph to update.
-     * @param inResizeZone if true, the node is in a resize zone.
-     */
-    private void updateTextAreaStyles(javafx.scene.Node node, boolean inResizeZone) {
-        if (node.getStyleClass().contains("styled-text-area")) {
-            if (inResizeZone) {
-                if (!node.getStyleClass().contains("resize-zone")) {
-                    node.getStyleClass().add("resize-zone");
-                }
-            } else {
-                node.getStyleClass().remove("resize-zone");
-            }
-        }
-
-        if (node instanceof javafx.scene.Parent) {
-            for (javafx.scene.Node child : ((javafx.scene.Parent) node).getChildrenUnmodifiable()) {
-                updateTextAreaStyles(child, inResizeZone);
-            }
-        }
-    }
 }
@@ -0,0 +1,152 @@
+package com.notemat.Filesystem;
+
+import org.fxmisc.richtext.model.StyleSpan;
+import org.fxmisc.richtext.model.StyleSpans;
+import org.fxmisc.richtext.model.StyleSpansBuilder;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+
+/**
+ * Checks that {@link ContentChunks} reads back what it wrote and that damage
+ * loses only the chunks it touches. Works on plain bytes and style spans, so
+ * no JavaFX toolkit is needed.
+ */
+class ContentChunksTest {
+    private static final String NORMAL = "-fx-font-size: 14px;";
+    private static final String BOLD = "-fx-font-size: 14px; -fx-font-weight: bold;";
+    private static final String LINE = "The quick brown fox jumps over the lazy dog while the notes keep growing.\n";
+    private static final int LINES = 3000;
+    // Chunks end after the last line break that fits, so every chunk but the last holds this many lines.
+    private static final int LINES_PER_CHUNK = ContentChunks.CHUNK_CHARS / LINE.length();
+    private static final int CHUNKS = (LINES + LINES_PER_CHUNK - 1) / LINES_PER_CHUNK;
+
+    private static final String TEXT = LINE.repeat(LINES);
+    private static final StyleSpans<String> SPANS = spans();
+
+    /**
+     * Styles every seventh line bold, so style runs cross chunk boundaries.
+     */
+    private static StyleSpans<String> spans() {
+        StyleSpansBuilder<String> builder = new StyleSpansBuilder<>();
+        for (int line = 0; line < LINES; line++) {
+            builder.add(line % 7 == 0 ? BOLD : NORMAL, LINE.length());
+        }
+        return builder.create();
+    }
+
+    private static byte[] write() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertEquals(CHUNKS, ContentChunks.write(out, TEXT, SPANS));
+        return out.toByteArray();
+    }
+
+    private static ContentChunks.Content read(byte[] bytes) {
+        return ContentChunks.read(new ByteArrayInputStream(bytes), bytes.length);
+    }
+
+    /**
+     * Finds where each chunk starts by its marker.
+     */
+    private static List<Integer> chunkOffsets(byte[] bytes) {
+        List<Integer> offsets = new ArrayList<>();
+        for (int i = 0; i + 4 <= bytes.length; i++) {
+            if (bytes[i] == 'N' && bytes[i + 1] == 'T' && bytes[i + 2] == 'C' && bytes[i + 3] == 'K') {
+                offsets.add(i);
+            }
+        }
+        return offsets;
+    }
+
+    /**
+     * Lists the style of every character, so spans split at different places compare equal.
+     */
+    private static List<String> styleOfEachChar(StyleSpans<String> spans) {
+        List<String> styles = new ArrayList<>();
+        for (StyleSpan<String> span : spans) {
+            for (int i = 0; i < span.getLength(); i++) {
+                styles.add(span.getStyle());
+            }
+        }
+        return styles;
+    }
+
+    private static List<String> styleOfEachChar(int fromLine, int toLine) {
+        return styleOfEachChar(SPANS).subList(fromLine * LINE.length(), toLine * LINE.length());
+    }
+
+    @Test
+    void multiChunkTextAndStylesRoundTrip() throws IOException {
+        byte[] bytes = write();
+        assertEquals(CHUNKS, chunkOffsets(bytes).size());
+
+        ContentChunks.Content content = read(bytes);
+
+        assertFalse(content.report().isDamaged());
+        assertEquals(CHUNKS, content.report().chunkCount());
+        assertEquals(TEXT, content.text());
+        assertEquals(styleOfEachChar(SPANS), styleOfEachChar(content.spans()));
+    }
+
+    @Test
+    void flippedPayloadByteLosesOnlyThatChunk() throws IOException {
+        byte[] bytes = write();
+        int second = chunkOffsets(bytes).get(1);
+        // A byte of the compressed payload, past the 28 byte chunk header.
+        bytes[second + 28 + 10] ^= 0x5A;
+
+        ContentChunks.Content content = read(bytes);
+
+        String expected = LINE.repeat(LINES_PER_CHUNK) + LINE.repeat(LINES - 2 * LINES_PER_CHUNK);
+        assertEquals(expected, content.text());
+        List<String> expectedStyles = new ArrayList<>(styleOfEachChar(0, LINES_PER_CHUNK));
+        expectedStyles.addAll(styleOfEachChar(2 * LINES_PER_CHUNK, LINES));
+        assertEquals(expectedStyles, styleOfEachChar(content.spans()));
+
+        assertEquals(List.of(new ContentChunks.LostRange(1, LINES_PER_CHUNK, LINES_PER_CHUNK, LINES_PER_CHUNK * LINE.length())),
+                content.report().lost());
+        assertEquals("Paragraphs %d to %d (%,d characters)".formatted(LINES_PER_CHUNK + 1, 2 * LINES_PER_CHUNK,
+                LINES_PER_CHUNK * LINE.length()), content.report().lost().getFirst().describe());
+    }
+
+    @Test
+    void truncatedTailIsReportedAsMissingTrailingChunks() throws IOException {
+        byte[] bytes = write();
+        int last = chunkOffsets(bytes).getLast();
+        byte[] truncated = Arrays.copyOf(bytes, last + 40);
+
+        ContentChunks.Content content = ContentChunks.read(new ByteArrayInputStream(truncated), -1);
+
+        int keptLines = (CHUNKS - 1) * LINES_PER_CHUNK;
+        assertEquals(LINE.repeat(keptLines), content.text());
+        assertEquals(CHUNKS, content.report().chunkCount());
+        // The last chunk also holds the empty paragraph after the final line break.
+        int lostParagraphs = LINES - keptLines + 1;
+        assertEquals(List.of(new ContentChunks.LostRange(CHUNKS - 1, keptLines, lostParagraphs,
+                (LINES - keptLines) * LINE.length())), content.report().lost());
+    }
+
+    @Test
+    void damagedHeaderStillRecoversEveryChunk() throws IOException {
+        byte[] bytes = write();
+        // The chunk count, covered by the header checksum.
+        bytes[8] ^= 0x01;
+
+        ContentChunks.Content content = read(bytes);
+
+        assertEquals(TEXT, content.text());
+        assertEquals(styleOfEachChar(SPANS), styleOfEachChar(content.spans()));
+        assertEquals(-1, content.report().chunkCount());
+        assertTrue(content.report().lost().isEmpty());
+    }
+}
@@ -0,0 +1,120 @@
+package com.notemat.Filesystem;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+
+/**
+ * Checks that {@link NoteEncryption} reads back what it wrote and refuses
+ * files whose chunks were dropped, appended or reordered. Works on byte
+ * arrays only, so no JavaFX toolkit is needed.
+ */
+class NoteEncryptionTest {
+    private static final int CHUNK = NoteEncryption.CHUNK_SIZE;
+    // Magic, version, iterations, salt and nonce prefix, then the key check.
+    private static final int HEADER_BYTES = 4 + 1 + 4 + 16 + 8 + 16;
+    private static final int SEALED_CHUNK = CHUNK + 16;
+
+    private static byte[] body(int length) {
+        byte[] body = new byte[length];
+        new Random(length).nextBytes(body);
+        return body;
+    }
+
+    private static byte[] encrypt(byte[] body, NoteEncryption.Key key) throws IOException {
+        ByteArrayOutputStream file = new ByteArrayOutputStream();
+        try (OutputStream out = NoteEncryption.encrypt(file, key)) {
+            out.write(body);
+        }
+        return file.toByteArray();
+    }
+
+    private static byte[] decrypt(byte[] file, NoteEncryption.Key key) throws IOException {
+        InputStream in = new ByteArrayInputStream(file);
+        NoteEncryption.Header header = NoteEncryption.readHeader(in);
+        assertTrue(NoteEncryption.checkKey(header, key));
+        try (InputStream plain = NoteEncryption.decrypt(in, header, key)) {
+            return plain.readAllBytes();
+        }
+    }
+
+    private static byte[] chunk(byte[] file, int index) {
+        int start = HEADER_BYTES + index * SEALED_CHUNK;
+        return Arrays.copyOfRange(file, start, start + SEALED_CHUNK);
+    }
+
+    @Test
+    void bodiesOfEveryShapeRoundTrip() throws IOException {
+        NoteEncryption.Key key = NoteEncryption.createKey("correct horse".toCharArray());
+        // Empty, exact multiples of the chunk size, where the last chunk is full, and uneven lengths.
+        for (int length : new int[]{0, 1, CHUNK - 1, CHUNK, CHUNK + 1, 2 * CHUNK, 3 * CHUNK + 100}) {
+            byte[] body = body(length);
+            byte[] file = encrypt(body, key);
+
+            int chunks = Math.max(1, (length + CHUNK - 1) / CHUNK);
+            assertEquals(HEADER_BYTES + length + chunks * 16, file.length, "length " + length);
+            assertArrayEquals(body, decrypt(file, key));
+        }
+    }
+
+    @Test
+    void wrongPassphraseFailsTheKeyCheck() throws IOException {
+        NoteEncryption.Key key = NoteEncryption.createKey("correct horse".toCharArray());
+        byte[] file = encrypt(body(100), key);
+
+        NoteEncryption.Header header = NoteEncryption.readHeader(new ByteArrayInputStream(file));
+        NoteEncryption.Key wrong = NoteEncryption.deriveKey("battery staple".toCharArray(), header);
+
+        assertFalse(NoteEncryption.checkKey(header, wrong));
+        assertTrue(NoteEncryption.checkKey(header, NoteEncryption.deriveKey("correct horse".toCharArray(), header)));
+    }
+
+    @Test
+    void droppedFinalChunkFails() throws IOException {
+        NoteEncryption.Key key = NoteEncryption.createKey("correct horse".toCharArray());
+        byte[] file = encrypt(body(2 * CHUNK + 100), key);
+
+        // Cut at a chunk boundary, so the rest still looks like whole chunks.
+        byte[] dropped = Arrays.copyOf(file, HEADER_BYTES + 2 * SEALED_CHUNK);
+
+        assertThrows(IOException.class, () -> decrypt(dropped, key));
+    }
+
+    @Test
+    void appendedChunkFails() throws IOException {
+        NoteEncryption.Key key = NoteEncryption.createKey("correct horse".toCharArray());
+        byte[] file = encrypt(body(2 * CHUNK), key);
+
+        // A valid chunk of the same file, so only its position gives it away.
+        byte[] extra = chunk(file, 0);
+        byte[] appended = Arrays.copyOf(file, file.length + extra.length);
+        System.arraycopy(extra, 0, appended, file.length, extra.length);
+
+        assertThrows(IOException.class, () -> decrypt(appended, key));
+    }
+
+    @Test
+    void swappedChunksFailAuthentication() throws IOException {
+        NoteEncryption.Key key = NoteEncryption.createKey("correct horse".toCharArray());
+        byte[] file = encrypt(body(3 * CHUNK + 100), key);
+
+        byte[] swapped = file.clone();
+        System.arraycopy(chunk(file, 1), 0, swapped, HEADER_BYTES, SEALED_CHUNK);
+        System.arraycopy(chunk(file, 0), 0, swapped, HEADER_BYTES + SEALED_CHUNK, SEALED_CHUNK);
+
+        assertThrows(IOException.class, () -> decrypt(swapped, key));
+    }
+}
@@ -0,0 +1,165 @@
+package com.notemat.Filesystem;
+
+import org.fxmisc.richtext.model.StyleSpan;
+import org.fxmisc.richtext.model.StyleSpans;
+import org.fxmisc.richtext.model.StyleSpansBuilder;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+
+/**
+ * Checks that {@link VersionHistory} rebuilds every committed state, across
+ * keyframes, after being written and read back, and after a rollback. Works
+ * on text and style spans only, so no JavaFX toolkit is needed.
+ */
+class VersionHistoryTest {
+    private static final String NORMAL = "-fx-font-size: 14px;";
+    private static final String BOLD = "-fx-font-size: 14px; -fx-font-weight: bold;";
+    private static final int PARAGRAPHS = 200;
+    private static final int STATES = 40;
+
+    /**
+     * A committed state: each paragraph's text and whether it is bold.
+     */
+    private record State(long time, List<String> lines, List<Boolean> bold) {
+        String text() {
+            return String.join("\n", lines);
+        }
+
+        StyleSpans<String> spans() {
+            StyleSpansBuilder<String> builder = new StyleSpansBuilder<>();
+            for (int i = 0; i < lines.size(); i++) {
+                int length = lines.get(i).length() + (i < lines.size() - 1 ? 1 : 0);
+                if (length > 0) {
+                    builder.add(bold.get(i) ? BOLD : NORMAL, length);
+                }
+            }
+            return builder.create();
+        }
+    }
+
+    /**
+     * Makes a sequence of states with small edits, restyles, insertions and
+     * deletions, and every tenth state rewriting half the note, so that
+     * both deltas and keyframes are stored.
+     */
+    private static List<State> states() {
+        Random random = new Random(42);
+        List<String> lines = new ArrayList<>();
+        List<Boolean> bold = new ArrayList<>();
+        for (int i = 0; i < PARAGRAPHS; i++) {
+            lines.add("Paragraph " + i + " of the first draft, with some words to make it longer.");
+            bold.add(i % 9 == 0);
+        }
+
+        List<State> states = new ArrayList<>();
+        for (int version = 0; version < STATES; version++) {
+            if (version > 0 && version % 10 == 0) {
+                for (int i = 0; i < lines.size(); i += 2) {
+                    lines.set(i, "Rewritten in version " + version + ", paragraph " + i + ", now with different words.");
+                }
+            } else if (version > 0) {
+                int at = random.nextInt(lines.size());
+                switch (version % 4) {
+                    case 0 -> lines.set(at, lines.get(at) + " Edited in version " + version + ".");
+                    case 1 -> bold.set(at, !bold.get(at));
+                    case 2 -> {
+                        lines.add(at, "Inserted in version " + version + ".");
+                        bold.add(at, false);
+                    }
+                    default -> {
+                        lines.remove(at);
+                        bold.remove(at);
+                        lines.set(0, lines.getFirst() + " " + version);
+                    }
+                }
+            }
+            states.add(new State(1_000L * (version + 1), List.copyOf(lines), List.copyOf(bold)));
+        }
+        return states;
+    }
+
+    private static VersionHistory commitAll(List<State> states) {
+        VersionHistory history = new VersionHistory();
+        for (State state : states) {
+            assertTrue(history.commit(state.text(), state.spans(), state.time()));
+        }
+        return history;
+    }
+
+    /**
+     * Lists the style of every character, so spans split at different places compare equal.
+     */
+    private static List<String> styleOfEachChar(StyleSpans<String> spans) {
+        List<String> styles = new ArrayList<>();
+        for (StyleSpan<String> span : spans) {
+            for (int i = 0; i < span.getLength(); i++) {
+                styles.add(span.getStyle());
+            }
+        }
+        return styles;
+    }
+
+    private static void assertReconstructs(List<State> states, VersionHistory history) throws IOException {
+        assertEquals(states.size(), history.getRevisions().size());
+        for (int i = 0; i < states.size(); i++) {
+            VersionHistory.Snapshot snapshot = history.reconstruct(i);
+            assertEquals(states.get(i).time(), snapshot.time(), "time of revision " + i);
+            assertEquals(states.get(i).text(), snapshot.text(), "text of revision " + i);
+            assertEquals(styleOfEachChar(states.get(i).spans()), styleOfEachChar(snapshot.spans()), "styles of revision " + i);
+        }
+    }
+
+    @Test
+    void everyCommittedStateIsRebuiltAcrossKeyframes() throws IOException {
+        List<State> states = states();
+        VersionHistory history = commitAll(states);
+
+        List<VersionHistory.RevisionInfo> stored = history.getRevisions().subList(0, states.size() - 1);
+        assertTrue(stored.stream().anyMatch(VersionHistory.RevisionInfo::keyframe), "no keyframe was stored");
+        assertTrue(stored.stream().anyMatch(revision -> !revision.keyframe()), "no delta was stored");
+        assertReconstructs(states, history);
+    }
+
+    @Test
+    void everyStateIsRebuiltAfterWriteAndRead() throws IOException {
+        List<State> states = states();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        commitAll(states).write(out);
+
+        VersionHistory history = VersionHistory.read(new ByteArrayInputStream(out.toByteArray()));
+        State current = states.getLast();
+        history.resume(current.text(), current.spans(), 0);
+
+        assertReconstructs(states, history);
+    }
+
+    @Test
+    void rollbackUndoesTheCommitsMadeSinceTheCheckpoint() throws IOException {
+        List<State> states = states();
+        List<State> kept = states.subList(0, STATES / 2);
+        VersionHistory history = commitAll(kept);
+
+        VersionHistory.Checkpoint checkpoint = history.checkpoint();
+        for (State state : states.subList(STATES / 2, STATES / 2 + 3)) {
+            history.commit(state.text(), state.spans(), state.time());
+        }
+        history.rollback(checkpoint);
+        assertReconstructs(kept, history);
+
+        // The restored state is the base of the next delta.
+        List<State> next = new ArrayList<>(kept);
+        next.add(states.getLast());
+        history.commit(states.getLast().text(), states.getLast().spans(), states.getLast().time());
+        assertReconstructs(next, history);
+    }
+}
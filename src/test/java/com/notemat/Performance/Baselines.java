@@ -0,0 +1,130 @@
+package com.notemat.Performance;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+
+/**
+ * The stored baselines of the UI performance tests and the values measured in
+ * this run. A metric regresses when it exceeds its baseline by more than the
+ * tolerance factor ({@code -Dnotemat.perf.tolerance}, default 1.25) plus 2 ms
+ * of slack for timer noise. Metrics without a baseline are only reported, and
+ * baselines are only enforced once they are marked {@code calibrated}, i.e.
+ * were measured rather than written by hand.
+ * <p>
+ * Independently of the baselines, a metric with a {@code ceiling.} entry fails
+ * as soon as it exceeds that absolute value. The ceilings are generous, far
+ * above what the scenarios take on any reasonable machine, so they catch gross
+ * regressions before the baselines are calibrated; tighten them once they are.
+ * <p>
+ * The measured values are written to {@code ui-perf-results.properties} in the
+ * working directory. With {@code -Dnotemat.perf.updateBaselines=<file>} they
+ * also replace the baselines in that file, which is how the stored baselines
+ * are refreshed after an intended change or on new CI hardware, and marks
+ * them as calibrated.
+ */
+final class Baselines {
+    private static final String RESOURCE = "baselines.properties";
+    private static final String RESULTS_FILE = "ui-perf-results.properties";
+    private static final String CALIBRATED = "calibrated";
+    private static final String CEILING_PREFIX = "ceiling.";
+    private static final double SLACK_MILLIS = 2;
+
+    private final Properties baselines = new Properties();
+    private final Map<String, Double> measured = new TreeMap<>();
+    private final double tolerance = Double.parseDouble(System.getProperty("notemat.perf.tolerance", "1.25"));
+
+    /**
+     * Loads the baselines stored next to this class.
+     *
+     * @return the baselines.
+     * @throws IOException if the baselines cannot be read.
+     */
+    static Baselines load() throws IOException {
+        Baselines result = new Baselines();
+        try (InputStream in = Baselines.class.getResourceAsStream(RESOURCE)) {
+            if (in != null) {
+                result.baselines.load(in);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Records the metrics of a scenario and compares them with their baselines.
+     *
+     * @param scenario the scenario name, prefixed to the metric names.
+     * @param metrics  the measured values in milliseconds, by metric name.
+     * @return a description of each regressed metric; empty if none regressed.
+     */
+    synchronized List<String> compare(String scenario, Map<String, Double> metrics) {
+        List<String> regressions = new ArrayList<>();
+        boolean calibrated = Boolean.parseBoolean(baselines.getProperty(CALIBRATED));
+        for (Map.Entry<String, Double> metric : new TreeMap<>(metrics).entrySet()) {
+            String key = scenario + "." + metric.getKey();
+            double value = metric.getValue();
+            measured.put(key, value);
+
+            String ceiling = baselines.getProperty(CEILING_PREFIX + key);
+            if (ceiling != null && value > Double.parseDouble(ceiling)) {
+                regressions.add(String.format(Locale.ROOT, "%s: %.2f ms exceeds the ceiling of %s ms", key, value, ceiling));
+            }
+
+            String stored = baselines.getProperty(key);
+            if (stored == null) {
+                System.out.printf(Locale.ROOT, "%-28s %8.2f ms  (no baseline)%n", key, value);
+                continue;
+            }
+            double baseline = Double.parseDouble(stored);
+            double limit = baseline * tolerance + SLACK_MILLIS;
+            System.out.printf(Locale.ROOT, "%-28s %8.2f ms  baseline %8.2f ms  limit %8.2f ms%n", key, value, baseline, limit);
+            if (value > limit && calibrated) {
+                regressions.add(String.format(Locale.ROOT, "%s: %.2f ms exceeds %.2f ms (baseline %.2f ms)", key, value, limit, baseline));
+            }
+        }
+        return regressions;
+    }
+
+    /**
+     * Writes the measured values, and the updated baselines if requested.
+     *
+     * @throws IOException if a file cannot be written.
+     */
+    synchronized void save() throws IOException {
+        Properties results = new Properties();
+        measured.forEach((key, value) -> results.setProperty(key, format(value)));
+        try (OutputStream out = Files.newOutputStream(Path.of(RESULTS_FILE))) {
+            results.store(out, "UI performance results, in milliseconds");
+        }
+
+        String update = System.getProperty("notemat.perf.updateBaselines");
+        if (update != null && !update.isEmpty()) {
+            Path file = Path.of(update);
+            Properties updated = new Properties();
+            if (Files.exists(file)) {
+                try (InputStream in = Files.newInputStream(file)) {
+                    updated.load(in);
+                }
+            }
+            updated.putAll(results);
+            updated.setProperty(CALIBRATED, "true");
+            try (OutputStream out = Files.newOutputStream(file)) {
+                updated.store(out, "UI performance baselines, in milliseconds");
+            }
+            System.out.println("Updated baselines in " + file.toAbsolutePath());
+        }
+    }
+
+    private static String format(double millis) {
+        return String.format(Locale.ROOT, "%.2f", millis);
+    }
+}
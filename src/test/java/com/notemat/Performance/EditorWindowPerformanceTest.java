@@ -0,0 +1,216 @@
+package com.notemat.Performance;
+
+import com.notemat.Components.EditorWindow;
+import com.notemat.Components.ImageComponent;
+import javafx.event.Event;
+import javafx.scene.image.PixelWriter;
+import javafx.scene.image.WritableImage;
+import javafx.scene.input.Clipboard;
+import javafx.scene.input.ClipboardContent;
+import javafx.scene.input.KeyCode;
+import javafx.scene.input.KeyEvent;
+import org.fxmisc.richtext.InlineCssTextArea;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+
+/**
+ * Scripted UI scenarios on a real editor window, measured per pulse and
+ * compared with the stored {@link Baselines}. Runs headless on Monocle, see
+ * {@link HeadlessFx}. The typing scenario types {@code -Dnotemat.perf.typedChars}
+ * characters (default 10000), {@code -Dnotemat.perf.keysPerFrame} per frame
+ * (default 5, a fast typist with key repeat).
+ */
+@Tag("ui-performance")
+class EditorWindowPerformanceTest {
+    private static final int TYPED_CHARS = Integer.getInteger("notemat.perf.typedChars", 10_000);
+    private static final int KEYS_PER_FRAME = Integer.getInteger("notemat.perf.keysPerFrame", 5);
+    private static final int PARAGRAPHS = 2000;
+    private static final String SENTENCE = "The quick brown fox jumps over the lazy dog while the notes keep growing. ";
+    private static final long TIMEOUT_SECONDS = 600;
+
+    private static Baselines baselines;
+
+    private EditorWindow editor;
+    private InlineCssTextArea textArea;
+
+    @BeforeAll
+    static void startToolkit() throws Exception {
+        HeadlessFx.start();
+        baselines = Baselines.load();
+    }
+
+    @AfterAll
+    static void saveResults() throws Exception {
+        baselines.save();
+    }
+
+    @BeforeEach
+    void openWindow() throws Exception {
+        editor = HeadlessFx.call(() -> {
+            EditorWindow window = new EditorWindow();
+            window.show();
+            return window;
+        });
+        textArea = editor.getRichTextArea();
+    }
+
+    @AfterEach
+    void closeWindow() throws Exception {
+        HeadlessFx.run(() -> editor.close());
+    }
+
+    @Test
+    void typingIntoLargeNote() throws Exception {
+        HeadlessFx.run(() -> {
+            fillDocument();
+            textArea.moveTo(textArea.getLength() / 2);
+            textArea.requestFocus();
+        });
+        int lengthBefore = HeadlessFx.call(textArea::getLength);
+
+        int steps = (TYPED_CHARS + KEYS_PER_FRAME - 1) / KEYS_PER_FRAME;
+        PulseDriver.Result result = play(steps, (index, action) -> {
+            for (int key = 0; key < KEYS_PER_FRAME; key++) {
+                int typed = index * KEYS_PER_FRAME + key;
+                if (typed >= TYPED_CHARS) {
+                    break;
+                }
+                action.run();
+                if (typed % 80 == 79) {
+                    Event.fireEvent(textArea, new KeyEvent(KeyEvent.KEY_PRESSED, "", "", KeyCode.ENTER, false, false, false, false));
+                } else {
+                    String character = String.valueOf(SENTENCE.charAt(typed % SENTENCE.length()));
+                    Event.fireEvent(textArea, new KeyEvent(KeyEvent.KEY_TYPED, character, "", KeyCode.UNDEFINED, false, false, false, false));
+                }
+            }
+        });
+
+        assertEquals(lengthBefore + TYPED_CHARS, (int) HeadlessFx.call(textArea::getLength), "every key should have been typed");
+        assertNoRegressions("typing", Map.of(
+                "keystroke.p50", result.latencyMillis(0.50),
+                "keystroke.p95", result.latencyMillis(0.95),
+                "keystroke.p99", result.latencyMillis(0.99),
+                "frame.p95", result.frameMillis(0.95),
+                "frame.p99", result.frameMillis(0.99)));
+    }
+
+    @Test
+    void togglingBoldOverLargeSelections() throws Exception {
+        HeadlessFx.run(this::fillDocument);
+        int length = HeadlessFx.call(textArea::getLength);
+        int selection = Math.min(50_000, length / 2);
+
+        PulseDriver.Result result = play(20, (index, action) -> {
+            int start = (index * 7919) % (length - selection);
+            textArea.selectRange(start, start + selection);
+            action.run();
+            editor.getStylebar().toggleBold();
+        });
+
+        assertNoRegressions("bold", Map.of(
+                "toggle.p50", result.latencyMillis(0.50),
+                "toggle.p95", result.latencyMillis(0.95)));
+    }
+
+    @Test
+    void scrollingThroughImageHeavyNote() throws Exception {
+        HeadlessFx.run(() -> {
+            fillDocument();
+            WritableImage[] images = new WritableImage[8];
+            for (int i = 0; i < images.length; i++) {
+                images[i] = createImage(640, 360, i);
+            }
+            for (int i = 0; i < 100; i++) {
+                ImageComponent image = new ImageComponent(images[i % images.length]);
+                image.setManaged(false);
+                image.setLayoutX(20 + (i % 3) * 60);
+                image.setLayoutY(i * 400);
+                editor.getImageLayer().getChildren().add(image);
+            }
+        });
+
+        PulseDriver.Result result = play(600, (index, action) -> {
+            action.run();
+            textArea.scrollYBy(index < 300 ? 60 : -60);
+        });
+
+        assertNoRegressions("scroll", Map.of(
+                "step.p95", result.latencyMillis(0.95),
+                "frame.p95", result.frameMillis(0.95),
+                "frame.p99", result.frameMillis(0.99)));
+    }
+
+    @Test
+    void pastingLargeText() throws Exception {
+        StringBuilder pasted = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            pasted.append(SENTENCE).append(i).append('\n');
+        }
+        boolean clipboardWorks = HeadlessFx.call(() -> {
+            fillDocument();
+            ClipboardContent content = new ClipboardContent();
+            content.putString(pasted.toString());
+            Clipboard.getSystemClipboard().setContent(content);
+            return Clipboard.getSystemClipboard().hasString();
+        });
+        assumeTrue(clipboardWorks, "the platform has no usable clipboard");
+
+        PulseDriver.Result result = play(30, (index, action) -> {
+            textArea.moveTo((index * 104_729) % textArea.getLength());
+            action.run();
+            editor.pasteTextOrImage();
+        });
+
+        assertNoRegressions("paste", Map.of(
+                "paste.p50", result.latencyMillis(0.50),
+                "paste.p95", result.latencyMillis(0.95),
+                "frame.p99", result.frameMillis(0.99)));
+    }
+
+    private PulseDriver.Result play(int steps, PulseDriver.Step step) throws Exception {
+        PulseDriver.Result result = HeadlessFx.await(
+                HeadlessFx.call(() -> new PulseDriver(editor.getScene()).play(steps, step)), TIMEOUT_SECONDS);
+        assertTrue(result.getActionCount() > 0, "no action was measured");
+        return result;
+    }
+
+    private void assertNoRegressions(String scenario, Map<String, Double> metrics) {
+        List<String> regressions = baselines.compare(scenario, metrics);
+        assertTrue(regressions.isEmpty(), () -> "UI performance regressed:\n" + String.join("\n", regressions));
+    }
+
+    /**
+     * Replaces the document with a large note in the default style.
+     */
+    private void fillDocument() {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < PARAGRAPHS; i++) {
+            text.append("Paragraph ").append(i).append(": ").append(SENTENCE).append('\n');
+        }
+        textArea.replaceText(text.toString());
+        editor.getUndoHistory().clear();
+    }
+
+    private static WritableImage createImage(int width, int height, int seed) {
+        WritableImage image = new WritableImage(width, height);
+        PixelWriter writer = image.getPixelWriter();
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                writer.setArgb(x, y, 0xFF000000 | ((x + seed * 31) & 0xFF) << 16 | ((y + seed * 17) & 0xFF) << 8 | ((x ^ y) & 0xFF));
+            }
+        }
+        return image;
+    }
+}
@@ -0,0 +1,110 @@
+package com.notemat.Performance;
+
+import javafx.application.Platform;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+
+/**
+ * Starts the JavaFX toolkit on the headless Monocle platform with software
+ * rendering, so the UI tests run without a display or GPU. The Gradle test task
+ * sets the same properties; they are repeated here for runs from an IDE.
+ */
+final class HeadlessFx {
+    private static boolean started = false;
+
+    private HeadlessFx() {
+    }
+
+    /**
+     * Starts the toolkit once per JVM.
+     *
+     * @throws InterruptedException if interrupted while waiting for the toolkit.
+     */
+    static synchronized void start() throws InterruptedException {
+        if (started) {
+            return;
+        }
+        setDefault("glass.platform", "Monocle");
+        setDefault("monocle.platform", "Headless");
+        setDefault("prism.order", "sw");
+        setDefault("prism.text", "t2k");
+        setDefault("prism.lcdtext", "false");
+        setDefault("java.awt.headless", "true");
+        setDefault("notemat.singleInstance", "false");
+
+        CountDownLatch latch = new CountDownLatch(1);
+        Platform.startup(latch::countDown);
+        Platform.setImplicitExit(false);
+        if (!latch.await(30, TimeUnit.SECONDS)) {
+            throw new IllegalStateException("JavaFX did not start");
+        }
+        started = true;
+    }
+
+    /**
+     * Runs code on the JavaFX application thread and waits for its result.
+     *
+     * @param callable the code to run.
+     * @param <T>      the result type.
+     * @return the result.
+     * @throws Exception if the code fails or does not finish within a minute.
+     */
+    static <T> T call(Callable<T> callable) throws Exception {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        Platform.runLater(() -> {
+            try {
+                result.complete(callable.call());
+            } catch (Throwable e) {
+                result.completeExceptionally(e);
+            }
+        });
+        return await(result, 60);
+    }
+
+    /**
+     * Runs code on the JavaFX application thread and waits for it.
+     *
+     * @param runnable the code to run.
+     * @throws Exception if the code fails or does not finish within a minute.
+     */
+    static void run(Runnable runnable) throws Exception {
+        call(() -> {
+            runnable.run();
+            return null;
+        });
+    }
+
+    /**
+     * Waits for a future completed on the JavaFX application thread.
+     *
+     * @param future  the future.
+     * @param seconds the maximum time to wait.
+     * @param <T>     the result type.
+     * @return the result.
+     * @throws Exception if the future fails or times out.
+     */
+    static <T> T await(CompletableFuture<T> future, long seconds) throws Exception {
+        try {
+            return future.get(seconds, TimeUnit.SECONDS);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception cause) {
+                throw cause;
+            }
+            throw e;
+        } catch (TimeoutException e) {
+            throw new AssertionError("Timed out after " + seconds + " s", e);
+        }
+    }
+
+    private static void setDefault(String key, String value) {
+        if (System.getProperty(key) == null) {
+            System.setProperty(key, value);
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package com.notemat.Performance;
+
+import javafx.animation.AnimationTimer;
+import javafx.application.Platform;
+import javafx.scene.Scene;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+
+/**
+ * Plays a scripted scenario against a scene, one step per pulse, and measures
+ * it. Steps run between pulses like input events do. Every action a step
+ * marks (a keystroke, a paste...) gets a latency: the time from the mark to the
+ * end of the layout of the next pulse, which is when its result is ready to be
+ * painted. The interval between consecutive pulses is recorded as frame time.
+ * All methods must be called on the JavaFX application thread.
+ */
+final class PulseDriver {
+    /**
+     * One step of a scenario.
+     */
+    @FunctionalInterface
+    interface Step {
+        /**
+         * Performs the step.
+         *
+         * @param index  the index of the step.
+         * @param action call before each measured action of the step.
+         */
+        void run(int index, Runnable action);
+    }
+
+    /**
+     * The measurements of a scenario, in nanoseconds.
+     */
+    static final class Result {
+        private final List<Long> latencies = new ArrayList<>();
+        private final List<Long> frames = new ArrayList<>();
+
+        /**
+         * Gets a latency percentile of the actions.
+         *
+         * @param percentile the percentile, between 0 and 1.
+         * @return the latency in milliseconds.
+         */
+        double latencyMillis(double percentile) {
+            return percentileMillis(latencies, percentile);
+        }
+
+        /**
+         * Gets a frame time percentile.
+         *
+         * @param percentile the percentile, between 0 and 1.
+         * @return the frame time in milliseconds.
+         */
+        double frameMillis(double percentile) {
+            return percentileMillis(frames, percentile);
+        }
+
+        int getActionCount() {
+            return latencies.size();
+        }
+
+        int getFrameCount() {
+            return frames.size();
+        }
+
+        private static double percentileMillis(List<Long> values, double percentile) {
+            if (values.isEmpty()) {
+                return 0;
+            }
+            long[] sorted = values.stream().mapToLong(Long::longValue).toArray();
+            Arrays.sort(sorted);
+            int index = (int) Math.ceil(percentile * sorted.length) - 1;
+            return sorted[Math.max(0, Math.min(sorted.length - 1, index))] / 1e6;
+        }
+    }
+
+    private final Scene scene;
+
+    /**
+     * Creates a driver.
+     *
+     * @param scene the scene whose pulses are observed.
+     */
+    PulseDriver(Scene scene) {
+        this.scene = scene;
+    }
+
+    /**
+     * Plays a scenario.
+     *
+     * @param steps the number of steps.
+     * @param step  the step, run once per pulse.
+     * @return a future completing with the measurements after the pulse
+     * following the last step.
+     */
+    CompletableFuture<Result> play(int steps, Step step) {
+        Result result = new Result();
+        CompletableFuture<Result> done = new CompletableFuture<>();
+        List<Long> marks = new ArrayList<>();
+        int[] nextStep = {0};
+        boolean[] stepRan = {false};
+
+        // Keeps pulses coming even when a step changes nothing.
+        AnimationTimer frames = new AnimationTimer() {
+            private long last = 0;
+
+            @Override
+            public void handle(long now) {
+                if (last != 0) {
+                    result.frames.add(now - last);
+                }
+                last = now;
+            }
+        };
+
+        Runnable runStep = () -> {
+            stepRan[0] = true;
+            try {
+                step.run(nextStep[0]++, () -> marks.add(System.nanoTime()));
+            } catch (RuntimeException e) {
+                done.completeExceptionally(e);
+            }
+        };
+
+        Runnable[] afterLayout = new Runnable[1];
+        afterLayout[0] = () -> {
+            // Pulses between the scheduling of a step and its execution are ignored.
+            if (!stepRan[0]) {
+                return;
+            }
+            stepRan[0] = false;
+
+            long now = System.nanoTime();
+            for (long mark : marks) {
+                result.latencies.add(now - mark);
+            }
+            marks.clear();
+
+            if (done.isDone() || nextStep[0] >= steps) {
+                frames.stop();
+                // Removed later, the scene is iterating over its listeners.
+                Platform.runLater(() -> scene.removePostLayoutPulseListener(afterLayout[0]));
+                done.complete(result);
+            } else {
+                Platform.runLater(runStep);
+            }
+        };
+
+        scene.addPostLayoutPulseListener(afterLayout[0]);
+        frames.start();
+        Platform.runLater(runStep);
+        return done;
+    }
+}
@@ -0,0 +1,116 @@
+package com.notemat.Utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+
+/**
+ * Checks that the hunks of {@link MyersDiff} turn the first sequence into the
+ * second, including inputs different enough for the search to be cut off.
+ * Pure computation, so no JavaFX toolkit is needed.
+ */
+class MyersDiffTest {
+
+    /**
+     * Applies hunks to {@code a}: elements between hunks are kept, each hunk's
+     * elements of {@code a} are replaced by its elements of {@code b}. Also
+     * checks that the hunks are in order and that every kept element is equal
+     * on both sides.
+     */
+    private static String apply(String a, String b, List<MyersDiff.Hunk> hunks) {
+        StringBuilder result = new StringBuilder();
+        int aPosition = 0;
+        int bPosition = 0;
+        for (MyersDiff.Hunk hunk : hunks) {
+            assertTrue(hunk.aStart() >= aPosition && hunk.aEnd() >= hunk.aStart() && hunk.bEnd() >= hunk.bStart(), hunk.toString());
+            assertEquals(hunk.aStart() - aPosition, hunk.bStart() - bPosition, "unequal unchanged run before " + hunk);
+            assertEquals(a.substring(aPosition, hunk.aStart()), b.substring(bPosition, hunk.bStart()));
+            result.append(a, aPosition, hunk.aStart());
+            result.append(b, hunk.bStart(), hunk.bEnd());
+            aPosition = hunk.aEnd();
+            bPosition = hunk.bEnd();
+        }
+        assertEquals(a.substring(aPosition), b.substring(bPosition));
+        result.append(a, aPosition, a.length());
+        return result.toString();
+    }
+
+    private static String random(Random random, int length, String alphabet) {
+        StringBuilder text = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            text.append(alphabet.charAt(random.nextInt(alphabet.length())));
+        }
+        return text.toString();
+    }
+
+    /**
+     * Copies a text with a number of random insertions, deletions and replacements.
+     */
+    private static String edit(Random random, String text, int edits, String alphabet) {
+        StringBuilder edited = new StringBuilder(text);
+        for (int i = 0; i < edits; i++) {
+            int at = edited.isEmpty() ? 0 : random.nextInt(edited.length());
+            switch (random.nextInt(3)) {
+                case 0 -> edited.insert(at, random(random, 1 + random.nextInt(5), alphabet));
+                case 1 -> edited.delete(at, Math.min(edited.length(), at + 1 + random.nextInt(5)));
+                default -> edited.replace(at, Math.min(edited.length(), at + 1 + random.nextInt(5)), random(random, 1 + random.nextInt(5), alphabet));
+            }
+        }
+        return edited.toString();
+    }
+
+    private static void assertTransforms(String a, String b) {
+        assertEquals(b, apply(a, b, MyersDiff.diff(a, b)));
+    }
+
+    @Test
+    void simpleEditsGiveTheExpectedHunks() {
+        assertEquals(List.of(new MyersDiff.Hunk(6, 6, 6, 12)), MyersDiff.diff("Hello world", "Hello there world"));
+        assertEquals(List.of(), MyersDiff.diff("same", "same"));
+        assertEquals(List.of(new MyersDiff.Hunk(0, 0, 0, 3)), MyersDiff.diff("", "new"));
+        assertEquals(List.of(new MyersDiff.Hunk(0, 3, 0, 0)), MyersDiff.diff("old", ""));
+    }
+
+    @Test
+    void hunksTurnRandomTextsIntoTheirEdits() {
+        Random random = new Random(7);
+        for (int round = 0; round < 2000; round++) {
+            String alphabet = round % 2 == 0 ? "ab" : "abcdefghij";
+            String a = random(random, random.nextInt(200), alphabet);
+            String b = round % 5 == 0 ? random(random, random.nextInt(200), alphabet) : edit(random, a, random.nextInt(20), alphabet);
+            assertTransforms(a, b);
+        }
+    }
+
+    @Test
+    void hunksTurnVeryDifferentTextsIntoEachOther() {
+        // Unrelated texts need far more edits than the cost limit allows, so the search is cut off.
+        Random random = new Random(11);
+        String a = random(random, 50_000, "acgt");
+        String b = random(random, 40_000, "acgt");
+        assertTransforms(a, b);
+
+        // Many scattered edits in a long text.
+        String edited = edit(random, a, 5_000, "acgt");
+        assertTransforms(a, edited);
+    }
+
+    @Test
+    void hashHunksTurnParagraphsIntoTheirEdits() {
+        Random random = new Random(13);
+        for (int round = 0; round < 200; round++) {
+            // Letters stand for paragraph hashes; upper case ones occur on one side only.
+            String a = random(random, 1 + random.nextInt(2_000), "abcdefgh");
+            String b = round % 4 == 0 ? random(random, random.nextInt(2_000), "ABCDabcd") : edit(random, a, random.nextInt(300), "abcdXYZ");
+            long[] aHashes = a.chars().mapToLong(c -> c * 0x9E3779B97F4A7C15L).toArray();
+            long[] bHashes = b.chars().mapToLong(c -> c * 0x9E3779B97F4A7C15L).toArray();
+
+            assertEquals(b, apply(a, b, MyersDiff.diff(aHashes, bHashes)));
+        }
+    }
+}
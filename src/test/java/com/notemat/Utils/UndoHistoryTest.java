@@ -0,0 +1,70 @@
+package com.notemat.Utils;
+
+import org.fxmisc.richtext.model.ReadOnlyStyledDocument;
+import org.fxmisc.richtext.model.RichTextChange;
+import org.fxmisc.richtext.model.SegmentOps;
+import org.fxmisc.richtext.model.StyledDocument;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+
+/**
+ * Checks that {@link UndoHistory} keeps only the changed range of a change.
+ * Works on document models only, so no JavaFX toolkit is needed.
+ */
+class UndoHistoryTest {
+    private static final String NORMAL = "-fx-font-size: 14px;";
+    private static final String BOLD = "-fx-font-size: 14px; -fx-font-weight: bold;";
+    private static final String LINE = "The quick brown fox jumps over the lazy dog while the notes keep growing.\n";
+
+    private static StyledDocument<String, String, String> document(String text, String style) {
+        return ReadOnlyStyledDocument.fromString(text, "", style, SegmentOps.styledTextOps());
+    }
+
+    @Test
+    void restyleOfOneWordInALargeDocumentKeepsOnlyTheWord() {
+        String before = LINE.repeat(5000);
+        String word = "important";
+        String after = LINE.repeat(5000);
+        String text = before + word + after;
+
+        StyledDocument<String, String, String> plain = document(text, NORMAL);
+        StyledDocument<String, String, String> bolded = document(before, NORMAL)
+                .concat(document(word, BOLD))
+                .concat(document(after, NORMAL));
+
+        // setStyleSpans over the whole document reports the whole document as replaced.
+        RichTextChange<String, String, String> trimmed = UndoHistory.trim(new RichTextChange<>(0, plain, bolded));
+
+        assertNotNull(trimmed);
+        assertEquals(before.length(), trimmed.getPosition());
+        assertEquals(word, trimmed.getRemoved().getText());
+        assertEquals(word, trimmed.getInserted().getText());
+        assertEquals(NORMAL, trimmed.getRemoved().getStyleOfChar(0));
+        assertEquals(BOLD, trimmed.getInserted().getStyleOfChar(0));
+    }
+
+    @Test
+    void insertionKeepsOnlyTheInsertedText() {
+        String text = LINE.repeat(100);
+        int position = LINE.length() * 50;
+        StyledDocument<String, String, String> removed = document(text, NORMAL);
+        StyledDocument<String, String, String> inserted = document(text.substring(0, position) + "new " + text.substring(position), NORMAL);
+
+        RichTextChange<String, String, String> trimmed = UndoHistory.trim(new RichTextChange<>(0, removed, inserted));
+
+        assertNotNull(trimmed);
+        assertEquals(position, trimmed.getPosition());
+        assertEquals("", trimmed.getRemoved().getText());
+        assertEquals("new ", trimmed.getInserted().getText());
+    }
+
+    @Test
+    void changeThatChangesNothingIsDropped() {
+        String text = LINE.repeat(10);
+        assertNull(UndoHistory.trim(new RichTextChange<>(0, document(text, NORMAL), document(text, NORMAL))));
+    }
+}